@@ -52,6 +52,11 @@ android {
         compose = true
     }
     
+    testOptions {
+        // android.util.Log is a no-op in JVM unit tests
+        unitTests.isReturnDefaultValues = true
+    }
+    
     packaging {
         resources {
             excludes += "/META-INF/{AL2.0,LGPL2.1}"
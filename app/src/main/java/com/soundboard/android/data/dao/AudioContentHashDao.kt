@@ -0,0 +1,20 @@
+package com.soundboard.android.data.dao
+
+import androidx.room.*
+import com.soundboard.android.data.model.AudioContentHash
+
+@Dao
+interface AudioContentHashDao {
+    
+    @Query("SELECT * FROM audio_content_hashes WHERE file_path = :filePath LIMIT 1")
+    suspend fun getHash(filePath: String): AudioContentHash?
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertHash(hash: AudioContentHash)
+    
+    @Query("DELETE FROM audio_content_hashes WHERE file_path = :filePath")
+    suspend fun deleteHash(filePath: String)
+    
+    @Query("DELETE FROM audio_content_hashes WHERE hashed_at < :cutoffTime")
+    suspend fun deleteOldHashes(cutoffTime: Long)
+} 
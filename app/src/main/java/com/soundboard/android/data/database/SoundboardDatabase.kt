@@ -10,9 +10,10 @@ import com.soundboard.android.data.model.*
     entities = [
         SoundButton::class,
         SoundboardLayout::class,
-        ConnectionHistory::class
+        ConnectionHistory::class,
+        AudioContentHash::class
     ],
-    version = 3,
+    version = 4,
     exportSchema = false
 )
 @TypeConverters(SoundboardTypeConverters::class)
@@ -21,6 +22,7 @@ abstract class SoundboardDatabase : RoomDatabase() {
     abstract fun soundButtonDao(): SoundButtonDao
     abstract fun soundboardLayoutDao(): SoundboardLayoutDao
     abstract fun connectionHistoryDao(): ConnectionHistoryDao
+    abstract fun audioContentHashDao(): AudioContentHashDao
     
     companion object {
         const val DATABASE_NAME = "soundboard_database"
@@ -35,6 +37,20 @@ abstract class SoundboardDatabase : RoomDatabase() {
             }
         }
         
+        // Migration from version 3 to 4 - add content hash cache for local audio files
+        val MIGRATION_3_4 = object : androidx.room.migration.Migration(3, 4) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL(
+                    "CREATE TABLE IF NOT EXISTS audio_content_hashes (" +
+                        "file_path TEXT NOT NULL PRIMARY KEY, " +
+                        "size INTEGER NOT NULL, " +
+                        "last_modified INTEGER NOT NULL, " +
+                        "content_hash TEXT NOT NULL, " +
+                        "hashed_at INTEGER NOT NULL)"
+                )
+            }
+        }
+        
         fun getDatabase(context: Context): SoundboardDatabase {
             return INSTANCE ?: synchronized(this) {
                 val instance = Room.databaseBuilder(
@@ -42,7 +58,7 @@ abstract class SoundboardDatabase : RoomDatabase() {
                     SoundboardDatabase::class.java,
                     DATABASE_NAME
                 )
-                    .addMigrations(MIGRATION_2_3)
+                    .addMigrations(MIGRATION_2_3, MIGRATION_3_4)
                     .build()
                 INSTANCE = instance
                 instance
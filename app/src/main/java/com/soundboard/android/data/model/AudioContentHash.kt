@@ -0,0 +1,28 @@
+package com.soundboard.android.data.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * SHA-256 of a local audio file, valid while the file keeps the same size
+ * and modification time. Lets play-by-hash skip re-reading the whole file.
+ */
+@Entity(tableName = "audio_content_hashes")
+data class AudioContentHash(
+    @PrimaryKey
+    @ColumnInfo(name = "file_path")
+    val filePath: String,
+    
+    @ColumnInfo(name = "size")
+    val size: Long,
+    
+    @ColumnInfo(name = "last_modified")
+    val lastModified: Long,
+    
+    @ColumnInfo(name = "content_hash")
+    val contentHash: String,
+    
+    @ColumnInfo(name = "hashed_at")
+    val hashedAt: Long
+) 
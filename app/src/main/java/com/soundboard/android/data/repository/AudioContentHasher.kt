@@ -0,0 +1,88 @@
+package com.soundboard.android.data.repository
+
+import android.net.Uri
+import android.util.Log
+import com.soundboard.android.data.dao.AudioContentHashDao
+import com.soundboard.android.data.model.AudioContentHash
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.InputStream
+import java.security.MessageDigest
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Phase 4.2: Audio Content Hashing
+ *
+ * SHA-256 of local audio files, used as the key for the server's content
+ * cache. A file is hashed once per (path, size, modification time) and the
+ * result is kept in Room, so replaying a sound costs a single row lookup.
+ * Sources that report no size or modification time are hashed every time.
+ */
+@Singleton
+class AudioContentHasher @Inject constructor(
+    private val audioContentHashDao: AudioContentHashDao,
+    private val localAudioFileManager: LocalAudioFileManager
+) {
+    
+    companion object {
+        private const val TAG = "AudioContentHasher"
+        private const val HASH_ALGORITHM = "SHA-256"
+        private const val BUFFER_SIZE = 64 * 1024
+    }
+    
+    suspend fun hashOf(file: File): String? = withContext(Dispatchers.IO) {
+        cachedHash(file.absolutePath, file.length(), file.lastModified()) { file.inputStream() }
+    }
+    
+    suspend fun hashOf(uri: Uri): String? = withContext(Dispatchers.IO) {
+        cachedHash(
+            key = uri.toString(),
+            size = localAudioFileManager.getContentLength(uri),
+            lastModified = localAudioFileManager.getLastModified(uri)
+        ) { localAudioFileManager.openInputStream(uri) }
+    }
+    
+    private suspend fun cachedHash(key: String, size: Long, lastModified: Long, open: () -> InputStream): String? {
+        val cacheable = size >= 0 && lastModified > 0
+        if (cacheable) {
+            audioContentHashDao.getHash(key)
+                ?.takeIf { it.size == size && it.lastModified == lastModified }
+                ?.let { return it.contentHash }
+        }
+        
+        val startTime = System.currentTimeMillis()
+        val hash = try {
+            open().use { digest(it) }
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not hash $key", e)
+            return null
+        }
+        Log.d(TAG, "Hashed $key in ${System.currentTimeMillis() - startTime}ms")
+        
+        if (cacheable) {
+            audioContentHashDao.insertHash(
+                AudioContentHash(
+                    filePath = key,
+                    size = size,
+                    lastModified = lastModified,
+                    contentHash = hash,
+                    hashedAt = System.currentTimeMillis()
+                )
+            )
+        }
+        return hash
+    }
+    
+    private fun digest(input: InputStream): String {
+        val messageDigest = MessageDigest.getInstance(HASH_ALGORITHM)
+        val buffer = ByteArray(BUFFER_SIZE)
+        while (true) {
+            val read = input.read(buffer)
+            if (read == -1) break
+            messageDigest.update(buffer, 0, read)
+        }
+        return messageDigest.digest().joinToString("") { "%02x".format(it) }
+    }
+}
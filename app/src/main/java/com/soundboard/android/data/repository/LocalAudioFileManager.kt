@@ -4,6 +4,7 @@ import android.content.ContentUris
 import android.content.Context
 import android.database.Cursor
 import android.net.Uri
+import android.provider.DocumentsContract
 import android.provider.MediaStore
 import android.util.Log
 import com.soundboard.android.network.api.AudioFile
@@ -287,6 +288,47 @@ class LocalAudioFileManager @Inject constructor(
         return breadcrumbs
     }
     
+    /**
+     * Size of a content:// source in bytes, or -1 when the provider cannot
+     * tell (callers then stream it with chunked transfer encoding).
+     */
+    fun getContentLength(uri: Uri): Long {
+        return try {
+            context.contentResolver.openAssetFileDescriptor(uri, "r")?.use { descriptor ->
+                descriptor.length
+            } ?: -1L
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not determine length of $uri", e)
+            -1L
+        }
+    }
+    
+    /**
+     * Last modification time of a content:// source in epoch milliseconds, or
+     * -1 when the provider does not report one.
+     */
+    fun getLastModified(uri: Uri): Long {
+        val (column, scale) = if (DocumentsContract.isDocumentUri(context, uri)) {
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED to 1L
+        } else {
+            MediaStore.MediaColumns.DATE_MODIFIED to 1000L // MediaStore reports seconds
+        }
+        return try {
+            context.contentResolver.query(uri, arrayOf(column), null, null, null)?.use { cursor ->
+                val index = cursor.getColumnIndex(column)
+                if (cursor.moveToFirst() && index >= 0 && !cursor.isNull(index)) cursor.getLong(index) * scale else -1L
+            } ?: -1L
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not determine last modified time of $uri", e)
+            -1L
+        }
+    }
+    
+    fun openInputStream(uri: Uri): java.io.InputStream {
+        return context.contentResolver.openInputStream(uri)
+            ?: throw java.io.FileNotFoundException("Could not open input stream for URI: $uri")
+    }
+    
     suspend fun createTempFileFromUri(uri: Uri, fileName: String): java.io.File? = withContext(Dispatchers.IO) {
         return@withContext try {
             val inputStream = context.contentResolver.openInputStream(uri)
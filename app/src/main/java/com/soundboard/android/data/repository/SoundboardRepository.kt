@@ -1,5 +1,7 @@
 package com.soundboard.android.data.repository
 
+import android.content.Context
+import android.net.ConnectivityManager
 import android.util.Log
 import com.soundboard.android.data.dao.ConnectionHistoryDao
 import com.soundboard.android.data.dao.SoundButtonDao
@@ -7,24 +9,43 @@ import com.soundboard.android.data.dao.SoundboardLayoutDao
 import com.soundboard.android.data.model.ConnectionHistory
 import com.soundboard.android.data.model.SoundButton
 import com.soundboard.android.data.model.SoundboardLayout
+import com.soundboard.android.network.ConnectionStatus
+import com.soundboard.android.network.HttpTransport
+import com.soundboard.android.network.RequestPipelineManager
 import com.soundboard.android.network.SocketManager
+import com.soundboard.android.network.StreamingRequestBody
 import com.soundboard.android.network.api.AudioFile
 import com.soundboard.android.network.api.SoundboardApiService
 import com.soundboard.android.di.RetrofitFactory
 import com.google.gson.Gson
+import dagger.hilt.android.qualifiers.ApplicationContext
 import com.soundboard.android.network.model.PlaySoundCommand
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.update
 import okhttp3.OkHttpClient
 import okhttp3.RequestBody
-import okhttp3.RequestBody.Companion.toRequestBody
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
+import okhttp3.RequestBody.Companion.toRequestBody
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 
 @Singleton
@@ -35,19 +56,78 @@ class SoundboardRepository @Inject constructor(
     private val socketManager: SocketManager,
     private val okHttpClient: OkHttpClient,
     private val gson: Gson,
-    private val localAudioFileManager: LocalAudioFileManager
+    private val localAudioFileManager: LocalAudioFileManager,
+    private val requestPipelineManager: RequestPipelineManager,
+    private val httpTransport: HttpTransport,
+    private val audioContentHasher: AudioContentHasher,
+    @ApplicationContext private val context: Context
 ) {
     
     companion object {
         private const val TAG = "SoundboardRepository"
+        private val AUDIO_CONTENT_TYPE = "application/octet-stream".toMediaTypeOrNull()
+        private const val HTTP_NOT_FOUND = 404
+        private const val WARM_UP_PARALLELISM = 2
+        private const val WARM_UP_TIMEOUT_MS = 120_000L
+        private const val WARM_UP_MAX_FILE_BYTES = 50L * 1024 * 1024 // Larger files upload on first press
+        private const val WARM_UP_TAG = "layout-warm-up"
     }
     
+    // Progress of the local-file upload in flight; totalBytes is -1 for chunked uploads
+    data class UploadProgress(
+        val buttonId: Int,
+        val fileName: String,
+        val bytesSent: Long,
+        val totalBytes: Long
+    )
+    
+    private val _uploadProgress = MutableStateFlow<UploadProgress?>(null)
+    val uploadProgress: StateFlow<UploadProgress?> = _uploadProgress.asStateFlow()
+    
+    // Background push of the active layout's local sounds into the server's content cache
+    data class LayoutWarmUpStatus(
+        val layoutId: Long,
+        val totalSounds: Int,
+        val uploaded: Int = 0,
+        val alreadyCached: Int = 0,
+        val skipped: Int = 0,
+        val failed: Int = 0,
+        val running: Boolean = true
+    )
+    
+    private enum class WarmUpOutcome { UPLOADED, ALREADY_CACHED, SKIPPED, FAILED }
+    
+    // A local sound resolved to something that can be hashed and streamed
+    private class LocalAudioSource(
+        val fileName: String,
+        val contentLength: Long,
+        val contentHash: String?,
+        val body: RequestBody
+    )
+    
+    private val _layoutWarmUp = MutableStateFlow<LayoutWarmUpStatus?>(null)
+    val layoutWarmUp: StateFlow<LayoutWarmUpStatus?> = _layoutWarmUp.asStateFlow()
+    private var warmUpJob: Job? = null // Guarded by warmUpLock
+    private val warmUpLock = Any()
+    
     // Create a repository scope for audio playback coroutines
     private val repositoryScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     
     private var currentApiService: SoundboardApiService? = null
     private var currentServerUrl: String? = null
     
+    init {
+        // A (re)connected server may have restarted with an empty content cache
+        repositoryScope.launch {
+            socketManager.connectionStatus
+                .map { it is ConnectionStatus.Connected }
+                .distinctUntilChanged()
+                .collect { connected ->
+                    if (connected) warmUpActiveLayout("connected") else cancelWarmUp()
+                }
+        }
+    }
+    
     // Sound Button operations
     fun getAllSoundButtons(): Flow<List<SoundButton>> = soundButtonDao.getAllSoundButtons()
     
@@ -92,8 +172,10 @@ class SoundboardRepository @Inject constructor(
     suspend fun deleteAllLayouts() = 
         soundboardLayoutDao.deleteAllLayouts()
     
-    suspend fun switchActiveLayout(id: Long) = 
+    suspend fun switchActiveLayout(id: Long) {
         soundboardLayoutDao.switchActiveLayout(id)
+        warmUpActiveLayout("layout switch")
+    }
     
     // Connection history operations
     fun getAllConnections(): Flow<List<ConnectionHistory>> = 
@@ -168,6 +250,7 @@ class SoundboardRepository @Inject constructor(
     fun connectToServer(ipAddress: String, port: Int) {
         currentServerUrl = "http://$ipAddress:$port/"
         currentApiService = createApiService(currentServerUrl!!)
+        httpTransport.warmUp(currentServerUrl!!)
         socketManager.connect(ipAddress, port)
     }
     
@@ -175,6 +258,7 @@ class SoundboardRepository @Inject constructor(
         socketManager.disconnect()
         currentApiService = null
         currentServerUrl = null
+        httpTransport.evictConnections()
     }
     
     /**
@@ -272,8 +356,18 @@ class SoundboardRepository @Inject constructor(
             // Try to read the file directly first
             val file = java.io.File(soundButton.filePath)
             if (file.exists() && file.canRead()) {
-                Log.d(TAG, "✅ Reading file directly: ${file.absolutePath}")
-                return uploadAndPlayAudioData(file, soundButton.volume, soundButton.id)
+                val contentHash = audioContentHasher.hashOf(file)
+                if (contentHash != null) {
+                    playByHash(contentHash, file.name, soundButton.volume, soundButton.id)?.let { return it }
+                }
+                
+                Log.d(TAG, "✅ Streaming file directly: ${file.absolutePath}")
+                val body = StreamingRequestBody.fromFile(
+                    file = file,
+                    contentType = AUDIO_CONTENT_TYPE,
+                    onProgress = uploadProgressReporter(soundButton.id, file.name)
+                )
+                return uploadAndPlayAudioData(file.name, body, soundButton.volume, soundButton.id, contentHash)
             }
             
             // If direct file access fails, try using content resolver with URI
@@ -281,18 +375,23 @@ class SoundboardRepository @Inject constructor(
             
             // Check if the path looks like a content URI
             if (soundButton.filePath.startsWith("content://")) {
+                // Stream straight from the content resolver instead of copying to a temp file
                 val uri = android.net.Uri.parse(soundButton.filePath)
-                val tempFile = createTempFileFromUri(uri, soundButton.name)
-                if (tempFile != null) {
-                    Log.d(TAG, "✅ Created temp file from URI: ${tempFile.absolutePath}")
-                    val result = uploadAndPlayAudioData(tempFile, soundButton.volume, soundButton.id)
-                    // Clean up temp file
-                    tempFile.delete()
-                    return result
-                } else {
-                    Log.e(TAG, "❌ Failed to create temp file from URI")
-                    return Result.failure(Exception("Could not access audio file"))
+                val contentHash = audioContentHasher.hashOf(uri)
+                if (contentHash != null) {
+                    playByHash(contentHash, soundButton.name, soundButton.volume, soundButton.id)?.let { return it }
                 }
+                
+                val contentLength = localAudioFileManager.getContentLength(uri)
+                Log.d(TAG, "✅ Streaming from URI: $uri (${if (contentLength >= 0) "$contentLength bytes" else "chunked"})")
+                val body = StreamingRequestBody.fromInputStream(
+                    contentType = AUDIO_CONTENT_TYPE,
+                    contentLength = contentLength,
+                    onProgress = uploadProgressReporter(soundButton.id, soundButton.name)
+                ) {
+                    localAudioFileManager.openInputStream(uri)
+                }
+                return uploadAndPlayAudioData(soundButton.name, body, soundButton.volume, soundButton.id, contentHash)
             }
             
             Log.e(TAG, "❌ Local file not found and not a valid URI: ${soundButton.filePath}")
@@ -303,11 +402,210 @@ class SoundboardRepository @Inject constructor(
         }
     }
     
-    private suspend fun createTempFileFromUri(uri: android.net.Uri, fileName: String): java.io.File? {
-        return localAudioFileManager.createTempFileFromUri(uri, fileName)
+    /**
+     * Pushes the active layout's local sounds into the server's content cache
+     * so their first press is a play-by-hash hit instead of an upload. Each
+     * sound is a LOW priority pipeline request, at most [WARM_UP_PARALLELISM]
+     * in flight; nothing is sent on metered networks. A new call replaces a
+     * warm-up that is still running.
+     */
+    fun warmUpActiveLayout(reason: String) {
+        synchronized(warmUpLock) {
+            val previous = warmUpJob
+            previous?.cancel()
+            warmUpJob = repositoryScope.launch {
+                // The replaced run clears its status on the way out; let it finish first
+                previous?.join()
+                runWarmUp(reason)
+            }
+        }
     }
     
-    private suspend fun uploadAndPlayAudioData(file: java.io.File, volume: Float, buttonId: Int): Result<String> = withContext(Dispatchers.IO) {
+    private fun cancelWarmUp() {
+        synchronized(warmUpLock) { warmUpJob?.cancel() }
+    }
+    
+    private suspend fun runWarmUp(reason: String): Unit = coroutineScope {
+        if (isActiveNetworkMetered()) {
+            Log.d(TAG, "⏸️ Skipping layout warm-up ($reason): network is metered")
+            return@coroutineScope
+        }
+        val serverUrl = getServerUrl() ?: return@coroutineScope
+        val layout = getActiveLayout() ?: return@coroutineScope
+        val sounds = soundButtonDao.getAllSoundButtons().first().filter {
+            it.isLocalFile && it.positionX < layout.gridColumns && it.positionY < layout.gridRows
+        }
+        if (sounds.isEmpty()) return@coroutineScope
+        
+        Log.d(TAG, "🔥 Warming up ${sounds.size} local sounds for layout ${layout.name} ($reason)")
+        _layoutWarmUp.value = LayoutWarmUpStatus(layoutId = layout.id, totalSounds = sounds.size)
+        
+        val permits = Semaphore(WARM_UP_PARALLELISM)
+        try {
+            sounds.map { sound ->
+                async {
+                    val outcome = permits.withPermit { warmUpSound(serverUrl, sound) }
+                    _layoutWarmUp.update { status ->
+                        when (outcome) {
+                            WarmUpOutcome.UPLOADED -> status?.copy(uploaded = status.uploaded + 1)
+                            WarmUpOutcome.ALREADY_CACHED -> status?.copy(alreadyCached = status.alreadyCached + 1)
+                            WarmUpOutcome.SKIPPED -> status?.copy(skipped = status.skipped + 1)
+                            WarmUpOutcome.FAILED -> status?.copy(failed = status.failed + 1)
+                        }
+                    }
+                }
+            }.awaitAll()
+            Log.d(TAG, "🔥 Layout warm-up finished: ${_layoutWarmUp.value}")
+        } finally {
+            _layoutWarmUp.update { it?.copy(running = false) }
+        }
+    }
+    
+    private suspend fun warmUpSound(serverUrl: String, sound: SoundButton): WarmUpOutcome {
+        if (isActiveNetworkMetered()) return WarmUpOutcome.SKIPPED
+        
+        val requestId = "warm-up-${sound.id}-${System.nanoTime()}"
+        val result = requestPipelineManager.submitRequest(
+            priority = RequestPipelineManager.RequestPriority.LOW,
+            requestType = RequestPipelineManager.RequestType.UPLOAD,
+            payload = sound.filePath,
+            timeout = WARM_UP_TIMEOUT_MS,
+            maxRetries = 0,
+            tags = setOf(WARM_UP_TAG),
+            requestId = requestId
+        ) {
+            pushToContentCache(serverUrl, sound)
+        }
+        
+        return try {
+            result.await().getOrElse { error ->
+                Log.w(TAG, "⚠️ Warm-up failed for ${sound.name}: ${error.message}")
+                WarmUpOutcome.FAILED
+            }
+        } catch (e: CancellationException) {
+            withContext(NonCancellable) { requestPipelineManager.cancelRequest(requestId) }
+            throw e
+        }
+    }
+    
+    private suspend fun pushToContentCache(serverUrl: String, sound: SoundButton): WarmUpOutcome {
+        val source = openLocalAudioSource(sound) ?: return WarmUpOutcome.SKIPPED
+        val contentHash = source.contentHash ?: return WarmUpOutcome.FAILED
+        if (source.contentLength > WARM_UP_MAX_FILE_BYTES) return WarmUpOutcome.SKIPPED
+        
+        return withContext(Dispatchers.IO) {
+            val check = okhttp3.Request.Builder()
+                .url("${serverUrl}audio-cache/$contentHash")
+                .build()
+            val cached = httpTransport.client.newCall(check).execute().use { response ->
+                when {
+                    response.isSuccessful -> true
+                    response.code == HTTP_NOT_FOUND -> false
+                    else -> throw java.io.IOException("Cache check failed: ${response.code}")
+                }
+            }
+            if (cached) return@withContext WarmUpOutcome.ALREADY_CACHED
+            
+            val upload = okhttp3.Request.Builder()
+                .url("${serverUrl}cache-audio-data")
+                .post(source.body)
+                .addHeader("X-Content-Hash", contentHash)
+                .addHeader("X-File-Name", source.fileName)
+                .build()
+            httpTransport.uploadClient.newCall(upload).execute().use { response ->
+                if (!response.isSuccessful) {
+                    throw java.io.IOException("Warm-up upload failed: ${response.code}")
+                }
+            }
+            Log.d(TAG, "🔥 Pre-uploaded ${source.fileName} (${source.contentLength} bytes)")
+            WarmUpOutcome.UPLOADED
+        }
+    }
+    
+    private suspend fun openLocalAudioSource(sound: SoundButton): LocalAudioSource? {
+        val file = java.io.File(sound.filePath)
+        if (file.exists() && file.canRead()) {
+            return LocalAudioSource(
+                fileName = file.name,
+                contentLength = file.length(),
+                contentHash = audioContentHasher.hashOf(file),
+                body = StreamingRequestBody.fromFile(file, AUDIO_CONTENT_TYPE)
+            )
+        }
+        if (sound.filePath.startsWith("content://")) {
+            val uri = android.net.Uri.parse(sound.filePath)
+            val contentLength = localAudioFileManager.getContentLength(uri)
+            return LocalAudioSource(
+                fileName = sound.name,
+                contentLength = contentLength,
+                contentHash = audioContentHasher.hashOf(uri),
+                body = StreamingRequestBody.fromInputStream(AUDIO_CONTENT_TYPE, contentLength) {
+                    localAudioFileManager.openInputStream(uri)
+                }
+            )
+        }
+        return null
+    }
+    
+    private fun isActiveNetworkMetered(): Boolean {
+        val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+        return connectivityManager.isActiveNetworkMetered
+    }
+    
+    private fun uploadProgressReporter(buttonId: Int, fileName: String): (Long, Long) -> Unit = { sent, total ->
+        _uploadProgress.value = UploadProgress(buttonId, fileName, sent, total)
+    }
+    
+    /**
+     * Asks the server to play audio it already holds under [contentHash].
+     * Returns null when the server does not have it (or cannot be asked),
+     * in which case the caller uploads the file instead.
+     */
+    private suspend fun playByHash(
+        contentHash: String,
+        fileName: String,
+        volume: Float,
+        buttonId: Int
+    ): Result<String>? = withContext(Dispatchers.IO) {
+        val serverUrl = getServerUrl() ?: return@withContext null
+        try {
+            val request = okhttp3.Request.Builder()
+                .url("${serverUrl}play-by-hash")
+                .post(ByteArray(0).toRequestBody(null))
+                .addHeader("X-Content-Hash", contentHash)
+                .addHeader("X-Button-Id", buttonId.toString())
+                .addHeader("X-Volume", volume.toString())
+                .build()
+            
+            httpTransport.client.newCall(request).execute().use { response ->
+                when {
+                    response.isSuccessful -> {
+                        Log.d(TAG, "✅ Server had $fileName cached (${contentHash.take(12)}) - skipped upload")
+                        Result.success("Playing $fileName on computer speakers")
+                    }
+                    response.code == HTTP_NOT_FOUND -> {
+                        Log.d(TAG, "📦 Server does not have $fileName cached yet - uploading")
+                        null
+                    }
+                    else -> {
+                        Log.w(TAG, "⚠️ play-by-hash failed with ${response.code} - falling back to upload")
+                        null
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "⚠️ play-by-hash request failed - falling back to upload", e)
+            null
+        }
+    }
+    
+    private suspend fun uploadAndPlayAudioData(
+        fileName: String,
+        requestBody: RequestBody,
+        volume: Float,
+        buttonId: Int,
+        contentHash: String? = null
+    ): Result<String> = withContext(Dispatchers.IO) {
         return@withContext try {
             // Check if we have a connection and get the server URL
             val serverUrl = getServerUrl()
@@ -315,46 +613,40 @@ class SoundboardRepository @Inject constructor(
                 return@withContext Result.failure(Exception("No server connection"))
             }
             
-            Log.d(TAG, "📤 Uploading audio data to server: ${file.name} (${file.length()} bytes)")
-            
-            // Read audio file data
-            val audioData = file.readBytes()
-            
-            // Create HTTP request to upload audio data
-            val client = okhttp3.OkHttpClient.Builder()
-                .connectTimeout(10, java.util.concurrent.TimeUnit.SECONDS)
-                .writeTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .build()
+            val length = requestBody.contentLength()
+            Log.d(TAG, "📤 Streaming audio data to server: $fileName (${if (length >= 0) "$length bytes" else "chunked"})")
             
-            val requestBody = audioData.toRequestBody(
-                "application/octet-stream".toMediaTypeOrNull()
-            )
+            // Shared transport: reuses the pooled keep-alive connection to the server
+            val client = httpTransport.uploadClient
             
             val request = okhttp3.Request.Builder()
                 .url("${serverUrl}play-audio-data")
                 .post(requestBody)
                 .addHeader("X-Button-Id", buttonId.toString())
-                .addHeader("X-File-Name", file.name)
+                .addHeader("X-File-Name", fileName)
                 .addHeader("X-Volume", volume.toString())
                 .addHeader("Content-Type", "application/octet-stream")
+                .apply { contentHash?.let { addHeader("X-Content-Hash", it) } } // Server keeps it for play-by-hash
                 .build()
             
             Log.d(TAG, "🌐 Making HTTP request to: ${serverUrl}play-audio-data")
-            val response = client.newCall(request).execute()
-            
-            if (response.isSuccessful) {
-                val responseBody = response.body?.string()
-                Log.d(TAG, "✅ Audio uploaded successfully - playing on computer speakers: $responseBody")
-                Result.success("Playing ${file.name} on computer speakers")
-            } else {
-                val errorBody = response.body?.string() ?: "Unknown error"
-                Log.e(TAG, "❌ Failed to upload audio: ${response.code} - $errorBody")
-                Result.failure(Exception("Failed to upload audio: ${response.code}"))
+            // use {} returns the connection to the pool as soon as the body is read
+            client.newCall(request).execute().use { response ->
+                if (response.isSuccessful) {
+                    val responseBody = response.body?.string()
+                    Log.d(TAG, "✅ Audio uploaded successfully - playing on computer speakers: $responseBody")
+                    Result.success("Playing $fileName on computer speakers")
+                } else {
+                    val errorBody = response.body?.string() ?: "Unknown error"
+                    Log.e(TAG, "❌ Failed to upload audio: ${response.code} - $errorBody")
+                    Result.failure(Exception("Failed to upload audio: ${response.code}"))
+                }
             }
         } catch (e: Exception) {
             Log.e(TAG, "❌ Error uploading audio data", e)
             Result.failure(e)
+        } finally {
+            _uploadProgress.value = null
         }
     }
     
@@ -421,14 +713,20 @@ class SoundboardRepository @Inject constructor(
                 return Result.failure(Exception("Not connected to server"))
             }
             
-            val response = apiService.getAudioFiles()
-            if (response.isSuccessful) {
-                val audioFiles = response.body() ?: emptyList()
-                Log.d(TAG, "Retrieved ${audioFiles.size} audio files")
-                Result.success(audioFiles)
-            } else {
-                Log.e(TAG, "Failed to get audio files: ${response.code()}")
-                Result.failure(Exception("Server error: ${response.code()}"))
+            // Screens opening together share one fetch
+            requestPipelineManager.executeCoalesced(
+                requestType = RequestPipelineManager.RequestType.GET,
+                payload = "audio-files@$currentServerUrl"
+            ) {
+                val response = apiService.getAudioFiles()
+                if (response.isSuccessful) {
+                    val audioFiles = response.body() ?: emptyList()
+                    Log.d(TAG, "Retrieved ${audioFiles.size} audio files")
+                    audioFiles
+                } else {
+                    Log.e(TAG, "Failed to get audio files: ${response.code()}")
+                    throw Exception("Server error: ${response.code()}")
+                }
             }
         } catch (e: Exception) {
             Log.e(TAG, "Error getting audio files", e)
@@ -489,12 +787,17 @@ class SoundboardRepository @Inject constructor(
                 return Result.failure(Exception("Not connected to server"))
             }
             
-            val response = apiService.getHealth()
-            if (response.isSuccessful) {
-                val health = response.body()
-                Result.success("Server OK - Version: ${health?.server_version}")
-            } else {
-                Result.failure(Exception("Server health check failed: ${response.code()}"))
+            requestPipelineManager.executeCoalesced(
+                requestType = RequestPipelineManager.RequestType.GET,
+                payload = "health@$currentServerUrl"
+            ) {
+                val response = apiService.getHealth()
+                if (response.isSuccessful) {
+                    val health = response.body()
+                    "Server OK - Version: ${health?.server_version}"
+                } else {
+                    throw Exception("Server health check failed: ${response.code()}")
+                }
             }
         } catch (e: Exception) {
             Log.e(TAG, "Error testing server connection", e)
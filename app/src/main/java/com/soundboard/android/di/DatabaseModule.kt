@@ -2,6 +2,7 @@ package com.soundboard.android.di
 
 import android.content.Context
 import androidx.room.Room
+import com.soundboard.android.data.dao.AudioContentHashDao
 import com.soundboard.android.data.dao.ConnectionHistoryDao
 import com.soundboard.android.data.dao.SoundButtonDao
 import com.soundboard.android.data.dao.SoundboardLayoutDao
@@ -25,7 +26,7 @@ object DatabaseModule {
             SoundboardDatabase::class.java,
             SoundboardDatabase.DATABASE_NAME
         )
-            .addMigrations(SoundboardDatabase.MIGRATION_2_3)
+            .addMigrations(SoundboardDatabase.MIGRATION_2_3, SoundboardDatabase.MIGRATION_3_4)
             .build()
     }
     
@@ -43,4 +44,9 @@ object DatabaseModule {
     fun provideConnectionHistoryDao(database: SoundboardDatabase): ConnectionHistoryDao {
         return database.connectionHistoryDao()
     }
+    
+    @Provides
+    fun provideAudioContentHashDao(database: SoundboardDatabase): AudioContentHashDao {
+        return database.audioContentHashDao()
+    }
 } 
\ No newline at end of file
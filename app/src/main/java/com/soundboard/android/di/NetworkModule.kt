@@ -1,5 +1,6 @@
 package com.soundboard.android.di
 
+import android.content.Context
 import com.google.gson.Gson
 import com.google.gson.GsonBuilder
 import com.soundboard.android.network.SocketManager
@@ -10,6 +11,7 @@ import com.soundboard.android.network.ConnectionManager
 import com.soundboard.android.network.ConnectionPoolManager
 import com.soundboard.android.network.CacheManager
 import com.soundboard.android.network.CompressionManager
+import com.soundboard.android.network.HttpTransport
 import com.soundboard.android.network.RequestPipelineManager
 import com.soundboard.android.network.PerformanceMetrics
 import com.soundboard.android.network.api.SoundboardApiService
@@ -17,13 +19,13 @@ import com.soundboard.android.network.api.MyInstantApiService
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
+import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.components.SingletonComponent
 import javax.inject.Named
 import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
 import retrofit2.Retrofit
 import retrofit2.converter.gson.GsonConverterFactory
-import java.util.concurrent.TimeUnit
 import javax.inject.Singleton
 
 @Module
@@ -40,16 +42,20 @@ object NetworkModule {
     
     @Provides
     @Singleton
-    fun provideOkHttpClient(): OkHttpClient {
+    fun provideHttpTransport(): HttpTransport {
+        return HttpTransport()
+    }
+    
+    @Provides
+    @Singleton
+    fun provideOkHttpClient(httpTransport: HttpTransport): OkHttpClient {
         val loggingInterceptor = HttpLoggingInterceptor().apply {
             level = HttpLoggingInterceptor.Level.BODY
         }
         
-        return OkHttpClient.Builder()
+        // Derived from the shared transport so Retrofit reuses its connection pool
+        return httpTransport.client.newBuilder()
             .addInterceptor(loggingInterceptor)
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(15, TimeUnit.SECONDS)
             .build()
     }
     
@@ -76,8 +82,11 @@ object NetworkModule {
     
     @Provides
     @Singleton
-    fun provideSocketManager(): SocketManager {
-        return SocketManager()
+    fun provideSocketManager(
+        compressionManager: CompressionManager,
+        performanceMetrics: PerformanceMetrics
+    ): SocketManager {
+        return SocketManager(compressionManager, performanceMetrics)
     }
     
     @Provides
@@ -108,9 +117,11 @@ object NetworkModule {
     @Singleton
     fun provideSessionCoordinator(
         deviceSessionManager: DeviceSessionManager,
-        gson: Gson
+        gson: Gson,
+        compressionManager: CompressionManager,
+        socketManager: SocketManager
     ): SessionCoordinator {
-        return SessionCoordinator(deviceSessionManager, gson)
+        return SessionCoordinator(deviceSessionManager, gson, compressionManager, socketManager)
     }
     
     // Phase 4.2: Performance Optimization Dependencies
@@ -122,8 +133,8 @@ object NetworkModule {
     
     @Provides
     @Singleton
-    fun provideCacheManager(): CacheManager {
-        return CacheManager()
+    fun provideCacheManager(@ApplicationContext context: Context): CacheManager {
+        return CacheManager(context)
     }
     
     @Provides
@@ -135,7 +146,8 @@ object NetworkModule {
     @Provides
     @Singleton
     fun provideRequestPipelineManager(): RequestPipelineManager {
-        return RequestPipelineManager()
+        // Workers must be pulling from the scheduler before the first submit
+        return RequestPipelineManager().apply { initialize() }
     }
     
     @Provides
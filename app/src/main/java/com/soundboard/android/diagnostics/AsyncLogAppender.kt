@@ -0,0 +1,231 @@
+package com.soundboard.android.diagnostics
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * AsyncLogAppender - Batched log file writer
+ *
+ * Callers hand entries to [append], which only claims a slot in a bounded
+ * lock-free ring and never touches the file. A single writer coroutine
+ * renders the entries and drains the ring in batches into a buffered
+ * stream, flushing once [flushThresholdBytes] are pending or
+ * [flushIntervalMs] has passed, so a burst of log lines costs one write
+ * syscall instead of one per line. When the ring is full new entries are
+ * dropped and counted, so logging never blocks the caller. The file is
+ * rotated on a running byte count rather than by asking the filesystem for
+ * its length.
+ */
+class AsyncLogAppender(
+    private val scope: CoroutineScope,
+    private val newLogFile: () -> File,
+    private val maxFileBytes: Long,
+    queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+    private val flushThresholdBytes: Int = DEFAULT_FLUSH_THRESHOLD_BYTES,
+    private val flushIntervalMs: Long = DEFAULT_FLUSH_INTERVAL_MS,
+    private val onRotated: () -> Unit = {},
+    private val onStatsUpdated: (LogAppenderStats) -> Unit = {}
+) {
+    companion object {
+        private const val TAG = "AsyncLogAppender"
+        const val DEFAULT_QUEUE_CAPACITY = 4096 // Rounded up to a power of two
+        const val DEFAULT_FLUSH_THRESHOLD_BYTES = 64 * 1024
+        const val DEFAULT_FLUSH_INTERVAL_MS = 1_000L
+    }
+
+    // Bounded multi-producer ring (Vyukov): a slot's sequence says whose turn it is
+    private val capacity = Integer.highestOneBit((queueCapacity.coerceAtLeast(2) - 1) shl 1)
+    private val mask = capacity - 1L
+    private val slots = AtomicReferenceArray<LogEntry?>(capacity)
+    private val sequences = AtomicLongArray(capacity).apply { for (i in 0 until capacity) set(i, i.toLong()) }
+    private val tail = AtomicLong(0) // Next slot for producers
+    private val head = AtomicLong(0) // Next slot for the writer
+
+    private val wakeup = Channel<Unit>(Channel.CONFLATED)
+    @Volatile private var writerParked = false
+    @Volatile private var closing = false
+    private var writerJob: Job? = null
+
+    // Counters
+    private val droppedEntries = AtomicLong(0)
+    private val writtenEntries = AtomicLong(0)
+    private val writtenBytes = AtomicLong(0)
+    private val flushes = AtomicLong(0)
+    private val rotations = AtomicLong(0)
+    private val writeErrors = AtomicLong(0)
+
+    // Writer-owned file state
+    private var output: BufferedOutputStream? = null
+    private var fileBytes = 0L
+    private var pendingBytes = 0
+
+    fun start() {
+        if (writerJob != null) return
+        writerJob = scope.launch { runWriter() }
+    }
+
+    /**
+     * Queues one entry for the file. Returns false when it was dropped because
+     * the queue is full or the appender is closing.
+     */
+    fun append(entry: LogEntry): Boolean {
+        if (closing) return false
+        while (true) {
+            val position = tail.get()
+            val index = (position and mask).toInt()
+            val difference = sequences.get(index) - position
+            when {
+                difference == 0L -> if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, entry)
+                    sequences.set(index, position + 1)
+                    if (writerParked) wakeup.trySend(Unit)
+                    return true
+                }
+                difference < 0L -> {
+                    droppedEntries.incrementAndGet()
+                    return false
+                }
+                // Another producer claimed this position; retry with the new tail
+            }
+        }
+    }
+
+    /** Writes out everything queued so far and closes the file */
+    suspend fun close() {
+        closing = true
+        wakeup.trySend(Unit)
+        writerJob?.join()
+        writerJob = null
+    }
+
+    fun currentStats(): LogAppenderStats = LogAppenderStats(
+        queueDepth = (tail.get() - head.get()).coerceIn(0, capacity.toLong()).toInt(),
+        queueCapacity = capacity,
+        droppedEntries = droppedEntries.get(),
+        writtenEntries = writtenEntries.get(),
+        writtenBytes = writtenBytes.get(),
+        flushes = flushes.get(),
+        rotations = rotations.get(),
+        writeErrors = writeErrors.get(),
+        lastUpdated = System.currentTimeMillis()
+    )
+
+    // Single consumer, so the head needs no CAS
+    private fun poll(): LogEntry? {
+        val position = head.get()
+        val index = (position and mask).toInt()
+        if (sequences.get(index) != position + 1) return null
+        val entry = slots.get(index)
+        slots.set(index, null)
+        sequences.set(index, position + capacity)
+        head.set(position + 1)
+        return entry
+    }
+
+    private fun isEmpty(): Boolean = head.get() == tail.get()
+
+    private suspend fun runWriter() {
+        var lastFlushAt = System.currentTimeMillis()
+        try {
+            while (true) {
+                var entry = poll()
+                while (entry != null) {
+                    write(entry)
+                    if (pendingBytes >= flushThresholdBytes) {
+                        flush()
+                        lastFlushAt = System.currentTimeMillis()
+                    }
+                    entry = poll()
+                }
+
+                val sinceFlush = System.currentTimeMillis() - lastFlushAt
+                if (pendingBytes > 0 && sinceFlush >= flushIntervalMs) {
+                    flush()
+                    lastFlushAt = System.currentTimeMillis()
+                }
+                if (closing && isEmpty()) break
+
+                // Park until more entries arrive or the pending bytes are due
+                writerParked = true
+                if (isEmpty() && !closing) {
+                    if (pendingBytes > 0) {
+                        withTimeoutOrNull((flushIntervalMs - sinceFlush).coerceAtLeast(1)) { wakeup.receive() }
+                    } else {
+                        wakeup.receive()
+                    }
+                }
+                writerParked = false
+            }
+        } finally {
+            flush()
+            closeOutput()
+        }
+    }
+
+    private fun write(entry: LogEntry) {
+        try {
+            val stream = output ?: openOutput()
+            val bytes = entry.formattedMessage.toByteArray(Charsets.UTF_8)
+            stream.write(bytes)
+            stream.write('\n'.code)
+            val written = bytes.size + 1
+            fileBytes += written
+            pendingBytes += written
+            writtenEntries.incrementAndGet()
+            writtenBytes.addAndGet(written.toLong())
+
+            if (fileBytes >= maxFileBytes) rotate()
+        } catch (e: IOException) {
+            // Report the first failure only; a missing directory would fail every entry
+            if (writeErrors.incrementAndGet() == 1L) Log.e(TAG, "Failed to write log file", e)
+            closeOutput() // Reopened on the next entry
+        }
+    }
+
+    private fun openOutput(): BufferedOutputStream {
+        val file = newLogFile()
+        fileBytes = file.length()
+        return BufferedOutputStream(FileOutputStream(file, true), flushThresholdBytes).also { output = it }
+    }
+
+    private fun flush() {
+        if (pendingBytes == 0) return
+        try {
+            output?.flush()
+            flushes.incrementAndGet()
+        } catch (e: IOException) {
+            writeErrors.incrementAndGet()
+            Log.e(TAG, "Failed to flush log file", e)
+            closeOutput()
+        }
+        pendingBytes = 0
+        onStatsUpdated(currentStats())
+    }
+
+    private fun rotate() {
+        flush()
+        closeOutput()
+        rotations.incrementAndGet()
+        onRotated()
+    }
+
+    private fun closeOutput() {
+        try {
+            output?.close()
+        } catch (e: IOException) {
+            // Nothing left to save
+        }
+        output = null
+    }
+}
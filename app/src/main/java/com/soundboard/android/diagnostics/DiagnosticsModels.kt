@@ -3,6 +3,10 @@ package com.soundboard.android.diagnostics
 import kotlinx.serialization.Contextual
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.SerialName
+import java.time.Instant
+import java.time.ZoneId
+import java.time.format.DateTimeFormatter
+import java.util.Locale
 
 /**
  * Data models for the DiagnosticsManager component
@@ -174,10 +178,13 @@ data class LogEvent(
 
 /**
  * Complete log entry with metadata
+ *
+ * Holds only the raw fields; the display line is rendered when the entry
+ * reaches a sink or an export, not when it is logged.
  */
 @Serializable
 data class LogEntry(
-    val id: String,
+    val id: Long,
     val timestamp: Long,
     val level: LogLevel,
     val category: LogCategory,
@@ -185,9 +192,30 @@ data class LogEntry(
     val message: String,
     val metadata: Map<String, String>,
     val correlationId: String?,
-    val threadName: String,
+    val threadName: String
+) {
     val formattedMessage: String
-)
+        get() = buildString(FORMATTED_PREFIX_LENGTH + message.length) {
+            LOG_TIMESTAMP_FORMAT.formatTo(Instant.ofEpochMilli(timestamp), this)
+            appendPadded(level.name, 5)
+            appendPadded(category.name, 12)
+            appendPadded(component.name, 15)
+            appendPadded(threadName, 20)
+            append(' ').append(message)
+        }
+}
+
+// DateTimeFormatter is immutable, so one instance serves every thread
+private val LOG_TIMESTAMP_FORMAT = DateTimeFormatter
+    .ofPattern("yyyy-MM-dd HH:mm:ss.SSS", Locale.US)
+    .withZone(ZoneId.systemDefault())
+private const val FORMATTED_PREFIX_LENGTH = 90
+
+private fun StringBuilder.appendPadded(value: String, width: Int) {
+    append(" [").append(value)
+    for (i in value.length until width) append(' ')
+    append(']')
+}
 
 /**
  * Log filtering options
@@ -256,6 +284,35 @@ data class LogStatistics(
     }
 }
 
+/**
+ * Log file appender throughput and backpressure
+ */
+data class LogAppenderStats(
+    val queueDepth: Int,
+    val queueCapacity: Int,
+    val droppedEntries: Long, // Rejected because the queue was full
+    val writtenEntries: Long,
+    val writtenBytes: Long,
+    val flushes: Long,
+    val rotations: Long,
+    val writeErrors: Long,
+    val lastUpdated: Long
+) {
+    companion object {
+        fun initial(): LogAppenderStats = LogAppenderStats(
+            queueDepth = 0,
+            queueCapacity = 0,
+            droppedEntries = 0,
+            writtenEntries = 0,
+            writtenBytes = 0,
+            flushes = 0,
+            rotations = 0,
+            writeErrors = 0,
+            lastUpdated = System.currentTimeMillis()
+        )
+    }
+}
+
 /**
  * Comprehensive logging report
  */
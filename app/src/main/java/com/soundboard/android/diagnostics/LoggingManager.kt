@@ -6,8 +6,6 @@ import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
 import java.io.File
-import java.io.FileWriter
-import java.text.SimpleDateFormat
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
@@ -42,11 +40,12 @@ class LoggingManager @Inject constructor(
         private const val PATTERN_ANALYSIS_INTERVAL_MS = 60_000L // 1 minute
         private const val ANOMALY_DETECTION_WINDOW_MINUTES = 10
         private const val LOG_CLEANUP_INTERVAL_HOURS = 24
+        private const val MAX_RECENT_EVENTS = 100
         private val DEFAULT_LOG_LEVEL = LogLevel.INFO
     }
 
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
-    private val dateFormatter = SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US)
+    private val logSequence = AtomicLong(0)
     
     // Logging configuration
     private var currentLogLevel = DEFAULT_LOG_LEVEL
@@ -70,6 +69,9 @@ class LoggingManager @Inject constructor(
     private val _logStatistics = MutableStateFlow(LogStatistics.initial())
     val logStatistics: StateFlow<LogStatistics> = _logStatistics.asStateFlow()
     
+    private val _appenderStats = MutableStateFlow(LogAppenderStats.initial())
+    val appenderStats: StateFlow<LogAppenderStats> = _appenderStats.asStateFlow()
+    
     // Pattern tracking
     private val patternFrequency = ConcurrentHashMap<String, AtomicLong>()
     private val errorPatterns = ConcurrentHashMap<String, MutableList<LogEntry>>()
@@ -79,8 +81,7 @@ class LoggingManager @Inject constructor(
     private val logDirectory: File by lazy { 
         File(context.filesDir, "logs").apply { mkdirs() }
     }
-    private var currentLogFile: File? = null
-    private var logFileWriter: FileWriter? = null
+    @Volatile private var fileAppender: AsyncLogAppender? = null
     
     // Monitoring jobs
     private var patternAnalysisJob: Job? = null
@@ -141,7 +142,8 @@ class LoggingManager @Inject constructor(
         patternAnalysisJob?.cancel()
         logCleanupJob?.cancel()
         
-        logFileWriter?.close()
+        fileAppender?.close()
+        fileAppender = null
         scope.cancel()
     }
 
@@ -190,8 +192,7 @@ class LoggingManager @Inject constructor(
             message = event.message,
             metadata = event.metadata,
             correlationId = null,
-            threadName = Thread.currentThread().name,
-            formattedMessage = formatLogMessage(event)
+            threadName = Thread.currentThread().name
         )
         
         // Add to memory storage
@@ -223,9 +224,7 @@ class LoggingManager @Inject constructor(
             checkForImmediatePatterns(entry)
         }
 
-        val currentEvents = _logEvents.value.toMutableList()
-        currentEvents.add(event)
-        _logEvents.value = currentEvents
+        _logEvents.value = (_logEvents.value + event).takeLast(MAX_RECENT_EVENTS)
     }
 
     /**
@@ -244,8 +243,7 @@ class LoggingManager @Inject constructor(
                 message = event.message,
                 metadata = event.metadata,
                 correlationId = correlationId,
-                threadName = Thread.currentThread().name,
-                formattedMessage = formatLogMessage(event)
+                threadName = Thread.currentThread().name
             )
         )
     }
@@ -353,6 +351,13 @@ class LoggingManager @Inject constructor(
         return _logStatistics.value
     }
 
+    /**
+     * Get file appender queue depth, drops and throughput
+     */
+    fun getAppenderStats(): LogAppenderStats {
+        return fileAppender?.currentStats() ?: _appenderStats.value
+    }
+
     // =============================================================================
     // CONFIGURATION API
     // =============================================================================
@@ -381,10 +386,11 @@ class LoggingManager @Inject constructor(
         enableFileLogging = enabled
         
         if (!enabled) {
-            logFileWriter?.close()
-            logFileWriter = null
+            val appender = fileAppender
+            fileAppender = null
+            appender?.let { scope.launch { it.close() } }
         } else {
-            scope.launch { setupFileLogging() }
+            setupFileLogging()
         }
     }
 
@@ -410,18 +416,8 @@ class LoggingManager @Inject constructor(
         return level.priority >= currentLogLevel.priority
     }
 
-    private fun generateLogId(): String {
-        return UUID.randomUUID().toString().substring(0, 8)
-    }
-
-    private fun formatLogMessage(event: LogEvent): String {
-        val timestamp = dateFormatter.format(Date(System.currentTimeMillis()))
-        val levelStr = event.level.name.padEnd(5)
-        val categoryStr = event.category.name.padEnd(12)
-        val componentStr = event.component.name.padEnd(15)
-        val threadStr = Thread.currentThread().name.padEnd(20)
-        
-        return "$timestamp [$levelStr] [$categoryStr] [$componentStr] [$threadStr] ${event.message}"
+    private fun generateLogId(): Long {
+        return logSequence.incrementAndGet()
     }
 
     private fun addToMemoryStorage(entry: LogEntry) {
@@ -438,57 +434,34 @@ class LoggingManager @Inject constructor(
         logsByComponent.getOrPut(entry.component) { mutableListOf() }.add(entry)
     }
 
-    private suspend fun writeToFile(entry: LogEntry) {
-        try {
-            ensureLogFileWriter()
-            logFileWriter?.appendLine(entry.formattedMessage)
-            logFileWriter?.flush()
-            
-            // Check file size and rotate if necessary
-            currentLogFile?.let { file ->
-                if (file.length() > MAX_LOG_FILE_SIZE_MB * 1024 * 1024) {
-                    rotateLogFile()
-                }
-            }
-        } catch (e: Exception) {
-            // Fallback to console logging if file logging fails
-            writeToConsole(entry)
-        }
+    // Only queues the entry; the appender's writer renders and batches it to disk
+    private fun writeToFile(entry: LogEntry) {
+        if (fileAppender == null) setupFileLogging()
+        fileAppender?.append(entry)
     }
 
     private fun writeToConsole(entry: LogEntry) {
+        val line = entry.formattedMessage
         when (entry.level) {
-            LogLevel.ERROR -> Log.e("Soundboard", entry.formattedMessage)
-            LogLevel.WARN -> Log.w("Soundboard", entry.formattedMessage)
-            LogLevel.INFO -> Log.i("Soundboard", entry.formattedMessage)
-            LogLevel.DEBUG -> Log.d("Soundboard", entry.formattedMessage)
-            LogLevel.TRACE -> Log.v("Soundboard", entry.formattedMessage)
+            LogLevel.ERROR -> Log.e("Soundboard", line)
+            LogLevel.WARN -> Log.w("Soundboard", line)
+            LogLevel.INFO -> Log.i("Soundboard", line)
+            LogLevel.DEBUG -> Log.d("Soundboard", line)
+            LogLevel.TRACE -> Log.v("Soundboard", line)
         }
     }
 
-    private suspend fun setupFileLogging() {
-        if (!enableFileLogging) return
+    @Synchronized
+    private fun setupFileLogging() {
+        if (!enableFileLogging || fileAppender != null) return
         
-        try {
-            currentLogFile = File(logDirectory, "soundboard_${System.currentTimeMillis()}.log")
-            logFileWriter = FileWriter(currentLogFile, true)
-        } catch (e: Exception) {
-            enableFileLogging = false
-            Log.e("LoggingManager", "Failed to setup file logging", e)
-        }
-    }
-
-    private suspend fun rotateLogFile() {
-        logFileWriter?.close()
-        
-        // Rename current file
-        currentLogFile?.let { file ->
-            val rotatedFile = File(logDirectory, "soundboard_${System.currentTimeMillis()}.log")
-            file.renameTo(rotatedFile)
-        }
-        
-        setupFileLogging()
-        cleanupOldLogFiles()
+        fileAppender = AsyncLogAppender(
+            scope = scope,
+            newLogFile = { File(logDirectory, "soundboard_${System.currentTimeMillis()}.log") },
+            maxFileBytes = MAX_LOG_FILE_SIZE_MB * 1024L * 1024L,
+            onRotated = { cleanupOldLogFiles() },
+            onStatsUpdated = { _appenderStats.value = it }
+        ).also { it.start() }
     }
 
     private fun cleanupOldLogFiles() {
@@ -502,12 +475,6 @@ class LoggingManager @Inject constructor(
         }
     }
 
-    private suspend fun ensureLogFileWriter() {
-        if (logFileWriter == null && enableFileLogging) {
-            setupFileLogging()
-        }
-    }
-
     private fun updateLogStatistics(entry: LogEntry) {
         val currentStats = _logStatistics.value
         val newStats = currentStats.copy(
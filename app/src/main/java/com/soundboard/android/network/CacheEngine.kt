@@ -0,0 +1,379 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CacheManager.CacheEntry
+import com.soundboard.android.network.CacheManager.EvictionStrategy
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Phase 4.2: Cache Storage Engines
+ *
+ * Storage and eviction backend used by [CacheManager]. The manager keeps the
+ * access-pattern tracking, prefetching and statistics; the engine only owns
+ * the entries themselves. Two engines are available so they can be
+ * benchmarked against each other through [CacheManager.CacheEngineType].
+ */
+interface CacheEngine {
+
+    /** Number of entries currently stored */
+    val entryCount: Int
+
+    /** Total size of all stored entries in bytes */
+    fun sizeBytes(): Long
+
+    fun containsKey(key: String): Boolean
+
+    /** Visits every stored entry; weakly consistent with concurrent writes */
+    fun forEachEntry(action: (String, CacheEntry<Any>) -> Unit)
+
+    /** Inserts refused by the eviction policy's admission filter */
+    val admissionRejections: Long
+        get() = 0L
+
+    /**
+     * Returns the live entry for [key] and records the access, or null when the
+     * key is missing or expired. Expired entries are dropped on the way.
+     */
+    suspend fun get(key: String, now: Long): CacheEntry<Any>?
+
+    /**
+     * Stores [entry] and evicts as needed to stay within [maxSizeBytes].
+     * Returns the entries that were evicted to make room.
+     */
+    suspend fun put(key: String, entry: CacheEntry<Any>, maxSizeBytes: Long): List<Pair<String, CacheEntry<Any>>>
+
+    suspend fun remove(key: String): CacheEntry<Any>?
+
+    /**
+     * Removes every entry matching [predicate] and returns the removed keys
+     */
+    suspend fun removeIf(predicate: (CacheEntry<Any>) -> Boolean): List<String>
+}
+
+/**
+ * Original engine: a single [Mutex] around a map, with every hit replacing
+ * the entry by a refreshed copy. Kept as the benchmark baseline.
+ */
+class MutexCacheEngine : CacheEngine {
+
+    private val cacheMutex = Mutex()
+    private val cache = ConcurrentHashMap<String, CacheEntry<Any>>()
+
+    override val entryCount: Int
+        get() = cache.size
+
+    override fun sizeBytes(): Long = cache.values.sumOf { it.size }
+
+    override fun containsKey(key: String): Boolean = cache.containsKey(key)
+
+    override fun forEachEntry(action: (String, CacheEntry<Any>) -> Unit) {
+        cache.entries.forEach { action(it.key, it.value) }
+    }
+
+    override suspend fun get(key: String, now: Long): CacheEntry<Any>? {
+        return cacheMutex.withLock {
+            val entry = cache[key] ?: return@withLock null
+            if (entry.isExpired(now)) {
+                cache.remove(key)
+                null
+            } else {
+                val updatedEntry = entry.copy(timestamp = now)
+                cache[key] = updatedEntry
+                updatedEntry
+            }
+        }
+    }
+
+    override suspend fun put(
+        key: String,
+        entry: CacheEntry<Any>,
+        maxSizeBytes: Long
+    ): List<Pair<String, CacheEntry<Any>>> {
+        return cacheMutex.withLock {
+            val evicted = if (sizeBytes() + entry.size > maxSizeBytes) {
+                evictItemsToMakeSpace(entry.size)
+            } else {
+                emptyList()
+            }
+            cache[key] = entry
+            evicted
+        }
+    }
+
+    override suspend fun remove(key: String): CacheEntry<Any>? {
+        return cacheMutex.withLock { cache.remove(key) }
+    }
+
+    override suspend fun removeIf(predicate: (CacheEntry<Any>) -> Boolean): List<String> {
+        return cacheMutex.withLock {
+            val keysToRemove = cache.entries
+                .filter { predicate(it.value) }
+                .map { it.key }
+            keysToRemove.forEach { cache.remove(it) }
+            keysToRemove
+        }
+    }
+
+    private fun evictItemsToMakeSpace(requiredSize: Long): List<Pair<String, CacheEntry<Any>>> {
+        // Sort items by priority (lowest first), then by access count (lowest first)
+        val itemsToEvict = cache.entries
+            .sortedWith(
+                compareBy<Map.Entry<String, CacheEntry<Any>>> { it.value.priority }
+                    .thenBy { it.value.accessCount }
+            )
+
+        var freedSpace = 0L
+        val evicted = mutableListOf<Pair<String, CacheEntry<Any>>>()
+
+        for (entry in itemsToEvict) {
+            evicted.add(entry.key to entry.value)
+            freedSpace += entry.value.size
+            if (freedSpace >= requiredSize) break
+        }
+
+        evicted.forEach { (key, _) -> cache.remove(key) }
+        return evicted
+    }
+}
+
+/**
+ * Lock-striped engine: keys are spread over independent segments, each a
+ * [ConcurrentHashMap] with its own write lock.
+ *
+ * - Reads never take a lock; recency and hit counts are updated in place on
+ *   the entry instead of copying it, and the entry is dropped into a lossy
+ *   per-segment read buffer.
+ * - Writes only lock the segment owning the key, update the running byte and
+ *   entry counters, and queue a write event.
+ * - A [CacheEvictionPolicy] matching the configured [EvictionStrategy] keeps
+ *   entries ordered for eviction. It is only touched under the eviction lock,
+ *   which replays the buffered reads and writes before choosing victims, so
+ *   an eviction never rescans or re-sorts the cache.
+ */
+class SegmentedCacheEngine(
+    evictionStrategy: EvictionStrategy = EvictionStrategy.ADAPTIVE,
+    segmentCount: Int = DEFAULT_SEGMENT_COUNT
+) : CacheEngine {
+
+    companion object {
+        const val DEFAULT_SEGMENT_COUNT = 16
+        private const val READ_BUFFER_SIZE = 64 // Per segment, power of two
+        private const val READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2
+        private const val WRITE_BUFFER_DRAIN_THRESHOLD = 128
+    }
+
+    private class Segment {
+        val lock = ReentrantLock()
+        val entries = ConcurrentHashMap<String, CacheEntry<Any>>()
+
+        // Lossy ring of recently read entries; slots are claimed by index and
+        // anything that doesn't fit before the next drain is simply dropped
+        val readBuffer = AtomicReferenceArray<CacheEntry<Any>?>(READ_BUFFER_SIZE)
+        val readWriteIndex = AtomicLong(0)
+        @Volatile
+        var readDrainIndex = 0L
+    }
+
+    private sealed class WriteEvent {
+        class Added(val key: String, val entry: CacheEntry<Any>) : WriteEvent()
+        class Removed(val key: String, val entry: CacheEntry<Any>) : WriteEvent()
+    }
+
+    private val segments: Array<Segment>
+    private val segmentMask: Int
+    private val evictionLock = ReentrantLock()
+    private val evictionPolicy = CacheEvictionPolicy.forStrategy(evictionStrategy)
+    private val writeBuffer = ConcurrentLinkedQueue<WriteEvent>()
+    private val pendingWrites = AtomicInteger(0)
+
+    // Running totals, adjusted under the owning segment's lock on every change
+    private val totalBytes = AtomicLong(0)
+    private val totalEntries = AtomicInteger(0)
+
+    init {
+        require(segmentCount > 0) { "segmentCount must be positive" }
+        // Round up to a power of two so a segment can be picked with a mask
+        val size = Integer.highestOneBit(segmentCount - 1).shl(1).coerceAtLeast(1)
+        segments = Array(size) { Segment() }
+        segmentMask = size - 1
+    }
+
+    override val entryCount: Int
+        get() = totalEntries.get()
+
+    override fun sizeBytes(): Long = totalBytes.get()
+
+    override fun containsKey(key: String): Boolean = segmentFor(key).entries.containsKey(key)
+
+    override fun forEachEntry(action: (String, CacheEntry<Any>) -> Unit) {
+        segments.forEach { segment ->
+            segment.entries.entries.forEach { action(it.key, it.value) }
+        }
+    }
+
+    override val admissionRejections: Long
+        get() = evictionPolicy.admissionRejections
+
+    override suspend fun get(key: String, now: Long): CacheEntry<Any>? {
+        val segment = segmentFor(key)
+        val entry = segment.entries[key] ?: return null
+        if (entry.isExpired(now)) {
+            // Only drop the exact instance we saw; a concurrent put may have replaced it
+            removeFromSegment(segment, key, entry)
+            return null
+        }
+        entry.recordAccess(now)
+        recordRead(segment, entry)
+        return entry
+    }
+
+    override suspend fun put(
+        key: String,
+        entry: CacheEntry<Any>,
+        maxSizeBytes: Long
+    ): List<Pair<String, CacheEntry<Any>>> {
+        val segment = segmentFor(key)
+        segment.lock.withLock {
+            val previous = segment.entries.put(key, entry)
+            if (previous != null) {
+                totalBytes.addAndGet(entry.size - previous.size)
+            } else {
+                totalBytes.addAndGet(entry.size)
+                totalEntries.incrementAndGet()
+            }
+            enqueueWrite(WriteEvent.Added(key, entry))
+        }
+
+        if (totalBytes.get() <= maxSizeBytes) {
+            if (pendingWrites.get() >= WRITE_BUFFER_DRAIN_THRESHOLD) tryDrainBuffers()
+            return emptyList()
+        }
+        return evictUntilWithin(maxSizeBytes, protectedKey = key)
+    }
+
+    override suspend fun remove(key: String): CacheEntry<Any>? {
+        val segment = segmentFor(key)
+        return segment.lock.withLock {
+            val removed = segment.entries.remove(key)
+            if (removed != null) {
+                onRemovedFromSegment(key, removed)
+            }
+            removed
+        }
+    }
+
+    override suspend fun removeIf(predicate: (CacheEntry<Any>) -> Boolean): List<String> {
+        val removed = mutableListOf<String>()
+        segments.forEach { segment ->
+            segment.lock.withLock {
+                val iterator = segment.entries.entries.iterator()
+                while (iterator.hasNext()) {
+                    val next = iterator.next()
+                    if (predicate(next.value)) {
+                        iterator.remove()
+                        onRemovedFromSegment(next.key, next.value)
+                        removed.add(next.key)
+                    }
+                }
+            }
+        }
+        // Bulk removals are the maintenance path, a good moment to catch up the policy
+        evictionLock.withLock { drainBuffers() }
+        return removed
+    }
+
+    private fun removeFromSegment(segment: Segment, key: String, entry: CacheEntry<Any>): Boolean {
+        return segment.lock.withLock {
+            val removed = segment.entries.remove(key, entry)
+            if (removed) {
+                onRemovedFromSegment(key, entry)
+            }
+            removed
+        }
+    }
+
+    // Must be called while holding the segment lock
+    private fun onRemovedFromSegment(key: String, entry: CacheEntry<Any>) {
+        totalBytes.addAndGet(-entry.size)
+        totalEntries.decrementAndGet()
+        enqueueWrite(WriteEvent.Removed(key, entry))
+    }
+
+    private fun enqueueWrite(event: WriteEvent) {
+        writeBuffer.offer(event)
+        pendingWrites.incrementAndGet()
+    }
+
+    private fun recordRead(segment: Segment, entry: CacheEntry<Any>) {
+        val index = segment.readWriteIndex.get()
+        val buffered = index - segment.readDrainIndex
+        if (buffered < READ_BUFFER_SIZE && segment.readWriteIndex.compareAndSet(index, index + 1)) {
+            segment.readBuffer.lazySet((index and (READ_BUFFER_SIZE - 1).toLong()).toInt(), entry)
+        }
+        if (buffered >= READ_BUFFER_DRAIN_THRESHOLD) tryDrainBuffers()
+    }
+
+    private fun tryDrainBuffers() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainBuffers()
+            } finally {
+                evictionLock.unlock()
+            }
+        }
+    }
+
+    // Must be called while holding the eviction lock
+    private fun drainBuffers() {
+        // Writes first so reads of freshly added entries are not dropped as unknown
+        while (true) {
+            val event = writeBuffer.poll() ?: break
+            pendingWrites.decrementAndGet()
+            when (event) {
+                is WriteEvent.Added -> evictionPolicy.recordWrite(event.key, event.entry)
+                is WriteEvent.Removed -> evictionPolicy.recordRemoval(event.key, event.entry)
+            }
+        }
+        segments.forEach { segment ->
+            val end = segment.readWriteIndex.get()
+            var index = segment.readDrainIndex
+            while (index < end) {
+                val slot = (index and (READ_BUFFER_SIZE - 1).toLong()).toInt()
+                segment.readBuffer.getAndSet(slot, null)?.let { evictionPolicy.recordAccess(it) }
+                index++
+            }
+            segment.readDrainIndex = end
+        }
+    }
+
+    private fun evictUntilWithin(maxSizeBytes: Long, protectedKey: String): List<Pair<String, CacheEntry<Any>>> {
+        val evicted = mutableListOf<Pair<String, CacheEntry<Any>>>()
+        evictionLock.withLock {
+            evictionPolicy.setCapacity(maxSizeBytes)
+            drainBuffers()
+            while (totalBytes.get() > maxSizeBytes) {
+                val (key, entry) = evictionPolicy.victim(protectedKey) ?: break
+                if (removeFromSegment(segmentFor(key), key, entry)) {
+                    evicted.add(key to entry)
+                }
+                // Either way the policy must forget this instance: it was evicted,
+                // or it was replaced/removed concurrently and a newer event is queued
+                evictionPolicy.recordRemoval(key, entry)
+                drainBuffers()
+            }
+        }
+        return evicted
+    }
+
+    private fun segmentFor(key: String): Segment {
+        val hash = key.hashCode()
+        return segments[(hash xor (hash ushr 16)) and segmentMask]
+    }
+}
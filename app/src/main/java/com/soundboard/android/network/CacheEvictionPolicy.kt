@@ -0,0 +1,400 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CacheManager.CacheEntry
+import com.soundboard.android.network.CacheManager.EvictionStrategy
+import java.util.IdentityHashMap
+
+/**
+ * Phase 4.2: Cache Eviction Policies
+ *
+ * Ordered bookkeeping used by [SegmentedCacheEngine] to pick eviction victims
+ * without rescanning or re-sorting the whole cache. A policy is not thread
+ * safe; the engine only touches it while holding its eviction lock and
+ * replays reads and writes into it from its buffers.
+ *
+ * Events are matched on entry identity, so a late event for an entry that has
+ * since been replaced or removed is ignored.
+ */
+abstract class CacheEvictionPolicy {
+
+    companion object {
+        fun forStrategy(strategy: EvictionStrategy): CacheEvictionPolicy {
+            return when (strategy) {
+                EvictionStrategy.LRU -> LruEvictionPolicy()
+                EvictionStrategy.LFU -> HeapEvictionPolicy(HeapEvictionPolicy.Ordering.LFU)
+                EvictionStrategy.WEIGHTED_LRU -> HeapEvictionPolicy(HeapEvictionPolicy.Ordering.WEIGHTED_LRU)
+                EvictionStrategy.ADAPTIVE -> WTinyLfuEvictionPolicy()
+            }
+        }
+    }
+
+    private val entriesByKey = HashMap<String, CacheEntry<Any>>()
+    private val keysByEntry = IdentityHashMap<CacheEntry<Any>, String>()
+
+    val size: Int
+        get() = entriesByKey.size
+
+    /** Candidates refused entry by an admission filter, if the policy has one */
+    open val admissionRejections: Long
+        get() = 0L
+
+    /** Called with the cache's byte budget before victims are selected */
+    open fun setCapacity(maxSizeBytes: Long) {}
+
+    fun recordWrite(key: String, entry: CacheEntry<Any>) {
+        val previous = entriesByKey.put(key, entry)
+        if (previous != null) {
+            keysByEntry.remove(previous)
+            onRemoved(key, previous)
+        }
+        keysByEntry[entry] = key
+        onAdded(key, entry)
+    }
+
+    fun recordAccess(entry: CacheEntry<Any>) {
+        val key = keysByEntry[entry] ?: return
+        onAccessed(key, entry)
+    }
+
+    fun recordRemoval(key: String, entry: CacheEntry<Any>) {
+        if (entriesByKey[key] !== entry) return
+        entriesByKey.remove(key)
+        keysByEntry.remove(entry)
+        onRemoved(key, entry)
+    }
+
+    /**
+     * Returns the next entry to evict, skipping [protectedKey] (the entry whose
+     * insertion triggered the eviction), or null if nothing else is tracked.
+     */
+    fun victim(protectedKey: String?): Pair<String, CacheEntry<Any>>? {
+        val key = selectVictim(protectedKey) ?: return null
+        val entry = entriesByKey[key] ?: return null
+        return key to entry
+    }
+
+    protected abstract fun onAdded(key: String, entry: CacheEntry<Any>)
+
+    protected abstract fun onAccessed(key: String, entry: CacheEntry<Any>)
+
+    protected abstract fun onRemoved(key: String, entry: CacheEntry<Any>)
+
+    protected abstract fun selectVictim(protectedKey: String?): String?
+}
+
+/**
+ * Plain LRU: an access-ordered [LinkedHashMap], least recently used at the head.
+ * Every operation is O(1).
+ */
+class LruEvictionPolicy : CacheEvictionPolicy() {
+
+    private val order = LinkedHashMap<String, Unit>(16, 0.75f, true)
+
+    override fun onAdded(key: String, entry: CacheEntry<Any>) {
+        order[key] = Unit
+    }
+
+    override fun onAccessed(key: String, entry: CacheEntry<Any>) {
+        order[key] // Moves the key to the tail in access order
+    }
+
+    override fun onRemoved(key: String, entry: CacheEntry<Any>) {
+        order.remove(key)
+    }
+
+    override fun selectVictim(protectedKey: String?): String? {
+        // The protected key was just written so it sits at the tail; at most one skip
+        val iterator = order.keys.iterator()
+        while (iterator.hasNext()) {
+            val key = iterator.next()
+            if (key != protectedKey) return key
+        }
+        return null
+    }
+}
+
+/**
+ * Indexed binary min-heap ordered by an [Ordering]. Sort keys are snapshotted
+ * into the heap node when an event is replayed, since the entry's own access
+ * statistics keep changing under lock-free reads.
+ *
+ * Insert, update and remove are O(log n); peeking the victim is O(1).
+ */
+class HeapEvictionPolicy(private val ordering: Ordering) : CacheEvictionPolicy() {
+
+    enum class Ordering {
+        LFU,            // Least frequently used, then least recently used
+        WEIGHTED_LRU    // Recency, with higher priorities treated as more recent
+    }
+
+    companion object {
+        // How much extra recency a CRITICAL (weight 1.0) entry is granted
+        private const val PRIORITY_RECENCY_BONUS_MS = 600_000L // 10 minutes
+    }
+
+    private class Node(val key: String) {
+        var primary = 0L
+        var secondary = 0L
+        var tertiary = 0L
+        var index = -1
+    }
+
+    private val heap = ArrayList<Node>()
+    private val nodes = HashMap<String, Node>()
+
+    override fun onAdded(key: String, entry: CacheEntry<Any>) {
+        val node = Node(key)
+        rank(node, entry)
+        node.index = heap.size
+        heap.add(node)
+        nodes[key] = node
+        siftUp(node.index)
+    }
+
+    override fun onAccessed(key: String, entry: CacheEntry<Any>) {
+        val node = nodes[key] ?: return
+        rank(node, entry)
+        // Accesses only ever raise a node's rank
+        siftDown(node.index)
+    }
+
+    override fun onRemoved(key: String, entry: CacheEntry<Any>) {
+        val node = nodes.remove(key) ?: return
+        val index = node.index
+        val last = heap.removeAt(heap.size - 1)
+        if (index < heap.size) {
+            heap[index] = last
+            last.index = index
+            siftDown(index)
+            siftUp(last.index)
+        }
+        node.index = -1
+    }
+
+    override fun selectVictim(protectedKey: String?): String? {
+        if (heap.isEmpty()) return null
+        val top = heap[0]
+        if (top.key != protectedKey) return top.key
+        // The second smallest element is one of the root's children
+        val left = heap.getOrNull(1)
+        val right = heap.getOrNull(2)
+        return when {
+            left == null -> null
+            right == null || compare(left, right) <= 0 -> left.key
+            else -> right.key
+        }
+    }
+
+    private fun rank(node: Node, entry: CacheEntry<Any>) {
+        when (ordering) {
+            Ordering.LFU -> {
+                node.primary = entry.accessCount
+                node.secondary = entry.lastAccessTime
+                node.tertiary = 0L
+            }
+            Ordering.WEIGHTED_LRU -> {
+                node.primary = entry.lastAccessTime +
+                    (entry.priority.weight * PRIORITY_RECENCY_BONUS_MS).toLong()
+                node.secondary = entry.accessCount
+                node.tertiary = 0L
+            }
+        }
+    }
+
+    private fun compare(a: Node, b: Node): Int {
+        if (a.primary != b.primary) return a.primary.compareTo(b.primary)
+        if (a.secondary != b.secondary) return a.secondary.compareTo(b.secondary)
+        return a.tertiary.compareTo(b.tertiary)
+    }
+
+    private fun siftUp(start: Int) {
+        var index = start
+        while (index > 0) {
+            val parent = (index - 1) / 2
+            if (compare(heap[index], heap[parent]) >= 0) break
+            swap(index, parent)
+            index = parent
+        }
+    }
+
+    private fun siftDown(start: Int) {
+        var index = start
+        while (true) {
+            val left = 2 * index + 1
+            if (left >= heap.size) break
+            val right = left + 1
+            val smallest = if (right < heap.size && compare(heap[right], heap[left]) < 0) right else left
+            if (compare(heap[smallest], heap[index]) >= 0) break
+            swap(index, smallest)
+            index = smallest
+        }
+    }
+
+    private fun swap(i: Int, j: Int) {
+        val a = heap[i]
+        val b = heap[j]
+        heap[i] = b
+        heap[j] = a
+        a.index = j
+        b.index = i
+    }
+}
+
+/**
+ * Window TinyLFU, used for [EvictionStrategy.ADAPTIVE].
+ *
+ * New entries land in a small LRU window (1% of the byte budget). Entries
+ * pushed out of the window become admission candidates for the main space,
+ * a segmented LRU split into probation (20%) and protected (80%) regions.
+ * A candidate only displaces the main space's LRU victim if the
+ * [FrequencySketch] has seen it more often, so a burst of one-off lookups
+ * (e.g. MyInstant search results) is evicted from probation instead of
+ * flushing frequently used entries. Entries hit while on probation are
+ * promoted to protected.
+ *
+ * Regions are sized by entry size in bytes, matching the cache budget.
+ */
+class WTinyLfuEvictionPolicy : CacheEvictionPolicy() {
+
+    companion object {
+        private const val WINDOW_FRACTION = 0.01
+        private const val PROTECTED_FRACTION = 0.8
+    }
+
+    private enum class Region {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private class Node(val key: String, val weight: Long, var region: Region)
+
+    private val sketch = FrequencySketch()
+    private val nodes = HashMap<String, Node>()
+
+    // Insertion-ordered; moving a node to the tail is a remove + put
+    private val window = LinkedHashMap<String, Node>()
+    private val probation = LinkedHashMap<String, Node>()
+    private val protectedRegion = LinkedHashMap<String, Node>()
+    private var windowWeight = 0L
+    private var probationWeight = 0L
+    private var protectedWeight = 0L
+
+    private var maximumWeight = Long.MAX_VALUE
+    private var windowMaximum = Long.MAX_VALUE
+    private var protectedMaximum = Long.MAX_VALUE
+
+    @Volatile
+    private var rejected = 0L
+
+    override val admissionRejections: Long
+        get() = rejected
+
+    override fun setCapacity(maxSizeBytes: Long) {
+        if (maxSizeBytes == maximumWeight) return
+        maximumWeight = maxSizeBytes
+        windowMaximum = (maxSizeBytes * WINDOW_FRACTION).toLong()
+        protectedMaximum = ((maxSizeBytes - windowMaximum) * PROTECTED_FRACTION).toLong()
+    }
+
+    override fun onAdded(key: String, entry: CacheEntry<Any>) {
+        sketch.ensureCapacity(nodes.size + 1)
+        sketch.increment(key.hashCode())
+
+        val node = Node(key, entry.size, Region.WINDOW)
+        nodes[key] = node
+        window[key] = node
+        windowWeight += node.weight
+    }
+
+    override fun onAccessed(key: String, entry: CacheEntry<Any>) {
+        sketch.increment(key.hashCode())
+
+        val node = nodes[key] ?: return
+        when (node.region) {
+            Region.WINDOW -> {
+                window.remove(key)
+                window[key] = node
+            }
+            Region.PROBATION -> {
+                probation.remove(key)
+                probationWeight -= node.weight
+                node.region = Region.PROTECTED
+                protectedRegion[key] = node
+                protectedWeight += node.weight
+                demoteProtectedOverflow()
+            }
+            Region.PROTECTED -> {
+                protectedRegion.remove(key)
+                protectedRegion[key] = node
+            }
+        }
+    }
+
+    override fun onRemoved(key: String, entry: CacheEntry<Any>) {
+        val node = nodes.remove(key) ?: return
+        when (node.region) {
+            Region.WINDOW -> {
+                window.remove(key)
+                windowWeight -= node.weight
+            }
+            Region.PROBATION -> {
+                probation.remove(key)
+                probationWeight -= node.weight
+            }
+            Region.PROTECTED -> {
+                protectedRegion.remove(key)
+                protectedWeight -= node.weight
+            }
+        }
+    }
+
+    override fun selectVictim(protectedKey: String?): String? {
+        // Spill window overflow into probation; the first one out is the candidate.
+        // The just-written entry is not exempt here, admission applies to it too.
+        val candidate = spillWindowOverflow()
+
+        val victim = probation.values.firstOrNull { it !== candidate }
+            ?: protectedRegion.values.firstOrNull()
+            ?: window.values.firstOrNull()
+
+        if (candidate == null) return victim?.key
+        if (victim == null) return candidate.key
+
+        return if (admit(candidate, victim)) {
+            victim.key
+        } else {
+            rejected++
+            candidate.key
+        }
+    }
+
+    private fun spillWindowOverflow(): Node? {
+        var candidate: Node? = null
+        while (windowWeight > windowMaximum && window.isNotEmpty()) {
+            val head = window.values.first()
+            window.remove(head.key)
+            windowWeight -= head.weight
+            head.region = Region.PROBATION
+            probation[head.key] = head
+            probationWeight += head.weight
+            if (candidate == null) candidate = head
+        }
+        return candidate
+    }
+
+    private fun admit(candidate: Node, victim: Node): Boolean {
+        return sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())
+    }
+
+    private fun demoteProtectedOverflow() {
+        while (protectedWeight > protectedMaximum && protectedRegion.size > 1) {
+            val head = protectedRegion.values.first()
+            protectedRegion.remove(head.key)
+            protectedWeight -= head.weight
+            head.region = Region.PROBATION
+            probation[head.key] = head
+            probationWeight += head.weight
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.soundboard.android.network
 
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration
 import android.util.Log
+import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
@@ -8,11 +12,12 @@ import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -22,9 +27,17 @@ import javax.inject.Singleton
  * 
  * Provides advanced caching with predictive prefetching, cache optimization,
  * and intelligent eviction strategies for improved performance.
+ * 
+ * Entries live in a heap tier (L1) backed by a [DiskCacheTier] (L2) in the
+ * app cache dir: L1 evictions spill to disk, L1 misses fall through to disk,
+ * and L1 is checkpointed periodically so the cache outlives the process.
+ * Puts and removes tombstone the key on disk, so an older copy can never be
+ * served from L2 once L1 has moved on.
  */
 @Singleton
-class CacheManager @Inject constructor() {
+class CacheManager @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
     
     companion object {
         private const val TAG = "CacheManager"
@@ -35,6 +48,8 @@ class CacheManager @Inject constructor() {
         private const val ACCESS_PATTERN_WINDOW_MS = 300_000L // 5 minutes
         private const val POPULARITY_DECAY_FACTOR = 0.9
         private const val PREFETCH_BATCH_SIZE = 5
+        private const val DEFAULT_DISK_CACHE_SIZE_MB = 100
+        private const val DISK_CACHE_DIR = "l2_cache"
     }
     
     // Cache entry representation
@@ -44,10 +59,23 @@ class CacheManager @Inject constructor() {
         val ttl: Long,
         val tags: Set<String> = emptySet(),
         val size: Long = 0,
-        val priority: CachePriority = CachePriority.NORMAL,
-        val accessCount: Long = 0
+        val priority: CachePriority = CachePriority.NORMAL
     ) {
-        fun isExpired(): Boolean = System.currentTimeMillis() - timestamp > ttl
+        // Access statistics are updated in place so a hit never copies the entry
+        @Volatile
+        var lastAccessTime: Long = timestamp
+            private set
+        private val hits = AtomicLong(0)
+        
+        val accessCount: Long
+            get() = hits.get()
+        
+        fun recordAccess(now: Long) {
+            lastAccessTime = now
+            hits.incrementAndGet()
+        }
+        
+        fun isExpired(now: Long = System.currentTimeMillis()): Boolean = now - lastAccessTime > ttl
     }
     
     enum class CachePriority(val weight: Double) {
@@ -71,7 +99,10 @@ class CacheManager @Inject constructor() {
         val enableCompression: Boolean,
         val defaultTtl: Long,
         val evictionStrategy: EvictionStrategy,
-        val compressionThreshold: Long
+        val compressionThreshold: Long,
+        val engineType: CacheEngineType = CacheEngineType.SEGMENTED,
+        val enableDiskTier: Boolean = true,
+        val diskTierMaxBytes: Long = DEFAULT_DISK_CACHE_SIZE_MB * 1024L * 1024L
     )
     
     enum class EvictionStrategy {
@@ -81,6 +112,12 @@ class CacheManager @Inject constructor() {
         ADAPTIVE
     }
     
+    // Storage engine selection, switchable for benchmarking
+    enum class CacheEngineType {
+        MUTEX,      // Original single-lock engine
+        SEGMENTED   // Lock-free reads, striped writes
+    }
+    
     // Access pattern tracking
     data class AccessPattern(
         val key: String,
@@ -101,7 +138,15 @@ class CacheManager @Inject constructor() {
         val prefetchHitRate: Double,
         val compressionRatio: Double,
         val averageAccessTime: Long,
-        val memoryEfficiency: Double
+        val memoryEfficiency: Double,
+        val averageAccessTimeNanos: Long = 0L,
+        val engineType: CacheEngineType = CacheEngineType.SEGMENTED,
+        val recentHitRate: Double = 0.0, // Hit rate since the previous statistics update
+        val admissionRejections: Long = 0L,
+        val diskEntries: Int = 0,
+        val diskSizeBytes: Long = 0L,
+        val diskHitRate: Double = 0.0, // Share of hits served from L2
+        val diskSpillCount: Long = 0L
     )
     
     // Prefetch recommendation
@@ -114,9 +159,7 @@ class CacheManager @Inject constructor() {
     )
     
     // Cache state management
-    private val cacheMutex = Mutex()
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
-    private val cache = ConcurrentHashMap<String, CacheEntry<Any>>()
     private val accessPatterns = ConcurrentHashMap<String, AccessPattern>()
     private val recentAccesses = ConcurrentLinkedQueue<Pair<String, Long>>()
     
@@ -130,14 +173,30 @@ class CacheManager @Inject constructor() {
         compressionThreshold = 1024L * 10L // 10KB
     )
     
+    @Volatile
+    private var engine: CacheEngine = createEngine(cacheConfiguration)
+    private val diskTier = DiskCacheTier(File(context.cacheDir, DISK_CACHE_DIR))
+    
+    // Every L2 write runs here in submission order, so a tombstone is never
+    // overtaken by an older spill or checkpoint of the same key
+    private val diskWriter = Dispatchers.IO.limitedParallelism(1)
+    
+    // Keys whose L2 copy is stale until their queued tombstone has been written
+    private val pendingDiskRemovals = ConcurrentHashMap<String, Any>()
+    
     // Performance tracking
     private val cacheHits = AtomicLong(0)
     private val cacheMisses = AtomicLong(0)
     private val evictionCount = AtomicLong(0)
     private val prefetchHits = AtomicLong(0)
     private val prefetchMisses = AtomicLong(0)
+    private val diskHits = AtomicLong(0)
+    private val diskSpills = AtomicLong(0)
+    private val trimCallbackRegistered = AtomicBoolean(false)
     private var totalAccessTime = AtomicLong(0)
     private var accessTimeCount = AtomicLong(0)
+    private var lastStatisticsHits = 0L
+    private var lastStatisticsMisses = 0L
     
     // State flows for monitoring
     private val _cacheStatistics = MutableStateFlow(
@@ -168,57 +227,53 @@ class CacheManager @Inject constructor() {
      * Initialize the cache manager
      */
     fun initialize(configuration: CacheConfiguration = cacheConfiguration) {
-        scope.launch {
-            cacheMutex.withLock {
-                cacheConfiguration = configuration
-                startCacheMaintenanceTask()
-                startPatternAnalysisTask()
-                startStatisticsUpdater()
-            }
+        if (configuration.engineType != cacheConfiguration.engineType ||
+            configuration.evictionStrategy != cacheConfiguration.evictionStrategy) {
+            engine = createEngine(configuration)
+        }
+        cacheConfiguration = configuration
+        if (configuration.enableDiskTier) {
+            scope.launch(diskWriter) { diskTier.open(configuration.diskTierMaxBytes) }
+            registerTrimCallback()
         }
-        Log.i(TAG, "Cache manager initialized with ${configuration.maxSizeBytes / (1024*1024)}MB capacity")
+        startCacheMaintenanceTask()
+        startPatternAnalysisTask()
+        startStatisticsUpdater()
+        Log.i(TAG, "Cache manager initialized with ${configuration.maxSizeBytes / (1024*1024)}MB capacity " +
+            "(${configuration.engineType.name} engine)")
+    }
+    
+    /**
+     * Switch the storage engine, e.g. to benchmark MUTEX against SEGMENTED.
+     * Entries held by the previous engine are discarded.
+     */
+    fun setEngineType(engineType: CacheEngineType) {
+        if (engineType == cacheConfiguration.engineType) return
+        cacheConfiguration = cacheConfiguration.copy(engineType = engineType)
+        engine = createEngine(cacheConfiguration)
+        accessPatterns.clear()
+        Log.i(TAG, "Switched cache engine to ${engineType.name}")
     }
     
     /**
      * Get an item from cache
      */
     suspend fun <T> get(key: String): T? {
-        val startTime = System.currentTimeMillis()
+        val startTime = System.nanoTime()
         
-        val result = cacheMutex.withLock {
-            val entry = cache[key] as? CacheEntry<T>
-            
-            if (entry != null) {
-                // Check if entry is still valid
-                @Suppress("UNCHECKED_CAST")
-                if (isEntryValid(entry as CacheEntry<Any>)) {
-                    // Update access statistics
-                    updateAccessPattern(key)
-                    // Update entry in cache with new statistics
-                    // Update entry access statistics
-                    @Suppress("UNCHECKED_CAST")
-                    val updatedEntry = entry.copy(
-                        timestamp = System.currentTimeMillis()
-                    )
-                    cache[key] = updatedEntry as CacheEntry<Any>
-                    
-                    cacheHits.incrementAndGet()
-                    @Suppress("UNCHECKED_CAST")
-                    entry.value as T
-                } else {
-                    // Entry expired, remove it
-                    cache.remove(key)
-                    cacheMisses.incrementAndGet()
-                    null
-                }
-            } else {
-                cacheMisses.incrementAndGet()
-                null
-            }
+        val now = System.currentTimeMillis()
+        val entry = engine.get(key, now) ?: getFromDisk(key, now)
+        val result = if (entry != null) {
+            updateAccessPattern(key)
+            cacheHits.incrementAndGet()
+            @Suppress("UNCHECKED_CAST")
+            entry.value as T
+        } else {
+            cacheMisses.incrementAndGet()
+            null
         }
         
-        val endTime = System.currentTimeMillis()
-        recordAccessTime(endTime - startTime)
+        recordAccessTime(System.nanoTime() - startTime)
         
         return result
     }
@@ -234,28 +289,28 @@ class CacheManager @Inject constructor() {
         ttl: Long = cacheConfiguration.defaultTtl,
         tags: Set<String> = emptySet()
     ) {
-        cacheMutex.withLock {
-            // Check if we need to make space
-            val totalSize = getCurrentCacheSize()
-            if (totalSize + size > cacheConfiguration.maxSizeBytes) {
-                evictItemsToMakeSpace(size)
-            }
-            
-            // Create cache entry
-            val entry = CacheEntry(
-                value = data,
-                timestamp = System.currentTimeMillis(),
-                ttl = ttl,
-                tags = tags,
-                size = size,
-                priority = priority,
-                accessCount = 0
-            )
-            
-            @Suppress("UNCHECKED_CAST")
-            cache[key] = entry as CacheEntry<Any>
-            updateAccessPattern(key)
+        // Create cache entry
+        val entry = CacheEntry(
+            value = data,
+            timestamp = System.currentTimeMillis(),
+            ttl = ttl,
+            tags = tags,
+            size = size,
+            priority = priority
+        )
+        
+        @Suppress("UNCHECKED_CAST")
+        val evicted = engine.put(key, entry as CacheEntry<Any>, cacheConfiguration.maxSizeBytes)
+        // An adaptive engine may reject the new entry on admission; it is then
+        // spilled below and supersedes the old disk copy without a tombstone
+        val spillsNewValue = evicted.any { it.first == key && it.second === entry } &&
+            DiskCacheTier.isPersistable(data) && !diskTier.contains(key, entry.timestamp)
+        if (cacheConfiguration.enableDiskTier && !spillsNewValue) {
+            invalidateOnDisk(key)
         }
+        // Older values of this key evicted by the same put must not reach disk
+        onEntriesEvicted(evicted.filter { it.first != key || it.second === entry })
+        updateAccessPattern(key)
         
         Log.d(TAG, "Cached item: $key (${size} bytes, ${priority.name} priority)")
     }
@@ -264,32 +319,28 @@ class CacheManager @Inject constructor() {
      * Remove an item from cache
      */
     suspend fun remove(key: String): Boolean {
-        return cacheMutex.withLock {
-            val removed = cache.remove(key) != null
-            if (removed) {
-                accessPatterns.remove(key)
-                Log.d(TAG, "Removed item from cache: $key")
-            }
-            removed
+        val removed = engine.remove(key) != null
+        if (cacheConfiguration.enableDiskTier) {
+            invalidateOnDisk(key)
+        }
+        if (removed) {
+            accessPatterns.remove(key)
+            Log.d(TAG, "Removed item from cache: $key")
         }
+        return removed
     }
     
     /**
      * Clear cache items with specific tags
      */
     suspend fun clearByTags(tags: Set<String>) {
-        cacheMutex.withLock {
-            val keysToRemove = cache.entries
-                .filter { (_, entry) -> entry.tags.any { tag -> tag in tags } }
-                .map { (key, _) -> key }
-            
-            keysToRemove.forEach { key ->
-                cache.remove(key)
-                accessPatterns.remove(key)
-            }
-            
-            Log.d(TAG, "Cleared ${keysToRemove.size} items with tags: $tags")
+        val keysToRemove = engine.removeIf { entry -> entry.tags.any { tag -> tag in tags } }
+        keysToRemove.forEach { key -> accessPatterns.remove(key) }
+        if (cacheConfiguration.enableDiskTier) {
+            withContext(diskWriter) { diskTier.removeByTags(tags) }
         }
+        
+        Log.d(TAG, "Cleared ${keysToRemove.size} items with tags: $tags")
     }
     
     // Private helper methods (abbreviated for brevity)
@@ -336,16 +387,10 @@ class CacheManager @Inject constructor() {
     }
     
     private suspend fun performCacheMaintenance() {
-        cacheMutex.withLock {
-            val expiredKeys = cache.entries
-                .filter { !isEntryValid(it.value) }
-                .map { it.key }
-            
-            expiredKeys.forEach { key ->
-                cache.remove(key)
-                accessPatterns.remove(key)
-            }
-        }
+        val now = System.currentTimeMillis()
+        val expiredKeys = engine.removeIf { it.isExpired(now) }
+        expiredKeys.forEach { key -> accessPatterns.remove(key) }
+        withContext(diskWriter) { checkpointToDisk() }
     }
     
     private fun analyzeAccessPatterns() {
@@ -353,12 +398,16 @@ class CacheManager @Inject constructor() {
         val windowStart = currentTime - ACCESS_PATTERN_WINDOW_MS
         
         accessPatterns.values.forEach { pattern ->
-            pattern.accessTimes.removeAll { it < windowStart }
+            // Access times are appended from lock-free reads, so snapshot under the pattern's monitor
+            val accessTimes = synchronized(pattern) {
+                pattern.accessTimes.removeAll { it < windowStart }
+                pattern.accessTimes.toList()
+            }
             
-            if (pattern.accessTimes.size >= 2) {
-                val intervals = pattern.accessTimes.zipWithNext { a, b -> b - a }
+            if (accessTimes.size >= 2) {
+                val intervals = accessTimes.zipWithNext { a, b -> b - a }
                 val avgInterval = intervals.average().toLong()
-                pattern.predictedNextAccess = pattern.accessTimes.last() + avgInterval
+                pattern.predictedNextAccess = accessTimes.last() + avgInterval
                 
                 val intervalVariance = intervals.map { (it - avgInterval) * (it - avgInterval) }.average()
                 pattern.accessProbability = 1.0 / (1.0 + intervalVariance / (avgInterval * avgInterval))
@@ -373,7 +422,7 @@ class CacheManager @Inject constructor() {
         accessPatterns.values.forEach { pattern ->
             if (pattern.accessProbability >= PREFETCH_THRESHOLD &&
                 pattern.predictedNextAccess <= currentTime + 60_000L &&
-                !cache.containsKey(pattern.key)) {
+                !engine.containsKey(pattern.key)) {
                 
                 recommendations.add(
                     PrefetchRecommendation(
@@ -394,32 +443,100 @@ class CacheManager @Inject constructor() {
         _prefetchRecommendations.value = topRecommendations
     }
     
-    private suspend fun evictItemsToMakeSpace(requiredSize: Long) {
-        // Sort items by priority (lowest first), then by access count (lowest first)
-        val itemsToEvict = cache.entries
-            .sortedWith(
-                compareBy<Map.Entry<String, CacheEntry<Any>>> { it.value.priority }
-                    .thenBy { it.value.accessCount }
-            )
-            
-        var freedSpace = 0L
-        val keysToRemove = mutableListOf<String>()
+    private fun onEntriesEvicted(evicted: List<Pair<String, CacheEntry<Any>>>) {
+        if (evicted.isEmpty()) return
+        evictionCount.addAndGet(evicted.size.toLong())
+        evicted.forEach { (key, _) -> accessPatterns.remove(key) }
         
-        for (entry in itemsToEvict) {
-            keysToRemove.add(entry.key)
-            freedSpace += entry.value.size
-            if (freedSpace >= requiredSize) break
+        // Spill to L2 rather than dropping; entries already on disk are skipped
+        if (cacheConfiguration.enableDiskTier) {
+            val spillable = evicted.filter { (key, entry) ->
+                DiskCacheTier.isPersistable(entry.value) && !diskTier.contains(key, entry.timestamp)
+            }
+            if (spillable.isNotEmpty()) {
+                scope.launch(diskWriter) {
+                    spillable.forEach { (key, entry) ->
+                        if (diskTier.put(key, entry)) diskSpills.incrementAndGet()
+                    }
+                }
+            }
         }
+    }
+    
+    /**
+     * Hide the key's L2 copy immediately and queue its tombstone on the disk
+     * writer, ahead of any spill queued afterwards, so callers never wait on disk I/O.
+     */
+    private fun invalidateOnDisk(key: String) {
+        val marker = Any()
+        pendingDiskRemovals[key] = marker
+        scope.launch(diskWriter) {
+            try {
+                diskTier.remove(key)
+            } finally {
+                pendingDiskRemovals.remove(key, marker)
+            }
+        }
+    }
+
+    /**
+     * L1 miss path: read through to the disk tier and promote the entry back
+     * into the heap cache.
+     */
+    private suspend fun getFromDisk(key: String, now: Long): CacheEntry<Any>? {
+        if (!cacheConfiguration.enableDiskTier || !diskTier.isOpen) return null
+        if (pendingDiskRemovals.containsKey(key)) return null
+        val entry = withContext(Dispatchers.IO) { diskTier.get(key, now) } ?: return null
         
-        keysToRemove.forEach { key ->
-            cache.remove(key)
-            accessPatterns.remove(key)
+        diskHits.incrementAndGet()
+        onEntriesEvicted(engine.put(key, entry, cacheConfiguration.maxSizeBytes))
+        return entry
+    }
+    
+    /**
+     * Write persistable L1 entries that are not on disk yet, so a cold start
+     * finds them in L2.
+     */
+    private fun checkpointToDisk() {
+        if (!cacheConfiguration.enableDiskTier || !diskTier.isOpen) return
+        val now = System.currentTimeMillis()
+        var written = 0
+        engine.forEachEntry { key, entry ->
+            if (!entry.isExpired(now) &&
+                DiskCacheTier.isPersistable(entry.value) &&
+                !diskTier.contains(key, entry.timestamp) &&
+                diskTier.put(key, entry)) {
+                written++
+            }
+        }
+        if (written > 0) {
+            diskTier.sync()
+            Log.d(TAG, "Checkpointed $written entries to disk cache")
         }
     }
     
-    private fun isEntryValid(entry: CacheEntry<Any>): Boolean {
-        val currentTime = System.currentTimeMillis()
-        return currentTime <= entry.timestamp + entry.ttl
+    private fun registerTrimCallback() {
+        if (!trimCallbackRegistered.compareAndSet(false, true)) return
+        context.registerComponentCallbacks(object : ComponentCallbacks2 {
+            override fun onTrimMemory(level: Int) {
+                // App went to the background; persist before the process becomes killable
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    scope.launch(diskWriter) { checkpointToDisk() }
+                }
+            }
+            
+            override fun onConfigurationChanged(newConfig: Configuration) {}
+            
+            @Deprecated("Deprecated in Java")
+            override fun onLowMemory() {}
+        })
+    }
+    
+    private fun createEngine(configuration: CacheConfiguration): CacheEngine {
+        return when (configuration.engineType) {
+            CacheEngineType.MUTEX -> MutexCacheEngine()
+            CacheEngineType.SEGMENTED -> SegmentedCacheEngine(configuration.evictionStrategy)
+        }
     }
     
     private fun updateAccessPattern(key: String) {
@@ -436,7 +553,9 @@ class CacheManager @Inject constructor() {
             )
         }
         
-        pattern.accessTimes.add(currentTime)
+        synchronized(pattern) {
+            pattern.accessTimes.add(currentTime)
+        }
     }
     
     private fun determineCompressionLevel(size: Long): CompressionLevel {
@@ -451,7 +570,7 @@ class CacheManager @Inject constructor() {
     }
     
     private fun getCurrentCacheSize(): Long {
-        return cache.values.sumOf { it.size }
+        return engine.sizeBytes()
     }
     
     private fun estimateSize(data: Any?): Long {
@@ -464,13 +583,13 @@ class CacheManager @Inject constructor() {
         }
     }
     
-    private fun recordAccessTime(accessTime: Long) {
-        totalAccessTime.addAndGet(accessTime)
+    private fun recordAccessTime(accessTimeNanos: Long) {
+        totalAccessTime.addAndGet(accessTimeNanos)
         accessTimeCount.incrementAndGet()
     }
     
     private fun updateStatistics() {
-        val totalEntries = cache.size
+        val totalEntries = engine.entryCount
         val totalSizeBytes = getCurrentCacheSize()
         val hits = cacheHits.get()
         val misses = cacheMisses.get()
@@ -479,12 +598,19 @@ class CacheManager @Inject constructor() {
         val hitRate = if (total > 0) hits.toDouble() / total else 0.0
         val missRate = if (total > 0) misses.toDouble() / total else 0.0
         
+        val recentHits = hits - lastStatisticsHits
+        val recentTotal = recentHits + (misses - lastStatisticsMisses)
+        val recentHitRate = if (recentTotal > 0) recentHits.toDouble() / recentTotal else hitRate
+        val diskHitRate = if (hits > 0) diskHits.get().toDouble() / hits else 0.0
+        lastStatisticsHits = hits
+        lastStatisticsMisses = misses
+        
         val prefetchTotal = prefetchHits.get() + prefetchMisses.get()
         val prefetchHitRate = if (prefetchTotal > 0) {
             prefetchHits.get().toDouble() / prefetchTotal
         } else 0.0
         
-        val averageAccessTime = if (accessTimeCount.get() > 0) {
+        val averageAccessTimeNanos = if (accessTimeCount.get() > 0) {
             totalAccessTime.get() / accessTimeCount.get()
         } else 0L
         
@@ -501,8 +627,16 @@ class CacheManager @Inject constructor() {
             evictionCount = evictionCount.get(),
             prefetchHitRate = prefetchHitRate,
             compressionRatio = 1.0,
-            averageAccessTime = averageAccessTime,
-            memoryEfficiency = memoryEfficiency
+            averageAccessTime = averageAccessTimeNanos / 1_000_000L,
+            memoryEfficiency = memoryEfficiency,
+            averageAccessTimeNanos = averageAccessTimeNanos,
+            engineType = cacheConfiguration.engineType,
+            recentHitRate = recentHitRate,
+            admissionRejections = engine.admissionRejections,
+            diskEntries = diskTier.entryCount,
+            diskSizeBytes = diskTier.sizeBytes(),
+            diskHitRate = diskHitRate,
+            diskSpillCount = diskSpills.get()
         )
     }
 
@@ -0,0 +1,111 @@
+package com.soundboard.android.network
+
+/**
+ * Phase 4.2: Clock Offset Estimation
+ *
+ * NTP-style estimate of the server clock relative to ours from ping/pong
+ * exchanges. Each exchange gives four timestamps: client send (t0), server
+ * receive (t1), server send (t2) and client receive (t3), from which
+ *
+ *   offset = ((t1 - t0) + (t2 - t3)) / 2     server time = client time + offset
+ *   delay  = (t3 - t0) - (t2 - t1)           network round trip
+ *
+ * The offset of one exchange is only exact when both legs took equally long,
+ * and its error is bounded by delay / 2, so exchanges that queued somewhere
+ * are the least trustworthy. Like NTP's clock filter, the estimate uses the
+ * lowest-delay samples of a sliding window, and samples whose delay is far
+ * above the window's minimum are rejected outright. A run of rejections means
+ * the path itself got slower, so the window restarts from the new baseline.
+ */
+class ClockOffsetEstimator(
+    private val windowSize: Int = DEFAULT_WINDOW_SIZE
+) {
+
+    companion object {
+        const val DEFAULT_WINDOW_SIZE = 16
+        private const val BEST_SAMPLE_FRACTION = 4 // Estimate from the lowest-delay quarter
+        private const val OUTLIER_DELAY_FACTOR = 3.0
+        private const val OUTLIER_DELAY_FLOOR_MS = 20L // Jitter allowance on very fast links
+    }
+
+    data class ClockSample(
+        val offsetMs: Double,
+        val delayMs: Long,
+        val receivedAt: Long
+    )
+
+    data class ClockEstimate(
+        val offsetMs: Double,
+        val uncertaintyMs: Double, // Half the round trip of the samples used
+        val roundTripMs: Long,
+        val samples: Int,
+        val rejectedSamples: Long
+    )
+
+    private val window = ArrayDeque<ClockSample>()
+    private var rejected = 0L
+    private var consecutiveRejections = 0
+    private var current: ClockEstimate? = null
+
+    /**
+     * Adds one exchange. Returns false when it was rejected as an outlier or
+     * is inconsistent (negative delay, e.g. the client clock stepped).
+     */
+    @Synchronized
+    fun addSample(clientSentAt: Long, serverReceivedAt: Long, serverSentAt: Long, clientReceivedAt: Long): Boolean {
+        val delay = (clientReceivedAt - clientSentAt) - (serverSentAt - serverReceivedAt)
+        if (delay < 0 || serverSentAt < serverReceivedAt) {
+            rejected++
+            return false
+        }
+
+        val minDelay = window.minOfOrNull { it.delayMs }
+        if (minDelay != null && window.size >= windowSize / 2 &&
+            delay > maxOf(minDelay * OUTLIER_DELAY_FACTOR, (minDelay + OUTLIER_DELAY_FLOOR_MS).toDouble())
+        ) {
+            if (++consecutiveRejections < windowSize / 2) {
+                rejected++
+                current = current?.copy(rejectedSamples = rejected)
+                return false
+            }
+            window.clear()
+        }
+        consecutiveRejections = 0
+
+        val offset = ((serverReceivedAt - clientSentAt) + (serverSentAt - clientReceivedAt)) / 2.0
+        window.addLast(ClockSample(offset, delay, clientReceivedAt))
+        while (window.size > windowSize) window.removeFirst()
+
+        // Median offset of the lowest-delay samples
+        val best = window.sortedBy { it.delayMs }.take(maxOf(1, window.size / BEST_SAMPLE_FRACTION))
+        val offsets = best.map { it.offsetMs }.sorted()
+        val medianOffset = if (offsets.size % 2 == 1) {
+            offsets[offsets.size / 2]
+        } else {
+            (offsets[offsets.size / 2 - 1] + offsets[offsets.size / 2]) / 2.0
+        }
+        val roundTrip = best.maxOf { it.delayMs }
+        current = ClockEstimate(
+            offsetMs = medianOffset,
+            uncertaintyMs = roundTrip / 2.0,
+            roundTripMs = roundTrip,
+            samples = window.size,
+            rejectedSamples = rejected
+        )
+        return true
+    }
+
+    @Synchronized
+    fun estimate(): ClockEstimate? = current
+
+    /** A client timestamp on the server's clock, or null before the first sample */
+    fun toServerTime(clientTimeMs: Long): Long? = estimate()?.let { clientTimeMs + Math.round(it.offsetMs) }
+
+    @Synchronized
+    fun reset() {
+        window.clear()
+        rejected = 0
+        consecutiveRejections = 0
+        current = null
+    }
+}
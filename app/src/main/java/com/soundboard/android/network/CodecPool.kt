@@ -0,0 +1,169 @@
+package com.soundboard.android.network
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Phase 4.2: Codec Resource Pool
+ *
+ * Bounded pools of native zlib [Deflater]/[Inflater] instances, kept per
+ * compression level and wrapping mode, plus per-thread scratch buffers for the
+ * codecs' hot paths. A fresh Deflater holds roughly 256KB of native memory
+ * that is only freed on finalization, so bursts of small JSON compressions
+ * used to grow native memory until the next GC.
+ *
+ * Instances beyond the pool bound are ended immediately instead of being left
+ * to the finalizer. Scratch buffers must not escape the codec call that
+ * borrowed them.
+ */
+object CodecPool {
+
+    private const val MAX_POOLED_PER_KEY = 4
+    private const val MAX_RETAINED_SCRATCH = 1 shl 20 // Larger one-off buffers are not kept per thread
+    private const val LEVEL_COUNT = 10 // Deflater levels 0-9
+
+    // Index = level * 2 + (nowrap ? 1 : 0)
+    private val deflaters = Array(LEVEL_COUNT * 2) { ArrayBlockingQueue<Deflater>(MAX_POOLED_PER_KEY) }
+    private val inflaters = Array(2) { ArrayBlockingQueue<Inflater>(MAX_POOLED_PER_KEY) }
+    private val scratchBuffers = ThreadLocal<ByteArray>()
+    private val hashTables = ThreadLocal<IntArray>()
+    private val checksums = ThreadLocal.withInitial { CRC32() }
+
+    private val operations = AtomicLong(0)
+    private val nativeAllocations = AtomicLong(0)
+    private val bufferAllocations = AtomicLong(0)
+
+    /** Turning pooling off ends every pooled instance; used to compare allocation rates */
+    @Volatile
+    var poolingEnabled = true
+        set(value) {
+            field = value
+            if (!value) clear()
+        }
+
+    data class Stats(
+        val operations: Long,
+        val nativeAllocations: Long,
+        val bufferAllocations: Long,
+        val pooledDeflaters: Int,
+        val pooledInflaters: Int,
+        val poolingEnabled: Boolean
+    ) {
+        val nativeAllocationsPerOperation: Double
+            get() = if (operations > 0) nativeAllocations.toDouble() / operations else 0.0
+        val bufferAllocationsPerOperation: Double
+            get() = if (operations > 0) bufferAllocations.toDouble() / operations else 0.0
+    }
+
+    inline fun <T> withDeflater(level: Int, nowrap: Boolean, block: (Deflater) -> T): T {
+        val deflater = acquireDeflater(level, nowrap)
+        try {
+            return block(deflater)
+        } finally {
+            releaseDeflater(deflater, level, nowrap)
+        }
+    }
+
+    inline fun <T> withInflater(nowrap: Boolean, block: (Inflater) -> T): T {
+        val inflater = acquireInflater(nowrap)
+        try {
+            return block(inflater)
+        } finally {
+            releaseInflater(inflater, nowrap)
+        }
+    }
+
+    fun acquireDeflater(level: Int, nowrap: Boolean): Deflater {
+        operations.incrementAndGet()
+        val normalized = normalizeLevel(level)
+        if (poolingEnabled) {
+            deflaters[deflaterIndex(normalized, nowrap)].poll()?.let { return it }
+        }
+        nativeAllocations.incrementAndGet()
+        return Deflater(normalized, nowrap)
+    }
+
+    fun releaseDeflater(deflater: Deflater, level: Int, nowrap: Boolean) {
+        deflater.reset()
+        if (!poolingEnabled || !deflaters[deflaterIndex(normalizeLevel(level), nowrap)].offer(deflater)) {
+            deflater.end()
+        }
+    }
+
+    fun acquireInflater(nowrap: Boolean): Inflater {
+        operations.incrementAndGet()
+        if (poolingEnabled) {
+            inflaters[if (nowrap) 1 else 0].poll()?.let { return it }
+        }
+        nativeAllocations.incrementAndGet()
+        return Inflater(nowrap)
+    }
+
+    fun releaseInflater(inflater: Inflater, nowrap: Boolean) {
+        inflater.reset()
+        if (!poolingEnabled || !inflaters[if (nowrap) 1 else 0].offer(inflater)) {
+            inflater.end()
+        }
+    }
+
+    /**
+     * Per-thread buffer of at least [minSize] bytes. Contents are undefined,
+     * and the buffer is only valid until the calling codec returns.
+     */
+    fun scratch(minSize: Int): ByteArray {
+        val current = if (poolingEnabled) scratchBuffers.get() else null
+        if (current != null && current.size >= minSize) return current
+
+        bufferAllocations.incrementAndGet()
+        val buffer = ByteArray(maxOf(minSize, current?.size ?: 0))
+        if (poolingEnabled && buffer.size <= MAX_RETAINED_SCRATCH) {
+            scratchBuffers.set(buffer)
+        }
+        return buffer
+    }
+
+    /** Per-thread int table of exactly [size] entries, filled with [fill] */
+    fun hashTable(size: Int, fill: Int): IntArray {
+        operations.incrementAndGet()
+        val current = if (poolingEnabled) hashTables.get() else null
+        val table = if (current != null && current.size == size) current else {
+            bufferAllocations.incrementAndGet()
+            IntArray(size).also { if (poolingEnabled) hashTables.set(it) }
+        }
+        table.fill(fill)
+        return table
+    }
+
+    /** Per-thread CRC32, already reset */
+    fun crc32(): CRC32 = checksums.get().apply { reset() }
+
+    fun stats(): Stats = Stats(
+        operations = operations.get(),
+        nativeAllocations = nativeAllocations.get(),
+        bufferAllocations = bufferAllocations.get(),
+        pooledDeflaters = deflaters.sumOf { it.size },
+        pooledInflaters = inflaters.sumOf { it.size },
+        poolingEnabled = poolingEnabled
+    )
+
+    fun resetStats() {
+        operations.set(0)
+        nativeAllocations.set(0)
+        bufferAllocations.set(0)
+    }
+
+    /** Ends every pooled instance, e.g. when the app is trimming memory */
+    fun clear() {
+        deflaters.forEach { queue -> generateSequence { queue.poll() }.forEach { it.end() } }
+        inflaters.forEach { queue -> generateSequence { queue.poll() }.forEach { it.end() } }
+    }
+
+    private fun normalizeLevel(level: Int): Int {
+        return if (level == Deflater.DEFAULT_COMPRESSION) 6 else level.coerceIn(0, LEVEL_COUNT - 1)
+    }
+
+    private fun deflaterIndex(level: Int, nowrap: Boolean): Int = level * 2 + if (nowrap) 1 else 0
+}
@@ -0,0 +1,117 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CompressionManager.DataType
+
+/**
+ * Phase 4.2: Compressibility Estimator
+ *
+ * Decides per payload whether compression can pay off, before any codec runs.
+ * Two cheap checks:
+ * - Magic numbers: MP3, OGG, M4A, FLAC, AAC, common images and archives are
+ *   already entropy coded, so GZIP on them only burns CPU.
+ * - Sampled byte entropy: a histogram over a few spread-out windows. Data
+ *   near 8 bits per byte has nothing left for a byte-oriented codec to find.
+ */
+object CompressibilityEstimator {
+
+    private const val WINDOW_SIZE = 256
+    private const val WINDOW_COUNT = 4
+    private const val HIGH_ENTROPY_BITS_PER_BYTE = 7.5
+
+    enum class KnownFormat(val dataType: DataType) {
+        MP3(DataType.AUDIO),
+        AAC(DataType.AUDIO),
+        OGG(DataType.AUDIO),
+        M4A(DataType.AUDIO),
+        FLAC(DataType.AUDIO),
+        PNG(DataType.IMAGE),
+        JPEG(DataType.IMAGE),
+        GIF(DataType.IMAGE),
+        WEBP(DataType.IMAGE),
+        ZIP(DataType.BINARY),
+        GZIP(DataType.BINARY),
+        COMPRESSED_FRAME(DataType.BINARY) // Already framed by CompressionManager
+    }
+
+    enum class Decision {
+        COMPRESS,
+        SKIP_KNOWN_FORMAT,
+        SKIP_HIGH_ENTROPY
+    }
+
+    data class Estimate(
+        val decision: Decision,
+        val format: KnownFormat?,
+        val entropyBitsPerByte: Double
+    ) {
+        val shouldCompress: Boolean
+            get() = decision == Decision.COMPRESS
+    }
+
+    fun estimate(data: ByteArray, offset: Int = 0, length: Int = data.size - offset): Estimate {
+        val format = sniffFormat(data, offset, length)
+        if (format != null) {
+            return Estimate(Decision.SKIP_KNOWN_FORMAT, format, 8.0)
+        }
+        val entropy = sampledEntropy(data, offset, length)
+        val decision = if (entropy >= HIGH_ENTROPY_BITS_PER_BYTE) Decision.SKIP_HIGH_ENTROPY else Decision.COMPRESS
+        return Estimate(decision, null, entropy)
+    }
+
+    fun sniffFormat(data: ByteArray, offset: Int = 0, length: Int = data.size - offset): KnownFormat? {
+        if (length < 4) return null
+        fun at(index: Int): Int = if (index < length) data[offset + index].toInt() and 0xFF else -1
+        fun ascii(index: Int, text: String): Boolean = text.indices.all { at(index + it) == text[it].code }
+
+        return when {
+            ascii(0, "ID3") -> KnownFormat.MP3
+            at(0) == 0xFF && (at(1) and 0xF6) == 0xF0 -> KnownFormat.AAC // ADTS sync, layer 0
+            at(0) == 0xFF && (at(1) and 0xE0) == 0xE0 -> KnownFormat.MP3 // MPEG audio frame sync
+            ascii(0, "OggS") -> KnownFormat.OGG
+            ascii(4, "ftyp") -> KnownFormat.M4A
+            ascii(0, "fLaC") -> KnownFormat.FLAC
+            at(0) == 0x89 && ascii(1, "PNG") -> KnownFormat.PNG
+            at(0) == 0xFF && at(1) == 0xD8 && at(2) == 0xFF -> KnownFormat.JPEG
+            ascii(0, "GIF8") -> KnownFormat.GIF
+            ascii(0, "RIFF") && ascii(8, "WEBP") -> KnownFormat.WEBP
+            ascii(0, "PK") && at(2) == 0x03 && at(3) == 0x04 -> KnownFormat.ZIP
+            at(0) == 0x1F && at(1) == 0x8B -> KnownFormat.GZIP
+            ascii(0, "SBZ") || ascii(0, "SBS") -> KnownFormat.COMPRESSED_FRAME
+            else -> null
+        }
+    }
+
+    /**
+     * Shannon entropy in bits per byte over up to [WINDOW_COUNT] windows spread
+     * across the payload, so headers alone do not decide for the whole file.
+     */
+    fun sampledEntropy(data: ByteArray, offset: Int = 0, length: Int = data.size - offset): Double {
+        if (length <= 0) return 0.0
+        val histogram = IntArray(256)
+        var sampled = 0
+
+        if (length <= WINDOW_SIZE * WINDOW_COUNT) {
+            for (i in offset until offset + length) histogram[data[i].toInt() and 0xFF]++
+            sampled = length
+        } else {
+            val step = (length - WINDOW_SIZE) / (WINDOW_COUNT - 1)
+            for (window in 0 until WINDOW_COUNT) {
+                val start = offset + window * step
+                for (i in start until start + WINDOW_SIZE) histogram[data[i].toInt() and 0xFF]++
+                sampled += WINDOW_SIZE
+            }
+        }
+
+        var entropy = 0.0
+        val total = sampled.toDouble()
+        for (count in histogram) {
+            if (count > 0) {
+                val probability = count / total
+                entropy -= probability * log2(probability)
+            }
+        }
+        return entropy
+    }
+
+    private fun log2(value: Double): Double = kotlin.math.ln(value) / kotlin.math.ln(2.0)
+}
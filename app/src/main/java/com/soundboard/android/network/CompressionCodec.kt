@@ -0,0 +1,366 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CompressionManager.CompressionAlgorithm
+import java.io.IOException
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Phase 4.2: Compression Codecs
+ *
+ * Raw codec implementations behind [CompressionAlgorithm]. Codecs only deal
+ * with their own payload; [CompressionFrame] adds the header that lets
+ * [CompressionManager.decompress] detect the codec on its own.
+ */
+interface CompressionCodec {
+
+    /**
+     * Most output bytes one payload byte can decode to, so a frame claiming a
+     * larger original length can be rejected before its buffer is allocated.
+     */
+    val maxExpansionRatio: Int
+
+    /** Compresses [data] at [level] (1-9, ignored by codecs without levels) */
+    fun compress(data: ByteArray, level: Int): ByteArray = compress(data, 0, data.size, level)
+
+    /** Compresses [length] bytes of [data] starting at [offset] */
+    fun compress(data: ByteArray, offset: Int, length: Int, level: Int): ByteArray
+
+    /**
+     * Decompresses [length] bytes of [payload] starting at [offset] into
+     * exactly [originalLength] bytes.
+     */
+    fun decompress(payload: ByteArray, offset: Int, length: Int, originalLength: Int): ByteArray {
+        val output = ByteArray(originalLength)
+        decompressInto(payload, offset, length, output, originalLength)
+        return output
+    }
+
+    /**
+     * Decompresses into the start of [destination], which must hold at least
+     * [originalLength] bytes. Lets streaming callers reuse pooled buffers.
+     */
+    fun decompressInto(payload: ByteArray, offset: Int, length: Int, destination: ByteArray, originalLength: Int)
+
+    companion object {
+        /**
+         * Returns the codec for [algorithm], or null when there is no
+         * implementation available on this platform.
+         */
+        fun forAlgorithm(algorithm: CompressionAlgorithm): CompressionCodec? {
+            return when (algorithm) {
+                CompressionAlgorithm.NONE -> NoneCodec
+                CompressionAlgorithm.GZIP -> GzipCodec
+                CompressionAlgorithm.DEFLATE -> DeflateCodec
+                CompressionAlgorithm.LZ4 -> Lz4Codec
+                // No pure-JVM Brotli encoder exists; only the decoder is published
+                CompressionAlgorithm.BROTLI -> null
+            }
+        }
+    }
+}
+
+object NoneCodec : CompressionCodec {
+    override val maxExpansionRatio = 1
+
+    override fun compress(data: ByteArray, level: Int): ByteArray = data
+
+    override fun compress(data: ByteArray, offset: Int, length: Int, level: Int): ByteArray {
+        return data.copyOfRange(offset, offset + length)
+    }
+
+    override fun decompressInto(payload: ByteArray, offset: Int, length: Int, destination: ByteArray, originalLength: Int) {
+        if (length != originalLength) throw IOException("Stored payload is $length bytes, expected $originalLength")
+        System.arraycopy(payload, offset, destination, 0, length)
+    }
+}
+
+/**
+ * GZIP (RFC 1952) written directly around a pooled raw Deflater, so no
+ * stream objects or intermediate copies are created per call.
+ */
+object GzipCodec : CompressionCodec {
+    private const val HEADER_SIZE = 10
+    private const val TRAILER_SIZE = 8
+    private const val FLAG_HEADER_CRC = 0x02
+    private const val FLAG_EXTRA = 0x04
+    private const val FLAG_NAME = 0x08
+    private const val FLAG_COMMENT = 0x10
+
+    // Magic, deflate method, no flags, no mtime, no extra flags, OS unknown
+    private val HEADER = byteArrayOf(0x1f, 0x8b.toByte(), 8, 0, 0, 0, 0, 0, 0, 0xff.toByte())
+
+    override val maxExpansionRatio = Zlib.MAX_EXPANSION_RATIO
+
+    override fun compress(data: ByteArray, offset: Int, length: Int, level: Int): ByteArray {
+        return CodecPool.withDeflater(level, nowrap = true) { deflater ->
+            val scratch = CodecPool.scratch(HEADER_SIZE + Zlib.deflateBound(length) + TRAILER_SIZE)
+            HEADER.copyInto(scratch)
+            var position = Zlib.deflateInto(deflater, data, offset, length, scratch, HEADER_SIZE)
+
+            val crc = CodecPool.crc32()
+            crc.update(data, offset, length)
+            position = writeIntLE(scratch, position, crc.value.toInt())
+            position = writeIntLE(scratch, position, length)
+            scratch.copyOf(position)
+        }
+    }
+
+    override fun decompressInto(payload: ByteArray, offset: Int, length: Int, destination: ByteArray, originalLength: Int) {
+        val end = offset + length
+        val bodyStart = skipHeader(payload, offset, end)
+        CodecPool.withInflater(nowrap = true) { inflater ->
+            val remaining = Zlib.inflateInto(inflater, payload, bodyStart, end - bodyStart, destination, originalLength, "GZIP")
+            val trailer = end - remaining
+            if (remaining < TRAILER_SIZE) throw IOException("GZIP stream is missing its trailer")
+
+            val crc = CodecPool.crc32()
+            crc.update(destination, 0, originalLength)
+            if (readIntLE(payload, trailer) != crc.value.toInt() || readIntLE(payload, trailer + 4) != originalLength) {
+                throw IOException("GZIP trailer does not match the decoded data")
+            }
+        }
+    }
+
+    private fun skipHeader(payload: ByteArray, offset: Int, end: Int): Int {
+        if (end - offset < HEADER_SIZE + TRAILER_SIZE ||
+            payload[offset] != HEADER[0] || payload[offset + 1] != HEADER[1] || payload[offset + 2] != HEADER[2]) {
+            throw IOException("Not a GZIP stream")
+        }
+        val flags = payload[offset + 3].toInt()
+        var position = offset + HEADER_SIZE
+        try {
+            if (flags and FLAG_EXTRA != 0) {
+                position += 2 + ((payload[position].toInt() and 0xFF) or ((payload[position + 1].toInt() and 0xFF) shl 8))
+            }
+            if (flags and FLAG_NAME != 0) {
+                while (payload[position++] != 0.toByte()) Unit
+            }
+            if (flags and FLAG_COMMENT != 0) {
+                while (payload[position++] != 0.toByte()) Unit
+            }
+            if (flags and FLAG_HEADER_CRC != 0) position += 2
+        } catch (e: IndexOutOfBoundsException) {
+            throw IOException("Truncated GZIP header", e)
+        }
+        if (position >= end) throw IOException("Truncated GZIP header")
+        return position
+    }
+
+    private fun writeIntLE(target: ByteArray, offset: Int, value: Int): Int {
+        target[offset] = value.toByte()
+        target[offset + 1] = (value ushr 8).toByte()
+        target[offset + 2] = (value ushr 16).toByte()
+        target[offset + 3] = (value ushr 24).toByte()
+        return offset + 4
+    }
+
+    private fun readIntLE(source: ByteArray, offset: Int): Int {
+        return (source[offset].toInt() and 0xFF) or
+            ((source[offset + 1].toInt() and 0xFF) shl 8) or
+            ((source[offset + 2].toInt() and 0xFF) shl 16) or
+            ((source[offset + 3].toInt() and 0xFF) shl 24)
+    }
+}
+
+object DeflateCodec : CompressionCodec {
+    override val maxExpansionRatio = Zlib.MAX_EXPANSION_RATIO
+
+    override fun compress(data: ByteArray, offset: Int, length: Int, level: Int): ByteArray {
+        return CodecPool.withDeflater(level, nowrap = false) { deflater ->
+            val scratch = CodecPool.scratch(Zlib.deflateBound(length))
+            scratch.copyOf(Zlib.deflateInto(deflater, data, offset, length, scratch, 0))
+        }
+    }
+
+    override fun decompressInto(payload: ByteArray, offset: Int, length: Int, destination: ByteArray, originalLength: Int) {
+        CodecPool.withInflater(nowrap = false) { inflater ->
+            Zlib.inflateInto(inflater, payload, offset, length, destination, originalLength, "Deflate")
+        }
+    }
+
+    /**
+     * Raw deflate primed with [dictionary]. No zlib wrapper: the frame already
+     * names the dictionary and length, and small messages cannot spare 6 bytes.
+     */
+    fun compressWithDictionary(data: ByteArray, level: Int, dictionary: CompressionDictionary): ByteArray {
+        return CodecPool.withDeflater(level, nowrap = true) { deflater ->
+            deflater.setDictionary(dictionary.bytes)
+            val scratch = CodecPool.scratch(Zlib.deflateBound(data.size))
+            scratch.copyOf(Zlib.deflateInto(deflater, data, 0, data.size, scratch, 0))
+        }
+    }
+
+    fun decompressWithDictionary(
+        payload: ByteArray,
+        offset: Int,
+        length: Int,
+        originalLength: Int,
+        dictionary: CompressionDictionary
+    ): ByteArray {
+        val output = ByteArray(originalLength)
+        CodecPool.withInflater(nowrap = true) { inflater ->
+            inflater.setDictionary(dictionary.bytes)
+            Zlib.inflateInto(inflater, payload, offset, length, output, originalLength, "Dictionary deflate")
+        }
+        return output
+    }
+}
+
+/** Shared zlib loops for the GZIP and Deflate codecs */
+private object Zlib {
+
+    // The longest match (258 bytes) costs at least two bits, so about 1032:1
+    const val MAX_EXPANSION_RATIO = 1032
+
+    // zlib's compressBound plus headroom for the wrapper and stored-block overhead
+    fun deflateBound(length: Int): Int = length + (length ushr 12) + (length ushr 14) + (length ushr 25) + 64
+
+    /** Deflates the whole input into [target] at [targetOffset]; returns the end position */
+    fun deflateInto(deflater: Deflater, data: ByteArray, offset: Int, length: Int, target: ByteArray, targetOffset: Int): Int {
+        deflater.setInput(data, offset, length)
+        deflater.finish()
+        var position = targetOffset
+        while (!deflater.finished()) {
+            if (position == target.size) throw IOException("Deflate output exceeded its bound")
+            position += deflater.deflate(target, position, target.size - position)
+        }
+        return position
+    }
+
+    /**
+     * Inflates exactly [originalLength] bytes into [destination]; returns the
+     * number of input bytes left after the end of the deflate stream.
+     */
+    fun inflateInto(
+        inflater: Inflater,
+        payload: ByteArray,
+        offset: Int,
+        length: Int,
+        destination: ByteArray,
+        originalLength: Int,
+        format: String
+    ): Int {
+        try {
+            inflater.setInput(payload, offset, length)
+            var position = 0
+            while (position < originalLength && !inflater.finished()) {
+                val inflated = inflater.inflate(destination, position, originalLength - position)
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw IOException("$format stream ended after $position of $originalLength bytes")
+                }
+                position += inflated
+            }
+            if (position != originalLength) {
+                throw IOException("$format stream decoded to $position bytes, expected $originalLength")
+            }
+            // The end-of-stream marker may still be unread once the output is full
+            if (!inflater.finished() && (inflater.inflate(ByteArray(1)) > 0 || !inflater.finished())) {
+                throw IOException("$format stream does not end after $originalLength bytes")
+            }
+            return inflater.remaining
+        } catch (e: DataFormatException) {
+            throw IOException("Corrupt $format stream", e)
+        }
+    }
+}
+
+/**
+ * Self-describing frame around a codec payload:
+ *
+ *     "SBZ" | version (1) | algorithm id (1) | original length (4, big endian) | payload
+ *
+ * Version 2 frames carry raw deflate primed with a preset dictionary and put
+ * the dictionary id (4, big endian) before the original length.
+ *
+ * Payloads below the compression threshold are sent unframed, so [parse]
+ * returning null means the data is either raw or from an older sender.
+ * A frame whose original length is over [MAX_ORIGINAL_LENGTH], or more than
+ * its codec could produce from the payload, is rejected by [parse].
+ */
+object CompressionFrame {
+    const val HEADER_SIZE = 9
+    const val DICTIONARY_HEADER_SIZE = 13
+    private const val VERSION: Byte = 1
+    private const val DICTIONARY_VERSION: Byte = 2
+
+    // Well above any layout or sound payload sent in a single frame
+    const val MAX_ORIGINAL_LENGTH = 64 * 1024 * 1024
+    private val MAGIC = byteArrayOf(0x53, 0x42, 0x5A) // "SBZ"
+
+    data class Header(
+        val algorithm: CompressionAlgorithm,
+        val originalLength: Int,
+        val dictionaryId: Int? = null
+    ) {
+        val size: Int
+            get() = if (dictionaryId != null) DICTIONARY_HEADER_SIZE else HEADER_SIZE
+    }
+
+    fun wrap(algorithm: CompressionAlgorithm, originalLength: Int, payload: ByteArray): ByteArray {
+        val framed = ByteArray(HEADER_SIZE + payload.size)
+        writeHeader(framed, algorithm, originalLength)
+        System.arraycopy(payload, 0, framed, HEADER_SIZE, payload.size)
+        return framed
+    }
+
+    fun writeHeader(target: ByteArray, algorithm: CompressionAlgorithm, originalLength: Int) {
+        MAGIC.copyInto(target)
+        target[3] = VERSION
+        target[4] = algorithm.frameId.toByte()
+        writeInt(target, 5, originalLength)
+    }
+
+    fun wrapWithDictionary(dictionaryId: Int, originalLength: Int, payload: ByteArray): ByteArray {
+        val framed = ByteArray(DICTIONARY_HEADER_SIZE + payload.size)
+        MAGIC.copyInto(framed)
+        framed[3] = DICTIONARY_VERSION
+        framed[4] = CompressionAlgorithm.DEFLATE.frameId.toByte()
+        writeInt(framed, 5, dictionaryId)
+        writeInt(framed, 9, originalLength)
+        System.arraycopy(payload, 0, framed, DICTIONARY_HEADER_SIZE, payload.size)
+        return framed
+    }
+
+    /**
+     * Returns the frame header, or null when [data] is not framed.
+     *
+     * @throws IOException if the header claims an original length the
+     * payload cannot decode to
+     */
+    fun parse(data: ByteArray): Header? {
+        if (data.size < HEADER_SIZE) return null
+        if (data[0] != MAGIC[0] || data[1] != MAGIC[1] || data[2] != MAGIC[2]) return null
+        val algorithm = CompressionAlgorithm.fromFrameId(data[4].toInt() and 0xFF) ?: return null
+        val header = when (data[3]) {
+            VERSION -> readInt(data, 5).takeIf { it >= 0 }?.let { Header(algorithm, it) }
+            DICTIONARY_VERSION -> {
+                if (data.size < DICTIONARY_HEADER_SIZE || algorithm != CompressionAlgorithm.DEFLATE) return null
+                readInt(data, 9).takeIf { it >= 0 }?.let { Header(algorithm, it, dictionaryId = readInt(data, 5)) }
+            }
+            else -> null
+        } ?: return null
+
+        val payloadLength = data.size - header.size
+        val codecLimit = CompressionCodec.forAlgorithm(algorithm)?.let { it.maxExpansionRatio.toLong() * payloadLength }
+        if (header.originalLength > MAX_ORIGINAL_LENGTH || (codecLimit != null && header.originalLength > codecLimit)) {
+            throw IOException("${algorithm.name} frame claims ${header.originalLength} bytes from a $payloadLength byte payload")
+        }
+        return header
+    }
+
+    private fun writeInt(target: ByteArray, offset: Int, value: Int) {
+        target[offset] = (value ushr 24).toByte()
+        target[offset + 1] = (value ushr 16).toByte()
+        target[offset + 2] = (value ushr 8).toByte()
+        target[offset + 3] = value.toByte()
+    }
+
+    private fun readInt(source: ByteArray, offset: Int): Int {
+        return ((source[offset].toInt() and 0xFF) shl 24) or
+            ((source[offset + 1].toInt() and 0xFF) shl 16) or
+            ((source[offset + 2].toInt() and 0xFF) shl 8) or
+            (source[offset + 3].toInt() and 0xFF)
+    }
+}
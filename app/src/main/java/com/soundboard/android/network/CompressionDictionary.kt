@@ -0,0 +1,156 @@
+package com.soundboard.android.network
+
+import java.util.Base64
+import java.util.PriorityQueue
+import java.util.zip.Adler32
+
+/**
+ * Phase 4.2: Compression Dictionary
+ *
+ * Preset dictionary for Deflate, shared with a peer before use. Small state
+ * sync messages repeat the same keys and enum names every time; with those
+ * bytes already in the window, a 300 byte message encodes to a few dozen.
+ *
+ * The id is the dictionary's Adler-32, the same value zlib uses to name a
+ * preset dictionary, so both sides can derive it independently.
+ */
+class CompressionDictionary(val bytes: ByteArray) {
+
+    val id: Int = Adler32().apply { update(bytes) }.value.toInt()
+
+    val size: Int
+        get() = bytes.size
+
+    fun toBase64(): String = Base64.getEncoder().encodeToString(bytes)
+
+    companion object {
+        fun fromBase64(encoded: String): CompressionDictionary {
+            return CompressionDictionary(Base64.getDecoder().decode(encoded))
+        }
+    }
+}
+
+/**
+ * Builds a [CompressionDictionary] from observed payloads.
+ *
+ * Every 8-byte sequence is scored by how many samples contain it. Segments of
+ * the samples are then picked greedily by the total score of the sequences
+ * they add, so content shared across many messages wins and repeats within a
+ * single message do not. The best segments go last, closest to the data,
+ * where Deflate encodes references most cheaply.
+ *
+ * Not thread safe; callers serialize access.
+ */
+class DictionaryTrainer(
+    private val maxSamples: Int = 256,
+    private val maxSampleBytes: Int = 4096
+) {
+
+    companion object {
+        private const val KMER_LENGTH = 8
+        private const val SEGMENT_LENGTH = 48
+        private const val SEGMENT_STRIDE = SEGMENT_LENGTH / 4
+        private const val MIN_SAMPLE_FREQUENCY = 2 // Content seen once does not help other messages
+    }
+
+    private val samples = ArrayDeque<ByteArray>()
+
+    val sampleCount: Int
+        get() = samples.size
+
+    /** Keeps the most recent [maxSamples] payloads, truncated to [maxSampleBytes] */
+    fun addSample(payload: ByteArray) {
+        if (payload.size < KMER_LENGTH) return
+        samples.addLast(if (payload.size > maxSampleBytes) payload.copyOf(maxSampleBytes) else payload)
+        if (samples.size > maxSamples) samples.removeFirst()
+    }
+
+    /** Returns null when the samples share too little content to be worth a dictionary */
+    fun train(maxDictionarySize: Int): CompressionDictionary? {
+        val frequencies = countSampleFrequencies()
+        if (frequencies.isEmpty()) return null
+
+        data class Segment(val sample: ByteArray, val start: Int, val end: Int, var score: Long)
+
+        val candidates = PriorityQueue<Segment>(compareByDescending { it.score })
+        for (sample in samples) {
+            var start = 0
+            while (start + KMER_LENGTH <= sample.size) {
+                val end = minOf(start + SEGMENT_LENGTH, sample.size)
+                val score = scoreSegment(sample, start, end, frequencies)
+                if (score > 0) candidates.add(Segment(sample, start, end, score))
+                start += SEGMENT_STRIDE
+            }
+        }
+
+        // Lazy greedy: a segment's score only drops as others are taken, so re-score
+        // the best candidate and accept it if it still beats the runner-up
+        val selected = ArrayList<Segment>()
+        var selectedBytes = 0
+        while (selectedBytes < maxDictionarySize) {
+            val best = candidates.poll() ?: break
+            val current = scoreSegment(best.sample, best.start, best.end, frequencies)
+            if (current <= 0) continue
+            val next = candidates.peek()
+            if (next != null && current < next.score) {
+                best.score = current
+                candidates.add(best)
+                continue
+            }
+            val length = minOf(best.end - best.start, maxDictionarySize - selectedBytes)
+            selected.add(best.copy(end = best.start + length))
+            selectedBytes += length
+            forEachKmer(best.sample, best.start, best.start + length) { frequencies.remove(it) }
+        }
+        if (selected.isEmpty()) return null
+
+        val dictionary = ByteArray(selectedBytes)
+        var position = selectedBytes
+        for (segment in selected) {
+            val length = segment.end - segment.start
+            position -= length
+            System.arraycopy(segment.sample, segment.start, dictionary, position, length)
+        }
+        return CompressionDictionary(dictionary)
+    }
+
+    fun clear() {
+        samples.clear()
+    }
+
+    // Number of distinct samples containing each 8-byte sequence, dropping rare ones
+    private fun countSampleFrequencies(): HashMap<Long, Int> {
+        val frequencies = HashMap<Long, Int>()
+        val seen = HashSet<Long>()
+        for (sample in samples) {
+            seen.clear()
+            forEachKmer(sample, 0, sample.size) { kmer ->
+                if (seen.add(kmer)) frequencies[kmer] = (frequencies[kmer] ?: 0) + 1
+            }
+        }
+        frequencies.values.removeAll { it < MIN_SAMPLE_FREQUENCY }
+        return frequencies
+    }
+
+    private fun scoreSegment(sample: ByteArray, start: Int, end: Int, frequencies: Map<Long, Int>): Long {
+        var score = 0L
+        val counted = HashSet<Long>()
+        forEachKmer(sample, start, end) { kmer ->
+            val frequency = frequencies[kmer]
+            if (frequency != null && counted.add(kmer)) score += frequency
+        }
+        return score
+    }
+
+    private inline fun forEachKmer(sample: ByteArray, start: Int, end: Int, action: (Long) -> Unit) {
+        var position = start
+        while (position + KMER_LENGTH <= end) {
+            var kmer = 0L
+            for (i in 0 until KMER_LENGTH) {
+                kmer = (kmer shl 8) or (sample[position + i].toLong() and 0xFF)
+            }
+            action(kmer)
+            position++
+        }
+    }
+}
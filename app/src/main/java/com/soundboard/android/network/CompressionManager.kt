@@ -10,15 +10,18 @@ import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
-import java.io.ByteArrayInputStream
-import java.io.ByteArrayOutputStream
+import kotlinx.coroutines.withContext
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.Source
+import okio.buffer
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
-import java.util.zip.DeflaterOutputStream
-import java.util.zip.GZIPInputStream
-import java.util.zip.GZIPOutputStream
-import java.util.zip.InflaterInputStream
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -38,20 +41,42 @@ class CompressionManager @Inject constructor() {
         private const val NETWORK_SPEED_WINDOW_MS = 30_000L // 30 seconds
         private const val COMPRESSION_EFFICIENCY_THRESHOLD = 0.8 // 80% efficiency
         private const val AUTO_ADAPTATION_INTERVAL_MS = 60_000L // 1 minute
+        private const val DEFAULT_COMPRESSION_LEVEL = 6
+        private const val THROUGHPUT_SMOOTHING = 0.2 // EWMA weight of the newest sample
+        private const val BASELINE_THROUGHPUT_MBPS = 200.0 // Scales the static speed priors
+        private const val EXPLORATION_INTERVAL = 64 // Re-measure a stale codec every N compressions
+        private const val STREAMING_THRESHOLD = 256 * 1024L // Payloads above this are chunked
+        private const val DEFAULT_CHUNK_SIZE = 64 * 1024
+        private const val MAX_BUFFER_POOLS = 4
+        private const val STREAM_SNIFF_SIZE = 4096 // Head of a stream inspected before choosing a codec
+        private const val DICTIONARY_MAX_SIZE = 8 * 1024
+        private const val DICTIONARY_MIN_SAMPLES = 32 // Samples before the first dictionary is trained
+        private const val DICTIONARY_RETRAIN_INTERVAL = 512 // New samples before retraining
+        private const val DICTIONARY_MIN_PAYLOAD = 32 // Smaller payloads cannot amortize the frame
+        private const val MAX_KNOWN_DICTIONARIES = 4 // Older ids stay decodable for peers mid-rollover
     }
     
-    // Compression algorithms
+    // Compression algorithms. Ratio and speeds are only priors until the
+    // codec has been measured on real payloads.
     enum class CompressionAlgorithm(
         val description: String,
         val compressionRatio: Double,
         val compressionSpeed: Double,
-        val decompressionSpeed: Double
+        val decompressionSpeed: Double,
+        val frameId: Int
     ) {
-        NONE("No Compression", 1.0, 1.0, 1.0),
-        GZIP("GZIP Compression", 0.4, 0.7, 0.9),
-        DEFLATE("Deflate Compression", 0.45, 0.8, 0.95),
-        LZ4("LZ4 Fast Compression", 0.6, 0.95, 0.98),
-        BROTLI("Brotli High Compression", 0.35, 0.5, 0.8)
+        NONE("No Compression", 1.0, 1.0, 1.0, 0),
+        GZIP("GZIP Compression", 0.4, 0.7, 0.9, 1),
+        DEFLATE("Deflate Compression", 0.45, 0.8, 0.95, 2),
+        LZ4("LZ4 Fast Compression", 0.6, 0.95, 0.98, 3),
+        BROTLI("Brotli High Compression", 0.35, 0.5, 0.8, 4);
+        
+        val isSupported: Boolean
+            get() = CompressionCodec.forAlgorithm(this) != null
+        
+        companion object {
+            fun fromFrameId(frameId: Int): CompressionAlgorithm? = values().firstOrNull { it.frameId == frameId }
+        }
     }
     
     // Data type characteristics for compression optimization
@@ -118,21 +143,105 @@ class CompressionManager @Inject constructor() {
         val averageDecompressionTime: Long,
         val bandwidthSaved: Long, // bytes
         val compressionEfficiency: Double,
-        val algorithmUsage: Map<CompressionAlgorithm, Long>
+        val algorithmUsage: Map<CompressionAlgorithm, Long>,
+        val codecThroughput: Map<CompressionAlgorithm, CodecThroughput> = emptyMap(),
+        val codecPoolingEnabled: Boolean = true,
+        val nativeAllocationsPerOperation: Double = 0.0, // New Deflater/Inflater instances
+        val bufferAllocationsPerOperation: Double = 0.0, // Scratch buffers that could not be reused
+        val unpooledAllocationsPerOperation: Double? = null, // Same total, last measured with pooling off
+        val payloadsCompressed: Long = 0L,
+        val skippedBelowThreshold: Long = 0L,
+        val skippedKnownFormat: Long = 0L, // Already compressed media and archives
+        val skippedHighEntropy: Long = 0L,
+        val skippedBytes: Long = 0L // CPU work avoided by the skip decisions
+    )
+    
+    // Result of a streaming compression, which never holds the whole payload
+    data class StreamCompressionResult(
+        val originalSize: Long,
+        val compressedSize: Long,
+        val compressionRatio: Double,
+        val compressionTime: Long,
+        val algorithm: CompressionAlgorithm,
+        val chunkCount: Int
     )
     
+    // Measured codec performance, smoothed over recent operations
+    data class CodecThroughput(
+        val compressionMBps: Double,
+        val decompressionMBps: Double,
+        val compressionRatio: Double,
+        val samples: Long
+    )
+    
+    // Running EWMA of a codec's measurements, seeded from the enum priors
+    private class CodecProfile(algorithm: CompressionAlgorithm) {
+        @Volatile var compressionMBps = algorithm.compressionSpeed * BASELINE_THROUGHPUT_MBPS
+        @Volatile var decompressionMBps = algorithm.decompressionSpeed * BASELINE_THROUGHPUT_MBPS
+        @Volatile var compressionRatio = algorithm.compressionRatio
+        @Volatile var samples = 0L
+        @Volatile var lastMeasured = 0L
+        
+        @Synchronized
+        fun recordCompression(bytes: Int, nanos: Long, ratio: Double) {
+            val mbps = throughputMBps(bytes, nanos)
+            if (samples == 0L) {
+                compressionMBps = mbps
+                compressionRatio = ratio
+            } else {
+                compressionMBps += THROUGHPUT_SMOOTHING * (mbps - compressionMBps)
+                compressionRatio += THROUGHPUT_SMOOTHING * (ratio - compressionRatio)
+            }
+            samples++
+            lastMeasured = System.currentTimeMillis()
+        }
+        
+        @Synchronized
+        fun recordDecompression(bytes: Int, nanos: Long) {
+            decompressionMBps += THROUGHPUT_SMOOTHING * (throughputMBps(bytes, nanos) - decompressionMBps)
+        }
+        
+        private fun throughputMBps(bytes: Int, nanos: Long): Double {
+            return bytes / 1_000_000.0 / (maxOf(nanos, 1L) / 1_000_000_000.0)
+        }
+        
+        fun snapshot() = CodecThroughput(compressionMBps, decompressionMBps, compressionRatio, samples)
+    }
+    
     // State management
     private val compressionMutex = Mutex()
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     
     // Performance tracking
     private val compressionStats = ConcurrentHashMap<CompressionAlgorithm, MutableList<Double>>()
+    private val codecProfiles = CompressionAlgorithm.values()
+        .filter { it.isSupported }
+        .associateWith { CodecProfile(it) }
+    private val adaptiveSelections = AtomicLong(0)
+    private val bufferPools = ConcurrentHashMap<Int, ByteArrayPool>()
+    @Volatile private var unpooledAllocationsPerOperation: Double? = null
+    
+    // Preset dictionaries for small repetitive payloads, keyed by dictionary id
+    private val dictionaryTrainer = DictionaryTrainer()
+    private val dictionaries = Collections.synchronizedMap(object : LinkedHashMap<Int, CompressionDictionary>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, CompressionDictionary>?): Boolean {
+            return size > MAX_KNOWN_DICTIONARIES
+        }
+    })
+    private var samplesSinceTraining = 0
+    private val _activeDictionary = MutableStateFlow<CompressionDictionary?>(null)
+    val activeDictionary: StateFlow<CompressionDictionary?> = _activeDictionary.asStateFlow()
     private val networkSpeedHistory = ArrayDeque<Pair<Long, Double>>(100) // timestamp, speed in Mbps
     private var totalCompressions = AtomicLong(0)
     private var totalDecompressions = AtomicLong(0)
     private var totalBandwidthSaved = AtomicLong(0)
     private var totalCompressionTime = AtomicLong(0)
     private var totalDecompressionTime = AtomicLong(0)
+    private val payloadsCompressed = AtomicLong(0)
+    private val skippedBelowThreshold = AtomicLong(0)
+    private val skippedKnownFormat = AtomicLong(0)
+    private val skippedHighEntropy = AtomicLong(0)
+    private val skippedBytes = AtomicLong(0)
     
     // Configuration
     private var currentNetworkCondition = NetworkCondition.AVERAGE
@@ -152,7 +261,7 @@ class CompressionManager @Inject constructor() {
     )
     val compressionMetrics: StateFlow<CompressionMetrics> = _compressionMetrics.asStateFlow()
     
-    private var compressionLevel: Int = 6
+    private var compressionLevel: Int = DEFAULT_COMPRESSION_LEVEL
     private var compressionThreshold: Long = 1024 // 1KB
     private var compressionAlgorithm: String = "GZIP"
     private var adaptiveCompression: Boolean = true
@@ -179,22 +288,36 @@ class CompressionManager @Inject constructor() {
         forceAlgorithm: CompressionAlgorithm? = null
     ): CompressionResult {
         if (data.size < MIN_COMPRESSION_SIZE) {
+            skippedBelowThreshold.incrementAndGet()
+            return uncompressedResult(data)
+        }
+        
+        // Already-compressed media and random-looking data are sent as-is
+        if (forceAlgorithm == null && !shouldCompress(CompressibilityEstimator.estimate(data), data.size.toLong())) {
+            return uncompressedResult(data)
+        }
+        
+        val algorithm = resolveAlgorithm(forceAlgorithm ?: determineOptimalAlgorithm(data.size.toLong(), dataType))
+        
+        val startTime = System.nanoTime()
+        val payload = performCompression(data, algorithm)
+        val compressionNanos = System.nanoTime() - startTime
+        val compressionTime = compressionNanos / 1_000_000L
+        codecProfiles[algorithm]?.recordCompression(data.size, compressionNanos, payload.size.toDouble() / data.size)
+        
+        // Ship uncompressed or incompressible data as-is rather than paying for a frame
+        if (algorithm == CompressionAlgorithm.NONE || payload.size + CompressionFrame.HEADER_SIZE >= data.size) {
             return CompressionResult(
                 compressedData = data,
                 originalSize = data.size.toLong(),
                 compressedSize = data.size.toLong(),
                 compressionRatio = 1.0,
-                compressionTime = 0L,
+                compressionTime = compressionTime,
                 algorithm = CompressionAlgorithm.NONE,
-                efficiency = 1.0
+                efficiency = 0.0
             )
         }
-        
-        val algorithm = forceAlgorithm ?: determineOptimalAlgorithm(data, dataType)
-        
-        val startTime = System.currentTimeMillis()
-        val compressedData = performCompression(data, algorithm)
-        val compressionTime = System.currentTimeMillis() - startTime
+        val compressedData = CompressionFrame.wrap(algorithm, data.size, payload)
         
         val compressionRatio = compressedData.size.toDouble() / data.size
         val efficiency = calculateCompressionEfficiency(compressionRatio, compressionTime, algorithm)
@@ -220,33 +343,265 @@ class CompressionManager @Inject constructor() {
     }
     
     /**
-     * Decompress data
+     * Decompress data. Framed payloads from [compress] carry their codec, so
+     * [algorithm] is only needed for unframed data (raw, or from older senders).
+     * An explicit [CompressionAlgorithm.NONE] returns the data untouched: that
+     * is how [compress] tags payloads it passed through, and those may start
+     * with a frame or GZIP magic of their own. The format is sniffed only when
+     * [algorithm] is null.
      */
     suspend fun decompress(
         compressedData: ByteArray,
-        algorithm: CompressionAlgorithm
+        algorithm: CompressionAlgorithm? = null
     ): ByteArray {
-        val startTime = System.currentTimeMillis()
-        val decompressedData = performDecompression(compressedData, algorithm)
-        val decompressionTime = System.currentTimeMillis() - startTime
+        if (algorithm == CompressionAlgorithm.NONE) return compressedData
+        
+        val header = CompressionFrame.parse(compressedData)
+        val startTime = System.nanoTime()
+        val decompressedData = if (header?.dictionaryId != null) {
+            val dictionary = getDictionary(header.dictionaryId)
+                ?: throw IOException("Unknown compression dictionary ${header.dictionaryId}")
+            DeflateCodec.decompressWithDictionary(
+                compressedData,
+                header.size,
+                compressedData.size - header.size,
+                header.originalLength,
+                dictionary
+            )
+        } else if (header != null) {
+            val codec = CompressionCodec.forAlgorithm(header.algorithm)
+                ?: throw IOException("No codec for ${header.algorithm.name} frame")
+            codec.decompress(
+                compressedData,
+                header.size,
+                compressedData.size - header.size,
+                header.originalLength
+            )
+        } else {
+            performLegacyDecompression(compressedData, algorithm ?: sniffLegacyAlgorithm(compressedData))
+        }
+        val decompressionNanos = System.nanoTime() - startTime
+        header?.let { codecProfiles[it.algorithm]?.recordDecompression(decompressedData.size, decompressionNanos) }
         
         // Update metrics
         totalDecompressions.incrementAndGet()
-        totalDecompressionTime.addAndGet(decompressionTime)
+        totalDecompressionTime.addAndGet(decompressionNanos / 1_000_000L)
         
         Log.d(TAG, "Decompressed ${compressedData.size} bytes to ${decompressedData.size} bytes")
         
         return decompressedData
     }
     
+    /**
+     * Compresses a small payload against a preset dictionary the receiver
+     * already holds. Falls back to [compress] when the dictionary is unknown
+     * or the result would not be smaller.
+     */
+    suspend fun compressWithDictionary(data: ByteArray, dictionaryId: Int): CompressionResult {
+        val dictionary = getDictionary(dictionaryId)
+        if (dictionary == null || data.size < DICTIONARY_MIN_PAYLOAD) {
+            return compress(data, DataType.JSON)
+        }
+        
+        val startTime = System.nanoTime()
+        val payload = DeflateCodec.compressWithDictionary(data, compressionLevel, dictionary)
+        val compressionTime = (System.nanoTime() - startTime) / 1_000_000L
+        if (payload.size + CompressionFrame.DICTIONARY_HEADER_SIZE >= data.size) {
+            return compress(data, DataType.JSON)
+        }
+        
+        val compressedData = CompressionFrame.wrapWithDictionary(dictionary.id, data.size, payload)
+        val compressionRatio = compressedData.size.toDouble() / data.size
+        totalCompressions.incrementAndGet()
+        totalCompressionTime.addAndGet(compressionTime)
+        totalBandwidthSaved.addAndGet((data.size - compressedData.size).toLong())
+        recordCompressionStats(CompressionAlgorithm.DEFLATE, compressionRatio)
+        
+        return CompressionResult(
+            compressedData = compressedData,
+            originalSize = data.size.toLong(),
+            compressedSize = compressedData.size.toLong(),
+            compressionRatio = compressionRatio,
+            compressionTime = compressionTime,
+            algorithm = CompressionAlgorithm.DEFLATE,
+            efficiency = calculateCompressionEfficiency(compressionRatio, compressionTime, CompressionAlgorithm.DEFLATE)
+        )
+    }
+    
+    /**
+     * Feeds an outgoing payload to the dictionary trainer. The first dictionary
+     * is trained once enough samples exist and is retrained periodically;
+     * each new one is published on [activeDictionary] so it can be shared.
+     */
+    fun recordDictionarySample(payload: ByteArray) {
+        val shouldTrain = synchronized(dictionaryTrainer) {
+            dictionaryTrainer.addSample(payload)
+            samplesSinceTraining++
+            val threshold = if (_activeDictionary.value == null) DICTIONARY_MIN_SAMPLES else DICTIONARY_RETRAIN_INTERVAL
+            if (samplesSinceTraining >= threshold) {
+                samplesSinceTraining = 0
+                true
+            } else false
+        }
+        if (shouldTrain) {
+            scope.launch { trainDictionary() }
+        }
+    }
+    
+    /**
+     * Trains a dictionary from the recorded samples and makes it active.
+     * Returns null when the samples share too little to be worth one.
+     */
+    fun trainDictionary(): CompressionDictionary? {
+        val dictionary = synchronized(dictionaryTrainer) {
+            dictionaryTrainer.train(DICTIONARY_MAX_SIZE)
+        } ?: return null
+        if (dictionary.id == _activeDictionary.value?.id) return dictionary
+        
+        registerDictionary(dictionary)
+        _activeDictionary.value = dictionary
+        Log.i(TAG, "Trained ${dictionary.size} byte compression dictionary ${dictionary.id}")
+        return dictionary
+    }
+    
+    /** Makes a dictionary received from a peer available for decompression */
+    fun registerDictionary(dictionary: CompressionDictionary) {
+        dictionaries[dictionary.id] = dictionary
+    }
+    
+    fun getDictionary(dictionaryId: Int): CompressionDictionary? = dictionaries[dictionaryId]
+    
+    /**
+     * Strategy for a payload of [sizeBytes]. Payloads above the streaming
+     * threshold (or of unknown size, -1) are compressed in fixed-size chunks.
+     */
+    fun getCompressionStrategy(sizeBytes: Long, dataType: DataType = DataType.UNKNOWN): CompressionStrategy {
+        val streaming = sizeBytes < 0 || sizeBytes > STREAMING_THRESHOLD
+        val algorithm = resolveAlgorithm(determineOptimalAlgorithm(
+            if (streaming) DEFAULT_CHUNK_SIZE.toLong() else sizeBytes,
+            dataType
+        ))
+        return CompressionStrategy(
+            algorithm = algorithm,
+            compressionLevel = compressionLevel,
+            enableStreaming = streaming,
+            chunkSize = DEFAULT_CHUNK_SIZE,
+            reason = "${algorithm.name} on ${currentNetworkCondition.name} network" +
+                if (streaming) ", ${DEFAULT_CHUNK_SIZE / 1024}KB chunks" else ""
+        )
+    }
+    
+    /**
+     * Wraps [output] so everything written to it is compressed chunk by chunk.
+     * Closing the returned stream finishes the stream and closes [output].
+     */
+    fun compressingOutputStream(
+        output: OutputStream,
+        strategy: CompressionStrategy = getCompressionStrategy(-1L)
+    ): ChunkedCompressionOutputStream {
+        val algorithm = resolveAlgorithm(strategy.algorithm)
+        val codec = CompressionCodec.forAlgorithm(algorithm)
+            ?: throw IOException("No codec for ${algorithm.name}")
+        val profile = codecProfiles[algorithm]
+        return ChunkedCompressionOutputStream(
+            out = output,
+            codec = codec,
+            algorithm = algorithm,
+            level = strategy.compressionLevel,
+            bufferPool = bufferPool(strategy.chunkSize.coerceIn(1024, CompressionStreamFormat.MAX_CHUNK_SIZE))
+        ) { originalLength, payloadLength, nanos ->
+            profile?.recordCompression(originalLength, nanos, payloadLength.toDouble() / originalLength)
+        }
+    }
+    
+    /**
+     * Decodes a stream written by [compressingOutputStream] without buffering
+     * more than one chunk. Closing it closes [input].
+     */
+    fun decompressingInputStream(input: InputStream): InputStream {
+        return ChunkedDecompressionInputStream(input, ::bufferPool)
+    }
+    
+    /**
+     * Compresses [input] into [output] in chunks; neither side is held in
+     * memory. Both streams are closed when done.
+     */
+    suspend fun compressStream(
+        input: InputStream,
+        output: OutputStream,
+        dataType: DataType = DataType.UNKNOWN,
+        sizeHint: Long = -1L
+    ): StreamCompressionResult = withContext(Dispatchers.IO) {
+        val source = if (input.markSupported()) input else java.io.BufferedInputStream(input, STREAM_SNIFF_SIZE)
+        val strategy = applyEstimate(getCompressionStrategy(sizeHint, dataType), sniff(source), sizeHint)
+        val startTime = System.nanoTime()
+        var chunks = 0
+        val compressing = compressingOutputStream(output, strategy)
+        source.use { source ->
+            compressing.use { sink ->
+                chunks = transfer(source, sink, strategy.chunkSize)
+            }
+        }
+        val compressionTime = (System.nanoTime() - startTime) / 1_000_000L
+        val ratio = if (compressing.bytesIn > 0) compressing.bytesOut.toDouble() / compressing.bytesIn else 1.0
+        
+        totalCompressions.incrementAndGet()
+        totalCompressionTime.addAndGet(compressionTime)
+        totalBandwidthSaved.addAndGet(compressing.bytesIn - compressing.bytesOut)
+        recordCompressionStats(strategy.algorithm, ratio)
+        
+        Log.d(TAG, "Stream-compressed ${compressing.bytesIn} bytes to ${compressing.bytesOut} bytes using ${strategy.algorithm.name}")
+        
+        StreamCompressionResult(
+            originalSize = compressing.bytesIn,
+            compressedSize = compressing.bytesOut,
+            compressionRatio = ratio,
+            compressionTime = compressionTime,
+            algorithm = strategy.algorithm,
+            chunkCount = chunks
+        )
+    }
+    
+    /**
+     * OkHttp body that compresses [source] while it is written to the socket,
+     * so large uploads are never materialized. [source] is called once per
+     * write, which lets OkHttp retry the request. Content length is unknown,
+     * so the body is sent chunked.
+     */
+    fun compressedRequestBody(
+        contentType: MediaType?,
+        dataType: DataType = DataType.BINARY,
+        sizeHint: Long = -1L,
+        source: () -> Source
+    ): RequestBody {
+        val strategy = getCompressionStrategy(sizeHint, dataType)
+        return object : RequestBody() {
+            override fun contentType(): MediaType? = contentType
+            
+            override fun contentLength(): Long = -1L
+            
+            override fun writeTo(sink: BufferedSink) {
+                source().buffer().use { input ->
+                    input.request(STREAM_SNIFF_SIZE.toLong())
+                    val head = input.peek().readByteArray(minOf(input.buffer.size, STREAM_SNIFF_SIZE.toLong()))
+                    val chosen = applyEstimate(strategy, head, sizeHint)
+                    // The sink belongs to OkHttp, so finish the chunked stream without closing it
+                    val compressing = compressingOutputStream(NonClosingOutputStream(sink.outputStream()), chosen)
+                    compressing.use { output -> transfer(input.inputStream(), output, chosen.chunkSize) }
+                }
+            }
+        }
+    }
+    
     /**
      * Analyze data characteristics for optimal compression
      */
     fun analyzeDataCharacteristics(data: ByteArray): DataType {
         if (data.isEmpty()) return DataType.UNKNOWN
+        CompressibilityEstimator.sniffFormat(data)?.let { return it.dataType }
         
         val sampleSize = minOf(data.size, COMPRESSION_SAMPLE_SIZE)
-        val sample = data.take(sampleSize).toByteArray()
+        val sample = data.copyOf(sampleSize)
         
         // Check for text patterns
         val textRatio = sample.count { it in 32..126 || it in listOf<Byte>(9, 10, 13) }.toDouble() / sampleSize
@@ -259,7 +614,7 @@ class CompressionManager @Inject constructor() {
         }
         
         // Check entropy for binary vs text
-        val entropy = calculateEntropy(sample)
+        val entropy = CompressibilityEstimator.sampledEntropy(data)
         return if (entropy > 6.0) DataType.BINARY else DataType.UNKNOWN
     }
     
@@ -315,88 +670,94 @@ class CompressionManager @Inject constructor() {
         }
     }
     
-    private fun determineOptimalAlgorithm(data: ByteArray, dataType: DataType): CompressionAlgorithm {
-        // Consider data type preferences
-        var preferredAlgorithm = dataType.preferredAlgorithm
+    /**
+     * Picks the codec with the lowest estimated end-to-end cost for this payload:
+     * compress time + transfer time at the current bandwidth + decompress time,
+     * using each codec's measured throughput and ratio.
+     */
+    private fun determineOptimalAlgorithm(sizeBytes: Long, dataType: DataType): CompressionAlgorithm {
+        val profiles = codecProfiles.filterKeys { it != CompressionAlgorithm.BROTLI }
         
-        // Consider network conditions
-        preferredAlgorithm = when (currentNetworkCondition) {
-            NetworkCondition.EXCELLENT -> CompressionAlgorithm.NONE
-            NetworkCondition.GOOD -> CompressionAlgorithm.LZ4
-            NetworkCondition.AVERAGE -> CompressionAlgorithm.GZIP
-            NetworkCondition.POOR -> CompressionAlgorithm.BROTLI
-            NetworkCondition.VERY_POOR -> CompressionAlgorithm.BROTLI
+        // Periodically try the least recently measured codec so its numbers stay current
+        if (adaptiveSelections.incrementAndGet() % EXPLORATION_INTERVAL == 0L) {
+            profiles.entries
+                .filter { it.key != CompressionAlgorithm.NONE }
+                .minByOrNull { it.value.lastMeasured }
+                ?.let { return it.key }
         }
         
-        return preferredAlgorithm
-    }
-    
-    private fun performCompression(data: ByteArray, algorithm: CompressionAlgorithm): ByteArray {
-        return when (algorithm) {
-            CompressionAlgorithm.NONE -> data
-            CompressionAlgorithm.GZIP -> compressGzip(data)
-            CompressionAlgorithm.DEFLATE -> compressDeflate(data)
-            CompressionAlgorithm.LZ4 -> compressLZ4(data)
-            CompressionAlgorithm.BROTLI -> compressBrotli(data)
-        }
-    }
-    
-    private fun performDecompression(data: ByteArray, algorithm: CompressionAlgorithm): ByteArray {
-        return when (algorithm) {
-            CompressionAlgorithm.NONE -> data
-            CompressionAlgorithm.GZIP -> decompressGzip(data)
-            CompressionAlgorithm.DEFLATE -> decompressDeflate(data)
-            CompressionAlgorithm.LZ4 -> decompressLZ4(data)
-            CompressionAlgorithm.BROTLI -> decompressBrotli(data)
-        }
-    }
-    
-    // Compression implementations
-    private fun compressGzip(data: ByteArray): ByteArray {
-        val outputStream = ByteArrayOutputStream()
-        GZIPOutputStream(outputStream).use { gzipStream ->
-            gzipStream.write(data)
-        }
-        return outputStream.toByteArray()
+        val megabytes = sizeBytes / 1_000_000.0
+        val bandwidthMBps = currentNetworkCondition.bandwidthMbps / 8.0
+        
+        return profiles.minByOrNull { (algorithm, profile) ->
+            if (algorithm == CompressionAlgorithm.NONE) {
+                megabytes / bandwidthMBps
+            } else {
+                // Without measurements on this payload's kind, trust the data type's expectation
+                val ratio = if (profile.samples == 0L) dataType.expectedCompressionRatio else profile.compressionRatio
+                megabytes / profile.compressionMBps +
+                    megabytes * ratio / bandwidthMBps +
+                    megabytes / profile.decompressionMBps
+            }
+        }?.key ?: CompressionAlgorithm.NONE
     }
     
-    private fun decompressGzip(data: ByteArray): ByteArray {
-        val inputStream = ByteArrayInputStream(data)
-        return GZIPInputStream(inputStream).use { gzipStream ->
-            gzipStream.readBytes()
-        }
+    private fun resolveAlgorithm(requested: CompressionAlgorithm): CompressionAlgorithm {
+        if (requested.isSupported) return requested
+        Log.w(TAG, "${requested.name} has no codec on this platform, using GZIP")
+        return CompressionAlgorithm.GZIP
     }
     
-    private fun compressDeflate(data: ByteArray): ByteArray {
-        val outputStream = ByteArrayOutputStream()
-        DeflaterOutputStream(outputStream).use { deflateStream ->
-            deflateStream.write(data)
+    // Copies through one pooled buffer and returns the number of full or partial chunks moved
+    private fun transfer(input: InputStream, output: OutputStream, chunkSize: Int): Int {
+        val pool = bufferPool(chunkSize.coerceIn(1024, CompressionStreamFormat.MAX_CHUNK_SIZE))
+        val buffer = pool.acquire()
+        var total = 0L
+        try {
+            while (true) {
+                val read = input.read(buffer)
+                if (read < 0) break
+                output.write(buffer, 0, read)
+                total += read
+            }
+        } finally {
+            pool.release(buffer)
         }
-        return outputStream.toByteArray()
+        return ((total + pool.bufferSize - 1) / pool.bufferSize).toInt()
     }
     
-    private fun decompressDeflate(data: ByteArray): ByteArray {
-        val inputStream = ByteArrayInputStream(data)
-        return InflaterInputStream(inputStream).use { inflateStream ->
-            inflateStream.readBytes()
-        }
+    // Pools for the chunk sizes in use; odd sizes from remote streams are not retained
+    private fun bufferPool(size: Int): ByteArrayPool {
+        bufferPools[size]?.let { return it }
+        if (bufferPools.size >= MAX_BUFFER_POOLS) return ByteArrayPool(size, maxPooled = 0)
+        return bufferPools.getOrPut(size) { ByteArrayPool(size) }
     }
     
-    // Simplified implementations for LZ4 and Brotli
-    private fun compressLZ4(data: ByteArray): ByteArray {
-        return compressDeflate(data) // Fast deflate as placeholder
+    private class NonClosingOutputStream(out: OutputStream) : java.io.FilterOutputStream(out) {
+        override fun write(b: ByteArray, off: Int, len: Int) = out.write(b, off, len)
+        override fun close() = out.flush()
     }
     
-    private fun decompressLZ4(data: ByteArray): ByteArray {
-        return decompressDeflate(data)
+    private fun performCompression(data: ByteArray, algorithm: CompressionAlgorithm): ByteArray {
+        val codec = CompressionCodec.forAlgorithm(algorithm)
+            ?: throw IOException("No codec for ${algorithm.name}")
+        return codec.compress(data, compressionLevel)
     }
     
-    private fun compressBrotli(data: ByteArray): ByteArray {
-        return compressGzip(data) // High compression GZIP as placeholder
+    // Unframed input of unknown format: a raw GZIP stream is recognised by its magic
+    private fun sniffLegacyAlgorithm(data: ByteArray): CompressionAlgorithm {
+        val isGzip = data.size >= 2 && data[0] == 0x1f.toByte() && data[1] == 0x8b.toByte()
+        return if (isGzip) CompressionAlgorithm.GZIP else CompressionAlgorithm.NONE
     }
     
-    private fun decompressBrotli(data: ByteArray): ByteArray {
-        return decompressGzip(data)
+    private fun performLegacyDecompression(data: ByteArray, algorithm: CompressionAlgorithm): ByteArray {
+        return when (algorithm) {
+            CompressionAlgorithm.NONE -> data
+            CompressionAlgorithm.GZIP, CompressionAlgorithm.BROTLI ->
+                java.util.zip.GZIPInputStream(data.inputStream()).use { it.readBytes() }
+            CompressionAlgorithm.DEFLATE, CompressionAlgorithm.LZ4 ->
+                java.util.zip.InflaterInputStream(data.inputStream()).use { it.readBytes() }
+        }
     }
     
     private fun calculateCompressionEfficiency(
@@ -406,28 +767,62 @@ class CompressionManager @Inject constructor() {
     ): Double {
         val timeEfficiency = 1.0 / (1.0 + compressionTime / 1000.0)
         val ratioEfficiency = 1.0 - compressionRatio
-        val algorithmBonus = algorithm.compressionSpeed
+        val profile = codecProfiles[algorithm]
+        val fastestMBps = codecProfiles.values.maxOfOrNull { it.compressionMBps } ?: 1.0
+        val algorithmBonus = if (profile != null) profile.compressionMBps / fastestMBps else 0.0
         
         return (timeEfficiency * 0.3 + ratioEfficiency * 0.5 + algorithmBonus * 0.2).coerceIn(0.0, 1.0)
     }
     
-    private fun calculateEntropy(data: ByteArray): Double {
-        val frequency = IntArray(256)
-        data.forEach { byte ->
-            frequency[byte.toInt() and 0xFF]++
+    // Reads the head of a mark-supporting stream without consuming it
+    private fun sniff(input: InputStream): ByteArray {
+        val head = ByteArray(STREAM_SNIFF_SIZE)
+        input.mark(STREAM_SNIFF_SIZE)
+        var length = 0
+        try {
+            while (length < head.size) {
+                val read = input.read(head, length, head.size - length)
+                if (read < 0) break
+                length += read
+            }
+        } finally {
+            input.reset()
         }
-        
-        var entropy = 0.0
-        val length = data.size.toDouble()
-        
-        frequency.forEach { count ->
-            if (count > 0) {
-                val probability = count / length
-                entropy -= probability * (kotlin.math.ln(probability) / kotlin.math.ln(2.0))
+        return head.copyOf(length)
+    }
+    
+    // Streams whose head is already compressed are still framed, but every chunk is stored
+    private fun applyEstimate(strategy: CompressionStrategy, head: ByteArray, sizeHint: Long): CompressionStrategy {
+        if (strategy.algorithm == CompressionAlgorithm.NONE || head.isEmpty()) return strategy
+        val estimate = CompressibilityEstimator.estimate(head)
+        if (shouldCompress(estimate, sizeHint)) return strategy
+        return strategy.copy(algorithm = CompressionAlgorithm.NONE, reason = "Skipped: ${estimate.decision.name}")
+    }
+    
+    private fun uncompressedResult(data: ByteArray) = CompressionResult(
+        compressedData = data,
+        originalSize = data.size.toLong(),
+        compressedSize = data.size.toLong(),
+        compressionRatio = 1.0,
+        compressionTime = 0L,
+        algorithm = CompressionAlgorithm.NONE,
+        efficiency = 1.0
+    )
+    
+    // Applies an estimate and counts the decision
+    private fun shouldCompress(estimate: CompressibilityEstimator.Estimate, sizeBytes: Long): Boolean {
+        when (estimate.decision) {
+            CompressibilityEstimator.Decision.COMPRESS -> {
+                payloadsCompressed.incrementAndGet()
+                return true
             }
+            CompressibilityEstimator.Decision.SKIP_KNOWN_FORMAT -> skippedKnownFormat.incrementAndGet()
+            CompressibilityEstimator.Decision.SKIP_HIGH_ENTROPY -> skippedHighEntropy.incrementAndGet()
         }
-        
-        return entropy
+        if (sizeBytes > 0) skippedBytes.addAndGet(sizeBytes)
+        Log.d(TAG, "Skipping compression: ${estimate.decision} ${estimate.format?.name ?: ""} " +
+            "(%.2f bits/byte)".format(estimate.entropyBitsPerByte))
+        return false
     }
     
     private fun recordCompressionStats(algorithm: CompressionAlgorithm, ratio: Double) {
@@ -455,6 +850,7 @@ class CompressionManager @Inject constructor() {
             ?.average() ?: 1.0
         
         val algorithmUsage = compressionStats.mapValues { it.value.size.toLong() }
+        val poolStats = CodecPool.stats()
         
         val efficiency = if (totalCompr > 0) {
             1.0 - avgCompressionRatio
@@ -468,10 +864,37 @@ class CompressionManager @Inject constructor() {
             averageDecompressionTime = avgDecompressionTime,
             bandwidthSaved = totalBandwidthSaved.get(),
             compressionEfficiency = efficiency,
-            algorithmUsage = algorithmUsage
+            algorithmUsage = algorithmUsage,
+            codecThroughput = codecProfiles
+                .filterValues { it.samples > 0 }
+                .mapValues { it.value.snapshot() },
+            codecPoolingEnabled = poolStats.poolingEnabled,
+            nativeAllocationsPerOperation = poolStats.nativeAllocationsPerOperation,
+            bufferAllocationsPerOperation = poolStats.bufferAllocationsPerOperation,
+            unpooledAllocationsPerOperation = unpooledAllocationsPerOperation,
+            payloadsCompressed = payloadsCompressed.get(),
+            skippedBelowThreshold = skippedBelowThreshold.get(),
+            skippedKnownFormat = skippedKnownFormat.get(),
+            skippedHighEntropy = skippedHighEntropy.get(),
+            skippedBytes = skippedBytes.get()
         )
     }
 
+    /**
+     * Switches Deflater/Inflater and scratch-buffer pooling. Counters restart so
+     * the metrics describe only the new mode; turning pooling back on keeps the
+     * unpooled rate for comparison.
+     */
+    fun setCodecPoolingEnabled(enabled: Boolean) {
+        val stats = CodecPool.stats()
+        if (!stats.poolingEnabled && stats.operations > 0) {
+            unpooledAllocationsPerOperation = stats.nativeAllocationsPerOperation + stats.bufferAllocationsPerOperation
+        }
+        CodecPool.poolingEnabled = enabled
+        CodecPool.resetStats()
+        Log.i(TAG, "Codec pooling ${if (enabled) "enabled" else "disabled"}")
+    }
+    
     fun setCompressionLevel(level: Int) {
         compressionLevel = level
     }
@@ -0,0 +1,284 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CompressionManager.CompressionAlgorithm
+import java.io.EOFException
+import java.io.FilterOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Phase 4.2: Chunked Compression Streams
+ *
+ * Streaming counterpart of [CompressionFrame]. Input is cut into fixed-size
+ * chunks, each compressed on its own, so memory use is bounded by the chunk
+ * size no matter how large the payload is:
+ *
+ *     "SBS" | version (1) | chunk size (4)
+ *     chunk*: codec id (1) | original length (4) | payload length (4) | payload
+ *     end:    0xFF
+ *
+ * Every chunk names its own codec, so a chunk that does not shrink is stored
+ * raw (NONE) instead of growing the stream.
+ */
+object CompressionStreamFormat {
+    const val HEADER_SIZE = 8
+    const val CHUNK_HEADER_SIZE = 9
+    const val END_OF_STREAM = 0xFF
+    const val MAX_CHUNK_SIZE = 4 * 1024 * 1024
+    private const val VERSION: Byte = 1
+    private val MAGIC = byteArrayOf(0x53, 0x42, 0x53) // "SBS"
+
+    fun writeHeader(out: OutputStream, chunkSize: Int) {
+        val header = ByteArray(HEADER_SIZE)
+        MAGIC.copyInto(header)
+        header[3] = VERSION
+        writeInt(header, 4, chunkSize)
+        out.write(header)
+    }
+
+    /** Reads the stream header and returns its chunk size */
+    fun readHeader(input: InputStream): Int {
+        val header = ByteArray(HEADER_SIZE)
+        readFully(input, header, 0, HEADER_SIZE)
+        if (header[0] != MAGIC[0] || header[1] != MAGIC[1] || header[2] != MAGIC[2] || header[3] != VERSION) {
+            throw IOException("Not a chunked compression stream")
+        }
+        val chunkSize = readInt(header, 4)
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw IOException("Invalid chunk size $chunkSize")
+        }
+        return chunkSize
+    }
+
+    fun writeInt(target: ByteArray, offset: Int, value: Int) {
+        target[offset] = (value ushr 24).toByte()
+        target[offset + 1] = (value ushr 16).toByte()
+        target[offset + 2] = (value ushr 8).toByte()
+        target[offset + 3] = value.toByte()
+    }
+
+    fun readInt(source: ByteArray, offset: Int): Int {
+        return ((source[offset].toInt() and 0xFF) shl 24) or
+            ((source[offset + 1].toInt() and 0xFF) shl 16) or
+            ((source[offset + 2].toInt() and 0xFF) shl 8) or
+            (source[offset + 3].toInt() and 0xFF)
+    }
+
+    fun readFully(input: InputStream, target: ByteArray, offset: Int, length: Int) {
+        var position = 0
+        while (position < length) {
+            val read = input.read(target, offset + position, length - position)
+            if (read < 0) throw EOFException("Stream ended after $position of $length bytes")
+            position += read
+        }
+    }
+}
+
+/**
+ * Fixed-size byte buffers recycled between streams, so a multi-MB upload
+ * reuses a handful of chunk buffers instead of allocating per chunk.
+ */
+class ByteArrayPool(
+    val bufferSize: Int,
+    private val maxPooled: Int = 8
+) {
+    private val buffers = ConcurrentLinkedQueue<ByteArray>()
+    private val pooled = AtomicInteger(0)
+
+    fun acquire(): ByteArray {
+        val buffer = buffers.poll() ?: return ByteArray(bufferSize)
+        pooled.decrementAndGet()
+        return buffer
+    }
+
+    fun release(buffer: ByteArray) {
+        if (buffer.size != bufferSize) return
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer)
+        } else {
+            pooled.decrementAndGet()
+        }
+    }
+}
+
+/**
+ * Compresses everything written to it into the chunked stream format.
+ * Closing the stream writes the end marker and closes [out].
+ */
+class ChunkedCompressionOutputStream(
+    out: OutputStream,
+    private val codec: CompressionCodec,
+    private val algorithm: CompressionAlgorithm,
+    private val level: Int,
+    private val bufferPool: ByteArrayPool,
+    private val onChunk: (originalLength: Int, payloadLength: Int, nanos: Long) -> Unit = { _, _, _ -> }
+) : FilterOutputStream(out) {
+
+    private val chunk = bufferPool.acquire()
+    private val chunkHeader = ByteArray(CompressionStreamFormat.CHUNK_HEADER_SIZE)
+    private var chunkPosition = 0
+    private var closed = false
+
+    var bytesIn = 0L
+        private set
+    var bytesOut = CompressionStreamFormat.HEADER_SIZE.toLong()
+        private set
+
+    init {
+        CompressionStreamFormat.writeHeader(out, chunk.size)
+    }
+
+    override fun write(b: Int) {
+        ensureOpen()
+        chunk[chunkPosition++] = b.toByte()
+        bytesIn++
+        if (chunkPosition == chunk.size) flushChunk()
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        ensureOpen()
+        var offset = off
+        var remaining = len
+        while (remaining > 0) {
+            val count = minOf(remaining, chunk.size - chunkPosition)
+            System.arraycopy(b, offset, chunk, chunkPosition, count)
+            chunkPosition += count
+            offset += count
+            remaining -= count
+            bytesIn += count
+            if (chunkPosition == chunk.size) flushChunk()
+        }
+    }
+
+    /** Emits the partial chunk so far; a smaller final chunk is valid */
+    override fun flush() {
+        ensureOpen()
+        flushChunk()
+        out.flush()
+    }
+
+    override fun close() {
+        if (closed) return
+        try {
+            flushChunk()
+            out.write(CompressionStreamFormat.END_OF_STREAM)
+            bytesOut++
+            out.flush()
+        } finally {
+            closed = true
+            bufferPool.release(chunk)
+            out.close()
+        }
+    }
+
+    private fun flushChunk() {
+        if (chunkPosition == 0) return
+
+        val startTime = System.nanoTime()
+        val compressed = if (algorithm != CompressionAlgorithm.NONE) {
+            codec.compress(chunk, 0, chunkPosition, level).takeIf { it.size < chunkPosition }
+        } else null
+        val chunkAlgorithm = if (compressed != null) algorithm else CompressionAlgorithm.NONE
+        val payload = compressed ?: chunk
+        val payloadLength = compressed?.size ?: chunkPosition
+        if (algorithm != CompressionAlgorithm.NONE) {
+            onChunk(chunkPosition, payloadLength, System.nanoTime() - startTime)
+        }
+
+        chunkHeader[0] = chunkAlgorithm.frameId.toByte()
+        CompressionStreamFormat.writeInt(chunkHeader, 1, chunkPosition)
+        CompressionStreamFormat.writeInt(chunkHeader, 5, payloadLength)
+        out.write(chunkHeader)
+        out.write(payload, 0, payloadLength)
+
+        bytesOut += CompressionStreamFormat.CHUNK_HEADER_SIZE + payloadLength
+        chunkPosition = 0
+    }
+
+    private fun ensureOpen() {
+        if (closed) throw IOException("Stream closed")
+    }
+}
+
+/**
+ * Decodes a chunked stream produced by [ChunkedCompressionOutputStream],
+ * one chunk at a time.
+ */
+class ChunkedDecompressionInputStream(
+    input: InputStream,
+    bufferPool: (Int) -> ByteArrayPool
+) : InputStream() {
+
+    private val source = input
+    private val chunkSize = CompressionStreamFormat.readHeader(input)
+    // Chunks never store more than chunkSize payload bytes (incompressible ones go raw)
+    private val chunkPool = bufferPool(chunkSize)
+    private var chunk: ByteArray? = chunkPool.acquire()
+    private var payload: ByteArray? = chunkPool.acquire()
+    private val chunkHeader = ByteArray(CompressionStreamFormat.CHUNK_HEADER_SIZE)
+    private var chunkLength = 0
+    private var chunkPosition = 0
+    private var finished = false
+
+    override fun read(): Int {
+        if (!fill()) return -1
+        return currentChunk()[chunkPosition++].toInt() and 0xFF
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (len == 0) return 0
+        if (!fill()) return -1
+        val count = minOf(len, chunkLength - chunkPosition)
+        System.arraycopy(currentChunk(), chunkPosition, b, off, count)
+        chunkPosition += count
+        return count
+    }
+
+    override fun available(): Int = if (chunk == null) 0 else chunkLength - chunkPosition
+
+    override fun close() {
+        chunk?.let { chunkPool.release(it) }
+        payload?.let { chunkPool.release(it) }
+        chunk = null
+        payload = null
+        source.close()
+    }
+
+    private fun currentChunk(): ByteArray = chunk ?: throw IOException("Stream closed")
+
+    // Decodes the next chunk once the current one is consumed; false at end of stream
+    private fun fill(): Boolean {
+        if (chunkPosition < chunkLength) return true
+        if (finished) return false
+        val target = currentChunk()
+        val buffer = payload ?: throw IOException("Stream closed")
+
+        val marker = source.read()
+        if (marker < 0) throw EOFException("Chunked stream ended without an end marker")
+        if (marker == CompressionStreamFormat.END_OF_STREAM) {
+            finished = true
+            return false
+        }
+
+        chunkHeader[0] = marker.toByte()
+        CompressionStreamFormat.readFully(source, chunkHeader, 1, CompressionStreamFormat.CHUNK_HEADER_SIZE - 1)
+        val algorithm = CompressionAlgorithm.fromFrameId(marker)
+            ?: throw IOException("Unknown codec id $marker in chunked stream")
+        val codec = CompressionCodec.forAlgorithm(algorithm)
+            ?: throw IOException("No codec for ${algorithm.name} chunk")
+        val originalLength = CompressionStreamFormat.readInt(chunkHeader, 1)
+        val payloadLength = CompressionStreamFormat.readInt(chunkHeader, 5)
+        if (originalLength !in 1..chunkSize || payloadLength !in 1..buffer.size) {
+            throw IOException("Invalid chunk: $originalLength bytes from $payloadLength")
+        }
+
+        CompressionStreamFormat.readFully(source, buffer, 0, payloadLength)
+        codec.decompressInto(buffer, 0, payloadLength, target, originalLength)
+        chunkLength = originalLength
+        chunkPosition = 0
+        return true
+    }
+}
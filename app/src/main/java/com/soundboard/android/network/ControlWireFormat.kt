@@ -0,0 +1,218 @@
+package com.soundboard.android.network
+
+import com.google.gson.Gson
+import com.soundboard.android.network.model.BatchedSoundCommand
+import com.soundboard.android.network.model.PlayBatchCommand
+import com.soundboard.android.network.model.PlaySoundCommand
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.roundToInt
+
+/**
+ * Phase 4.2: Control Channel Wire Format
+ *
+ * Hot Socket.IO control messages and their two encodings. JSON is what the
+ * server has always accepted; the binary form is only used once the server
+ * has acknowledged it for the current connection.
+ *
+ * Binary frames go out as a Socket.IO binary attachment on [BINARY_EVENT]:
+ * - Header: [MARKER], message type, connection epoch.
+ * - Timestamps: zigzag varint delta from the previous frame's timestamp,
+ *   starting from the base timestamp sent during negotiation.
+ * - Button ids and counts: unsigned varints.
+ * - Volume: one byte, steps of 1/[VOLUME_STEPS] so 1.0 is exact.
+ * - Strings: varint length, then UTF-8.
+ */
+sealed class ControlMessage(val type: Int, val event: String) {
+    data class Play(val command: PlaySoundCommand) : ControlMessage(1, "play_sound")
+    data class PlayBatch(val batch: PlayBatchCommand) : ControlMessage(2, "play_batch")
+    data class Ping(val timestamp: Long, val healthCheck: Boolean) : ControlMessage(3, "ping")
+    data class Authenticate(val clientType: String, val version: String, val timestamp: Long) :
+        ControlMessage(4, "authenticate")
+    data class ClientInfo(val platform: String, val sdkVersion: Int, val connectionType: String, val timestamp: Long) :
+        ControlMessage(5, "client_info")
+}
+
+enum class WireFormat(val wireName: String) {
+    JSON("json"),
+    BINARY("binary-v1")
+}
+
+/**
+ * Binary encoder for one negotiated connection. Frames must be emitted in
+ * the order they were encoded, since each timestamp is a delta from the last.
+ */
+class ControlWireCodec(val epoch: Int, baseTimestamp: Long) {
+
+    companion object {
+        const val BINARY_EVENT = "control_bin"
+        const val MARKER = 0xB1
+        const val VOLUME_STEPS = 200f // One byte covers volumes 0.0 - 1.275
+        private const val ACTION_PLAY = 0
+        private const val ACTION_STOP = 1
+
+        /** The JSON payload each message has always been sent with */
+        fun jsonPayload(message: ControlMessage, gson: Gson): Any = when (message) {
+            is ControlMessage.Play -> gson.toJson(message.command)
+            is ControlMessage.PlayBatch -> gson.toJson(message.batch)
+            is ControlMessage.Ping -> if (message.healthCheck) {
+                JSONObject().apply {
+                    put("timestamp", message.timestamp)
+                    put("type", "health_check")
+                }
+            } else {
+                message.timestamp
+            }
+            is ControlMessage.Authenticate -> gson.toJson(mapOf(
+                "client_type" to message.clientType,
+                "version" to message.version,
+                "timestamp" to message.timestamp
+            ))
+            is ControlMessage.ClientInfo -> JSONObject().apply {
+                put("platform", message.platform)
+                put("version", message.sdkVersion)
+                put("connection_type", message.connectionType)
+                put("timestamp", message.timestamp)
+            }
+        }
+    }
+
+    private var lastTimestamp = baseTimestamp
+    private var buffer = ByteArray(64)
+    private var position = 0
+
+    fun encode(message: ControlMessage): ByteArray {
+        position = 0
+        writeByte(MARKER)
+        writeByte(message.type)
+        writeByte(epoch)
+        when (message) {
+            is ControlMessage.Play -> {
+                writeTimestamp(message.command.timestamp)
+                writeVarint(message.command.buttonId.toLong())
+                writeVolume(message.command.volume)
+                writeString(message.command.filePath)
+            }
+            is ControlMessage.PlayBatch -> {
+                writeTimestamp(message.batch.sentAt)
+                writeVarint(message.batch.commands.size.toLong())
+                message.batch.commands.forEach { writeBatchedCommand(it) }
+            }
+            is ControlMessage.Ping -> {
+                writeTimestamp(message.timestamp)
+                writeByte(if (message.healthCheck) 1 else 0)
+            }
+            is ControlMessage.Authenticate -> {
+                writeTimestamp(message.timestamp)
+                writeString(message.clientType)
+                writeString(message.version)
+            }
+            is ControlMessage.ClientInfo -> {
+                writeTimestamp(message.timestamp)
+                writeString(message.platform)
+                writeVarint(message.sdkVersion.toLong())
+                writeString(message.connectionType)
+            }
+        }
+        return buffer.copyOf(position)
+    }
+
+    private fun writeBatchedCommand(command: BatchedSoundCommand) {
+        val play = command.action == BatchedSoundCommand.ACTION_PLAY
+        writeByte(if (play) ACTION_PLAY else ACTION_STOP)
+        writeTimestamp(command.timestamp)
+        if (play) {
+            writeVarint((command.buttonId ?: 0).toLong())
+            writeVolume(command.volume ?: 1.0f)
+            writeString(command.filePath.orEmpty())
+        }
+    }
+
+    private fun writeTimestamp(timestamp: Long) {
+        val delta = timestamp - lastTimestamp
+        lastTimestamp = timestamp
+        writeVarint((delta shl 1) xor (delta shr 63)) // Zigzag: clocks can step backwards
+    }
+
+    private fun writeVolume(volume: Float) {
+        writeByte((volume * VOLUME_STEPS).roundToInt().coerceIn(0, 255))
+    }
+
+    private fun writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeVarint(bytes.size.toLong())
+        ensureCapacity(bytes.size)
+        System.arraycopy(bytes, 0, buffer, position, bytes.size)
+        position += bytes.size
+    }
+
+    private fun writeVarint(value: Long) {
+        var remaining = value
+        while (remaining and 0x7FL.inv() != 0L) {
+            writeByte(((remaining and 0x7F) or 0x80).toInt())
+            remaining = remaining ushr 7
+        }
+        writeByte(remaining.toInt())
+    }
+
+    private fun writeByte(value: Int) {
+        ensureCapacity(1)
+        buffer[position++] = value.toByte()
+    }
+
+    private fun ensureCapacity(extra: Int) {
+        if (position + extra > buffer.size) {
+            buffer = buffer.copyOf(maxOf(buffer.size * 2, position + extra))
+        }
+    }
+}
+
+/**
+ * Bytes and encode time per message, per format. While binary is active,
+ * every [SHADOW_SAMPLE_INTERVAL]th message is also encoded as JSON so both
+ * formats keep reporting on the same traffic.
+ */
+class ControlWireStats {
+
+    companion object {
+        const val SHADOW_SAMPLE_INTERVAL = 16
+    }
+
+    data class MessageStats(
+        val format: WireFormat,
+        val event: String,
+        val messages: Long,
+        val averageBytes: Double,
+        val averageEncodeMicros: Double
+    )
+
+    private class Counters {
+        val messages = AtomicLong(0)
+        val bytes = AtomicLong(0)
+        val encodeNanos = AtomicLong(0)
+    }
+
+    private val counters = ConcurrentHashMap<Pair<WireFormat, String>, Counters>()
+    private val binaryMessages = AtomicLong(0)
+
+    fun record(format: WireFormat, event: String, bytes: Int, encodeNanos: Long) {
+        val entry = counters.getOrPut(format to event) { Counters() }
+        entry.messages.incrementAndGet()
+        entry.bytes.addAndGet(bytes.toLong())
+        entry.encodeNanos.addAndGet(encodeNanos)
+    }
+
+    fun shouldShadowSample(): Boolean = binaryMessages.getAndIncrement() % SHADOW_SAMPLE_INTERVAL == 0L
+
+    fun snapshot(): List<MessageStats> = counters.map { (key, entry) ->
+        val messages = entry.messages.get()
+        MessageStats(
+            format = key.first,
+            event = key.second,
+            messages = messages,
+            averageBytes = if (messages > 0) entry.bytes.get().toDouble() / messages else 0.0,
+            averageEncodeMicros = if (messages > 0) entry.encodeNanos.get() / 1000.0 / messages else 0.0
+        )
+    }.sortedWith(compareBy({ it.event }, { it.format }))
+}
@@ -0,0 +1,466 @@
+package com.soundboard.android.network
+
+import android.util.Log
+import com.soundboard.android.network.CacheManager.CacheEntry
+import com.soundboard.android.network.CacheManager.CachePriority
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantLock
+import java.util.zip.CRC32
+import kotlin.concurrent.withLock
+
+/**
+ * Phase 4.2: Disk Cache Tier (L2)
+ *
+ * Second cache tier behind [CacheManager]'s heap cache, stored under the app
+ * cache dir as a set of append-only log segments:
+ *
+ * - Every write appends a self-checking record (header, key, tags, value),
+ *   whose checksum covers the header fields as well as the payload;
+ *   removals append a tombstone, so nothing is rewritten in place.
+ * - A compact in-memory index maps each key to its segment and value offset.
+ *   It is rebuilt by replaying the segments on [open], which is what lets the
+ *   cache survive process death. A torn record at the end of the last
+ *   segment is truncated away.
+ * - Segments stop growing once the next one is started. Each sealed segment
+ *   is memory-mapped once, so a hit is a copy out of the page cache; values
+ *   in the active segment are read positionally rather than remapping it.
+ * - When the log exceeds its byte budget the oldest segment is dropped.
+ *   Its live entries are copied forward while the log still fits the
+ *   budget; any that do not fit are evicted with it, highest priority and
+ *   newest entries being kept first.
+ *
+ * Only [ByteArray] and [String] values can be persisted; [isPersistable]
+ * tells the manager which entries to spill.
+ */
+class DiskCacheTier(private val directory: File) {
+
+    companion object {
+        private const val TAG = "DiskCacheTier"
+        private const val SEGMENT_SUFFIX = ".log"
+        private const val SEGMENT_MAX_BYTES = 4L * 1024L * 1024L // 4MB
+        private const val RECORD_MAGIC = 0x53424332 // "SBC2"
+        private const val TOMBSTONE = -1
+
+        // magic, key/tags/value lengths, createdAt, expiresAt, value type, priority, crc
+        private const val HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 8 + 1 + 1 + 4
+        private const val CRC_OFFSET = HEADER_BYTES - 4
+
+        private const val TYPE_BYTES: Byte = 1
+        private const val TYPE_STRING: Byte = 2
+
+        fun isPersistable(value: Any?): Boolean = value is ByteArray || value is String
+    }
+
+    // Index record; offsets point at the value bytes inside the segment file
+    private class IndexEntry(
+        val segmentId: Int,
+        val valueOffset: Long,
+        val valueLength: Int,
+        val createdAt: Long,
+        val expiresAt: Long,
+        val valueType: Byte,
+        val priority: Byte,
+        val tags: Set<String>
+    )
+
+    private class Segment(val id: Int, val file: File) {
+        @Volatile
+        var sealed = false // No more appends; safe to map at its final length
+        @Volatile
+        var mapped: MappedByteBuffer? = null
+        @Volatile
+        var length: Long = file.length()
+    }
+
+    private val lock = ReentrantLock()
+    private val index = ConcurrentHashMap<String, IndexEntry>()
+    private val segments = ConcurrentHashMap<Int, Segment>()
+    private var activeSegment: Segment? = null
+    private var activeChannel: FileChannel? = null
+    private var maxBytes = Long.MAX_VALUE
+
+    @Volatile
+    var isOpen = false
+        private set
+
+    val entryCount: Int
+        get() = index.size
+
+    fun sizeBytes(): Long = segments.values.sumOf { it.length }
+
+    /**
+     * Loads existing segments and rebuilds the index. Blocking; call off the main thread.
+     */
+    fun open(maxSizeBytes: Long) {
+        lock.withLock {
+            maxBytes = maxSizeBytes
+            if (isOpen) {
+                trimToBudget()
+                return
+            }
+            try {
+                directory.mkdirs()
+                val files = directory.listFiles { file -> file.name.endsWith(SEGMENT_SUFFIX) }
+                    ?.sortedBy { it.name }
+                    .orEmpty()
+
+                files.forEachIndexed { position, file ->
+                    val id = file.name.removeSuffix(SEGMENT_SUFFIX).toIntOrNull() ?: return@forEachIndexed
+                    val segment = Segment(id, file)
+                    segments[id] = segment
+                    replaySegment(segment, isLast = position == files.lastIndex)
+                }
+
+                isOpen = true
+                trimToBudget()
+                Log.i(TAG, "Disk cache opened: ${index.size} entries, ${sizeBytes() / 1024}KB in ${segments.size} segments")
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to open disk cache", e)
+            }
+        }
+    }
+
+    fun contains(key: String, createdAt: Long): Boolean = index[key]?.createdAt == createdAt
+
+    /**
+     * Reads an entry back from disk. The returned entry keeps its original
+     * creation time and expires when the spilled entry would have.
+     */
+    fun get(key: String, now: Long): CacheEntry<Any>? {
+        if (!isOpen) return null
+        val indexEntry = index[key] ?: return null
+        if (now >= indexEntry.expiresAt) {
+            index.remove(key, indexEntry)
+            return null
+        }
+
+        val bytes = readValue(indexEntry) ?: return null
+        val value: Any = when (indexEntry.valueType) {
+            TYPE_STRING -> String(bytes, Charsets.UTF_8)
+            else -> bytes
+        }
+        return CacheEntry(
+            value = value,
+            timestamp = indexEntry.createdAt,
+            ttl = indexEntry.expiresAt - indexEntry.createdAt,
+            tags = indexEntry.tags,
+            size = indexEntry.valueLength.toLong(),
+            priority = CachePriority.values()[indexEntry.priority.toInt()]
+        )
+    }
+
+    /**
+     * Appends [entry] to the log. Returns false if the value type can't be persisted.
+     */
+    fun put(key: String, entry: CacheEntry<Any>): Boolean {
+        val (valueType, valueBytes) = when (val value = entry.value) {
+            is ByteArray -> TYPE_BYTES to value
+            is String -> TYPE_STRING to value.toByteArray(Charsets.UTF_8)
+            else -> return false
+        }
+        val expiresAt = if (entry.ttl > Long.MAX_VALUE - entry.lastAccessTime) {
+            Long.MAX_VALUE
+        } else {
+            entry.lastAccessTime + entry.ttl
+        }
+
+        lock.withLock {
+            if (!isOpen) return false
+            val valueOffset = append(key, entry.tags, valueBytes, entry.timestamp, expiresAt, valueType, entry.priority)
+                ?: return false
+            index[key] = IndexEntry(
+                segmentId = activeSegment!!.id,
+                valueOffset = valueOffset,
+                valueLength = valueBytes.size,
+                createdAt = entry.timestamp,
+                expiresAt = expiresAt,
+                valueType = valueType,
+                priority = entry.priority.ordinal.toByte(),
+                tags = entry.tags
+            )
+            trimToBudget()
+        }
+        return true
+    }
+
+    fun remove(key: String) {
+        lock.withLock {
+            if (!isOpen || index.remove(key) == null) return
+            append(key, emptySet(), null, 0L, 0L, TYPE_BYTES, CachePriority.LOW)
+        }
+    }
+
+    fun removeByTags(tags: Set<String>): Int {
+        val keys = index.entries
+            .filter { (_, entry) -> entry.tags.any { it in tags } }
+            .map { it.key }
+        keys.forEach { remove(it) }
+        return keys.size
+    }
+
+    /** Forces appended records to storage */
+    fun sync() {
+        lock.withLock {
+            try {
+                activeChannel?.force(false)
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to sync disk cache", e)
+            }
+        }
+    }
+
+    // Must be called while holding the lock. Returns the value's file offset.
+    private fun append(
+        key: String,
+        tags: Set<String>,
+        value: ByteArray?,
+        createdAt: Long,
+        expiresAt: Long,
+        valueType: Byte,
+        priority: CachePriority
+    ): Long? {
+        val keyBytes = key.toByteArray(Charsets.UTF_8)
+        val tagBytes = tags.joinToString("\n").toByteArray(Charsets.UTF_8)
+        val valueLength = value?.size ?: 0
+
+        val record = ByteBuffer.allocate(HEADER_BYTES + keyBytes.size + tagBytes.size + valueLength)
+        record.putInt(RECORD_MAGIC)
+        record.putInt(keyBytes.size)
+        record.putInt(tagBytes.size)
+        record.putInt(value?.size ?: TOMBSTONE)
+        record.putLong(createdAt)
+        record.putLong(expiresAt)
+        record.put(valueType)
+        record.put(priority.ordinal.toByte())
+        record.putInt(0) // Filled in once the payload is in place
+        record.put(keyBytes)
+        record.put(tagBytes)
+        if (value != null) record.put(value)
+        record.putInt(CRC_OFFSET, recordCrc(record, 0, record.position()))
+        record.flip()
+
+        return try {
+            val channel = channelWithRoom()
+            val segment = activeSegment!!
+            val recordStart = segment.length
+            while (record.hasRemaining()) {
+                channel.write(record, recordStart + record.position())
+            }
+            segment.length = recordStart + record.limit()
+            recordStart + HEADER_BYTES + keyBytes.size + tagBytes.size
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to append to disk cache", e)
+            null
+        }
+    }
+
+    // Must be called while holding the lock
+    private fun channelWithRoom(): FileChannel {
+        val current = activeSegment
+        val channel = activeChannel
+        if (current != null && channel != null && current.length < SEGMENT_MAX_BYTES) {
+            return channel
+        }
+
+        channel?.close()
+        current?.sealed = true
+        val nextId = (segments.keys.maxOrNull() ?: 0) + 1
+        val segment = Segment(nextId, File(directory, "%08d%s".format(nextId, SEGMENT_SUFFIX)))
+        val newChannel = RandomAccessFile(segment.file, "rw").channel
+        segment.length = newChannel.size()
+        segments[nextId] = segment
+        activeSegment = segment
+        activeChannel = newChannel
+        return newChannel
+    }
+
+    /**
+     * Drops the oldest segments until the log fits its budget. Before a
+     * segment goes, its live entries are copied forward into the room the
+     * budget has left without it; entries that do not fit are evicted.
+     * Must be called while holding the lock.
+     */
+    private fun trimToBudget() {
+        var total = sizeBytes()
+        while (total > maxBytes && segments.size > 1) {
+            val oldestId = segments.keys.minOrNull() ?: break
+            if (oldestId == activeSegment?.id) break
+            val oldest = segments[oldestId] ?: break
+
+            var room = maxBytes - (total - oldest.length)
+            val now = System.currentTimeMillis()
+            val live = index.entries
+                .filter { it.value.segmentId == oldestId && now < it.value.expiresAt }
+                .sortedWith(compareByDescending<Map.Entry<String, IndexEntry>> { it.value.priority }
+                    .thenByDescending { it.value.createdAt })
+            var copied = 0
+            for ((key, entry) in live) {
+                val recordBytes = recordSize(key, entry)
+                if (recordBytes > room) continue
+                if (copyForward(key, entry)) {
+                    room -= recordBytes
+                    copied++
+                }
+            }
+
+            val evicted = live.size - copied
+            segments.remove(oldestId)
+            index.entries.removeIf { it.value.segmentId == oldestId }
+            oldest.mapped = null
+            oldest.file.delete()
+            total = sizeBytes()
+            if (evicted > 0) Log.d(TAG, "Dropped segment $oldestId, evicting $evicted live entries")
+        }
+    }
+
+    // Must be called while holding the lock
+    private fun copyForward(key: String, entry: IndexEntry): Boolean {
+        val value = readValue(entry) ?: return false
+        val priority = CachePriority.values()[entry.priority.toInt()]
+        val valueOffset = append(key, entry.tags, value, entry.createdAt, entry.expiresAt, entry.valueType, priority)
+            ?: return false
+        index[key] = IndexEntry(
+            segmentId = activeSegment!!.id,
+            valueOffset = valueOffset,
+            valueLength = entry.valueLength,
+            createdAt = entry.createdAt,
+            expiresAt = entry.expiresAt,
+            valueType = entry.valueType,
+            priority = entry.priority,
+            tags = entry.tags
+        )
+        return true
+    }
+
+    // Everything in the record except the magic and the crc slot itself
+    private fun recordCrc(record: ByteBuffer, start: Int, end: Int): Int {
+        val crc = CRC32()
+        crc.update(record.duplicate().apply { limit(start + CRC_OFFSET); position(start + 4) })
+        crc.update(record.duplicate().apply { limit(end); position(start + HEADER_BYTES) })
+        return crc.value.toInt()
+    }
+
+    private fun recordSize(key: String, entry: IndexEntry): Long {
+        val tagBytes = entry.tags.joinToString("\n").toByteArray(Charsets.UTF_8).size
+        return HEADER_BYTES.toLong() + key.toByteArray(Charsets.UTF_8).size + tagBytes + entry.valueLength
+    }
+
+    /**
+     * Copies [indexEntry]'s value out of its segment: through the segment's
+     * one mapping once it is sealed, or with a positional read while it is
+     * still the active segment and growing.
+     */
+    private fun readValue(indexEntry: IndexEntry): ByteArray? {
+        val segment = segments[indexEntry.segmentId] ?: return null
+        val bytes = ByteArray(indexEntry.valueLength)
+        if (segment.sealed) {
+            val mapped = segment.mapped ?: lock.withLock { segment.mapped ?: mapSegment(segment) } ?: return null
+            val view = mapped.duplicate()
+            view.position(indexEntry.valueOffset.toInt())
+            view.get(bytes)
+            return bytes
+        }
+
+        lock.withLock {
+            // Sealed while we waited; its channel is closed now
+            if (segment.sealed) return readValue(indexEntry)
+            val channel = activeChannel?.takeIf { segment === activeSegment } ?: return null
+            val target = ByteBuffer.wrap(bytes)
+            try {
+                while (target.hasRemaining()) {
+                    if (channel.read(target, indexEntry.valueOffset + target.position()) < 0) return null
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to read segment ${segment.id}", e)
+                return null
+            }
+        }
+        return bytes
+    }
+
+    private fun mapSegment(segment: Segment): MappedByteBuffer? {
+        return try {
+            RandomAccessFile(segment.file, "r").use { file ->
+                file.channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length())
+            }.also { segment.mapped = it }
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to map segment ${segment.id}", e)
+            null
+        }
+    }
+
+    // Must be called while holding the lock
+    private fun replaySegment(segment: Segment, isLast: Boolean) {
+        val buffer = mapSegment(segment) ?: return
+        var position = 0
+        var valid = true
+
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            buffer.position(position)
+            if (buffer.int != RECORD_MAGIC) {
+                valid = false
+                break
+            }
+            val keyLength = buffer.int
+            val tagsLength = buffer.int
+            val valueLength = buffer.int
+            val createdAt = buffer.long
+            val expiresAt = buffer.long
+            val valueType = buffer.get()
+            val priority = buffer.get()
+            val storedCrc = buffer.int
+
+            // In Long, so corrupt lengths cannot wrap around into a small positive size
+            val recordEnd = buffer.position().toLong() + keyLength + tagsLength + maxOf(valueLength, 0)
+            if (keyLength < 0 || tagsLength < 0 || valueLength < TOMBSTONE ||
+                recordEnd > buffer.capacity() ||
+                (valueType != TYPE_BYTES && valueType != TYPE_STRING) ||
+                priority !in 0 until CachePriority.values().size ||
+                recordCrc(buffer, position, recordEnd.toInt()) != storedCrc) {
+                valid = false
+                break
+            }
+
+            val keyBytes = ByteArray(keyLength).also { buffer.get(it) }
+            val tagBytes = ByteArray(tagsLength).also { buffer.get(it) }
+            val valueOffset = buffer.position().toLong()
+
+            val key = String(keyBytes, Charsets.UTF_8)
+            if (valueLength == TOMBSTONE) {
+                index.remove(key)
+            } else {
+                val tags = if (tagsLength == 0) emptySet() else {
+                    String(tagBytes, Charsets.UTF_8).split("\n").toSet()
+                }
+                index[key] = IndexEntry(segment.id, valueOffset, valueLength, createdAt, expiresAt, valueType, priority, tags)
+            }
+            position = buffer.position() + maxOf(valueLength, 0)
+        }
+
+        if ((!valid || position < buffer.capacity()) && isLast) {
+            // Torn write from a crash: drop the partial tail and keep appending after it
+            Log.w(TAG, "Truncating segment ${segment.id} at $position of ${buffer.capacity()} bytes")
+            RandomAccessFile(segment.file, "rw").use { it.setLength(position.toLong()) }
+            segment.mapped = null
+            segment.length = position.toLong()
+        } else {
+            segment.length = buffer.capacity().toLong()
+        }
+
+        if (isLast) {
+            // Still growing, so it is read positionally rather than kept mapped
+            segment.mapped = null
+            val channel = RandomAccessFile(segment.file, "rw").channel
+            activeSegment = segment
+            activeChannel = channel
+        } else {
+            segment.sealed = true
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.soundboard.android.network
+
+/**
+ * Phase 4.2: Frequency Sketch
+ *
+ * Count-Min sketch of 4-bit counters used as the TinyLFU admission filter for
+ * [WTinyLfuEvictionPolicy]. Each key is counted in four counters picked by
+ * independent hashes, and its frequency is the smallest of them.
+ *
+ * Counters are aged by halving every counter once the number of recorded
+ * increments reaches ten times the table size, so popularity from an hour ago
+ * fades instead of pinning entries forever.
+ *
+ * Not thread safe; callers serialize access.
+ */
+class FrequencySketch(initialCapacity: Int = 256) {
+
+    companion object {
+        private const val MAX_TABLE_SIZE = 1 shl 24
+        private const val SAMPLE_FACTOR = 10
+        private const val RESET_MASK = 0x7777777777777777L
+        private const val ONE_MASK = 0x1111111111111111L
+        private val SEEDS = longArrayOf(
+            0x3a5c85c97cb3127L,
+            0x3b8b5ebe7ab1b7dL,
+            0x4f1bbcdcbfa53e0L,
+            0x1d8e4e27c47d124L
+        )
+    }
+
+    private var table = LongArray(0)
+    private var tableMask = 0
+    private var sampleSize = 0
+    private var additions = 0
+
+    init {
+        ensureCapacity(initialCapacity)
+    }
+
+    /**
+     * Grows the table to hold roughly [expectedEntries] distinct keys.
+     * Growing discards the recorded counts.
+     */
+    fun ensureCapacity(expectedEntries: Int) {
+        val maximum = expectedEntries.coerceIn(1, MAX_TABLE_SIZE)
+        if (table.size >= maximum) return
+
+        val size = Integer.highestOneBit(maximum - 1).shl(1).coerceAtLeast(8)
+        table = LongArray(size)
+        tableMask = size - 1
+        sampleSize = SAMPLE_FACTOR * size
+        additions = 0
+    }
+
+    /** Estimated number of times [hashCode] was recorded, between 0 and 15 */
+    fun frequency(hashCode: Int): Int {
+        val hash = spread(hashCode)
+        val start = (hash and 3) shl 2
+        var frequency = Int.MAX_VALUE
+        for (i in 0 until 4) {
+            val index = indexOf(hash, i)
+            val count = ((table[index] ushr ((start + i) shl 2)) and 0xfL).toInt()
+            frequency = minOf(frequency, count)
+        }
+        return frequency
+    }
+
+    fun increment(hashCode: Int) {
+        val hash = spread(hashCode)
+        val start = (hash and 3) shl 2
+        var added = false
+        for (i in 0 until 4) {
+            added = incrementAt(indexOf(hash, i), start + i) or added
+        }
+        if (added && ++additions >= sampleSize) {
+            reset()
+        }
+    }
+
+    private fun incrementAt(index: Int, counter: Int): Boolean {
+        val offset = counter shl 2
+        val mask = 0xfL shl offset
+        if ((table[index] and mask) != mask) {
+            table[index] += 1L shl offset
+            return true
+        }
+        return false
+    }
+
+    // Halves every counter; odd counts lose their remainder
+    private fun reset() {
+        var oddCounters = 0
+        for (i in table.indices) {
+            oddCounters += java.lang.Long.bitCount(table[i] and ONE_MASK)
+            table[i] = (table[i] ushr 1) and RESET_MASK
+        }
+        additions = (additions - (oddCounters ushr 2)) ushr 1
+    }
+
+    private fun indexOf(hash: Int, i: Int): Int {
+        var h = (hash.toLong() + SEEDS[i]) * SEEDS[i]
+        h += h ushr 32
+        return h.toInt() and tableMask
+    }
+
+    private fun spread(hashCode: Int): Int {
+        var h = ((hashCode ushr 16) xor hashCode) * 0x45d9f3b
+        h = ((h ushr 16) xor h) * 0x45d9f3b
+        return (h ushr 16) xor h
+    }
+}
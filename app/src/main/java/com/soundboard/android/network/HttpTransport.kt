@@ -0,0 +1,192 @@
+package com.soundboard.android.network
+
+import android.util.Log
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Connection
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.EventListener
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Phase 4.2: Shared HTTP Transport
+ *
+ * One connection pool and dispatcher for every HTTP call the app makes. The
+ * Retrofit client and the audio forwarding client are both derived from
+ * [client] with newBuilder(), so they reuse the same keep-alive connections;
+ * building a fresh OkHttpClient per tap paid a TCP handshake every time.
+ *
+ * [warmUp] opens a connection to a server ahead of the first request, and an
+ * EventListener records how often calls found a pooled connection.
+ */
+@Singleton
+class HttpTransport @Inject constructor() {
+
+    companion object {
+        private const val TAG = "HttpTransport"
+        private const val MAX_IDLE_CONNECTIONS = 5
+        private const val KEEP_ALIVE_MS = 60_000L // Below the server's keep-alive timeout
+        private const val MAX_REQUESTS_PER_HOST = 8
+        private const val CONNECT_TIMEOUT_S = 10L
+        private const val READ_TIMEOUT_S = 30L
+        private const val WRITE_TIMEOUT_S = 15L
+        private const val UPLOAD_WRITE_TIMEOUT_S = 30L
+        private const val WARM_UP_TAG = "warm-up"
+    }
+
+    data class TransportMetrics(
+        val calls: Long,
+        val failedCalls: Long,
+        val connectionsOpened: Long,
+        val connectionsReused: Long,
+        val connectionReuseRate: Double,
+        val averageConnectMs: Double,
+        val averageTimeToFirstByteMs: Double, // Call start to response headers, warm-ups excluded
+        val pooledConnections: Int,
+        val idleConnections: Int,
+        val warmUps: Long
+    )
+
+    private val connectionPool = ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS)
+    private val dispatcher = Dispatcher().apply { maxRequestsPerHost = MAX_REQUESTS_PER_HOST }
+
+    private val calls = AtomicLong(0)
+    private val failedCalls = AtomicLong(0)
+    private val connectionsOpened = AtomicLong(0)
+    private val connectionsReused = AtomicLong(0)
+    private val connectNanos = AtomicLong(0)
+    private val firstByteSamples = AtomicLong(0)
+    private val firstByteNanos = AtomicLong(0)
+    private val warmUps = AtomicLong(0)
+
+    private val _metrics = MutableStateFlow(snapshot())
+    val metrics: StateFlow<TransportMetrics> = _metrics.asStateFlow()
+
+    /** Base client; derive variants with newBuilder() so they keep the shared pool */
+    val client: OkHttpClient = OkHttpClient.Builder()
+        .connectionPool(connectionPool)
+        .dispatcher(dispatcher)
+        .eventListenerFactory { CallMetricsListener() }
+        .connectTimeout(CONNECT_TIMEOUT_S, TimeUnit.SECONDS)
+        .readTimeout(READ_TIMEOUT_S, TimeUnit.SECONDS)
+        .writeTimeout(WRITE_TIMEOUT_S, TimeUnit.SECONDS)
+        .build()
+
+    /** For audio forwarding: no body logging, longer write timeout */
+    val uploadClient: OkHttpClient = client.newBuilder()
+        .writeTimeout(UPLOAD_WRITE_TIMEOUT_S, TimeUnit.SECONDS)
+        .build()
+
+    /**
+     * Opens a pooled connection to [baseUrl] in the background so the first
+     * real request skips the handshake. Failures are only logged.
+     */
+    fun warmUp(baseUrl: String) {
+        val request = try {
+            Request.Builder()
+                .url("${baseUrl.trimEnd('/')}/health")
+                .tag(String::class.java, WARM_UP_TAG)
+                .build()
+        } catch (e: IllegalArgumentException) {
+            Log.w(TAG, "Cannot warm up invalid URL: $baseUrl")
+            return
+        }
+
+        warmUps.incrementAndGet()
+        client.newCall(request).enqueue(object : Callback {
+            override fun onResponse(call: Call, response: Response) {
+                response.close()
+                Log.d(TAG, "Warmed up connection to $baseUrl (${connectionPool.connectionCount()} pooled)")
+            }
+
+            override fun onFailure(call: Call, e: IOException) {
+                Log.w(TAG, "Warm-up to $baseUrl failed: ${e.message}")
+            }
+        })
+    }
+
+    /** Closes idle connections, e.g. when switching servers */
+    fun evictConnections() {
+        connectionPool.evictAll()
+        publishMetrics()
+    }
+
+    private fun publishMetrics() {
+        _metrics.value = snapshot()
+    }
+
+    private fun snapshot(): TransportMetrics {
+        val opened = connectionsOpened.get()
+        val reused = connectionsReused.get()
+        val firstBytes = firstByteSamples.get()
+        return TransportMetrics(
+            calls = calls.get(),
+            failedCalls = failedCalls.get(),
+            connectionsOpened = opened,
+            connectionsReused = reused,
+            connectionReuseRate = if (opened + reused > 0) reused.toDouble() / (opened + reused) else 0.0,
+            averageConnectMs = if (opened > 0) connectNanos.get() / 1_000_000.0 / opened else 0.0,
+            averageTimeToFirstByteMs = if (firstBytes > 0) firstByteNanos.get() / 1_000_000.0 / firstBytes else 0.0,
+            pooledConnections = connectionPool.connectionCount(),
+            idleConnections = connectionPool.idleConnectionCount(),
+            warmUps = warmUps.get()
+        )
+    }
+
+    // One instance per call
+    private inner class CallMetricsListener : EventListener() {
+        private var callStartNanos = 0L
+        private var connectStartNanos = 0L
+        private var connected = false
+        private var firstByteSeen = false
+
+        override fun callStart(call: Call) {
+            callStartNanos = System.nanoTime()
+            calls.incrementAndGet()
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            connectStartNanos = System.nanoTime()
+            connected = true
+        }
+
+        override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+            connectionsOpened.incrementAndGet()
+            connectNanos.addAndGet(System.nanoTime() - connectStartNanos)
+        }
+
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            if (!connected) connectionsReused.incrementAndGet()
+        }
+
+        override fun responseHeadersStart(call: Call) {
+            if (firstByteSeen || call.request().tag(String::class.java) == WARM_UP_TAG) return
+            firstByteSeen = true
+            firstByteSamples.incrementAndGet()
+            firstByteNanos.addAndGet(System.nanoTime() - callStartNanos)
+        }
+
+        override fun callEnd(call: Call) {
+            publishMetrics()
+        }
+
+        override fun callFailed(call: Call, ioe: IOException) {
+            failedCalls.incrementAndGet()
+            publishMetrics()
+        }
+    }
+}
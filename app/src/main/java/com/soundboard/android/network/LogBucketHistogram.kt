@@ -0,0 +1,156 @@
+package com.soundboard.android.network
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import kotlin.math.sqrt
+
+/**
+ * Phase 4.2: Log-Bucketed Histogram
+ *
+ * HDR-style histogram over non-negative long values in a fixed array of
+ * counters. Values below 2^[subBucketBits] get a bucket each; above that,
+ * every power of two is split into 2^([subBucketBits] - 1) equal sub-buckets,
+ * so a bucket is never wider than 1 / 2^([subBucketBits] - 1) of the values
+ * it holds. Recording is a bit-scan and one atomic increment, with no
+ * allocation; percentiles are a single pass over the counters.
+ *
+ * Snapshots with the same layout merge by adding counters, which is how
+ * windows of interval histograms are combined.
+ */
+class LogBucketHistogram(
+    val highestTrackableValue: Long = DEFAULT_HIGHEST_TRACKABLE_VALUE,
+    val subBucketBits: Int = DEFAULT_SUB_BUCKET_BITS
+) {
+
+    companion object {
+        const val DEFAULT_SUB_BUCKET_BITS = 6 // Buckets at most ~3% wide
+        const val DEFAULT_HIGHEST_TRACKABLE_VALUE = 3_600_000_000L // One hour in microseconds
+    }
+
+    init {
+        require(subBucketBits in 2..16) { "subBucketBits must be in 2..16" }
+        require(highestTrackableValue >= 1) { "highestTrackableValue must be positive" }
+    }
+
+    private val counts = AtomicLongArray(bucketIndex(highestTrackableValue, subBucketBits) + 1)
+    private val totalCount = AtomicLong(0)
+    private val sum = AtomicLong(0)
+    private val min = AtomicLong(Long.MAX_VALUE)
+    private val max = AtomicLong(0)
+
+    val bucketCount: Int get() = counts.length()
+
+    /**
+     * Records one value. Negative values count as 0 and values above
+     * [highestTrackableValue] land in the last bucket; min, max and the
+     * mean stay exact either way.
+     */
+    fun recordValue(value: Long) {
+        val v = value.coerceAtLeast(0)
+        counts.incrementAndGet(bucketIndex(v.coerceAtMost(highestTrackableValue), subBucketBits))
+        totalCount.incrementAndGet()
+        sum.addAndGet(v)
+        min.accumulateAndGet(v, ::minOf)
+        max.accumulateAndGet(v, ::maxOf)
+    }
+
+    /** Not atomic with respect to concurrent recording */
+    fun reset() {
+        for (i in 0 until counts.length()) counts.set(i, 0)
+        totalCount.set(0)
+        sum.set(0)
+        min.set(Long.MAX_VALUE)
+        max.set(0)
+    }
+
+    fun snapshot(): Snapshot {
+        val copy = LongArray(counts.length()) { counts.get(it) }
+        val total = totalCount.get()
+        return Snapshot(subBucketBits, copy, total, sum.get(), if (total == 0L) 0 else min.get(), max.get())
+    }
+
+    /** Immutable copy of the counters, safe to merge and query from any thread */
+    class Snapshot internal constructor(
+        val subBucketBits: Int,
+        private val counts: LongArray,
+        val totalCount: Long,
+        val sum: Long,
+        val minValue: Long,
+        val maxValue: Long
+    ) {
+        val mean: Double get() = if (totalCount == 0L) 0.0 else sum.toDouble() / totalCount
+
+        /**
+         * Combines two snapshots of the same layout. The ranges may differ;
+         * the result covers the wider one.
+         */
+        fun merge(other: Snapshot): Snapshot {
+            require(other.subBucketBits == subBucketBits) { "Cannot merge histograms with different precision" }
+            if (other.totalCount == 0L) return this
+            if (totalCount == 0L) return other
+
+            val merged = LongArray(maxOf(counts.size, other.counts.size))
+            for (i in counts.indices) merged[i] += counts[i]
+            for (i in other.counts.indices) merged[i] += other.counts[i]
+            return Snapshot(
+                subBucketBits = subBucketBits,
+                counts = merged,
+                totalCount = totalCount + other.totalCount,
+                sum = sum + other.sum,
+                minValue = minOf(minValue, other.minValue),
+                maxValue = maxOf(maxValue, other.maxValue)
+            )
+        }
+
+        /**
+         * Nearest-rank percentile: the upper bound of the bucket holding it,
+         * clamped to the exact min and max.
+         */
+        fun valueAtPercentile(percentile: Double): Long {
+            if (totalCount == 0L) return 0
+            val rank = Math.ceil(percentile.coerceIn(0.0, 100.0) / 100.0 * totalCount).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in counts.indices) {
+                seen += counts[i]
+                if (seen >= rank) return bucketUpperBound(i, subBucketBits).coerceIn(minValue, maxValue)
+            }
+            return maxValue
+        }
+
+        /** Approximated from bucket midpoints */
+        fun standardDeviation(): Double {
+            if (totalCount < 2) return 0.0
+            val mean = mean
+            var squares = 0.0
+            for (i in counts.indices) {
+                if (counts[i] == 0L) continue
+                val mid = (bucketLowerBound(i, subBucketBits) + bucketUpperBound(i, subBucketBits)) / 2.0
+                squares += counts[i] * (mid - mean) * (mid - mean)
+            }
+            return sqrt(squares / totalCount)
+        }
+    }
+}
+
+private fun bucketIndex(value: Long, subBucketBits: Int): Int {
+    val subBucketCount = 1L shl subBucketBits
+    if (value < subBucketCount) return value.toInt()
+    // Shift that brings the value into [subBucketCount / 2, subBucketCount)
+    val shift = (63 - java.lang.Long.numberOfLeadingZeros(value)) - subBucketBits + 1
+    return (shift shl (subBucketBits - 1)) + (value ushr shift).toInt()
+}
+
+private fun bucketLowerBound(index: Int, subBucketBits: Int): Long {
+    val subBucketCount = 1 shl subBucketBits
+    if (index < subBucketCount) return index.toLong()
+    val shift = (index shr (subBucketBits - 1)) - 1
+    val subBucket = index - (shift shl (subBucketBits - 1))
+    return subBucket.toLong() shl shift
+}
+
+private fun bucketUpperBound(index: Int, subBucketBits: Int): Long {
+    val subBucketCount = 1 shl subBucketBits
+    if (index < subBucketCount) return index.toLong()
+    val shift = (index shr (subBucketBits - 1)) - 1
+    return bucketLowerBound(index, subBucketBits) + (1L shl shift) - 1
+}
@@ -0,0 +1,211 @@
+package com.soundboard.android.network
+
+import java.io.IOException
+
+/**
+ * Phase 4.2: LZ4 Block Codec
+ *
+ * Pure Kotlin implementation of the LZ4 block format (the same byte layout
+ * as the reference `LZ4_compress_default`), so payloads can be decoded by
+ * any standard LZ4 block decoder given the original length.
+ *
+ * The compressor is the greedy single-probe variant: one 4-byte hash table,
+ * no chains. It trades some ratio for speed, which is the point of LZ4 here.
+ */
+object Lz4Codec : CompressionCodec {
+
+    private const val MIN_MATCH = 4
+    private const val LAST_LITERALS = 5 // The block must end with at least 5 literals
+    private const val MF_LIMIT = 12     // No match may start within the last 12 bytes
+    private const val MAX_DISTANCE = 65_535
+    private const val HASH_LOG = 12
+    private const val SKIP_TRIGGER = 6  // Probe step grows every 2^6 misses
+    private const val RUN_MASK = 15
+    private const val ML_MASK = 15
+
+    // A sequence token plus a run of 255-valued length bytes, each adding 255 bytes of match
+    override val maxExpansionRatio = 255
+
+    fun maxCompressedLength(length: Int): Int = length + length / 255 + 16
+
+    override fun compress(data: ByteArray, offset: Int, length: Int, level: Int): ByteArray {
+        val end = offset + length
+        val dest = CodecPool.scratch(maxCompressedLength(length))
+        var dp = 0
+        var anchor = offset
+
+        if (length >= MF_LIMIT + 1) {
+            val hashTable = CodecPool.hashTable(1 shl HASH_LOG, -1)
+            val matchStartLimit = end - MF_LIMIT
+            val matchEndLimit = end - LAST_LITERALS
+            var sp = offset
+            var misses = 1 shl SKIP_TRIGGER
+
+            while (sp < matchStartLimit) {
+                val sequence = readInt(data, sp)
+                val hash = hash(sequence)
+                val ref = hashTable[hash]
+                hashTable[hash] = sp
+
+                if (ref < 0 || sp - ref > MAX_DISTANCE || readInt(data, ref) != sequence) {
+                    // Speed up through incompressible regions
+                    sp += misses++ ushr SKIP_TRIGGER
+                    continue
+                }
+                misses = 1 shl SKIP_TRIGGER
+
+                // Extend the match backwards over pending literals, then forwards
+                var matchStart = sp
+                var refStart = ref
+                while (matchStart > anchor && refStart > offset && data[matchStart - 1] == data[refStart - 1]) {
+                    matchStart--
+                    refStart--
+                }
+                var matchLength = MIN_MATCH + (sp - matchStart)
+                while (matchStart + matchLength < matchEndLimit &&
+                    data[matchStart + matchLength] == data[refStart + matchLength]) {
+                    matchLength++
+                }
+
+                dp = writeSequence(data, anchor, matchStart - anchor, matchStart - refStart, matchLength, dest, dp)
+                sp = matchStart + matchLength
+                anchor = sp
+
+                // Index the tail of the match so the next search can find it
+                if (sp - 2 >= offset && sp - 2 < matchStartLimit) {
+                    hashTable[hash(readInt(data, sp - 2))] = sp - 2
+                }
+            }
+        }
+
+        dp = writeLiterals(data, anchor, end - anchor, dest, dp)
+        return dest.copyOf(dp)
+    }
+
+    override fun decompressInto(payload: ByteArray, offset: Int, length: Int, destination: ByteArray, originalLength: Int) {
+        val end = offset + length
+        var sp = offset
+        var dp = 0
+
+        try {
+            while (sp < end) {
+                val token = payload[sp++].toInt() and 0xFF
+
+                var literalLength = token ushr 4
+                if (literalLength == RUN_MASK) {
+                    var extra: Int
+                    do {
+                        extra = payload[sp++].toInt() and 0xFF
+                        literalLength += extra
+                    } while (extra == 255)
+                }
+                System.arraycopy(payload, sp, destination, dp, literalLength)
+                sp += literalLength
+                dp += literalLength
+
+                // The last sequence carries literals only
+                if (sp >= end) break
+
+                val matchOffset = (payload[sp].toInt() and 0xFF) or ((payload[sp + 1].toInt() and 0xFF) shl 8)
+                sp += 2
+                if (matchOffset == 0 || matchOffset > dp) {
+                    throw IOException("Corrupt LZ4 block: offset $matchOffset at output position $dp")
+                }
+
+                var matchLength = token and ML_MASK
+                if (matchLength == ML_MASK) {
+                    var extra: Int
+                    do {
+                        extra = payload[sp++].toInt() and 0xFF
+                        matchLength += extra
+                    } while (extra == 255)
+                }
+                matchLength += MIN_MATCH
+
+                var ref = dp - matchOffset
+                if (matchOffset >= matchLength) {
+                    System.arraycopy(destination, ref, destination, dp, matchLength)
+                    dp += matchLength
+                } else {
+                    // Overlapping copy repeats the pattern byte by byte
+                    repeat(matchLength) { destination[dp++] = destination[ref++] }
+                }
+            }
+        } catch (e: IndexOutOfBoundsException) {
+            throw IOException("Corrupt LZ4 block", e)
+        }
+
+        if (dp != originalLength) {
+            throw IOException("LZ4 block decoded to $dp bytes, expected $originalLength")
+        }
+    }
+
+    private fun writeSequence(
+        src: ByteArray,
+        literalStart: Int,
+        literalLength: Int,
+        matchOffset: Int,
+        matchLength: Int,
+        dest: ByteArray,
+        start: Int
+    ): Int {
+        val tokenPosition = start
+        var dp = start + 1
+        var token: Int
+
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK shl 4
+            dp = writeLength(literalLength - RUN_MASK, dest, dp)
+        } else {
+            token = literalLength shl 4
+        }
+        System.arraycopy(src, literalStart, dest, dp, literalLength)
+        dp += literalLength
+
+        dest[dp++] = matchOffset.toByte()
+        dest[dp++] = (matchOffset ushr 8).toByte()
+
+        val encodedMatch = matchLength - MIN_MATCH
+        if (encodedMatch >= ML_MASK) {
+            token = token or ML_MASK
+            dp = writeLength(encodedMatch - ML_MASK, dest, dp)
+        } else {
+            token = token or encodedMatch
+        }
+
+        dest[tokenPosition] = token.toByte()
+        return dp
+    }
+
+    private fun writeLiterals(src: ByteArray, literalStart: Int, literalLength: Int, dest: ByteArray, start: Int): Int {
+        var dp = start
+        if (literalLength >= RUN_MASK) {
+            dest[dp++] = (RUN_MASK shl 4).toByte()
+            dp = writeLength(literalLength - RUN_MASK, dest, dp)
+        } else {
+            dest[dp++] = (literalLength shl 4).toByte()
+        }
+        System.arraycopy(src, literalStart, dest, dp, literalLength)
+        return dp + literalLength
+    }
+
+    private fun writeLength(length: Int, dest: ByteArray, start: Int): Int {
+        var dp = start
+        var remaining = length
+        while (remaining >= 255) {
+            dest[dp++] = 255.toByte()
+            remaining -= 255
+        }
+        dest[dp++] = remaining.toByte()
+        return dp
+    }
+
+    private fun readInt(data: ByteArray, index: Int): Int {
+        return (data[index].toInt() and 0xFF) or
+            ((data[index + 1].toInt() and 0xFF) shl 8) or
+            ((data[index + 2].toInt() and 0xFF) shl 16) or
+            ((data[index + 3].toInt() and 0xFF) shl 24)
+    }
+
+    private fun hash(sequence: Int): Int = (sequence * -1640531535) ushr (32 - HASH_LOG)
+}
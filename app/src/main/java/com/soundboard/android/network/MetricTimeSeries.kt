@@ -0,0 +1,150 @@
+package com.soundboard.android.network
+
+/**
+ * Phase 4.2: Metric Time Series
+ *
+ * History of one metric in preallocated primitive arrays: a ring of the
+ * most recent raw samples plus rollup rings at 1 s, 10 s and 1 min
+ * resolution, each slot holding count, sum, min and max for its interval.
+ * Recording writes into the arrays in place, so it allocates nothing, and
+ * the memory for a series is fixed when it is created (see [footprintBytes]).
+ * A rollup slot is reused once the ring wraps back onto it.
+ */
+class MetricTimeSeries(
+    private val rawCapacity: Int = DEFAULT_RAW_CAPACITY
+) {
+
+    companion object {
+        const val DEFAULT_RAW_CAPACITY = 720 // One hour of samples at the 5 s collection interval
+        private const val EMPTY_SLOT = -1L
+    }
+
+    enum class Resolution(val intervalMs: Long, val slots: Int) {
+        ONE_SECOND(1_000L, 120),   // Last 2 minutes
+        TEN_SECONDS(10_000L, 90),  // Last 15 minutes
+        ONE_MINUTE(60_000L, 60)    // Last hour
+    }
+
+    data class Rollup(
+        val timestamp: Long, // Start of the interval
+        val count: Long,
+        val average: Double,
+        val minimum: Double,
+        val maximum: Double
+    )
+
+    private class RollupRing(val resolution: Resolution) {
+        val slotIds = LongArray(resolution.slots) { EMPTY_SLOT }
+        val counts = LongArray(resolution.slots)
+        val sums = DoubleArray(resolution.slots)
+        val minimums = DoubleArray(resolution.slots)
+        val maximums = DoubleArray(resolution.slots)
+
+        fun add(timestamp: Long, value: Double) {
+            val slotId = timestamp / resolution.intervalMs
+            val index = (slotId % resolution.slots).toInt()
+            if (slotIds[index] != slotId) {
+                if (slotIds[index] > slotId) return // Older than anything this ring still holds
+                slotIds[index] = slotId
+                counts[index] = 0
+                sums[index] = 0.0
+                minimums[index] = value
+                maximums[index] = value
+            }
+            counts[index]++
+            sums[index] += value
+            if (value < minimums[index]) minimums[index] = value
+            if (value > maximums[index]) maximums[index] = value
+        }
+
+        fun read(now: Long, maxPoints: Int): List<Rollup> {
+            val currentSlotId = now / resolution.intervalMs
+            val points = maxPoints.coerceIn(0, resolution.slots)
+            val rollups = ArrayList<Rollup>(points)
+            for (slotId in (currentSlotId - points + 1)..currentSlotId) {
+                val index = Math.floorMod(slotId, resolution.slots.toLong()).toInt()
+                if (slotIds[index] != slotId) continue // Nothing recorded in that interval
+                rollups.add(
+                    Rollup(
+                        timestamp = slotId * resolution.intervalMs,
+                        count = counts[index],
+                        average = sums[index] / counts[index],
+                        minimum = minimums[index],
+                        maximum = maximums[index]
+                    )
+                )
+            }
+            return rollups
+        }
+
+        fun clear() {
+            slotIds.fill(EMPTY_SLOT)
+        }
+    }
+
+    private val timestamps = LongArray(rawCapacity)
+    private val values = DoubleArray(rawCapacity)
+    private var head = 0 // Next write position
+    private var size = 0
+    private val rollupRings = Resolution.values().map { RollupRing(it) }
+
+    init {
+        require(rawCapacity > 0) { "rawCapacity must be positive" }
+    }
+
+    /** Bytes held by the arrays of this series */
+    val footprintBytes: Int
+        get() = rawCapacity * (Long.SIZE_BYTES + Double.SIZE_BYTES) +
+            Resolution.values().sumOf { it.slots * (2 * Long.SIZE_BYTES + 3 * Double.SIZE_BYTES) }
+
+    @Synchronized
+    fun record(timestamp: Long, value: Double) {
+        timestamps[head] = timestamp
+        values[head] = value
+        head = (head + 1) % rawCapacity
+        if (size < rawCapacity) size++
+        rollupRings.forEach { it.add(timestamp, value) }
+    }
+
+    /**
+     * Rollups for the last [maxPoints] intervals up to [now], oldest first.
+     * Intervals without samples are left out.
+     */
+    @Synchronized
+    fun rollups(resolution: Resolution, now: Long = System.currentTimeMillis(), maxPoints: Int = resolution.slots): List<Rollup> {
+        return rollupRings[resolution.ordinal].read(now, maxPoints)
+    }
+
+    /** Raw values recorded at or after [since], oldest first */
+    @Synchronized
+    fun valuesSince(since: Long): DoubleArray {
+        val start = firstIndexSince(since)
+        return DoubleArray(size - start) { values[rawIndex(start + it)] }
+    }
+
+    /** Visits raw samples recorded within [startTime]..[endTime], oldest first */
+    @Synchronized
+    fun forEachSample(startTime: Long, endTime: Long, action: (timestamp: Long, value: Double) -> Unit) {
+        for (i in firstIndexSince(startTime) until size) {
+            val index = rawIndex(i)
+            if (timestamps[index] > endTime) break
+            action(timestamps[index], values[index])
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        head = 0
+        size = 0
+        rollupRings.forEach { it.clear() }
+    }
+
+    // Position of the i-th oldest raw sample in the arrays
+    private fun rawIndex(i: Int): Int = (head - size + i + rawCapacity) % rawCapacity
+
+    private fun firstIndexSince(since: Long): Int {
+        var i = 0
+        while (i < size && timestamps[rawIndex(i)] < since) i++
+        return i
+    }
+}
@@ -0,0 +1,139 @@
+package com.soundboard.android.network
+
+import android.util.Log
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import org.json.JSONObject
+import java.io.IOException
+import java.net.DatagramPacket
+import java.net.InetAddress
+import java.net.MulticastSocket
+import java.net.SocketTimeoutException
+import java.util.UUID
+
+/**
+ * Phase 2: Multicast Server Discovery
+ *
+ * Sends one query datagram to the discovery multicast group, plus the
+ * limited broadcast address for access points that drop multicast. Every
+ * AudioDeck server on the LAN answers unicast with its name, version, ports
+ * and load, so discovery takes one round trip instead of a subnet sweep.
+ * Answers are unicast, so no Wi-Fi multicast lock is needed to receive them.
+ *
+ * Matches server/src/network/DiscoveryResponder.js.
+ */
+class MulticastDiscoveryClient(
+    private val responseWindowMs: Long = DEFAULT_RESPONSE_WINDOW_MS
+) {
+    companion object {
+        private const val TAG = "MulticastDiscovery"
+        const val DISCOVERY_GROUP = "239.255.77.77"
+        const val DISCOVERY_PORT = 41235
+        const val DEFAULT_RESPONSE_WINDOW_MS = 300L // LAN answers arrive within a few ms
+        private const val PROTOCOL_VERSION = 1
+        private const val QUERY_TYPE = "audiodeck_discover"
+        private const val ANNOUNCE_TYPE = "audiodeck_announce"
+        private const val BROADCAST_ADDRESS = "255.255.255.255"
+        private const val MAX_DATAGRAM_BYTES = 2048
+        private const val MULTICAST_TTL = 1 // Stay on the local link
+    }
+
+    data class Announcement(
+        val serverId: String,
+        val name: String,
+        val address: String,
+        val hostname: String?,
+        val version: String?,
+        val platform: String?,
+        val httpPort: Int,
+        val socketPort: Int,
+        val connectedClients: Int?,
+        val cpuUsage: Double?,
+        val eventLoopLagMs: Double?,
+        val responseTimeMs: Long
+    )
+
+    /**
+     * Queries the LAN and emits each server as its answer arrives. Completes
+     * once [responseWindowMs] has passed since the query went out.
+     */
+    fun discover(): Flow<Announcement> = flow {
+        val nonce = UUID.randomUUID().toString()
+        val query = JSONObject().apply {
+            put("type", QUERY_TYPE)
+            put("version", PROTOCOL_VERSION)
+            put("nonce", nonce)
+        }.toString().toByteArray(Charsets.UTF_8)
+
+        MulticastSocket().use { socket ->
+            socket.timeToLive = MULTICAST_TTL
+            socket.broadcast = true
+
+            val sentAt = System.currentTimeMillis()
+            sendQuery(socket, query, DISCOVERY_GROUP)
+            sendQuery(socket, query, BROADCAST_ADDRESS)
+
+            val seen = mutableSetOf<String>()
+            val buffer = ByteArray(MAX_DATAGRAM_BYTES)
+            val deadline = sentAt + responseWindowMs
+            while (true) {
+                currentCoroutineContext().ensureActive()
+                val remaining = deadline - System.currentTimeMillis()
+                if (remaining <= 0) break
+
+                val packet = DatagramPacket(buffer, buffer.size)
+                socket.soTimeout = remaining.toInt().coerceAtLeast(1)
+                try {
+                    socket.receive(packet)
+                } catch (e: SocketTimeoutException) {
+                    break
+                }
+
+                val announcement = parseAnnouncement(packet, nonce, System.currentTimeMillis() - sentAt) ?: continue
+                if (seen.add(announcement.serverId)) emit(announcement)
+            }
+            Log.d(TAG, "Discovery window closed: ${seen.size} server(s) answered")
+        }
+    }.flowOn(Dispatchers.IO)
+
+    private fun sendQuery(socket: MulticastSocket, query: ByteArray, destination: String) {
+        try {
+            socket.send(DatagramPacket(query, query.size, InetAddress.getByName(destination), DISCOVERY_PORT))
+        } catch (e: IOException) {
+            Log.w(TAG, "Could not send discovery query to $destination: ${e.message}")
+        }
+    }
+
+    private fun parseAnnouncement(packet: DatagramPacket, nonce: String, responseTimeMs: Long): Announcement? {
+        return try {
+            val json = JSONObject(String(packet.data, packet.offset, packet.length, Charsets.UTF_8))
+            if (json.optString("type") != ANNOUNCE_TYPE || json.optString("nonce") != nonce) return null
+
+            val ports = json.optJSONObject("ports")
+            val httpPort = ports?.optInt("http", -1) ?: -1
+            if (httpPort !in 1..65535) return null
+            val load = json.optJSONObject("load")
+
+            Announcement(
+                serverId = json.optString("id").ifEmpty { packet.address.hostAddress ?: return null },
+                name = json.optString("name").ifEmpty { "Soundboard Server" },
+                address = packet.address.hostAddress ?: return null,
+                hostname = json.optString("hostname").ifEmpty { null },
+                version = json.optString("server_version").ifEmpty { null },
+                platform = json.optString("platform").ifEmpty { null },
+                httpPort = httpPort,
+                socketPort = ports?.optInt("socket", httpPort) ?: httpPort,
+                connectedClients = load?.takeIf { it.has("clients") }?.optInt("clients"),
+                cpuUsage = load?.takeIf { it.has("cpu") }?.optDouble("cpu"),
+                eventLoopLagMs = load?.takeIf { it.has("event_loop_lag_ms") }?.optDouble("event_loop_lag_ms"),
+                responseTimeMs = responseTimeMs
+            )
+        } catch (e: Exception) {
+            null // Not an announcement
+        }
+    }
+}
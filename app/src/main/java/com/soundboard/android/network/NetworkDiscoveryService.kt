@@ -7,10 +7,13 @@ import android.net.wifi.WifiManager
 import android.util.Log
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.json.Json
 import org.json.JSONObject
 import java.net.*
+import java.io.IOException
 import java.util.concurrent.ConcurrentHashMap
 
 /**
@@ -20,13 +23,16 @@ import java.util.concurrent.ConcurrentHashMap
  * and network topology analysis for seamless connection setup.
  */
 class NetworkDiscoveryService(
-    private val context: Context
+    private val context: Context,
+    maxConcurrentConnects: Int = SubnetScanner.DEFAULT_MAX_CONCURRENT_CONNECTS
 ) {
     companion object {
         private const val TAG = "NetworkDiscoveryService"
         private const val DISCOVERY_TIMEOUT = 30000L // 30 seconds
         private const val SCAN_INTERVAL = 10000L // 10 seconds
         private const val DEFAULT_PORT = 8080
+        private const val HEALTH_PROBE_TIMEOUT_MS = 1500
+        private const val MAX_CONCURRENT_HEALTH_PROBES = 4
     }
 
     @Serializable
@@ -114,6 +120,9 @@ class NetworkDiscoveryService(
     
     // Internal state
     private val serversMap = ConcurrentHashMap<String, DiscoveredServer>()
+    private val multicastDiscovery = MulticastDiscoveryClient()
+    private val subnetScanner = SubnetScanner(maxConcurrentConnects)
+    private val healthProbes = Semaphore(MAX_CONCURRENT_HEALTH_PROBES)
     private val json = Json { ignoreUnknownKeys = true }
 
     /**
@@ -161,10 +170,16 @@ class NetworkDiscoveryService(
     }
 
     /**
-     * Start network scanning for soundboard servers
+     * Find soundboard servers: one multicast query first, and only if no
+     * server answers, a TCP sweep of the local /24. Open ports found by the
+     * sweep are confirmed with a /health probe, which also supplies the
+     * server's name, version and platform.
      */
     private suspend fun startNetworkScanning() {
         try {
+            if (discoverViaMulticast() > 0) return
+            Log.d(TAG, "📡 No multicast answer, falling back to subnet sweep")
+            
             val networkInfo = getNetworkTopology()
             val localAddress = networkInfo?.localAddress ?: return
             
@@ -174,18 +189,20 @@ class NetworkDiscoveryService(
             val parts = localAddress.split(".")
             if (parts.size == 4) {
                 val networkBase = "${parts[0]}.${parts[1]}.${parts[2]}"
+                val targets = (1..254)
+                    .map { "$networkBase.$it" }
+                    .filter { it != localAddress }
+                    .map { InetSocketAddress(InetAddress.getByName(it), DEFAULT_PORT) }
                 
-                // Scan common IP ranges
-                for (i in 1..254) {
-                    if (!discoveryJob?.isActive!!) break
-                    
-                    val targetIP = "$networkBase.$i"
-                    discoveryScope.launch {
-                        scanServerAt(targetIP, DEFAULT_PORT)
+                coroutineScope {
+                    subnetScanner.scan(targets).collect { openPort ->
+                        launch { healthProbes.withPermit { probeServer(openPort) } }
                     }
                 }
             }
             
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "❌ Network scanning error", e)
             _lastError.value = "Network scanning failed: ${e.message}"
@@ -193,32 +210,88 @@ class NetworkDiscoveryService(
     }
 
     /**
-     * Scan for soundboard server at specific address
+     * Query the discovery multicast group. Returns how many servers answered.
      */
-    private suspend fun scanServerAt(address: String, port: Int) {
+    private suspend fun discoverViaMulticast(): Int {
+        var answered = 0
         try {
-            withContext(Dispatchers.IO) {
-                val socket = Socket()
-                socket.connect(InetSocketAddress(address, port), 3000) // 3 second timeout
-                socket.close()
-                
-                // Server found, try to get info
-                val server = DiscoveredServer(
-                    name = "Soundboard Server",
-                    address = address,
-                    port = port,
-                    hostname = address,
-                    version = "Unknown",
-                    platform = "Unknown",
-                    isLocal = isLocalAddress(address),
-                    quality = assessNetworkQuality(address),
-                    discoveredAt = System.currentTimeMillis()
+            multicastDiscovery.discover().collect { announcement ->
+                answered++
+                addDiscoveredServer(
+                    DiscoveredServer(
+                        name = announcement.name,
+                        address = announcement.address,
+                        port = announcement.httpPort,
+                        hostname = announcement.hostname ?: announcement.address,
+                        version = announcement.version,
+                        platform = announcement.platform,
+                        capabilities = buildMap {
+                            put("discovery", "multicast")
+                            put("socketPort", announcement.socketPort.toString())
+                            announcement.connectedClients?.let { put("connectedClients", it.toString()) }
+                            announcement.cpuUsage?.let { put("cpuUsage", it.toString()) }
+                            announcement.eventLoopLagMs?.let { put("eventLoopLagMs", it.toString()) }
+                        },
+                        isLocal = isLocalAddress(announcement.address),
+                        quality = qualityForLatency(announcement.responseTimeMs),
+                        discoveredAt = System.currentTimeMillis()
+                    )
                 )
-                
-                addDiscoveredServer(server)
             }
+        } catch (e: IOException) {
+            Log.w(TAG, "⚠️ Multicast discovery unavailable: ${e.message}")
+        }
+        return answered
+    }
+
+    /**
+     * Confirm a soundboard server behind an open port via GET /health. Ports
+     * that answer with anything else are ignored.
+     */
+    private suspend fun probeServer(openPort: SubnetScanner.OpenPort) {
+        val health = fetchHealth(openPort.address, openPort.port) ?: return
+        val (json, responseTimeMs) = health
+        
+        addDiscoveredServer(
+            DiscoveredServer(
+                name = json.optString("name").ifEmpty { "Soundboard Server" },
+                address = openPort.address,
+                port = openPort.port,
+                hostname = json.optString("hostname").ifEmpty { openPort.address },
+                version = json.optString("version").ifEmpty { null },
+                platform = json.optString("platform").ifEmpty {
+                    json.optJSONObject("environment")?.optString("platform")?.ifEmpty { null }
+                },
+                isLocal = isLocalAddress(openPort.address),
+                quality = qualityForLatency(maxOf(openPort.connectTimeMs, responseTimeMs)),
+                discoveredAt = System.currentTimeMillis()
+            )
+        )
+    }
+
+    /**
+     * GET /health with a short timeout. Returns the JSON body and response
+     * time, or null when the endpoint is missing or does not return JSON.
+     */
+    private suspend fun fetchHealth(address: String, port: Int): Pair<JSONObject, Long>? = withContext(Dispatchers.IO) {
+        val startTime = System.currentTimeMillis()
+        val connection = try {
+            URL("http", address, port, "/health").openConnection() as HttpURLConnection
+        } catch (e: IOException) {
+            return@withContext null
+        }
+        try {
+            connection.connectTimeout = HEALTH_PROBE_TIMEOUT_MS
+            connection.readTimeout = HEALTH_PROBE_TIMEOUT_MS
+            connection.setRequestProperty("Accept", "application/json")
+            if (connection.responseCode != HttpURLConnection.HTTP_OK) return@withContext null
+            
+            val body = connection.inputStream.bufferedReader().use { it.readText() }
+            JSONObject(body) to (System.currentTimeMillis() - startTime)
         } catch (e: Exception) {
-            // Server not found at this address, continue silently
+            null // Not a soundboard server
+        } finally {
+            connection.disconnect()
         }
     }
 
@@ -307,26 +380,21 @@ class NetworkDiscoveryService(
     }
 
     /**
-     * Assess network quality to an address
+     * Assess network quality to a server from the time its /health endpoint
+     * takes to answer
      */
-    private fun assessNetworkQuality(address: String?): NetworkQuality {
+    private suspend fun assessNetworkQuality(address: String?, port: Int): NetworkQuality {
         if (address == null) return NetworkQuality.UNKNOWN
         
-        return try {
-            val startTime = System.currentTimeMillis()
-            val isReachable = InetAddress.getByName(address).isReachable(3000)
-            val latency = System.currentTimeMillis() - startTime
-            
-            when {
-                !isReachable -> NetworkQuality.POOR
-                latency < 50 -> NetworkQuality.EXCELLENT
-                latency < 150 -> NetworkQuality.GOOD
-                latency < 300 -> NetworkQuality.FAIR
-                else -> NetworkQuality.POOR
-            }
-        } catch (e: Exception) {
-            NetworkQuality.UNKNOWN
-        }
+        val health = fetchHealth(address, port) ?: return NetworkQuality.POOR
+        return qualityForLatency(health.second)
+    }
+
+    private fun qualityForLatency(latencyMs: Long): NetworkQuality = when {
+        latencyMs < 50 -> NetworkQuality.EXCELLENT
+        latencyMs < 150 -> NetworkQuality.GOOD
+        latencyMs < 300 -> NetworkQuality.FAIR
+        else -> NetworkQuality.POOR
     }
 
     /**
@@ -377,7 +445,7 @@ class NetworkDiscoveryService(
     /**
      * Create server from QR connection data
      */
-    fun createServerFromQR(qrData: QRConnectionData): DiscoveredServer {
+    suspend fun createServerFromQR(qrData: QRConnectionData): DiscoveredServer {
         return DiscoveredServer(
             name = qrData.server.name,
             address = qrData.server.address,
@@ -387,7 +455,7 @@ class NetworkDiscoveryService(
             token = qrData.connection.token,
             capabilities = qrData.capabilities,
             isLocal = isLocalAddress(qrData.server.address),
-            quality = assessNetworkQuality(qrData.server.address),
+            quality = assessNetworkQuality(qrData.server.address, qrData.server.port),
             discoveredAt = System.currentTimeMillis()
         )
     }
@@ -409,10 +477,12 @@ class NetworkDiscoveryService(
                 
                 // Update quality for all discovered servers
                 val updatedServers = serversMap.mapValues { (_, server) ->
-                    server.copy(
-                        quality = assessNetworkQuality(server.address),
-                        lastSeen = System.currentTimeMillis()
-                    )
+                    healthProbes.withPermit {
+                        server.copy(
+                            quality = assessNetworkQuality(server.address, server.port),
+                            lastSeen = System.currentTimeMillis()
+                        )
+                    }
                 }
                 
                 serversMap.clear()
@@ -474,20 +544,22 @@ class NetworkDiscoveryService(
      * Add manually discovered server
      */
     fun addManualServer(name: String, address: String, port: Int) {
-        val server = DiscoveredServer(
-            name = name,
-            address = address,
-            port = port,
-            hostname = address,
-            version = "Manual",
-            platform = "Unknown",
-            isLocal = isLocalAddress(address),
-            quality = assessNetworkQuality(address),
-            discoveredAt = System.currentTimeMillis()
-        )
-        
-        addDiscoveredServer(server)
-        Log.d(TAG, "➕ Manually added server: $name at $address:$port")
+        discoveryScope.launch {
+            val server = DiscoveredServer(
+                name = name,
+                address = address,
+                port = port,
+                hostname = address,
+                version = "Manual",
+                platform = "Unknown",
+                isLocal = isLocalAddress(address),
+                quality = assessNetworkQuality(address, port),
+                discoveredAt = System.currentTimeMillis()
+            )
+            
+            addDiscoveredServer(server)
+            Log.d(TAG, "➕ Manually added server: $name at $address:$port")
+        }
     }
 
     /**
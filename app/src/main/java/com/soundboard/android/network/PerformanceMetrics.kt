@@ -32,6 +32,12 @@ class PerformanceMetrics @Inject constructor() {
         private const val PERFORMANCE_THRESHOLD_WARNING = 0.7 // 70%
         private const val PERFORMANCE_THRESHOLD_CRITICAL = 0.9 // 90%
         private val LATENCY_PERCENTILES = listOf(50.0, 90.0, 95.0, 99.0)
+        const val TAP_TO_AUDIO_METRIC = "tap_to_audio_ms"
+        private val TAP_TO_AUDIO_KEY = "${MetricCategory.NETWORK.name}_$TAP_TO_AUDIO_METRIC"
+        private const val LATENCY_WINDOW_SLOTS = 12
+        private const val LATENCY_SLOT_MS = METRICS_RETENTION_WINDOW_MS / LATENCY_WINDOW_SLOTS // 5 minutes
+        private const val MICROS_PER_MS = 1000.0
+        private val LATENCY_UNITS = setOf("ms", "milliseconds")
     }
     
     // Metric categories
@@ -145,6 +151,61 @@ class PerformanceMetrics @Inject constructor() {
         CRITICAL
     }
     
+    // Tap-to-audio latency over the retention window, read from its histogram window
+    data class LatencyHistogram(
+        val totalCount: Long = 0,
+        val meanMs: Double = 0.0,
+        val p50Ms: Double = 0.0,
+        val p95Ms: Double = 0.0,
+        val p99Ms: Double = 0.0,
+        val maxMs: Double = 0.0
+    )
+    
+    // Time series of one metric, with what is needed to rebuild its data points
+    private class MetricHistory(
+        val category: MetricCategory,
+        val name: String,
+        val unit: String
+    ) {
+        val series = MetricTimeSeries()
+    }
+    
+    /**
+     * One retention window of a latency metric as interval histograms, one per
+     * slot, recorded in microseconds. A slot is reset when the ring wraps back
+     * onto it, so memory stays fixed however many samples arrive.
+     */
+    private class LatencyWindow(
+        val category: MetricCategory,
+        val name: String,
+        val unit: String
+    ) {
+        private val slots = Array(LATENCY_WINDOW_SLOTS + 1) { LogBucketHistogram() } // +1 for the slot being filled
+        private val slotIds = LongArray(slots.size) { -1 }
+        var dirty = false
+        
+        fun record(valueMs: Double, now: Long) {
+            val slotId = now / LATENCY_SLOT_MS
+            val index = (slotId % slots.size).toInt()
+            if (slotIds[index] != slotId) {
+                slots[index].reset()
+                slotIds[index] = slotId
+            }
+            slots[index].recordValue(Math.round(valueMs * MICROS_PER_MS))
+            dirty = true
+        }
+        
+        // Non-empty slots still inside the window, oldest first
+        fun liveSlots(now: Long): List<LogBucketHistogram.Snapshot> {
+            val currentSlotId = now / LATENCY_SLOT_MS
+            return slots.indices
+                .filter { slotIds[it] > currentSlotId - slots.size }
+                .sortedBy { slotIds[it] }
+                .map { slots[it].snapshot() }
+                .filter { it.totalCount > 0 }
+        }
+    }
+    
     // Performance dashboard data
     data class PerformanceDashboard(
         val systemHealth: SystemHealthStatus,
@@ -161,7 +222,8 @@ class PerformanceMetrics @Inject constructor() {
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     
     // Data storage
-    private val metricsHistory = ConcurrentHashMap<String, ArrayDeque<MetricDataPoint>>()
+    private val metricsHistory = ConcurrentHashMap<String, MetricHistory>()
+    private val latencyWindows = ConcurrentHashMap<String, LatencyWindow>()
     private val currentStatistics = ConcurrentHashMap<String, MetricStatistics>()
     private val activeAlerts = ConcurrentHashMap<String, PerformanceAlert>()
     private val recommendations = ConcurrentHashMap<String, PerformanceRecommendation>()
@@ -199,6 +261,10 @@ class PerformanceMetrics @Inject constructor() {
     private val _systemHealth = MutableStateFlow(HealthLevel.GOOD)
     val systemHealth: StateFlow<HealthLevel> = _systemHealth.asStateFlow()
     
+    // Tap-to-audio distribution, refreshed from its latency window on each collection pass
+    private val _tapToAudioLatency = MutableStateFlow(LatencyHistogram())
+    val tapToAudioLatency: StateFlow<LatencyHistogram> = _tapToAudioLatency.asStateFlow()
+    
     /**
      * Initialize the performance metrics system
      */
@@ -215,7 +281,10 @@ class PerformanceMetrics @Inject constructor() {
     }
     
     /**
-     * Record a metric data point
+     * Record a metric data point. Every metric goes into its time series;
+     * latency metrics (unit "ms", or a name ending in "_ms") are also kept in
+     * a histogram window, from which their statistics are refreshed on each
+     * collection pass. Tags are not kept in the history.
      */
     suspend fun recordMetric(
         category: MetricCategory,
@@ -225,32 +294,23 @@ class PerformanceMetrics @Inject constructor() {
         tags: Map<String, String> = emptyMap()
     ) {
         val metricKey = "${category.name}_$name"
-        val dataPoint = MetricDataPoint(
-            timestamp = System.currentTimeMillis(),
-            category = category,
-            name = name,
-            value = value,
-            unit = unit,
-            tags = tags
-        )
+        val timestamp = System.currentTimeMillis()
         
         metricsMutex.withLock {
             // Store in history
-            val history = metricsHistory.getOrPut(metricKey) { ArrayDeque() }
-            history.offer(dataPoint)
-            
-            // Cleanup old data
-            val cutoffTime = System.currentTimeMillis() - METRICS_RETENTION_WINDOW_MS
-            while (history.isNotEmpty() && history.peek().timestamp < cutoffTime) {
-                history.poll()
-            }
+            val history = metricsHistory.getOrPut(metricKey) { MetricHistory(category, name, unit) }
+            history.series.record(timestamp, value)
             
             // Update counters
             metricCounts.getOrPut(metricKey) { AtomicLong(0) }.incrementAndGet()
             metricSums[metricKey] = (metricSums[metricKey] ?: 0.0) + value
             
             // Update statistics
-            updateMetricStatistics(metricKey, history.toList())
+            if (isLatencyMetric(name, unit)) {
+                latencyWindows.getOrPut(metricKey) { LatencyWindow(category, name, unit) }.record(value, timestamp)
+            } else {
+                updateMetricStatistics(metricKey, history, timestamp - METRICS_RETENTION_WINDOW_MS)
+            }
             
             // Check for alerts
             checkMetricThresholds(metricKey, value)
@@ -259,6 +319,21 @@ class PerformanceMetrics @Inject constructor() {
         Log.v(TAG, "Recorded metric: ${category.name}.$name = $value $unit")
     }
     
+    /**
+     * Record the delay from a button press to the server handing the sound to
+     * its audio player, measured across clocks via the control channel's
+     * clock offset estimate. Small negative values from clock error count as 0.
+     * The sample lands in the metric's latency window like any other latency.
+     */
+    fun recordTapToAudioLatency(latencyMs: Long) {
+        val value = latencyMs.coerceAtLeast(0)
+        scope.launch {
+            recordMetric(MetricCategory.NETWORK, TAP_TO_AUDIO_METRIC, value.toDouble(), "ms")
+        }
+    }
+    
+    fun getTapToAudioHistogram(): LatencyHistogram = _tapToAudioLatency.value
+    
     /**
      * Get statistics for a specific metric
      */
@@ -335,20 +410,38 @@ class PerformanceMetrics @Inject constructor() {
     }
     
     /**
-     * Export metrics data for external analysis
+     * Get interval rollups of a metric, oldest first, for charts and trends.
+     * Cheaper than exporting raw data points and covers a longer span.
+     */
+    fun getMetricRollups(
+        category: MetricCategory,
+        name: String,
+        resolution: MetricTimeSeries.Resolution,
+        maxPoints: Int = resolution.slots
+    ): List<MetricTimeSeries.Rollup> {
+        val metricKey = "${category.name}_$name"
+        return metricsHistory[metricKey]?.series?.rollups(resolution, System.currentTimeMillis(), maxPoints) ?: emptyList()
+    }
+    
+    /**
+     * Export metrics data for external analysis. Data points are rebuilt from
+     * the raw sample rings, so they carry no tags and each metric is limited to
+     * its most recent [MetricTimeSeries.DEFAULT_RAW_CAPACITY] samples.
      */
     fun exportMetricsData(
         category: MetricCategory? = null,
         startTime: Long = System.currentTimeMillis() - METRICS_RETENTION_WINDOW_MS,
         endTime: Long = System.currentTimeMillis()
     ): List<MetricDataPoint> {
-        return metricsHistory.values
-            .flatten()
-            .filter { dataPoint ->
-                dataPoint.timestamp in startTime..endTime &&
-                (category == null || dataPoint.category == category)
+        val dataPoints = mutableListOf<MetricDataPoint>()
+        metricsHistory.values
+            .filter { category == null || it.category == category }
+            .forEach { history ->
+                history.series.forEachSample(startTime, endTime) { timestamp, value ->
+                    dataPoints.add(MetricDataPoint(timestamp, history.category, history.name, value, history.unit))
+                }
             }
-            .sortedBy { it.timestamp }
+        return dataPoints.sortedBy { it.timestamp }
     }
     
     /**
@@ -357,11 +450,13 @@ class PerformanceMetrics @Inject constructor() {
     suspend fun clearMetricsHistory() {
         metricsMutex.withLock {
             metricsHistory.clear()
+            latencyWindows.clear()
             currentStatistics.clear()
             activeAlerts.clear()
             recommendations.clear()
             metricCounts.clear()
             metricSums.clear()
+            _tapToAudioLatency.value = LatencyHistogram()
             Log.i(TAG, "Cleared all metrics history")
         }
     }
@@ -373,6 +468,7 @@ class PerformanceMetrics @Inject constructor() {
         setDefaultThreshold(MetricCategory.NETWORK, "latency_ms", 500.0, 1000.0)
         setDefaultThreshold(MetricCategory.NETWORK, "error_rate", 0.05, 0.1)
         setDefaultThreshold(MetricCategory.NETWORK, "timeout_rate", 0.02, 0.05)
+        setDefaultThreshold(MetricCategory.NETWORK, TAP_TO_AUDIO_METRIC, 100.0, 250.0)
         
         // Cache metrics
         setDefaultThreshold(MetricCategory.CACHE, "hit_rate", 0.8, 0.6)
@@ -460,17 +556,63 @@ class PerformanceMetrics @Inject constructor() {
             value = usedMemory.toDouble() / (1024 * 1024),
             unit = "megabytes"
         )
+        
+        metricsMutex.withLock {
+            refreshLatencyStatistics()
+        }
+    }
+    
+    private fun isLatencyMetric(name: String, unit: String): Boolean {
+        return unit in LATENCY_UNITS || name.endsWith("_ms")
     }
     
-    private fun updateMetricStatistics(metricKey: String, dataPoints: List<MetricDataPoint>) {
-        if (dataPoints.isEmpty()) return
+    private fun refreshLatencyStatistics() {
+        val now = System.currentTimeMillis()
+        latencyWindows.forEach { (metricKey, window) ->
+            if (!window.dirty) return@forEach
+            window.dirty = false
+            
+            val slots = window.liveSlots(now)
+            val merged = slots.reduceOrNull { acc, slot -> acc.merge(slot) } ?: return@forEach
+            
+            currentStatistics[metricKey] = MetricStatistics(
+                category = window.category,
+                name = window.name,
+                unit = window.unit,
+                count = merged.totalCount,
+                sum = merged.sum / MICROS_PER_MS,
+                average = merged.mean / MICROS_PER_MS,
+                minimum = merged.minValue / MICROS_PER_MS,
+                maximum = merged.maxValue / MICROS_PER_MS,
+                percentiles = LATENCY_PERCENTILES.associateWith { merged.valueAtPercentile(it) / MICROS_PER_MS },
+                standardDeviation = merged.standardDeviation() / MICROS_PER_MS,
+                trend = calculateLatencyTrend(slots),
+                lastUpdated = now
+            )
+            
+            if (metricKey == TAP_TO_AUDIO_KEY) {
+                _tapToAudioLatency.value = LatencyHistogram(
+                    totalCount = merged.totalCount,
+                    meanMs = merged.mean / MICROS_PER_MS,
+                    p50Ms = merged.valueAtPercentile(50.0) / MICROS_PER_MS,
+                    p95Ms = merged.valueAtPercentile(95.0) / MICROS_PER_MS,
+                    p99Ms = merged.valueAtPercentile(99.0) / MICROS_PER_MS,
+                    maxMs = merged.maxValue / MICROS_PER_MS
+                )
+            }
+        }
+    }
+    
+    private fun updateMetricStatistics(metricKey: String, history: MetricHistory, since: Long) {
+        val samples = history.series.valuesSince(since) // Oldest first
+        if (samples.isEmpty()) return
         
-        val values = dataPoints.map { it.value }.sorted()
+        val values = samples.copyOf().apply { sort() }
         val count = values.size.toLong()
         val sum = values.sum()
         val average = sum / count
-        val minimum = values.minOrNull() ?: 0.0
-        val maximum = values.maxOrNull() ?: 0.0
+        val minimum = values.first()
+        val maximum = values.last()
         
         // Calculate percentiles
         val percentiles = LATENCY_PERCENTILES.associateWith { percentile ->
@@ -478,17 +620,17 @@ class PerformanceMetrics @Inject constructor() {
         }
         
         // Calculate standard deviation
-        val variance = values.map { (it - average) * (it - average) }.average()
-        val standardDeviation = kotlin.math.sqrt(variance)
+        var squares = 0.0
+        for (value in values) squares += (value - average) * (value - average)
+        val standardDeviation = kotlin.math.sqrt(squares / count)
         
         // Determine trend
-        val trend = calculateTrend(dataPoints)
+        val trend = calculateTrend(samples)
         
-        val firstDataPoint = dataPoints.first()
         val statistics = MetricStatistics(
-            category = firstDataPoint.category,
-            name = firstDataPoint.name,
-            unit = firstDataPoint.unit,
+            category = history.category,
+            name = history.name,
+            unit = history.unit,
             count = count,
             sum = sum,
             average = average,
@@ -503,24 +645,31 @@ class PerformanceMetrics @Inject constructor() {
         currentStatistics[metricKey] = statistics
     }
     
-    private fun calculatePercentile(sortedValues: List<Double>, percentile: Double): Double {
+    private fun calculatePercentile(sortedValues: DoubleArray, percentile: Double): Double {
         if (sortedValues.isEmpty()) return 0.0
         
         val index = (percentile / 100.0 * (sortedValues.size - 1)).toInt()
         return sortedValues[index.coerceIn(0, sortedValues.size - 1)]
     }
     
-    private fun calculateTrend(dataPoints: List<MetricDataPoint>): TrendDirection {
-        if (dataPoints.size < 10) return TrendDirection.UNKNOWN
-        
-        val recentPoints = dataPoints.takeLast(10)
-        val olderPoints = dataPoints.takeLast(20).take(10)
+    private fun calculateTrend(values: DoubleArray): TrendDirection {
+        if (values.size < 10) return TrendDirection.UNKNOWN
         
-        if (olderPoints.isEmpty()) return TrendDirection.UNKNOWN
-        
-        val recentAverage = recentPoints.map { it.value }.average()
-        val olderAverage = olderPoints.map { it.value }.average()
+        // Last 10 samples against the 10 before them (overlapping while fewer than 20)
+        val recentAverage = values.copyOfRange(values.size - 10, values.size).average()
+        val olderStart = maxOf(0, values.size - 20)
+        val olderAverage = values.copyOfRange(olderStart, olderStart + 10).average()
         
+        return trendFromChange(recentAverage, olderAverage)
+    }
+    
+    // Latest slot against the one before it
+    private fun calculateLatencyTrend(slots: List<LogBucketHistogram.Snapshot>): TrendDirection {
+        if (slots.size < 2 || slots.sumOf { it.totalCount } < 10 || slots[slots.size - 2].mean == 0.0) return TrendDirection.UNKNOWN
+        return trendFromChange(slots[slots.size - 1].mean, slots[slots.size - 2].mean)
+    }
+    
+    private fun trendFromChange(recentAverage: Double, olderAverage: Double): TrendDirection {
         val changeRatio = (recentAverage - olderAverage) / olderAverage
         
         return when {
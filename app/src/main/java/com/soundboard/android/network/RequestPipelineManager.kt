@@ -2,7 +2,6 @@ package com.soundboard.android.network
 
 import android.util.Log
 import kotlinx.coroutines.*
-import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
@@ -10,6 +9,7 @@ import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -29,6 +29,9 @@ class RequestPipelineManager @Inject constructor() {
         private const val REQUEST_TIMEOUT_MS = 30_000L // 30 seconds
         private const val PIPELINE_FLUSH_INTERVAL_MS = 100L // 100ms
         private const val THROUGHPUT_WINDOW_MS = 10_000L // 10 seconds
+        private const val QUEUE_CAPACITY_PER_PRIORITY = 256
+        private const val QUEUE_AGING_INTERVAL_MS = 250L
+        private const val COALESCING_RESULT_WINDOW_MS = 500L // Serve a just-finished identical read
     }
     
     // Request representation
@@ -56,15 +59,16 @@ class RequestPipelineManager @Inject constructor() {
         IMMEDIATE(5)
     }
     
-    enum class RequestType(val description: String, val allowParallel: Boolean) {
-        GET("GET Request", true),
+    // readOnly: repeating the request has no side effects, so identical ones may share a result
+    enum class RequestType(val description: String, val allowParallel: Boolean, val readOnly: Boolean = false) {
+        GET("GET Request", true, readOnly = true),
         POST("POST Request", true),
         PUT("PUT Request", false), // Order dependent
         DELETE("DELETE Request", false), // Order dependent
         PATCH("PATCH Request", false), // Order dependent
         WEBSOCKET("WebSocket Message", true),
         UPLOAD("File Upload", true),
-        DOWNLOAD("File Download", true),
+        DOWNLOAD("File Download", true, readOnly = true),
         CUSTOM("Custom Request", true)
     }
     
@@ -99,7 +103,16 @@ class RequestPipelineManager @Inject constructor() {
         val activeRequests: Int,
         val queuedRequests: Int,
         val pipelineEfficiency: Double,
-        val requestTypeDistribution: Map<RequestType, Long>
+        val requestTypeDistribution: Map<RequestType, Long>,
+        val queuedByPriority: Map<RequestPriority, Int> = emptyMap(),
+        val queueDelayByPriority: Map<RequestPriority, RequestScheduler.QueueDelay> = emptyMap(),
+        val backpressureWaits: Long = 0L, // Submits that had to wait for queue capacity
+        val agingPromotions: Long = 0L, // Requests served early because they waited too long
+        val waitingOnDependencies: Int = 0,
+        val dependencyCancellations: Long = 0L, // Requests cancelled because an upstream request failed
+        val coalescedExecutions: Long = 0L, // Coalescable requests that actually ran
+        val coalescedInFlightHits: Long = 0L, // Joined an identical request already running
+        val coalescedRecentHits: Long = 0L // Served from the short result window
     )
     
     // Request tracking
@@ -113,6 +126,26 @@ class RequestPipelineManager @Inject constructor() {
         val errorMessage: String?
     )
     
+    // Node of a request graph; dependsOn holds the keys of other nodes in the same graph
+    data class GraphNode(
+        val key: String,
+        val dependsOn: List<String> = emptyList(),
+        val priority: RequestPriority = RequestPriority.NORMAL,
+        val requestType: RequestType = RequestType.CUSTOM,
+        val requestBlock: suspend () -> Any?
+    )
+    
+    // Single-flight key: identical reads share one execution
+    private data class CoalescingKey(val requestType: RequestType, val payload: Any?)
+    
+    private class RecentResult(val result: Result<Any?>, val expiresAt: Long)
+    
+    // Request parked until its remaining dependencies complete
+    private class WaitingRequest(
+        val request: PipelineRequest<*>,
+        var remainingDependencies: Int
+    )
+    
     // Batch operation
     enum class BatchType {
         PARALLEL,    // Execute all requests in parallel
@@ -126,10 +159,20 @@ class RequestPipelineManager @Inject constructor() {
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     
     // Request queues and tracking
-    private val requestQueue = Channel<PipelineRequest<*>>(Channel.UNLIMITED)
+    private val requestScheduler = RequestScheduler<PipelineRequest<*>>(
+        capacityPerPriority = QUEUE_CAPACITY_PER_PRIORITY,
+        agingIntervalMs = QUEUE_AGING_INTERVAL_MS
+    )
     private val activeRequests = ConcurrentHashMap<String, RequestTrackingInfo>()
     private val completedRequests = ConcurrentHashMap<String, RequestTrackingInfo>()
-    private val dependencyGraph = ConcurrentHashMap<String, MutableSet<String>>()
+    private val dependencyGraph = HashMap<String, MutableSet<String>>() // requestId -> dependents, guarded by dagLock
+    private val waitingRequests = HashMap<String, WaitingRequest>() // Guarded by dagLock
+    private val dagLock = Any()
+    
+    // Single-flight state, guarded by coalescingLock
+    private val inFlightRequests = HashMap<CoalescingKey, Deferred<Result<Any?>>>()
+    private val recentResults = HashMap<CoalescingKey, RecentResult>()
+    private val coalescingLock = Any()
     private val requestResults = ConcurrentHashMap<String, Any>()
     
     // Performance tracking
@@ -139,6 +182,11 @@ class RequestPipelineManager @Inject constructor() {
     private var failedRequestCount = AtomicLong(0)
     private var cancelledRequestCount = AtomicLong(0)
     private var totalLatency = AtomicLong(0)
+    private val dependencyCancellationCount = AtomicLong(0)
+    private val requestSequence = AtomicLong(0)
+    private val coalescedExecutionCount = AtomicLong(0)
+    private val coalescedInFlightHitCount = AtomicLong(0)
+    private val coalescedRecentHitCount = AtomicLong(0)
     
     // Configuration
     private var pipelineConfiguration = PipelineConfiguration(
@@ -153,6 +201,7 @@ class RequestPipelineManager @Inject constructor() {
     
     // Pipeline workers
     private val workers = mutableListOf<Job>()
+    private val initialized = AtomicBoolean(false)
     
     // State flows for monitoring
     private val _pipelineStatistics = MutableStateFlow(
@@ -175,22 +224,24 @@ class RequestPipelineManager @Inject constructor() {
     val activeRequestsFlow: StateFlow<List<RequestTrackingInfo>> = _activeRequestsFlow.asStateFlow()
     
     /**
-     * Initialize the pipeline manager
+     * Initialize the pipeline manager. Only the first call starts workers;
+     * later calls are no-ops, so any component that submits requests may call it.
      */
     fun initialize(configuration: PipelineConfiguration = pipelineConfiguration) {
+        if (!initialized.compareAndSet(false, true)) return
         scope.launch {
             pipelineMutex.withLock {
                 pipelineConfiguration = configuration
                 startPipelineWorkers()
                 startStatisticsUpdater()
-                startDependencyResolver()
             }
         }
         Log.i(TAG, "Pipeline manager initialized with ${configuration.maxConcurrentRequests} concurrent workers")
     }
     
     /**
-     * Submit a request to the pipeline
+     * Submit a request to the pipeline. Suspends while the queue for
+     * [priority] is full.
      */
     suspend fun <T> submitRequest(
         priority: RequestPriority = RequestPriority.NORMAL,
@@ -201,9 +252,9 @@ class RequestPipelineManager @Inject constructor() {
         dependencies: List<String> = emptyList(),
         tags: Set<String> = emptySet(),
         estimatedDuration: Long = 1000L,
+        requestId: String = generateRequestId(),
         requestBlock: suspend () -> T
     ): Deferred<Result<T>> {
-        val requestId = generateRequestId()
         val deferred = CompletableDeferred<Result<T>>()
         
         val request = PipelineRequest(
@@ -222,18 +273,7 @@ class RequestPipelineManager @Inject constructor() {
             deferred = deferred
         )
         
-        // Track dependencies
-        if (pipelineConfiguration.enableDependencyTracking && dependencies.isNotEmpty()) {
-            dependencies.forEach { depId ->
-                dependencyGraph.getOrPut(depId) { mutableSetOf() }.add(requestId)
-            }
-        }
-        
-        // Add to queue
-        requestQueue.send(request)
-        totalRequests.incrementAndGet()
-        
-        // Track request
+        // Track request before queueing so a worker always finds it
         activeRequests[requestId] = RequestTrackingInfo(
             requestId = requestId,
             status = RequestStatus.QUEUED,
@@ -244,6 +284,9 @@ class RequestPipelineManager @Inject constructor() {
             errorMessage = null
         )
         
+        // Add to queue, or park until dependencies complete
+        schedule(request)
+        
         Log.d(TAG, "Submitted request: $requestId (${priority.name} priority, ${requestType.name})")
         
         return deferred
@@ -287,9 +330,6 @@ class RequestPipelineManager @Inject constructor() {
         
         // Submit all requests in batch
         pipelineRequests.forEach { request ->
-            requestQueue.send(request)
-            totalRequests.incrementAndGet()
-            
             activeRequests[request.requestId] = RequestTrackingInfo(
                 requestId = request.requestId,
                 status = RequestStatus.QUEUED,
@@ -299,6 +339,8 @@ class RequestPipelineManager @Inject constructor() {
                 retryCount = 0,
                 errorMessage = null
             )
+            
+            schedule(request)
         }
         
         Log.d(TAG, "Submitted batch: $batchId with ${requests.size} requests (${batchType.name})")
@@ -306,6 +348,128 @@ class RequestPipelineManager @Inject constructor() {
         return deferredResults
     }
     
+    /**
+     * Submit a graph of requests. Each node is released the moment all of its
+     * dependencies complete, independent branches run in parallel, and a
+     * failed node cancels everything downstream of it.
+     *
+     * @throws IllegalArgumentException on duplicate keys, unknown dependencies or cycles
+     */
+    suspend fun submitGraph(nodes: List<GraphNode>): Map<String, Deferred<Result<Any?>>> {
+        val nodesByKey = nodes.associateBy { it.key }
+        require(nodesByKey.size == nodes.size) { "Duplicate node keys in request graph" }
+        nodes.forEach { node ->
+            node.dependsOn.forEach { key ->
+                require(key in nodesByKey) { "Node ${node.key} depends on unknown node $key" }
+            }
+        }
+        
+        // Kahn's algorithm: submit parents before children, rejecting cycles
+        val inDegree = nodes.associate { it.key to it.dependsOn.distinct().size }.toMutableMap()
+        val children = HashMap<String, MutableList<String>>()
+        nodes.forEach { node -> node.dependsOn.distinct().forEach { children.getOrPut(it) { mutableListOf() }.add(node.key) } }
+        val ready = ArrayDeque(nodes.filter { inDegree[it.key] == 0 }.map { it.key })
+        val order = mutableListOf<String>()
+        while (ready.isNotEmpty()) {
+            val key = ready.removeFirst()
+            order.add(key)
+            children[key]?.forEach { child ->
+                val remaining = inDegree.getValue(child) - 1
+                inDegree[child] = remaining
+                if (remaining == 0) ready.addLast(child)
+            }
+        }
+        require(order.size == nodes.size) { "Request graph contains a cycle" }
+        
+        val graphId = generateBatchId()
+        val requestIds = nodes.associate { it.key to "${graphId}_${it.key}" }
+        val results = HashMap<String, Deferred<Result<Any?>>>()
+        for (key in order) {
+            val node = nodesByKey.getValue(key)
+            results[key] = submitRequest(
+                priority = node.priority,
+                requestType = node.requestType,
+                dependencies = node.dependsOn.distinct().map { requestIds.getValue(it) },
+                tags = setOf("graph:$graphId"),
+                requestId = requestIds.getValue(key),
+                requestBlock = node.requestBlock
+            )
+        }
+        
+        Log.d(TAG, "Submitted graph: $graphId with ${nodes.size} requests")
+        
+        return nodes.associate { it.key to results.getValue(it.key) }
+    }
+    
+    /**
+     * Execute a read with single-flight semantics. Concurrent calls with the
+     * same [requestType] and [payload] share one execution, and calls arriving
+     * within [resultWindowMs] after it succeeded get its result without
+     * running again. Failures are shared with waiters but never kept.
+     *
+     * Only [RequestType.readOnly] types are coalesced; anything else simply runs.
+     * The shared execution runs in the pipeline scope, so one caller being
+     * cancelled does not cancel it for the others.
+     */
+    suspend fun <T> executeCoalesced(
+        requestType: RequestType,
+        payload: Any?,
+        resultWindowMs: Long = COALESCING_RESULT_WINDOW_MS,
+        requestBlock: suspend () -> T
+    ): Result<T> {
+        if (!requestType.readOnly) {
+            return try {
+                Result.success(requestBlock())
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Result.failure(e)
+            }
+        }
+        
+        val key = CoalescingKey(requestType, payload)
+        val shared = synchronized(coalescingLock) {
+            val recent = recentResults[key]
+            if (recent != null && recent.expiresAt > System.currentTimeMillis()) {
+                coalescedRecentHitCount.incrementAndGet()
+                @Suppress("UNCHECKED_CAST")
+                return recent.result as Result<T>
+            }
+            recentResults.remove(key)
+            
+            inFlightRequests[key]?.let {
+                coalescedInFlightHitCount.incrementAndGet()
+                it
+            } ?: scope.async(start = CoroutineStart.LAZY) {
+                var result: Result<Any?>? = null
+                try {
+                    result = try {
+                        Result.success(requestBlock())
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        Result.failure(e)
+                    }
+                    result
+                } finally {
+                    synchronized(coalescingLock) {
+                        inFlightRequests.remove(key)
+                        if (result?.isSuccess == true && resultWindowMs > 0) {
+                            recentResults[key] = RecentResult(result, System.currentTimeMillis() + resultWindowMs)
+                        }
+                    }
+                }
+            }.also {
+                inFlightRequests[key] = it
+                coalescedExecutionCount.incrementAndGet()
+                it.start()
+            }
+        }
+        
+        @Suppress("UNCHECKED_CAST")
+        return shared.await() as Result<T>
+    }
+    
     /**
      * Cancel a request
      */
@@ -318,6 +482,16 @@ class RequestPipelineManager @Inject constructor() {
                     endTime = System.currentTimeMillis()
                 )
                 
+                // Still queued or parked: drop it now instead of running it later
+                val parked = synchronized(dagLock) { waitingRequests.remove(requestId) }?.request
+                val dropped = requestScheduler.remove { it.requestId == requestId } + listOfNotNull(parked)
+                dropped.forEach { request ->
+                    @Suppress("UNCHECKED_CAST")
+                    (request.deferred as CompletableDeferred<Result<Any?>>)
+                        .complete(Result.failure(CancellationException("Request cancelled")))
+                }
+                cancelDependents(requestId)
+                
                 cancelledRequestCount.incrementAndGet()
                 Log.d(TAG, "Cancelled request: $requestId")
                 true
@@ -362,16 +536,9 @@ class RequestPipelineManager @Inject constructor() {
     private suspend fun processNextRequest(workerId: Int) {
         try {
             val request = withTimeoutOrNull(PIPELINE_FLUSH_INTERVAL_MS) {
-                requestQueue.receive()
+                requestScheduler.receive()
             } ?: return
             
-            // Check dependencies
-            if (pipelineConfiguration.enableDependencyTracking && !areDependenciesSatisfied(request.dependencies)) {
-                requestQueue.send(request)
-                delay(10)
-                return
-            }
-            
             // Update status to processing
             activeRequests[request.requestId] = activeRequests[request.requestId]!!.copy(
                 status = RequestStatus.PROCESSING,
@@ -413,8 +580,8 @@ class RequestPipelineManager @Inject constructor() {
             errorMessage = null
         )
         
-        activeRequests.remove(request.requestId)
         completedRequests[request.requestId] = trackingInfo
+        activeRequests.remove(request.requestId)
         
         // Store result for dependencies
         requestResults[request.requestId] = result ?: Unit
@@ -428,8 +595,8 @@ class RequestPipelineManager @Inject constructor() {
         totalLatency.addAndGet(duration)
         recordRequestCompletion(request.requestId)
         
-        // Notify dependent requests
-        notifyDependentRequests(request.requestId)
+        // Release dependents whose last dependency this was
+        releaseDependents(request.requestId)
         
         Log.d(TAG, "Completed request: ${request.requestId} in ${duration}ms")
     }
@@ -438,7 +605,7 @@ class RequestPipelineManager @Inject constructor() {
         // Check if we should retry
         if (pipelineConfiguration.enableRetries && request.retryCount < request.maxRetries) {
             val retryRequest = request.copy(retryCount = request.retryCount + 1)
-            requestQueue.send(retryRequest)
+            requestScheduler.requeue(retryRequest, retryRequest.priority)
             
             Log.d(TAG, "Retrying request: ${request.requestId} (attempt ${retryRequest.retryCount}/${request.maxRetries})")
             return
@@ -458,8 +625,8 @@ class RequestPipelineManager @Inject constructor() {
             errorMessage = error.message
         )
         
-        activeRequests.remove(request.requestId)
         completedRequests[request.requestId] = trackingInfo
+        activeRequests.remove(request.requestId)
         
         // Complete the deferred with error
         @Suppress("UNCHECKED_CAST")
@@ -468,6 +635,7 @@ class RequestPipelineManager @Inject constructor() {
         // Update metrics
         failedRequestCount.incrementAndGet()
         recordRequestCompletion(request.requestId)
+        cancelDependents(request.requestId)
         
         Log.e(TAG, "Failed request: ${request.requestId} after ${request.retryCount} retries", error)
     }
@@ -486,8 +654,8 @@ class RequestPipelineManager @Inject constructor() {
             errorMessage = "Request timeout after ${request.timeout}ms"
         )
         
-        activeRequests.remove(request.requestId)
         completedRequests[request.requestId] = trackingInfo
+        activeRequests.remove(request.requestId)
         
         // Complete the deferred with timeout error
         @Suppress("UNCHECKED_CAST")
@@ -496,19 +664,114 @@ class RequestPipelineManager @Inject constructor() {
         // Update metrics
         failedRequestCount.incrementAndGet()
         recordRequestCompletion(request.requestId)
+        cancelDependents(request.requestId)
         
         Log.w(TAG, "Request timeout: ${request.requestId} after ${request.timeout}ms")
     }
     
-    private fun areDependenciesSatisfied(dependencies: List<String>): Boolean {
-        return dependencies.all { depId ->
-            completedRequests.containsKey(depId) && 
-            completedRequests[depId]?.status == RequestStatus.COMPLETED
+    private suspend fun schedule(request: PipelineRequest<*>) {
+        totalRequests.incrementAndGet()
+        if (pipelineConfiguration.enableDependencyTracking && request.dependencies.isNotEmpty() &&
+            awaitDependencies(request)
+        ) {
+            return
+        }
+        requestScheduler.send(request, request.priority)
+    }
+    
+    /**
+     * Adds the edges for [request] to the dependency graph. Returns true when
+     * the request must not be queued now: it is either parked until its open
+     * dependencies complete, or cancelled because one of them already failed.
+     */
+    private fun awaitDependencies(request: PipelineRequest<*>): Boolean {
+        var failedDependency: String? = null
+        synchronized(dagLock) {
+            val pending = mutableListOf<String>()
+            for (depId in request.dependencies.distinct()) {
+                // Completion writes completedRequests before removing from activeRequests,
+                // outside dagLock; reading in the opposite order always sees one of them
+                val active = activeRequests[depId]
+                val completed = completedRequests[depId]
+                when {
+                    completed?.status == RequestStatus.COMPLETED -> Unit
+                    active != null && active.status != RequestStatus.CANCELLED -> pending.add(depId)
+                    else -> {
+                        // Failed, cancelled, or never submitted: it will never complete
+                        failedDependency = depId
+                        break
+                    }
+                }
+            }
+            if (failedDependency == null) {
+                if (pending.isEmpty()) return false
+                pending.forEach { depId ->
+                    dependencyGraph.getOrPut(depId) { mutableSetOf() }.add(request.requestId)
+                }
+                waitingRequests[request.requestId] = WaitingRequest(request, pending.size)
+                return true
+            }
         }
+        cancelForDependency(listOf(request), failedDependency!!)
+        cancelDependents(request.requestId)
+        return true
     }
     
-    private fun notifyDependentRequests(completedRequestId: String) {
-        dependencyGraph.remove(completedRequestId)
+    private fun releaseDependents(completedRequestId: String) {
+        val ready = mutableListOf<PipelineRequest<*>>()
+        synchronized(dagLock) {
+            dependencyGraph.remove(completedRequestId)?.forEach { dependentId ->
+                val waiting = waitingRequests[dependentId] ?: return@forEach
+                waiting.remainingDependencies--
+                if (waiting.remainingDependencies == 0) {
+                    waitingRequests.remove(dependentId)
+                    ready.add(waiting.request)
+                }
+            }
+        }
+        // Already admitted at submit time, so they bypass the queue bound
+        ready.forEach { requestScheduler.requeue(it, it.priority) }
+    }
+    
+    /** Cancels every parked request downstream of [failedRequestId] */
+    private fun cancelDependents(failedRequestId: String) {
+        val cancelled = mutableListOf<PipelineRequest<*>>()
+        synchronized(dagLock) {
+            val pending = ArrayDeque<String>()
+            pending.add(failedRequestId)
+            while (pending.isNotEmpty()) {
+                dependencyGraph.remove(pending.removeFirst())?.forEach { dependentId ->
+                    val waiting = waitingRequests.remove(dependentId) ?: return@forEach
+                    cancelled.add(waiting.request)
+                    pending.add(dependentId)
+                }
+            }
+        }
+        if (cancelled.isNotEmpty()) cancelForDependency(cancelled, failedRequestId)
+    }
+    
+    private fun cancelForDependency(requests: List<PipelineRequest<*>>, failedRequestId: String) {
+        val endTime = System.currentTimeMillis()
+        requests.forEach { request ->
+            val message = "Dependency $failedRequestId did not complete"
+            completedRequests[request.requestId] = RequestTrackingInfo(
+                requestId = request.requestId,
+                status = RequestStatus.CANCELLED,
+                startTime = activeRequests[request.requestId]?.startTime ?: endTime,
+                endTime = endTime,
+                duration = 0L,
+                retryCount = request.retryCount,
+                errorMessage = message
+            )
+            activeRequests.remove(request.requestId)
+            
+            @Suppress("UNCHECKED_CAST")
+            (request.deferred as CompletableDeferred<Result<Any?>>).complete(Result.failure(CancellationException(message)))
+            
+            cancelledRequestCount.incrementAndGet()
+            dependencyCancellationCount.incrementAndGet()
+        }
+        Log.w(TAG, "Cancelled ${requests.size} request(s) downstream of $failedRequestId")
     }
     
     private fun startStatisticsUpdater() {
@@ -524,26 +787,6 @@ class RequestPipelineManager @Inject constructor() {
         }
     }
     
-    private fun startDependencyResolver() {
-        if (pipelineConfiguration.enableDependencyTracking) {
-            scope.launch {
-                while (true) {
-                    try {
-                        cleanupDependencyGraph()
-                        delay(10_000L)
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error in dependency resolver", e)
-                    }
-                }
-            }
-        }
-    }
-    
-    private fun cleanupDependencyGraph() {
-        val completedIds = completedRequests.keys
-        dependencyGraph.keys.removeAll(completedIds)
-    }
-    
     private fun recordRequestCompletion(requestId: String) {
         val currentTime = System.currentTimeMillis()
         requestHistory.offer(currentTime to requestId)
@@ -555,6 +798,8 @@ class RequestPipelineManager @Inject constructor() {
     }
     
     private fun updateStatistics() {
+        pruneRecentResults()
+        
         val totalReq = totalRequests.get()
         val completedReq = completedRequestCount.get()
         val failedReq = failedRequestCount.get()
@@ -571,7 +816,7 @@ class RequestPipelineManager @Inject constructor() {
         val throughput = recentRequests.toDouble() / (THROUGHPUT_WINDOW_MS / 1000.0)
         
         val activeReq = activeRequests.size
-        val queuedReq = 0 // Simplified
+        val queuedReq = requestScheduler.size()
         
         val efficiency = if (totalReq > 0) {
             completedReq.toDouble() / totalReq
@@ -589,12 +834,29 @@ class RequestPipelineManager @Inject constructor() {
             activeRequests = activeReq,
             queuedRequests = queuedReq,
             pipelineEfficiency = efficiency,
-            requestTypeDistribution = emptyMap()
+            requestTypeDistribution = emptyMap(),
+            queuedByPriority = requestScheduler.sizeByPriority(),
+            queueDelayByPriority = requestScheduler.queueDelayByPriority(),
+            backpressureWaits = requestScheduler.backpressureWaitCount,
+            agingPromotions = requestScheduler.agingPromotionCount,
+            waitingOnDependencies = synchronized(dagLock) { waitingRequests.size },
+            dependencyCancellations = dependencyCancellationCount.get(),
+            coalescedExecutions = coalescedExecutionCount.get(),
+            coalescedInFlightHits = coalescedInFlightHitCount.get(),
+            coalescedRecentHits = coalescedRecentHitCount.get()
         )
     }
     
+    private fun pruneRecentResults() {
+        val now = System.currentTimeMillis()
+        synchronized(coalescingLock) {
+            recentResults.values.removeAll { it.expiresAt <= now }
+        }
+    }
+    
     private fun generateRequestId(): String {
-        return "req_${System.currentTimeMillis()}_${Random().nextInt(10000)}"
+        // Sequence keeps ids unique within a millisecond; dependency edges are keyed on them
+        return "req_${System.currentTimeMillis()}_${requestSequence.incrementAndGet()}"
     }
     
     private fun generateBatchId(): String {
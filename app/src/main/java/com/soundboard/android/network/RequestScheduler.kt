@@ -0,0 +1,195 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.RequestPipelineManager.RequestPriority
+import kotlinx.coroutines.sync.Semaphore
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Phase 4.2: Multi-Level Request Scheduler
+ *
+ * Bounded queue per [RequestPriority] in front of the pipeline workers:
+ * - IMMEDIATE is served strictly first.
+ * - The remaining levels share the workers by smooth weighted round robin on
+ *   [RequestPriority.weight], so a CRITICAL play command waits behind a few
+ *   LOW requests at most rather than the whole backlog.
+ * - Aging: a waiting head gains one weight per [agingIntervalMs], and once it
+ *   has waited [STARVATION_INTERVALS] intervals it is served before anything
+ *   else, IMMEDIATE included.
+ * - [send] suspends while its level is full, pushing back on producers.
+ *   [requeue] skips the bound so workers can never block on their own queue.
+ */
+class RequestScheduler<T : Any>(
+    private val capacityPerPriority: Int,
+    private val agingIntervalMs: Long
+) {
+
+    companion object {
+        private const val STARVATION_INTERVALS = 8
+        private const val DELAY_SAMPLES = 512 // Most recent queueing delays kept per priority
+    }
+
+    private class Entry<T>(val item: T, val enqueuedAt: Long, val holdsPermit: Boolean)
+
+    data class QueueDelay(
+        val p50Ms: Long,
+        val p95Ms: Long,
+        val p99Ms: Long,
+        val maxMs: Long,
+        val samples: Int
+    )
+
+    private val levels = RequestPriority.values()
+    private val immediate = RequestPriority.IMMEDIATE.ordinal
+    private val queues = Array(levels.size) { ArrayDeque<Entry<T>>() }
+    private val credits = LongArray(levels.size)
+    private val capacity = Array(levels.size) { Semaphore(capacityPerPriority) }
+    private val available = Semaphore(Int.MAX_VALUE, Int.MAX_VALUE) // One permit per queued entry
+
+    private val delaySamples = Array(levels.size) { LongArray(DELAY_SAMPLES) }
+    private val delaySampleCounts = LongArray(levels.size)
+
+    private val backpressureWaits = AtomicLong(0)
+    private val agingPromotions = AtomicLong(0)
+
+    val backpressureWaitCount: Long
+        get() = backpressureWaits.get()
+
+    val agingPromotionCount: Long
+        get() = agingPromotions.get()
+
+    /** Enqueues [item], suspending while the queue for [priority] is full */
+    suspend fun send(item: T, priority: RequestPriority) {
+        val permits = capacity[priority.ordinal]
+        if (!permits.tryAcquire()) {
+            backpressureWaits.incrementAndGet()
+            permits.acquire()
+        }
+        enqueue(item, priority, holdsPermit = true)
+    }
+
+    /** Enqueues [item] without waiting for capacity; for retries and deferred work */
+    fun requeue(item: T, priority: RequestPriority) {
+        enqueue(item, priority, holdsPermit = false)
+    }
+
+    /** Suspends until an entry is available and returns the next one to run */
+    suspend fun receive(): T {
+        while (true) {
+            available.acquire()
+            val entry = synchronized(queues) {
+                val level = selectLevel(System.currentTimeMillis())
+                if (level < 0) null else dequeue(level)
+            }
+            // Null only when the entry this permit stood for was removed meanwhile
+            if (entry != null) return entry
+        }
+    }
+
+    /** Removes queued entries matching [predicate] and returns them */
+    fun remove(predicate: (T) -> Boolean): List<T> {
+        val removed = ArrayList<T>()
+        synchronized(queues) {
+            for (level in levels.indices) {
+                val iterator = queues[level].iterator()
+                while (iterator.hasNext()) {
+                    val entry = iterator.next()
+                    if (!predicate(entry.item)) continue
+                    iterator.remove()
+                    if (entry.holdsPermit) capacity[level].release()
+                    available.tryAcquire()
+                    removed.add(entry.item)
+                }
+                if (queues[level].isEmpty()) credits[level] = 0
+            }
+        }
+        return removed
+    }
+
+    fun size(): Int = synchronized(queues) { queues.sumOf { it.size } }
+
+    fun sizeByPriority(): Map<RequestPriority, Int> = synchronized(queues) {
+        levels.associateWith { queues[it.ordinal].size }
+    }
+
+    /** Queueing delay percentiles over the most recent dequeues of each priority */
+    fun queueDelayByPriority(): Map<RequestPriority, QueueDelay> {
+        val result = LinkedHashMap<RequestPriority, QueueDelay>()
+        for (priority in levels) {
+            val sorted = synchronized(queues) {
+                val count = minOf(delaySampleCounts[priority.ordinal], DELAY_SAMPLES.toLong()).toInt()
+                delaySamples[priority.ordinal].copyOf(count)
+            }
+            if (sorted.isEmpty()) continue
+            sorted.sort()
+            result[priority] = QueueDelay(
+                p50Ms = percentile(sorted, 0.50),
+                p95Ms = percentile(sorted, 0.95),
+                p99Ms = percentile(sorted, 0.99),
+                maxMs = sorted.last(),
+                samples = sorted.size
+            )
+        }
+        return result
+    }
+
+    private fun enqueue(item: T, priority: RequestPriority, holdsPermit: Boolean) {
+        synchronized(queues) {
+            queues[priority.ordinal].addLast(Entry(item, System.currentTimeMillis(), holdsPermit))
+        }
+        available.release()
+    }
+
+    // Caller holds the lock
+    private fun selectLevel(now: Long): Int {
+        // A starving head goes first, oldest among them
+        var starving = -1
+        var longestWait = agingIntervalMs * STARVATION_INTERVALS - 1
+        for (level in levels.indices) {
+            val head = queues[level].firstOrNull() ?: continue
+            val wait = now - head.enqueuedAt
+            if (wait > longestWait) {
+                starving = level
+                longestWait = wait
+            }
+        }
+        if (starving >= 0) {
+            if (starving != immediate) agingPromotions.incrementAndGet()
+            return starving
+        }
+
+        if (queues[immediate].isNotEmpty()) return immediate
+
+        // Smooth weighted round robin over the non-empty levels, weights raised by age
+        var selected = -1
+        var totalWeight = 0L
+        for (level in levels.indices) {
+            if (level == immediate) continue
+            val head = queues[level].firstOrNull() ?: continue
+            val weight = levels[level].weight + (now - head.enqueuedAt) / agingIntervalMs
+            credits[level] += weight
+            totalWeight += weight
+            if (selected < 0 || credits[level] > credits[selected]) selected = level
+        }
+        if (selected >= 0) credits[selected] -= totalWeight
+        return selected
+    }
+
+    // Caller holds the lock
+    private fun dequeue(level: Int): T {
+        val queue = queues[level]
+        val entry = queue.removeFirst()
+        if (queue.isEmpty()) credits[level] = 0
+        if (entry.holdsPermit) capacity[level].release()
+
+        val slot = (delaySampleCounts[level] % DELAY_SAMPLES).toInt()
+        delaySamples[level][slot] = System.currentTimeMillis() - entry.enqueuedAt
+        delaySampleCounts[level]++
+        return entry.item
+    }
+
+    private fun percentile(sorted: LongArray, fraction: Double): Long {
+        // Nearest rank
+        val rank = kotlin.math.ceil(fraction * sorted.size).toInt()
+        return sorted[(rank - 1).coerceIn(0, sorted.size - 1)]
+    }
+}
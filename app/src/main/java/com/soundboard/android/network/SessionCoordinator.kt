@@ -26,7 +26,9 @@ import javax.inject.Singleton
 @Singleton
 class SessionCoordinator @Inject constructor(
     private val deviceSessionManager: DeviceSessionManager,
-    private val gson: Gson
+    private val gson: Gson,
+    private val compressionManager: CompressionManager,
+    private val socketManager: SocketManager
 ) {
     
     companion object {
@@ -338,7 +340,6 @@ class SessionCoordinator @Inject constructor(
     private suspend fun handleSessionEvent(event: DeviceSessionManager.SessionEvent) {
         when (event.type) {
             DeviceSessionManager.SessionEventType.DEVICE_CONNECTED -> {
-                // Synchronize new device with current state
                 synchronizeDevice(event.deviceId)
             }
             DeviceSessionManager.SessionEventType.DEVICE_DISCONNECTED -> {
@@ -394,11 +395,18 @@ class SessionCoordinator @Inject constructor(
         excludeDeviceId: String?
     ) {
         val activeSessions = deviceSessionManager.getActiveSessions()
+        val payload = encodeStateChange(stateChange)
+        compressionManager.recordDictionarySample(payload)
+        
+        // The server relays the change to its other clients
+        if (!socketManager.sendStateChange(payload)) {
+            Log.d(TAG, "Not connected to server, ${stateChange.stateType} change stays local")
+        }
         
         activeSessions.forEach { session ->
             if (session.deviceId != excludeDeviceId) {
                 try {
-                    sendStateChangeToDevice(session.deviceId, stateChange)
+                    sendStateChangeToDevice(session.deviceId, stateChange, payload)
                 } catch (e: Exception) {
                     Log.w(TAG, "Failed to propagate state to device: ${session.deviceId}", e)
                 }
@@ -406,10 +414,10 @@ class SessionCoordinator @Inject constructor(
         }
     }
     
-    private suspend fun sendStateChangeToDevice(deviceId: String, stateChange: StateChangeEvent) {
+    private suspend fun sendStateChangeToDevice(deviceId: String, stateChange: StateChangeEvent, payload: ByteArray) {
         // In a real implementation, this would send the state change through the appropriate transport
         // For now, we'll simulate the operation
-        Log.d(TAG, "Sending state change to device $deviceId: ${stateChange.stateType}")
+        Log.d(TAG, "Sending state change to device $deviceId: ${stateChange.stateType} (${payload.size} bytes)")
         
         // Update pending operations
         pendingOperations[deviceId + "_" + stateChange.changeId] = stateChange
@@ -422,6 +430,18 @@ class SessionCoordinator @Inject constructor(
         }
     }
     
+    // Wire form of a state change; previous state stays local
+    private fun encodeStateChange(stateChange: StateChangeEvent): ByteArray {
+        val message = JsonObject().apply {
+            addProperty("type", stateChange.stateType.name)
+            addProperty("deviceId", stateChange.deviceId)
+            addProperty("timestamp", stateChange.timestamp)
+            addProperty("changeId", stateChange.changeId)
+            add("state", stateChange.newState)
+        }
+        return gson.toJson(message).toByteArray(Charsets.UTF_8)
+    }
+    
     private suspend fun sendStatesToDevice(deviceId: String, states: Map<StateType, JsonElement>) {
         // In a real implementation, this would send all states through the appropriate transport
         Log.d(TAG, "Sending ${states.size} states to device $deviceId")
@@ -9,8 +9,11 @@ import android.os.Handler
 import android.os.Looper
 import android.util.Log
 import com.google.gson.Gson
+import com.soundboard.android.network.model.BatchedSoundCommand
+import com.soundboard.android.network.model.PlayBatchCommand
 import com.soundboard.android.network.model.PlaySoundCommand
 import com.soundboard.android.network.model.ServerResponse
+import io.socket.client.Ack
 import io.socket.client.IO
 import io.socket.client.Socket
 import io.socket.emitter.Emitter
@@ -18,9 +21,12 @@ import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import org.json.JSONArray
 import org.json.JSONObject
 import java.net.URISyntaxException
 import javax.inject.Inject
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 import javax.inject.Singleton
 import kotlin.math.min
 import kotlin.math.pow
@@ -47,13 +53,42 @@ data class ConnectionHealth(
 )
 
 @Singleton
-class SocketManager @Inject constructor() {
+class SocketManager @Inject constructor(
+    private val compressionManager: CompressionManager,
+    private val performanceMetrics: PerformanceMetrics
+) {
     
     private var socket: Socket? = null
     private val gson = Gson()
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     private var analytics: ConnectionAnalytics? = null
     
+    // Compression dictionary the server has acknowledged, usable for outgoing state
+    @Volatile private var serverDictionaryId: Int? = null
+    
+    // Play/stop micro-batching: a command outside a window is sent at once and opens
+    // one; commands following it within the window share a play_batch frame
+    @Volatile private var playBatchWindowMs = DEFAULT_PLAY_BATCH_WINDOW_MS
+    private val pendingBatch = mutableListOf<BatchedSoundCommand>() // Guarded by itself
+    private var batchFlushJob: Job? = null
+    private var playBatchesSent = 0L
+    private var batchedCommandsSent = 0L
+    private var maxBatchDelayMs = 0L
+    
+    // Control channel encoding: binary once the server acknowledges it for this connection
+    @Volatile private var binaryControlEnabled = true
+    @Volatile private var wireCodec: ControlWireCodec? = null
+    private val wireEpoch = AtomicInteger(0)
+    private val wireStats = ControlWireStats()
+    
+    data class PlayBatchStats(
+        val windowMs: Long,
+        val batchesSent: Long,
+        val commandsSent: Long,
+        val averageBatchSize: Double,
+        val maxBatchDelayMs: Long // Longest a command waited for its batch to go out
+    )
+    
     // Connection state management
     private val _connectionStatus = MutableStateFlow<ConnectionStatus>(ConnectionStatus.Disconnected)
     val connectionStatus: StateFlow<ConnectionStatus> = _connectionStatus.asStateFlow()
@@ -75,6 +110,11 @@ class SocketManager @Inject constructor() {
     private var maxReconnectionDelay = 30000L // 30 seconds
     private var reconnectionJob: Job? = null
     private var healthCheckJob: Job? = null
+    
+    // Clock offset to the server, estimated from ping/pong exchanges
+    private val clockEstimator = ClockOffsetEstimator()
+    private var clockSyncJob: Job? = null
+    @Volatile private var reportedClockOffsetMs: Double? = null
     private var isManualDisconnect = false
     
     // Phase 1: Smart reconnection strategy
@@ -118,6 +158,26 @@ class SocketManager @Inject constructor() {
         private const val LATENCY_THRESHOLD_MS = 1000L // Consider unhealthy if latency > 1 second
         private const val PING_INTERVAL = 20000L // 20 seconds
         private const val PING_TIMEOUT = 60000L // 60 seconds
+        private const val DEFAULT_PLAY_BATCH_WINDOW_MS = 8L
+        private const val MAX_PLAY_BATCH_WINDOW_MS = 50L // Keeps added tap-to-sound latency bounded
+        private const val MAX_PLAY_BATCH_SIZE = 32
+        private const val WIRE_FORMAT_EVENT = "wire_format"
+        private const val WIRE_FORMAT_RESET_EVENT = "wire_format_reset"
+        private const val WIRE_FORMAT_TIMEOUT_MS = 500L // Servers without binary support never answer
+        private const val CLOCK_SYNC_BURST_SIZE = 8 // Pings right after connecting; health checks refine later
+        private const val CLOCK_SYNC_BURST_INTERVAL_MS = 150L
+        private const val CLOCK_SYNC_REPORT_THRESHOLD_MS = 1.0 // Re-report the offset once it moves this much
+        private const val CLOCK_SYNC_EVENT = "clock_sync"
+        private const val STATE_CHANGE_EVENT = "state_change"
+    }
+    
+    init {
+        // Newly trained dictionaries are shared with an already connected server
+        scope.launch {
+            compressionManager.activeDictionary.collect { dictionary ->
+                dictionary?.let { shareCompressionDictionary(it) }
+            }
+        }
     }
     
     fun connectViaUSB(context: Context, serverUrl: String, onResult: (Boolean, String?) -> Unit) {
@@ -262,10 +322,7 @@ class SocketManager @Inject constructor() {
     private fun performConnectionHealthCheck() {
         socket?.let { s ->
             // Send a ping to verify connection health
-            s.emit("ping", JSONObject().apply {
-                put("timestamp", System.currentTimeMillis())
-                put("type", "health_check")
-            })
+            emitControl(ControlMessage.Ping(System.currentTimeMillis(), healthCheck = true))
             
             // Set a timeout to detect if the connection is actually dead
             Handler(Looper.getMainLooper()).postDelayed({
@@ -285,6 +342,9 @@ class SocketManager @Inject constructor() {
     }
 
     private fun setupEnhancedEventHandlers(onResult: (Boolean, String?) -> Unit, context: Context) {
+        registerCompressionHandlers()
+        registerClockSyncHandlers()
+        registerWireFormatHandlers()
         socket?.apply {
             // Connection successful
             on(Socket.EVENT_CONNECT) {
@@ -293,12 +353,17 @@ class SocketManager @Inject constructor() {
                 _connectionStatus.value = ConnectionStatus.Connected()
                 
                 // Send connection metadata for server-side optimization
-                emit("client_info", JSONObject().apply {
-                    put("platform", "android")
-                    put("version", android.os.Build.VERSION.SDK_INT)
-                    put("connection_type", "usb")
-                    put("timestamp", System.currentTimeMillis())
-                })
+                negotiateWireFormat {
+                    emitControl(ControlMessage.ClientInfo(
+                        platform = "android",
+                        sdkVersion = android.os.Build.VERSION.SDK_INT,
+                        connectionType = "usb",
+                        timestamp = System.currentTimeMillis()
+                    ))
+                    startClockSync()
+                }
+                serverDictionaryId = null
+                compressionManager.activeDictionary.value?.let { shareCompressionDictionary(it) }
                 
                 Handler(Looper.getMainLooper()).post {
                     onResult(true, "Connected successfully via USB")
@@ -369,27 +434,6 @@ class SocketManager @Inject constructor() {
             // These events are not available in Socket.io client 2.0.1
             // Reconnection is handled manually in our implementation
             
-            // Enhanced ping/pong handling
-            on("pong") { args ->
-                Log.d(TAG, "📡 Received pong from server")
-                if (args.isNotEmpty()) {
-                    try {
-                        val data = args[0] as JSONObject
-                        val serverTime = data.optLong("timestamp", 0)
-                        val roundTripTime = System.currentTimeMillis() - serverTime
-                        Log.d(TAG, "Connection latency: ${roundTripTime}ms")
-                        
-                        // Update connection quality based on latency
-                        _connectionStatus.value = if (roundTripTime < 100) {
-                            ConnectionStatus.Connected() // Good connection
-                        } else {
-                            ConnectionStatus.Connected(roundTripTime) // Still connected but with higher latency
-                        }
-                    } catch (e: Exception) {
-                        Log.d(TAG, "Simple pong received")
-                    }
-                }
-            }
             
             // Phase 1: Enhanced server communication
             on("health_prediction") { args ->
@@ -575,6 +619,9 @@ class SocketManager @Inject constructor() {
     }
     
     private fun setupSocketListeners(ipAddress: String, port: Int) {
+        registerCompressionHandlers()
+        registerClockSyncHandlers()
+        registerWireFormatHandlers()
         socket?.apply {
             
             // Connection established
@@ -584,11 +631,16 @@ class SocketManager @Inject constructor() {
                 _connectionStatus.value = ConnectionStatus.Connected()
                 
                 // Send authentication
-                emit("authenticate", gson.toJson(mapOf(
-                    "client_type" to "android",
-                    "version" to "1.0.0",
-                    "timestamp" to System.currentTimeMillis()
-                )))
+                negotiateWireFormat {
+                    emitControl(ControlMessage.Authenticate(
+                        clientType = "android",
+                        version = "1.0.0",
+                        timestamp = System.currentTimeMillis()
+                    ))
+                    startClockSync()
+                }
+                serverDictionaryId = null
+                compressionManager.activeDictionary.value?.let { shareCompressionDictionary(it) }
             })
             
             // Authentication response
@@ -654,33 +706,6 @@ class SocketManager @Inject constructor() {
                 }
             })
             
-            // Handle pong response for latency calculation
-            on("pong", Emitter.Listener { args ->
-                try {
-                    if (args.isNotEmpty()) {
-                        val pongData = args[0].toString()
-                        val pongResponse = gson.fromJson(pongData, Map::class.java)
-                        val clientTimestamp = (pongResponse["clientTimestamp"] as? Double)?.toLong() ?: 0
-                        val latency = System.currentTimeMillis() - clientTimestamp
-                        
-                        Log.d(TAG, "📡 Ping response received - latency: ${latency}ms")
-                        
-                        // Update connection status with latency
-                        _connectionStatus.value = ConnectionStatus.Connected(latency)
-                        
-                        // Update connection health
-                        _connectionHealth.value = ConnectionHealth(
-                            isHealthy = latency < LATENCY_THRESHOLD_MS,
-                            latencyMs = latency,
-                            consecutiveFailures = 0,
-                            lastHealthCheck = System.currentTimeMillis()
-                        )
-                    }
-                } catch (e: Exception) {
-                    Log.e(TAG, "❌ Error parsing pong response", e)
-                }
-            })
-
             // Disconnection
             on(Socket.EVENT_DISCONNECT, Emitter.Listener { args ->
                 val reason = if (args.isNotEmpty()) args[0].toString() else "Unknown reason"
@@ -794,7 +819,7 @@ class SocketManager @Inject constructor() {
                 
                 // Perform a simple ping to check connection health
                 val startTime = System.currentTimeMillis()
-                socket?.emit("ping", System.currentTimeMillis())
+                emitControl(ControlMessage.Ping(System.currentTimeMillis(), healthCheck = false))
                 
                 // Wait for pong response (implemented via server response time)
                 delay(1000) // Give server time to respond
@@ -827,16 +852,321 @@ class SocketManager @Inject constructor() {
                 buttonId = buttonId
             )
             
-            val commandJson = gson.toJson(command)
-            Log.d(TAG, "🎵 Sending play command: $commandJson")
+            if (playBatchWindowMs > 0) {
+                enqueueBatchedCommand(BatchedSoundCommand.play(command))
+                return
+            }
+            
+            Log.d(TAG, "🎵 Sending play command: $command")
             
-            socket?.emit("play_sound", commandJson)
+            emitControl(ControlMessage.Play(command))
             
         } catch (e: Exception) {
             Log.e(TAG, "❌ Error sending play command", e)
         }
     }
     
+    /**
+     * Stops playback on the server. Goes through the same batch as play
+     * commands, so a stop issued right after a play is applied after it.
+     */
+    fun stopSound() {
+        if (_connectionStatus.value !is ConnectionStatus.Connected) {
+            Log.w(TAG, "⚠️ Cannot stop sound - not connected")
+            return
+        }
+        
+        if (playBatchWindowMs > 0) {
+            enqueueBatchedCommand(BatchedSoundCommand(action = BatchedSoundCommand.ACTION_STOP))
+        } else {
+            socket?.emit("stop")
+        }
+    }
+    
+    /**
+     * Sets the play/stop batching window. A command arriving outside a window
+     * is sent immediately and starts one; commands that follow within it are
+     * sent together when it ends, and never extend it, so a single tap is
+     * never delayed and no command waits longer than [windowMs]. 0 sends
+     * every command on its own.
+     */
+    fun setPlayBatchWindow(windowMs: Long) {
+        playBatchWindowMs = windowMs.coerceIn(0L, MAX_PLAY_BATCH_WINDOW_MS)
+        if (playBatchWindowMs == 0L) flushPlayBatch(closeWindow = true)
+        Log.d(TAG, "🎛️ Play batch window set to ${playBatchWindowMs}ms")
+    }
+    
+    fun getPlayBatchStats(): PlayBatchStats = synchronized(pendingBatch) {
+        PlayBatchStats(
+            windowMs = playBatchWindowMs,
+            batchesSent = playBatchesSent,
+            commandsSent = batchedCommandsSent,
+            averageBatchSize = if (playBatchesSent > 0) batchedCommandsSent.toDouble() / playBatchesSent else 0.0,
+            maxBatchDelayMs = maxBatchDelayMs
+        )
+    }
+    
+    private fun enqueueBatchedCommand(command: BatchedSoundCommand) {
+        synchronized(pendingBatch) {
+            if (batchFlushJob == null) {
+                // Leading edge: nothing to batch with yet, so don't hold the tap back
+                batchFlushJob = scope.launch {
+                    delay(playBatchWindowMs)
+                    flushPlayBatch(closeWindow = true)
+                }
+                sendPlayBatchLocked(listOf(command))
+                return
+            }
+            pendingBatch.add(command)
+            if (pendingBatch.size < MAX_PLAY_BATCH_SIZE) return
+        }
+        flushPlayBatch()
+    }
+    
+    private fun flushPlayBatch(closeWindow: Boolean = false) {
+        synchronized(pendingBatch) {
+            if (closeWindow) {
+                batchFlushJob?.cancel()
+                batchFlushJob = null
+            }
+            if (pendingBatch.isEmpty()) return
+            val commands = pendingBatch.toList()
+            pendingBatch.clear()
+            sendPlayBatchLocked(commands)
+        }
+    }
+    
+    // Emits while holding the batch lock, so a leading command can never
+    // overtake the batch from the window before it
+    private fun sendPlayBatchLocked(commands: List<BatchedSoundCommand>) {
+        val sentAt = System.currentTimeMillis()
+        playBatchesSent++
+        batchedCommandsSent += commands.size
+        maxBatchDelayMs = maxOf(maxBatchDelayMs, sentAt - commands.first().timestamp)
+        
+        try {
+            Log.d(TAG, "🎵 Sending play batch of ${commands.size}")
+            emitControl(ControlMessage.PlayBatch(PlayBatchCommand(commands = commands, sentAt = sentAt)))
+        } catch (e: Exception) {
+            Log.e(TAG, "❌ Error sending play batch", e)
+        }
+    }
+    
+    /**
+     * Offers the binary control encoding, then runs [onNegotiated] once the
+     * server accepts it or [WIRE_FORMAT_TIMEOUT_MS] passes. Servers that do
+     * not know the offer never answer, and the connection stays on JSON.
+     */
+    private fun negotiateWireFormat(onNegotiated: () -> Unit) {
+        wireCodec = null
+        val s = socket
+        if (s == null || !binaryControlEnabled) {
+            onNegotiated()
+            return
+        }
+        
+        val epoch = wireEpoch.incrementAndGet() and 0xFF
+        val baseTimestamp = System.currentTimeMillis()
+        val finished = AtomicBoolean(false)
+        fun finish(format: WireFormat) {
+            if (!finished.compareAndSet(false, true)) return
+            if (format == WireFormat.BINARY) wireCodec = ControlWireCodec(epoch, baseTimestamp)
+            Log.d(TAG, "📦 Control channel wire format: ${format.wireName}")
+            onNegotiated()
+        }
+        
+        s.emit(WIRE_FORMAT_EVENT, JSONObject().apply {
+            put("formats", JSONArray(listOf(WireFormat.BINARY.wireName, WireFormat.JSON.wireName)))
+            put("epoch", epoch)
+            put("base_timestamp", baseTimestamp)
+        }, Ack { args ->
+            val accepted = (args.firstOrNull() as? JSONObject)?.optString("format")
+            finish(if (accepted == WireFormat.BINARY.wireName) WireFormat.BINARY else WireFormat.JSON)
+        })
+        scope.launch {
+            delay(WIRE_FORMAT_TIMEOUT_MS)
+            finish(WireFormat.JSON)
+        }
+    }
+    
+    /**
+     * The server drops the binary session when a frame fails to decode and
+     * asks us to fall back; the rest of the connection stays on JSON.
+     */
+    private fun registerWireFormatHandlers() {
+        socket?.on(WIRE_FORMAT_RESET_EVENT, Emitter.Listener { args ->
+            val reason = (args.firstOrNull() as? JSONObject)?.optString("reason")
+            wireCodec = null
+            Log.w(TAG, "⚠️ Server rejected a binary control frame ($reason), falling back to JSON")
+        })
+    }
+    
+    /** Emits a control message in the negotiated format and records its cost */
+    private fun emitControl(message: ControlMessage) {
+        val s = socket ?: return
+        val codec = wireCodec
+        if (codec == null) {
+            val start = System.nanoTime()
+            val payload = ControlWireCodec.jsonPayload(message, gson)
+            val bytes = payload.toString().toByteArray(Charsets.UTF_8).size
+            wireStats.record(WireFormat.JSON, message.event, bytes, System.nanoTime() - start)
+            s.emit(message.event, payload)
+            return
+        }
+        
+        // Encode and emit under one lock: timestamps are deltas from the previous frame
+        synchronized(codec) {
+            val start = System.nanoTime()
+            val frame = codec.encode(message)
+            wireStats.record(WireFormat.BINARY, message.event, frame.size, System.nanoTime() - start)
+            s.emit(ControlWireCodec.BINARY_EVENT, frame)
+        }
+        if (wireStats.shouldShadowSample()) {
+            val start = System.nanoTime()
+            val bytes = ControlWireCodec.jsonPayload(message, gson).toString().toByteArray(Charsets.UTF_8).size
+            wireStats.record(WireFormat.JSON, message.event, bytes, System.nanoTime() - start)
+        }
+    }
+    
+    /** Allows or forbids offering the binary control encoding on the next connection */
+    fun setBinaryControlEnabled(enabled: Boolean) {
+        binaryControlEnabled = enabled
+        if (!enabled) wireCodec = null
+    }
+    
+    fun getControlWireFormat(): WireFormat = if (wireCodec != null) WireFormat.BINARY else WireFormat.JSON
+    
+    /** Average bytes and encode time per control message, for each format */
+    fun getControlWireStats(): List<ControlWireStats.MessageStats> = wireStats.snapshot()
+    
+    /**
+     * Sends the preset compression dictionary to the server so small state
+     * messages can be dictionary-compressed once the server acknowledges it.
+     */
+    private fun shareCompressionDictionary(dictionary: CompressionDictionary) {
+        val s = socket ?: return
+        if (!s.connected() || serverDictionaryId == dictionary.id) return
+        
+        s.emit("compression_dictionary", JSONObject().apply {
+            put("id", dictionary.id)
+            put("dictionary", dictionary.toBase64())
+        })
+        Log.d(TAG, "📖 Shared ${dictionary.size} byte compression dictionary ${dictionary.id} with server")
+    }
+    
+    /**
+     * Pong carries the ping's send time plus the server's receive and send
+     * times, one sample for the clock offset estimate. The server reports
+     * tap-to-audio delay per play command once it knows our offset.
+     */
+    private fun registerClockSyncHandlers() {
+        socket?.on("pong", Emitter.Listener { args ->
+            try {
+                val pong = args.firstOrNull() as? JSONObject ?: return@Listener
+                val receivedAt = System.currentTimeMillis()
+                val sentAt = pong.optLong("clientTimestamp", 0)
+                if (sentAt <= 0) return@Listener
+                
+                val serverReceivedAt = pong.optLong("serverReceivedAt", 0)
+                val serverSentAt = pong.optLong("serverSentAt", 0)
+                val latency = if (serverReceivedAt > 0 && serverSentAt > 0) {
+                    if (clockEstimator.addSample(sentAt, serverReceivedAt, serverSentAt, receivedAt)) {
+                        reportClockOffset()
+                    }
+                    (receivedAt - sentAt) - (serverSentAt - serverReceivedAt)
+                } else {
+                    receivedAt - sentAt // Older servers only echo the send time
+                }
+                
+                Log.d(TAG, "📡 Ping response received - latency: ${latency}ms")
+                _connectionStatus.value = ConnectionStatus.Connected(latency)
+                _connectionHealth.value = ConnectionHealth(
+                    isHealthy = latency < LATENCY_THRESHOLD_MS,
+                    latencyMs = latency,
+                    consecutiveFailures = 0,
+                    lastHealthCheck = receivedAt
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "❌ Error parsing pong response", e)
+            }
+        })
+        
+        socket?.on("play_latency", Emitter.Listener { args ->
+            val report = args.firstOrNull() as? JSONObject ?: return@Listener
+            if (report.has("tap_to_audio_ms")) {
+                performanceMetrics.recordTapToAudioLatency(report.optLong("tap_to_audio_ms"))
+            }
+        })
+    }
+    
+    /** Fresh estimate for a new connection: a short burst of pings */
+    private fun startClockSync() {
+        clockSyncJob?.cancel()
+        clockEstimator.reset()
+        reportedClockOffsetMs = null
+        clockSyncJob = scope.launch {
+            repeat(CLOCK_SYNC_BURST_SIZE) {
+                emitControl(ControlMessage.Ping(System.currentTimeMillis(), healthCheck = false))
+                delay(CLOCK_SYNC_BURST_INTERVAL_MS)
+            }
+        }
+    }
+    
+    private fun reportClockOffset() {
+        val estimate = clockEstimator.estimate() ?: return
+        val reported = reportedClockOffsetMs
+        if (reported != null && Math.abs(estimate.offsetMs - reported) < CLOCK_SYNC_REPORT_THRESHOLD_MS) return
+        
+        reportedClockOffsetMs = estimate.offsetMs
+        socket?.emit(CLOCK_SYNC_EVENT, JSONObject().apply {
+            put("offset_ms", estimate.offsetMs)
+            put("uncertainty_ms", estimate.uncertaintyMs)
+            put("round_trip_ms", estimate.roundTripMs)
+        })
+        Log.d(TAG, "⏱️ Clock offset ${"%.1f".format(estimate.offsetMs)}ms ±${"%.1f".format(estimate.uncertaintyMs)}ms")
+    }
+    
+    private fun registerCompressionHandlers() {
+        socket?.on("compression_dictionary_ack", Emitter.Listener { args ->
+            try {
+                val ack = args.firstOrNull() as? JSONObject ?: return@Listener
+                val id = ack.getInt("id")
+                if (compressionManager.getDictionary(id) != null) {
+                    serverDictionaryId = id
+                    Log.d(TAG, "📖 Server acknowledged compression dictionary $id")
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "❌ Error parsing compression dictionary ack", e)
+            }
+        })
+    }
+    
+    /**
+     * Sends an encoded state change to the server, which relays it to its
+     * other clients. Once the server has acknowledged the active dictionary
+     * the payload goes as a dictionary frame; until then, or when that would
+     * not be smaller, it goes GZIP-framed or raw, which the server also
+     * decodes. Returns false when not connected.
+     */
+    suspend fun sendStateChange(payload: ByteArray): Boolean {
+        val s = socket ?: return false
+        if (!s.connected()) return false
+        
+        val dictionaryFrame = serverDictionaryId?.let { compressionManager.compressWithDictionary(payload, it) }
+            ?.compressedData
+            ?.takeIf { CompressionFrame.parse(it)?.dictionaryId != null }
+        // The server has no LZ4 codec, so the fallback is pinned to GZIP
+        val frame = dictionaryFrame ?: compressionManager.compress(
+            payload,
+            CompressionManager.DataType.JSON,
+            CompressionManager.CompressionAlgorithm.GZIP
+        ).compressedData
+        
+        s.emit(STATE_CHANGE_EVENT, frame)
+        Log.d(TAG, "🔄 Sent state change (${payload.size} -> ${frame.size} bytes)")
+        return true
+    }
+    
     fun disconnect() {
         try {
             Log.d(TAG, "🔌 Manually disconnecting from server")
@@ -845,8 +1175,17 @@ class SocketManager @Inject constructor() {
             // Cancel reconnection and health monitoring
             reconnectionJob?.cancel()
             healthCheckJob?.cancel()
+            clockSyncJob?.cancel()
             reconnectionAttempts = 0
             
+            // Commands still waiting for their batch would fire on the next connection
+            synchronized(pendingBatch) {
+                batchFlushJob?.cancel()
+                batchFlushJob = null
+                pendingBatch.clear()
+            }
+            wireCodec = null
+            
             socket?.disconnect()
             socket?.off() // Remove all listeners
             socket = null
@@ -871,6 +1210,9 @@ class SocketManager @Inject constructor() {
         return (_connectionStatus.value as? ConnectionStatus.Connected)?.latencyMs ?: -1
     }
     
+    /** Server clock relative to ours, or null until a ping/pong exchange succeeded */
+    fun getClockOffset(): ClockOffsetEstimator.ClockEstimate? = clockEstimator.estimate()
+    
     fun resetReconnectionAttempts() {
         reconnectionAttempts = 0
         isManualDisconnect = false
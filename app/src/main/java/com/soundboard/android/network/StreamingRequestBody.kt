@@ -0,0 +1,73 @@
+package com.soundboard.android.network
+
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.Source
+import okio.source
+import java.io.File
+import java.io.InputStream
+
+/**
+ * Phase 4.2: Streaming Upload Body
+ *
+ * Request body that moves bytes from [openSource] into OkHttp's sink one
+ * Okio segment at a time, so a 20MB WAV never sits on the heap and never gets
+ * copied to a temp file first.
+ *
+ * A known [contentLength] goes out as a fixed Content-Length; -1 falls back
+ * to chunked transfer encoding, e.g. for content:// providers that cannot
+ * report a size. [openSource] is called again if OkHttp retries the request.
+ */
+class StreamingRequestBody(
+    private val contentType: MediaType?,
+    private val contentLength: Long,
+    private val openSource: () -> Source,
+    private val onProgress: ((bytesWritten: Long, totalBytes: Long) -> Unit)? = null
+) : RequestBody() {
+
+    companion object {
+        private const val SEGMENT_SIZE = 8192L // Okio segment size
+        private const val PROGRESS_INTERVAL_BYTES = 64L * 1024
+
+        fun fromFile(
+            file: File,
+            contentType: MediaType?,
+            onProgress: ((Long, Long) -> Unit)? = null
+        ): StreamingRequestBody = StreamingRequestBody(contentType, file.length(), { file.source() }, onProgress)
+
+        /** For streams of unknown or untrusted length; pass -1 to send chunked */
+        fun fromInputStream(
+            contentType: MediaType?,
+            contentLength: Long,
+            onProgress: ((Long, Long) -> Unit)? = null,
+            openStream: () -> InputStream
+        ): StreamingRequestBody = StreamingRequestBody(contentType, contentLength, { openStream().source() }, onProgress)
+    }
+
+    override fun contentType(): MediaType? = contentType
+
+    override fun contentLength(): Long = contentLength
+
+    override fun writeTo(sink: BufferedSink) {
+        var written = 0L
+        var lastReported = 0L
+        openSource().use { source ->
+            while (true) {
+                val read = source.read(sink.buffer, SEGMENT_SIZE)
+                if (read == -1L) break
+                written += read
+                sink.emitCompleteSegments()
+
+                if (onProgress != null && written - lastReported >= PROGRESS_INTERVAL_BYTES) {
+                    lastReported = written
+                    onProgress.invoke(written, contentLength)
+                }
+            }
+        }
+        check(contentLength < 0 || written == contentLength) {
+            "Source produced $written bytes, expected $contentLength"
+        }
+        onProgress?.invoke(written, if (contentLength < 0) written else contentLength)
+    }
+}
@@ -0,0 +1,140 @@
+package com.soundboard.android.network
+
+import android.util.Log
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.SocketChannel
+import java.nio.channels.UnresolvedAddressException
+import java.nio.channels.UnsupportedAddressTypeException
+
+/**
+ * Phase 2: Subnet Scanner
+ *
+ * Finds open TCP ports with non-blocking connects multiplexed on a single
+ * Selector, instead of one blocked thread per address. At most
+ * [maxConcurrentConnects] connects are in flight; a connect that has not
+ * completed within [connectTimeoutMs] counts as closed. Open ports are
+ * emitted as soon as their handshake completes, with the measured connect
+ * time, and the connection is closed right away.
+ */
+class SubnetScanner(
+    private val maxConcurrentConnects: Int = DEFAULT_MAX_CONCURRENT_CONNECTS,
+    private val connectTimeoutMs: Long = DEFAULT_CONNECT_TIMEOUT_MS
+) {
+    companion object {
+        private const val TAG = "SubnetScanner"
+        const val DEFAULT_MAX_CONCURRENT_CONNECTS = 64
+        const val DEFAULT_CONNECT_TIMEOUT_MS = 750L // LAN handshakes finish in a few ms
+        private const val SELECT_INTERVAL_MS = 50L
+    }
+
+    data class OpenPort(
+        val address: String,
+        val port: Int,
+        val connectTimeMs: Long
+    )
+
+    private class PendingConnect(
+        val target: InetSocketAddress,
+        val startedAt: Long
+    )
+
+    init {
+        require(maxConcurrentConnects > 0) { "maxConcurrentConnects must be positive" }
+    }
+
+    fun scan(targets: List<InetSocketAddress>): Flow<OpenPort> = flow {
+        val startTime = System.currentTimeMillis()
+        var probed = 0
+        var open = 0
+        val remaining = targets.iterator()
+
+        Selector.open().use { selector ->
+            try {
+                while (remaining.hasNext() || selector.keys().isNotEmpty()) {
+                    currentCoroutineContext().ensureActive()
+
+                    // Top up to the concurrency cap
+                    while (remaining.hasNext() && selector.keys().size < maxConcurrentConnects) {
+                        val target = remaining.next()
+                        probed++
+                        val result = startConnect(selector, target) ?: continue
+                        open++
+                        emit(result)
+                    }
+
+                    selector.select(SELECT_INTERVAL_MS)
+                    val now = System.currentTimeMillis()
+
+                    val ready = selector.selectedKeys().iterator()
+                    while (ready.hasNext()) {
+                        val key = ready.next()
+                        ready.remove()
+                        val pending = key.attachment() as PendingConnect
+                        val connected = try {
+                            (key.channel() as SocketChannel).finishConnect()
+                        } catch (e: IOException) {
+                            false // Refused or unreachable
+                        }
+                        close(key)
+                        if (connected) {
+                            open++
+                            emit(OpenPort(pending.target.hostString, pending.target.port, now - pending.startedAt))
+                        }
+                    }
+
+                    selector.keys()
+                        .filter { now - (it.attachment() as PendingConnect).startedAt >= connectTimeoutMs }
+                        .forEach { close(it) }
+                    selector.selectNow() // Flush cancelled keys so the cap counts only live connects
+                }
+            } finally {
+                selector.keys().forEach { close(it) }
+            }
+        }
+
+        Log.d(TAG, "Scanned $probed targets in ${System.currentTimeMillis() - startTime}ms, $open open")
+    }.flowOn(Dispatchers.IO)
+
+    // Returns the open port when the connect completed immediately, e.g. to loopback
+    private fun startConnect(selector: Selector, target: InetSocketAddress): OpenPort? {
+        val startedAt = System.currentTimeMillis()
+        val channel = SocketChannel.open()
+        var registered = false
+        try {
+            channel.configureBlocking(false)
+            if (channel.connect(target)) {
+                return OpenPort(target.hostString, target.port, System.currentTimeMillis() - startedAt)
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, PendingConnect(target, startedAt))
+            registered = true
+        } catch (e: IOException) {
+            // e.g. network unreachable
+        } catch (e: UnresolvedAddressException) {
+            // Not a reachable target
+        } catch (e: UnsupportedAddressTypeException) {
+            // Not a reachable target
+        } finally {
+            // Anything else, e.g. a SecurityException, still propagates but must not leak the channel
+            if (!registered) channel.close()
+        }
+        return null
+    }
+
+    private fun close(key: SelectionKey) {
+        key.cancel()
+        try {
+            key.channel().close()
+        } catch (e: IOException) {
+            // Already closed
+        }
+    }
+}
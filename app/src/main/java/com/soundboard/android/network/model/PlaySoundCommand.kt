@@ -16,6 +16,45 @@ data class PlaySoundCommand(
     val timestamp: Long = System.currentTimeMillis()
 )
 
+data class BatchedSoundCommand(
+    @SerializedName("action")
+    val action: String, // "play" or "stop"
+    
+    @SerializedName("file_path")
+    val filePath: String? = null,
+    
+    @SerializedName("volume")
+    val volume: Float? = null,
+    
+    @SerializedName("button_id")
+    val buttonId: Int? = null,
+    
+    @SerializedName("timestamp")
+    val timestamp: Long = System.currentTimeMillis()
+) {
+    companion object {
+        const val ACTION_PLAY = "play"
+        const val ACTION_STOP = "stop"
+        
+        fun play(command: PlaySoundCommand) = BatchedSoundCommand(
+            action = ACTION_PLAY,
+            filePath = command.filePath,
+            volume = command.volume,
+            buttonId = command.buttonId,
+            timestamp = command.timestamp
+        )
+    }
+}
+
+// Commands issued within one batching window, in the order they were issued
+data class PlayBatchCommand(
+    @SerializedName("commands")
+    val commands: List<BatchedSoundCommand>,
+    
+    @SerializedName("sent_at")
+    val sentAt: Long = System.currentTimeMillis()
+)
+
 data class ServerResponse(
     @SerializedName("status")
     val status: String,
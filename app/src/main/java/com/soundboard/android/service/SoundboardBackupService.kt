@@ -15,12 +15,15 @@ import com.soundboard.android.data.repository.SettingsRepository
 import com.soundboard.android.data.repository.SoundboardRepository
 import com.soundboard.android.data.model.SoundButton
 import com.soundboard.android.data.model.SoundboardLayout
+import com.soundboard.android.network.RequestPipelineManager
+import com.soundboard.android.network.RequestPipelineManager.GraphNode
 import kotlinx.coroutines.flow.first
 
 @Singleton
 class SoundboardBackupService @Inject constructor(
     private val settingsRepository: SettingsRepository,
-    private val soundboardRepository: SoundboardRepository
+    private val soundboardRepository: SoundboardRepository,
+    private val requestPipelineManager: RequestPipelineManager
 ) {
     
     companion object {
@@ -131,43 +134,65 @@ class SoundboardBackupService @Inject constructor(
                 throw IOException("Backup version ${backupData.metadata.version} is not compatible with current app version")
             }
             
-            var restoredItems = 0
+            // Settings, layouts and sound buttons are independent and restore in
+            // parallel; the active layout is only synced once both of the latter are in
+            val nodes = mutableListOf<GraphNode>()
             
             // Restore settings
             if (restoreSettings && backupData.settings != null) {
-                settingsRepository.applySettings(backupData.settings)
-                restoredItems++
+                nodes += GraphNode(key = "settings") {
+                    settingsRepository.applySettings(backupData.settings)
+                    1
+                }
             }
             
             // Restore layouts
             if (restoreLayouts && backupData.layouts != null) {
-                if (!mergeWithExisting) {
-                    // Clear existing layouts first
-                    soundboardRepository.deleteAllLayouts()
-                }
-                
-                backupData.layouts.forEach { layout ->
-                    val layoutToInsert = layout.copy(id = 0) // Reset ID for new insertion
-                    soundboardRepository.insertLayout(layoutToInsert)
+                nodes += GraphNode(key = "layouts") {
+                    if (!mergeWithExisting) {
+                        // Clear existing layouts first
+                        soundboardRepository.deleteAllLayouts()
+                    }
+                    
+                    backupData.layouts.forEach { layout ->
+                        val layoutToInsert = layout.copy(id = 0) // Reset ID for new insertion
+                        soundboardRepository.insertLayout(layoutToInsert)
+                    }
+                    backupData.layouts.size
                 }
-                restoredItems += backupData.layouts.size
             }
             
             // Restore sound buttons
             if (restoreSoundButtons && backupData.soundButtons != null) {
-                if (!mergeWithExisting) {
-                    // Clear existing sound buttons first
-                    soundboardRepository.deleteAllSoundButtons()
+                nodes += GraphNode(key = "sound_buttons") {
+                    if (!mergeWithExisting) {
+                        // Clear existing sound buttons first
+                        soundboardRepository.deleteAllSoundButtons()
+                    }
+                    
+                    backupData.soundButtons.forEach { soundButton ->
+                        val buttonToInsert = soundButton.copy(id = 0) // Reset ID for new insertion
+                        val resolvedButton = resolveFilePaths(buttonToInsert, backupData.pathMappings)
+                        soundboardRepository.insertSoundButton(resolvedButton)
+                    }
+                    backupData.soundButtons.size
                 }
-                
-                backupData.soundButtons.forEach { soundButton ->
-                    val buttonToInsert = soundButton.copy(id = 0) // Reset ID for new insertion
-                    val resolvedButton = resolveFilePaths(buttonToInsert, backupData.pathMappings)
-                    soundboardRepository.insertSoundButton(resolvedButton)
+            }
+            
+            // Sync the restored active layout's sounds with the server
+            val layoutSteps = nodes.map { it.key } - "settings"
+            if (layoutSteps.isNotEmpty()) {
+                nodes += GraphNode(key = "sync", dependsOn = layoutSteps) {
+                    soundboardRepository.warmUpActiveLayout("backup restored")
+                    0
                 }
-                restoredItems += backupData.soundButtons.size
             }
             
+            // Awaited in submission order, so a failed step reports its own error
+            // before the steps it cancelled
+            val results = requestPipelineManager.submitGraph(nodes)
+            val restoredItems = nodes.sumOf { node -> results.getValue(node.key).await().getOrThrow() as Int }
+            
             Result.success("Successfully restored $restoredItems items from backup created on ${formatTimestamp(backupData.metadata.timestamp)}")
             
         } catch (e: Exception) {
@@ -43,6 +43,7 @@ import com.soundboard.android.data.model.HealthTrend
 import com.soundboard.android.data.model.TrendDirection
 import com.soundboard.android.data.model.ResourceTrends
 import com.soundboard.android.data.model.ComponentHealth
+import com.soundboard.android.network.MetricTimeSeries
 import androidx.compose.ui.text.TextStyle
 import androidx.compose.ui.graphics.Shape
 import androidx.compose.ui.unit.Dp
@@ -80,6 +81,7 @@ fun MonitoringDashboard(
     val alertUpdates by viewModel.alertUpdates.collectAsState(emptyList())
     val alertHistory by viewModel.alertHistory.collectAsState(emptyList())
     val alertStatistics by viewModel.alertStatistics.collectAsState(UIAlertStatistics())
+    val performanceTrends by viewModel.performanceTrends.collectAsState()
     
     val scope = rememberCoroutineScope()
     
@@ -131,6 +133,13 @@ fun MonitoringDashboard(
             }
         }
         
+        // Tap-to-audio latency over the last hour
+        PerformanceTrendsChart(
+            rollups = performanceTrends,
+            resolution = viewModel.trendResolution,
+            modifier = Modifier.padding(bottom = 16.dp)
+        )
+        
         // Alert History
         ElevatedCard(
             modifier = Modifier
@@ -992,11 +1001,21 @@ private fun LogPatternsSection(
     }
 }
 
+/**
+ * Tap-to-audio latency rollups placed on a time axis covering the
+ * resolution's whole window: a bar spans each interval's min to max and a
+ * line joins the averages of adjacent intervals, so intervals without
+ * samples show up as gaps.
+ */
 @Composable
 private fun PerformanceTrendsChart(
-    trends: List<Double>,
+    rollups: List<MetricTimeSeries.Rollup>,
+    resolution: MetricTimeSeries.Resolution,
     modifier: Modifier = Modifier
 ) {
+    val lineColor = MaterialTheme.colorScheme.primary
+    val rangeColor = lineColor.copy(alpha = 0.25f)
+    
     Card(
         modifier = modifier.fillMaxWidth()
     ) {
@@ -1004,11 +1023,20 @@ private fun PerformanceTrendsChart(
             modifier = Modifier.padding(16.dp)
         ) {
             Text(
-                text = "Performance Trends",
+                text = "Tap-to-Audio Latency",
                 style = MaterialTheme.typography.titleLarge,
                 fontWeight = FontWeight.Bold
             )
             
+            rollups.lastOrNull()?.let { latest ->
+                Text(
+                    text = "Latest: avg ${latest.average.roundToInt()}ms, max ${latest.maximum.roundToInt()}ms " +
+                        "over ${latest.count} taps",
+                    style = MaterialTheme.typography.bodySmall,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant
+                )
+            }
+            
             Spacer(modifier = Modifier.height(16.dp))
             
             Box(
@@ -1021,12 +1049,54 @@ private fun PerformanceTrendsChart(
                     ),
                 contentAlignment = Alignment.Center
             ) {
-                Text(
-                    text = "Performance chart visualization\n(${trends.size} data points)",
-                    style = MaterialTheme.typography.bodyMedium,
-                    textAlign = TextAlign.Center,
-                    color = MaterialTheme.colorScheme.onSurface.copy(alpha = 0.6f)
-                )
+                if (rollups.isEmpty()) {
+                    Text(
+                        text = "No taps measured in the last ${resolution.slots * resolution.intervalMs / 60_000} minutes",
+                        style = MaterialTheme.typography.bodyMedium,
+                        textAlign = TextAlign.Center,
+                        color = MaterialTheme.colorScheme.onSurface.copy(alpha = 0.6f)
+                    )
+                } else {
+                    // The window ends with the current interval, as the rollups were read
+                    val now = remember(rollups) { System.currentTimeMillis() }
+                    val windowEnd = (now / resolution.intervalMs + 1) * resolution.intervalMs
+                    val windowStart = windowEnd - resolution.slots * resolution.intervalMs
+                    val ceiling = rollups.maxOf { it.maximum }.coerceAtLeast(1.0) * 1.1
+                    
+                    Canvas(
+                        modifier = Modifier
+                            .fillMaxSize()
+                            .padding(8.dp)
+                    ) {
+                        val slotWidth = size.width / resolution.slots
+                        fun x(rollup: MetricTimeSeries.Rollup): Float =
+                            (rollup.timestamp - windowStart).toFloat() / (windowEnd - windowStart) * size.width + slotWidth / 2
+                        fun y(value: Double): Float = size.height - (value / ceiling).toFloat() * size.height
+                        
+                        rollups.forEachIndexed { index, rollup ->
+                            drawLine(
+                                color = rangeColor,
+                                start = Offset(x(rollup), y(rollup.minimum)),
+                                end = Offset(x(rollup), y(rollup.maximum)),
+                                strokeWidth = (slotWidth * 0.6f).coerceAtLeast(1f)
+                            )
+                            val previous = rollups.getOrNull(index - 1)
+                            if (previous != null && rollup.timestamp - previous.timestamp == resolution.intervalMs) {
+                                drawLine(
+                                    color = lineColor,
+                                    start = Offset(x(previous), y(previous.average)),
+                                    end = Offset(x(rollup), y(rollup.average)),
+                                    strokeWidth = 2.dp.toPx()
+                                )
+                            }
+                            drawCircle(
+                                color = lineColor,
+                                radius = 2.dp.toPx(),
+                                center = Offset(x(rollup), y(rollup.average))
+                            )
+                        }
+                    }
+                }
             }
         }
     }
@@ -13,8 +13,12 @@ import com.soundboard.android.data.model.ResourceUsageSnapshot
 import com.soundboard.android.data.model.QuickStats
 import com.soundboard.android.data.model.ComponentHealth
 import com.soundboard.android.data.model.ResourceTrends
+import com.soundboard.android.network.MetricTimeSeries
+import com.soundboard.android.network.PerformanceMetrics
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import javax.inject.Inject
 
@@ -27,9 +31,15 @@ import javax.inject.Inject
 @HiltViewModel
 class MonitoringViewModel @Inject constructor(
     private val diagnosticsManager: DiagnosticsManager,
-    private val loggingManager: LoggingManager
+    private val loggingManager: LoggingManager,
+    private val performanceMetrics: PerformanceMetrics
 ) : ViewModel() {
     
+    companion object {
+        private val TREND_RESOLUTION = MetricTimeSeries.Resolution.ONE_MINUTE
+        private const val TREND_REFRESH_INTERVAL_MS = 10_000L
+    }
+    
     private val _systemStatus = MutableStateFlow(SystemStatus())
     val systemStatus: StateFlow<SystemStatus> = _systemStatus.asStateFlow()
     
@@ -42,10 +52,33 @@ class MonitoringViewModel @Inject constructor(
     private val _alertStatistics = MutableStateFlow(UIAlertStatistics())
     val alertStatistics: StateFlow<UIAlertStatistics> = _alertStatistics.asStateFlow()
     
+    // Per-minute tap-to-audio latency rollups over the last hour, oldest first.
+    // Minutes without samples are absent, so consumers place points by timestamp.
+    private val _performanceTrends = MutableStateFlow<List<MetricTimeSeries.Rollup>>(emptyList())
+    val performanceTrends: StateFlow<List<MetricTimeSeries.Rollup>> = _performanceTrends.asStateFlow()
+    
+    val trendResolution: MetricTimeSeries.Resolution = TREND_RESOLUTION
+    
     init {
         // Initialize with default values
         _systemStatus.value = SystemStatus()
         _alertStatistics.value = UIAlertStatistics()
+        
+        viewModelScope.launch {
+            while (isActive) {
+                refreshPerformanceTrends()
+                delay(TREND_REFRESH_INTERVAL_MS)
+            }
+        }
+    }
+    
+    // Reads the metric's rollups rather than its raw samples
+    private fun refreshPerformanceTrends() {
+        _performanceTrends.value = performanceMetrics.getMetricRollups(
+            category = PerformanceMetrics.MetricCategory.NETWORK,
+            name = PerformanceMetrics.TAP_TO_AUDIO_METRIC,
+            resolution = TREND_RESOLUTION
+        )
     }
     
     private fun collectDiagnosticData() {
@@ -120,6 +153,7 @@ class MonitoringViewModel @Inject constructor(
         viewModelScope.launch {
             try {
                 diagnosticsManager.performHealthCheck()
+                refreshPerformanceTrends()
                 // Simplified refresh
                 _systemStatus.value = _systemStatus.value.copy(
                     lastUpdateTime = System.currentTimeMillis()
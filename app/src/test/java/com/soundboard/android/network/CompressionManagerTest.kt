@@ -0,0 +1,106 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CompressionManager.CompressionAlgorithm
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.Random
+import java.util.zip.GZIPOutputStream
+
+class CompressionManagerTest {
+
+    private val manager = CompressionManager()
+
+    @Test
+    fun gzipInputRoundTrips() = runBlocking {
+        val input = gzip(text(8 * 1024))
+        assertRoundTrip(input)
+    }
+
+    @Test
+    fun smallGzipInputRoundTrips() = runBlocking {
+        val input = gzip("tiny".toByteArray())
+        assertRoundTrip(input)
+    }
+
+    @Test
+    fun explicitNoneReturnsGzipInputUntouched() = runBlocking {
+        val input = gzip(text(4 * 1024))
+        assertArrayEquals(input, manager.decompress(input, CompressionAlgorithm.NONE))
+    }
+
+    @Test
+    fun smallInputStartingWithFrameMagicRoundTrips() = runBlocking {
+        // Looks like a version 1 GZIP frame header
+        val input = frameLike(CompressionAlgorithm.GZIP, random(64))
+        val result = manager.compress(input)
+        assertEquals(CompressionAlgorithm.NONE, result.algorithm)
+        assertArrayEquals(input, manager.decompress(result.compressedData, result.algorithm))
+    }
+
+    @Test
+    fun incompressibleInputStartingWithFrameMagicRoundTrips() = runBlocking {
+        val input = frameLike(CompressionAlgorithm.DEFLATE, random(16 * 1024))
+        assertRoundTrip(input)
+    }
+
+    @Test
+    fun compressibleInputStartingWithFrameMagicRoundTrips() = runBlocking {
+        val input = frameLike(CompressionAlgorithm.LZ4, text(16 * 1024))
+        assertRoundTrip(input)
+    }
+
+    @Test
+    fun compressibleInputRoundTripsThroughFrame() = runBlocking {
+        val input = text(32 * 1024)
+        val result = manager.compress(input, CompressionManager.DataType.JSON)
+        assertTrue(result.compressedSize < input.size)
+        assertArrayEquals(input, manager.decompress(result.compressedData, result.algorithm))
+        assertArrayEquals(input, manager.decompress(result.compressedData))
+    }
+
+    @Test
+    fun unframedGzipIsSniffedWhenAlgorithmUnknown() = runBlocking {
+        val original = text(4 * 1024)
+        assertArrayEquals(original, manager.decompress(gzip(original)))
+    }
+
+    @Test(expected = IOException::class)
+    fun frameClaimingMoreThanItsCodecCanProduceIsRejected() = runBlocking<Unit> {
+        manager.decompress(frameLike(CompressionAlgorithm.LZ4, ByteArray(16), originalLength = Int.MAX_VALUE))
+    }
+
+    @Test(expected = IOException::class)
+    fun frameOverMaximumLengthIsRejected() = runBlocking<Unit> {
+        val originalLength = CompressionFrame.MAX_ORIGINAL_LENGTH + 1
+        manager.decompress(frameLike(CompressionAlgorithm.DEFLATE, ByteArray(128 * 1024), originalLength))
+    }
+
+    private suspend fun assertRoundTrip(input: ByteArray) {
+        val result = manager.compress(input)
+        assertArrayEquals(input, manager.decompress(result.compressedData, result.algorithm))
+    }
+
+    private fun frameLike(algorithm: CompressionAlgorithm, body: ByteArray, originalLength: Int = body.size): ByteArray {
+        val header = byteArrayOf('S'.code.toByte(), 'B'.code.toByte(), 'Z'.code.toByte(), 1, algorithm.frameId.toByte())
+        val length = originalLength.let { byteArrayOf((it ushr 24).toByte(), (it ushr 16).toByte(), (it ushr 8).toByte(), it.toByte()) }
+        return header + length + body
+    }
+
+    private fun gzip(data: ByteArray): ByteArray {
+        val output = ByteArrayOutputStream()
+        GZIPOutputStream(output).use { it.write(data) }
+        return output.toByteArray()
+    }
+
+    private fun text(size: Int): ByteArray {
+        val line = "{\"soundId\":42,\"volume\":0.8,\"action\":\"play\"}\n".toByteArray()
+        return ByteArray(size) { line[it % line.size] }
+    }
+
+    private fun random(size: Int): ByteArray = ByteArray(size).also { Random(7).nextBytes(it) }
+}
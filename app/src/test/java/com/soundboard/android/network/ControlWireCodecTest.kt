@@ -0,0 +1,60 @@
+package com.soundboard.android.network
+
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.soundboard.android.network.model.BatchedSoundCommand
+import com.soundboard.android.network.model.PlayBatchCommand
+import com.soundboard.android.network.model.PlaySoundCommand
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+
+/**
+ * Checks the encoder against the frames the server's decoder is tested with
+ * (server/test/controlWireFormat.test.js), so the two sides cannot drift.
+ */
+class ControlWireCodecTest {
+
+    private val fixture: JsonObject = listOf("../server", "server")
+        .map { File(it, FIXTURE_PATH) }
+        .first { it.exists() }
+        .let { JsonParser.parseString(it.readText()).asJsonObject }
+
+    @Test
+    fun encodesFixtureFrames() {
+        val base = fixture.get("base_timestamp").asLong
+        val codec = ControlWireCodec(fixture.get("epoch").asInt, base)
+        val messages = listOf(
+            ControlMessage.Authenticate("android", "6.2", base + 5),
+            ControlMessage.ClientInfo("Android", 34, "wifi", base + 12),
+            ControlMessage.Ping(base + 20, healthCheck = false),
+            ControlMessage.Ping(base + 1_020, healthCheck = true),
+            ControlMessage.Play(PlaySoundCommand("sounds/airhorn.mp3", 0.75f, 12, base + 1_500)),
+            ControlMessage.PlayBatch(
+                PlayBatchCommand(
+                    commands = listOf(
+                        BatchedSoundCommand.play(PlaySoundCommand("sounds/drum roll.wav", 1.0f, 3, base + 1_600)),
+                        BatchedSoundCommand(action = BatchedSoundCommand.ACTION_STOP, timestamp = base + 1_604),
+                        // Clock stepped backwards: negative timestamp delta
+                        BatchedSoundCommand.play(PlaySoundCommand("sounds/ünïcode.mp3", 0.5f, 300, base + 1_590))
+                    ),
+                    sentAt = base + 1_610
+                )
+            ),
+            ControlMessage.Play(PlaySoundCommand("a", 0.0f, 0, base + 1_400))
+        )
+
+        val frames = fixture.getAsJsonArray("frames").map { it.asJsonObject }
+        assertEquals(frames.size, messages.size)
+        messages.zip(frames).forEach { (message, frame) ->
+            assertEquals(frame.get("event").asString, message.event)
+            assertEquals(frame.get("hex").asString, hex(codec.encode(message)))
+        }
+    }
+
+    private fun hex(bytes: ByteArray): String = bytes.joinToString("") { "%02x".format(it) }
+
+    companion object {
+        private const val FIXTURE_PATH = "test/fixtures/control-wire-frames.json"
+    }
+}
@@ -0,0 +1,137 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CacheManager.CacheEntry
+import com.soundboard.android.network.CacheManager.CachePriority
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+class DiskCacheTierTest {
+
+    private val directory: File = Files.createTempDirectory("disk-cache-tier").toFile()
+
+    @After
+    fun tearDown() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun entriesSurviveReopen() {
+        val tier = open()
+        tier.put("text", entry("hello"))
+        tier.put("bytes", entry(byteArrayOf(1, 2, 3)))
+
+        val reopened = open()
+        assertEquals("hello", reopened.get("text", now())?.value)
+        assertArrayEquals(byteArrayOf(1, 2, 3), reopened.get("bytes", now())?.value as ByteArray)
+    }
+
+    @Test
+    fun reopenAfterTornWriteDropsOnlyTheTornRecord() {
+        val tier = open()
+        tier.put("first", entry("complete"))
+        tier.put("second", entry("torn"))
+
+        // Simulate a crash part way through the last append
+        val segment = directory.listFiles()!!.single()
+        RandomAccessFile(segment, "rw").use { it.setLength(it.length() - 3) }
+
+        val reopened = open()
+        assertEquals("complete", reopened.get("first", now())?.value)
+        assertNull(reopened.get("second", now()))
+
+        // Appends continue after the truncated tail
+        reopened.put("third", entry("after crash"))
+        val recovered = open()
+        assertEquals("complete", recovered.get("first", now())?.value)
+        assertEquals("after crash", recovered.get("third", now())?.value)
+    }
+
+    @Test
+    fun corruptHeaderFieldIsRejectedOnReplay() {
+        val tier = open()
+        tier.put("first", entry("kept"))
+        val firstRecordLength = directory.listFiles()!!.single().length()
+        tier.put("second", entry("corrupt"))
+
+        // Priority byte of the second record: magic, three lengths, two timestamps, value type
+        val segment = directory.listFiles()!!.single()
+        RandomAccessFile(segment, "rw").use {
+            it.seek(firstRecordLength + 4 + 4 + 4 + 4 + 8 + 8 + 1)
+            it.write(0x7f)
+        }
+
+        val reopened = open()
+        assertEquals("kept", reopened.get("first", now())?.value)
+        assertNull(reopened.get("second", now()))
+    }
+
+    @Test
+    fun putAfterRemoveOfSameKeyIsServed() {
+        val tier = open()
+        tier.put("key", entry("old"))
+        tier.remove("key")
+        assertNull(tier.get("key", now()))
+
+        tier.put("key", entry("new"))
+        assertEquals("new", tier.get("key", now())?.value)
+        assertEquals("new", open().get("key", now())?.value)
+    }
+
+    @Test
+    fun removeIsPersisted() {
+        val tier = open()
+        tier.put("key", entry("value"))
+        tier.remove("key")
+
+        assertNull(open().get("key", now()))
+    }
+
+    @Test
+    fun liveEntriesAreCopiedForwardWhenSegmentsAreTrimmed() {
+        val budget = 6L * 1024 * 1024
+        val tier = open(budget)
+        tier.put("keep", entry("hello", CachePriority.HIGH))
+
+        // Enough churn on another key to drop the segment holding "keep"
+        val payload = ByteArray(100 * 1024)
+        repeat(200) { tier.put("churn", entry(payload)) }
+
+        assertTrue(tier.sizeBytes() <= budget)
+        assertEquals("hello", tier.get("keep", now())?.value)
+        assertEquals(payload.size, (tier.get("churn", now())?.value as ByteArray).size)
+
+        val reopened = open(budget)
+        assertEquals("hello", reopened.get("keep", now())?.value)
+        assertEquals(2, reopened.entryCount)
+    }
+
+    @Test
+    fun liveEntriesOverBudgetAreEvicted() {
+        val budget = 5L * 1024 * 1024
+        val tier = open(budget)
+        val payload = ByteArray(100 * 1024)
+        repeat(120) { tier.put("key$it", entry(payload)) }
+
+        assertTrue(tier.sizeBytes() <= budget + payload.size)
+        assertTrue(tier.entryCount < 120)
+        // Newest entries are kept first
+        assertTrue(tier.get("key119", now()) != null)
+    }
+
+    private fun open(maxSizeBytes: Long = 16L * 1024 * 1024): DiskCacheTier {
+        return DiskCacheTier(directory).apply { open(maxSizeBytes) }
+    }
+
+    private fun entry(value: Any, priority: CachePriority = CachePriority.NORMAL): CacheEntry<Any> {
+        return CacheEntry(value, now(), ttl = 3_600_000L, tags = setOf("test"), priority = priority)
+    }
+
+    private fun now(): Long = System.currentTimeMillis()
+}
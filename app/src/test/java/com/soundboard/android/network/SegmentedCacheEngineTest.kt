@@ -0,0 +1,92 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CacheManager.CacheEntry
+import com.soundboard.android.network.CacheManager.EvictionStrategy
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SegmentedCacheEngineTest {
+
+    @Test
+    fun putReplacesAndRemoveDropsEntry() = runBlocking {
+        val engine = SegmentedCacheEngine(EvictionStrategy.LRU)
+        engine.put("key", entry("old", 100), MAX_BYTES)
+        val replacement = entry("new", 300)
+        engine.put("key", replacement, MAX_BYTES)
+
+        assertSame(replacement, engine.get("key", now()))
+        assertEquals(1, engine.entryCount)
+        assertEquals(300L, engine.sizeBytes())
+
+        assertSame(replacement, engine.remove("key"))
+        assertNull(engine.get("key", now()))
+        assertEquals(0, engine.entryCount)
+        assertEquals(0L, engine.sizeBytes())
+    }
+
+    @Test
+    fun leastRecentlyUsedEntryIsEvictedFirst() = runBlocking {
+        val engine = SegmentedCacheEngine(EvictionStrategy.LRU)
+        repeat(10) { engine.put("key$it", entry("v", 10_000), MAX_BYTES) }
+        engine.get("key0", now())
+
+        val evicted = engine.put("key10", entry("v", 10_000), MAX_BYTES)
+
+        assertEquals(listOf("key1"), evicted.map { it.first })
+        assertTrue(engine.containsKey("key0"))
+        assertTrue(engine.sizeBytes() <= MAX_BYTES)
+    }
+
+    @Test
+    fun adaptiveEngineReturnsRejectedEntry() = runBlocking {
+        val engine = SegmentedCacheEngine(EvictionStrategy.ADAPTIVE)
+        repeat(10) { engine.put("hot$it", entry("v", 10_000), MAX_BYTES) }
+        repeat(10) { repeat(10) { i -> engine.get("hot$i", now()) } }
+
+        val cold = entry("cold", 10_000)
+        val evicted = engine.put("cold", cold, MAX_BYTES)
+
+        // The caller gets the rejected entry back, so it can still be spilled to disk
+        assertEquals(listOf("cold"), evicted.map { it.first })
+        assertSame(cold, evicted.single().second)
+        assertNull(engine.get("cold", now()))
+        assertEquals(1L, engine.admissionRejections)
+        assertEquals(10, engine.entryCount)
+    }
+
+    @Test
+    fun concurrentPutsStayWithinBudgetAndKeepCountersExact() = runBlocking {
+        val engine = SegmentedCacheEngine(EvictionStrategy.LRU)
+        (0 until 8).map { worker ->
+            async(Dispatchers.Default) {
+                repeat(500) { engine.put("key${(worker * 500 + it) % 300}", entry("v", 1_000), MAX_BYTES) }
+            }
+        }.awaitAll()
+
+        var count = 0
+        var bytes = 0L
+        engine.forEachEntry { _, entry ->
+            count++
+            bytes += entry.size
+        }
+        assertEquals(count, engine.entryCount)
+        assertEquals(bytes, engine.sizeBytes())
+        assertTrue(engine.sizeBytes() <= MAX_BYTES)
+    }
+
+    private fun entry(value: Any, size: Long): CacheEntry<Any> =
+        CacheEntry(value, now(), ttl = 60_000L, size = size)
+
+    private fun now(): Long = System.currentTimeMillis()
+
+    companion object {
+        private const val MAX_BYTES = 100_000L
+    }
+}
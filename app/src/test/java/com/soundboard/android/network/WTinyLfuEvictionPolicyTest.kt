@@ -0,0 +1,58 @@
+package com.soundboard.android.network
+
+import com.soundboard.android.network.CacheManager.CacheEntry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class WTinyLfuEvictionPolicyTest {
+
+    private val policy = WTinyLfuEvictionPolicy().apply { setCapacity(100_000) }
+
+    @Test
+    fun coldCandidateIsRejectedOnAdmission() {
+        val hot = addHotEntries()
+
+        // Hot entries keep being read while a one-off entry is written
+        val cold = write("cold")
+        hot.forEach { policy.recordAccess(it) }
+        assertEquals("cold" to cold, policy.victim("cold"))
+        assertEquals(1L, policy.admissionRejections)
+    }
+
+    @Test
+    fun candidateSeenMoreOftenThanVictimIsAdmitted() {
+        val hot = addHotEntries()
+
+        val popular = write("popular")
+        repeat(20) { policy.recordAccess(popular) }
+        hot.forEach { policy.recordAccess(it) }
+
+        val victim = policy.victim("popular")
+        assertTrue(victim != null && victim.first.startsWith("hot"))
+        assertEquals(0L, policy.admissionRejections)
+    }
+
+    @Test
+    fun removedEntryIsNeverSelected() {
+        val first = write("first")
+        write("second")
+        policy.recordRemoval("first", first)
+
+        assertEquals("second", policy.victim(null)?.first)
+    }
+
+    // Fills the budget with entries that have each been read ten times
+    private fun addHotEntries(): List<CacheEntry<Any>> {
+        val hot = (0 until 10).map { write("hot$it") }
+        repeat(10) { hot.forEach { policy.recordAccess(it) } }
+        return hot
+    }
+
+    // Values are distinct per key; the policy tracks entries by equality
+    private fun write(key: String): CacheEntry<Any> {
+        val entry = CacheEntry<Any>(key, System.currentTimeMillis(), ttl = 60_000L, size = 10_000)
+        policy.recordWrite(key, entry)
+        return entry
+    }
+}
@@ -0,0 +1,176 @@
+import crypto from 'crypto';
+import path from 'path';
+import os from 'os';
+import fs from 'fs-extra';
+import { Transform } from 'stream';
+import { pipeline } from 'stream/promises';
+
+const HASH_PATTERN = /^[0-9a-f]{64}$/;
+const DEFAULT_MAX_BYTES = 512 * 1024 * 1024;
+const SAFE_EXTENSION = /^\.[a-z0-9]{1,5}$/;
+
+/**
+ * AudioContentCache - Content-addressed store for audio forwarded by clients
+ *
+ * Files are kept as <sha256>, one per content, so a client that already
+ * knows a sound's hash can ask for it to be played ('play-by-hash') without
+ * uploading it again. The extension the content was uploaded with is kept in
+ * its entry. Uploads are hashed while they stream to disk, rejected when the
+ * digest does not match the hash the client announced, and cut off once they
+ * exceed the cache's size budget. The least recently played files are
+ * evicted once the cache grows past that budget.
+ */
+export class AudioContentCache {
+    constructor({ directory = path.join(os.tmpdir(), 'audiodeck-content-cache'), maxBytes = DEFAULT_MAX_BYTES } = {}) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new Map(); // hash -> { path, extension, size, lastUsed }
+        this.hits = 0;
+        this.misses = 0;
+        this.ready = this.load();
+    }
+
+    async load() {
+        await fs.ensureDir(this.directory);
+        for (const name of await fs.readdir(this.directory)) {
+            const hash = name.slice(0, 64);
+            if (!HASH_PATTERN.test(hash)) continue;
+            let filePath = path.join(this.directory, name);
+            const extension = name.slice(64);
+
+            if (extension !== '') {
+                // Stored as <hash><ext> by older versions: keep one copy per hash
+                const hashPath = path.join(this.directory, hash);
+                if (this.entries.has(hash) || await fs.pathExists(hashPath)) {
+                    await fs.remove(filePath);
+                    const existing = this.entries.get(hash);
+                    if (existing && !existing.extension && SAFE_EXTENSION.test(extension)) existing.extension = extension;
+                    continue;
+                }
+                await fs.move(filePath, hashPath);
+                filePath = hashPath;
+            }
+
+            const stats = await fs.stat(filePath);
+            this.entries.set(hash, {
+                path: filePath,
+                extension: SAFE_EXTENSION.test(extension) ? extension : '',
+                size: stats.size,
+                lastUsed: stats.mtimeMs
+            });
+        }
+    }
+
+    /**
+     * Path of the cached file for a hash, or null. Marks it as recently used.
+     */
+    async lookup(hash) {
+        await this.ready;
+        const entry = typeof hash === 'string' ? this.entries.get(hash.toLowerCase()) : undefined;
+        if (!entry || !(await fs.pathExists(entry.path))) {
+            if (entry) this.entries.delete(hash.toLowerCase());
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        entry.lastUsed = Date.now();
+        return entry.path;
+    }
+
+    /**
+     * Whether a hash is cached, without counting it as a hit or a use.
+     */
+    async contains(hash) {
+        await this.ready;
+        const entry = typeof hash === 'string' ? this.entries.get(hash.toLowerCase()) : undefined;
+        return entry !== undefined && fs.pathExists(entry.path);
+    }
+
+    /**
+     * Streams an upload into the cache and returns its path. When
+     * expectedHash is given, a mismatching upload is discarded. Uploads
+     * larger than the cache budget are rejected with statusCode 413, up
+     * front when declaredSize already says so, otherwise once the stream
+     * passes the budget.
+     */
+    async store(stream, { expectedHash = null, fileName = '', declaredSize = null } = {}) {
+        await this.ready;
+        if (expectedHash !== null && !HASH_PATTERN.test(expectedHash)) {
+            throw new Error('Invalid content hash');
+        }
+        if (Number.isFinite(declaredSize) && declaredSize > this.maxBytes) {
+            throw tooLarge(this.maxBytes);
+        }
+
+        const extension = path.extname(fileName).toLowerCase();
+        const suffix = SAFE_EXTENSION.test(extension) ? extension : '';
+        const tempPath = path.join(this.directory, `upload_${process.pid}_${crypto.randomUUID()}`);
+        const digest = crypto.createHash('sha256');
+        const maxBytes = this.maxBytes;
+        let size = 0;
+
+        const meter = new Transform({
+            transform(chunk, encoding, callback) {
+                size += chunk.length;
+                if (size > maxBytes) {
+                    callback(tooLarge(maxBytes));
+                    return;
+                }
+                digest.update(chunk);
+                callback(null, chunk);
+            }
+        });
+
+        try {
+            await pipeline(stream, meter, fs.createWriteStream(tempPath));
+
+            const hash = digest.digest('hex');
+            if (expectedHash !== null && hash !== expectedHash) {
+                throw new Error(`Content hash mismatch: expected ${expectedHash}, got ${hash}`);
+            }
+
+            // Same content under another name or extension shares the one file
+            const finalPath = path.join(this.directory, hash);
+            await fs.move(tempPath, finalPath, { overwrite: true });
+            const extensionKept = suffix || this.entries.get(hash)?.extension || '';
+            this.entries.set(hash, { path: finalPath, extension: extensionKept, size, lastUsed: Date.now() });
+            await this.evict(hash);
+            return { hash, path: finalPath, extension: extensionKept, size };
+        } catch (error) {
+            await fs.remove(tempPath).catch(() => {});
+            throw error;
+        }
+    }
+
+    // Drops least recently used files until the cache fits its budget
+    async evict(keepHash) {
+        let total = [...this.entries.values()].reduce((sum, entry) => sum + entry.size, 0);
+        if (total <= this.maxBytes) return;
+
+        const oldestFirst = [...this.entries.entries()].sort((a, b) => a[1].lastUsed - b[1].lastUsed);
+        for (const [hash, entry] of oldestFirst) {
+            if (total <= this.maxBytes) break;
+            if (hash === keepHash) continue;
+            await fs.remove(entry.path).catch(() => {});
+            this.entries.delete(hash);
+            total -= entry.size;
+        }
+    }
+
+    getStatus() {
+        return {
+            files: this.entries.size,
+            bytes: [...this.entries.values()].reduce((sum, entry) => sum + entry.size, 0),
+            hits: this.hits,
+            misses: this.misses
+        };
+    }
+}
+
+function tooLarge(maxBytes) {
+    const error = new Error(`Upload exceeds the ${maxBytes} byte content cache budget`);
+    error.statusCode = 413;
+    return error;
+}
+
+export default AudioContentCache;
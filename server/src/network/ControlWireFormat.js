@@ -0,0 +1,200 @@
+const MARKER = 0xB1;
+const BINARY_FORMAT = 'binary-v1';
+const VOLUME_STEPS = 200; // Matches ControlWireCodec.VOLUME_STEPS on Android
+const ACTION_PLAY = 0;
+
+// Binary message types, matching ControlMessage.type on Android
+const MESSAGE = {
+    1: 'play_sound',
+    2: 'play_batch',
+    3: 'ping',
+    4: 'authenticate',
+    5: 'client_info'
+};
+
+/**
+ * ControlWireFormat - Decodes binary control frames from Android clients
+ *
+ * A client offers the format on connect ('wire_format') with a connection
+ * epoch and a base timestamp, and switches to binary frames on the
+ * 'control_bin' event once acknowledged. Each frame's timestamp is a delta
+ * from the previous frame's, so frames must be decoded in arrival order.
+ * Decoded messages have the same shape as their JSON counterparts.
+ */
+export class ControlWireFormat {
+    constructor() {
+        this.sessions = new Map(); // socketId -> { epoch, lastTimestamp }
+        this.framesDecoded = 0;
+        this.framesRejected = 0;
+    }
+
+    /**
+     * Handles a client's offer. Returns the format to acknowledge.
+     */
+    negotiate(socketId, { formats, epoch, base_timestamp: baseTimestamp } = {}) {
+        const valid = Array.isArray(formats) && formats.includes(BINARY_FORMAT) &&
+            Number.isInteger(epoch) && Number.isFinite(baseTimestamp);
+        if (!valid) {
+            this.sessions.delete(socketId);
+            return 'json';
+        }
+        this.sessions.set(socketId, { epoch: epoch & 0xFF, lastTimestamp: baseTimestamp });
+        return BINARY_FORMAT;
+    }
+
+    releaseClient(socketId) {
+        this.sessions.delete(socketId);
+    }
+
+    /**
+     * Decodes one frame into { event, payload }, or returns null for frames
+     * from another connection epoch (e.g. buffered across a reconnect) or
+     * without a session. A malformed frame throws and ends the session.
+     */
+    decode(socketId, frame) {
+        const buffer = Buffer.isBuffer(frame) ? frame : Buffer.from(frame);
+        const session = this.sessions.get(socketId);
+        if (!session || buffer.length < 3 || buffer[0] !== MARKER || buffer[2] !== session.epoch) {
+            this.framesRejected++;
+            return null;
+        }
+
+        let message;
+        try {
+            message = decodeMessage(buffer, session.lastTimestamp);
+        } catch (error) {
+            // The timestamp chain cannot be followed past a bad frame: forget the
+            // session so the client is told to fall back instead of drifting
+            this.sessions.delete(socketId);
+            this.framesRejected++;
+            throw error;
+        }
+
+        session.lastTimestamp = message.lastTimestamp;
+        this.framesDecoded++;
+        return { event: message.event, payload: message.payload };
+    }
+
+    getStatus() {
+        return {
+            binaryClients: this.sessions.size,
+            framesDecoded: this.framesDecoded,
+            framesRejected: this.framesRejected
+        };
+    }
+}
+
+/**
+ * Decodes a frame's message body after the header; throws on malformed frames.
+ */
+function decodeMessage(buffer, lastTimestamp) {
+    const event = MESSAGE[buffer[1]];
+    if (!event) {
+        throw new Error(`Unknown control message type ${buffer[1]}`);
+    }
+
+    const reader = new FrameReader(buffer, 3, lastTimestamp);
+    let payload;
+    switch (event) {
+        case 'play_sound': {
+            const timestamp = reader.timestamp();
+            payload = {
+                button_id: reader.varint(),
+                volume: reader.volume(),
+                file_path: reader.string(),
+                timestamp
+            };
+            break;
+        }
+        case 'play_batch': {
+            const sentAt = reader.timestamp();
+            const count = reader.varint();
+            const commands = [];
+            for (let i = 0; i < count; i++) {
+                const action = reader.byte() === ACTION_PLAY ? 'play' : 'stop';
+                const timestamp = reader.timestamp();
+                commands.push(action === 'play'
+                    ? { action, button_id: reader.varint(), volume: reader.volume(), file_path: reader.string(), timestamp }
+                    : { action, timestamp });
+            }
+            payload = { commands, sent_at: sentAt };
+            break;
+        }
+        case 'ping': {
+            const timestamp = reader.timestamp();
+            payload = reader.byte() === 1 ? { timestamp, type: 'health_check' } : timestamp;
+            break;
+        }
+        case 'authenticate': {
+            const timestamp = reader.timestamp();
+            payload = { client_type: reader.string(), version: reader.string(), timestamp };
+            break;
+        }
+        case 'client_info': {
+            const timestamp = reader.timestamp();
+            payload = {
+                platform: reader.string(),
+                version: reader.varint(),
+                connection_type: reader.string(),
+                timestamp
+            };
+            break;
+        }
+    }
+    return { event, payload, lastTimestamp: reader.lastTimestamp };
+}
+
+class FrameReader {
+    constructor(buffer, offset, lastTimestamp) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    byte() {
+        if (this.offset >= this.buffer.length) {
+            throw new Error('Truncated control frame');
+        }
+        return this.buffer[this.offset++];
+    }
+
+    // Unsigned LEB128; BigInt keeps 64-bit zigzag deltas exact
+    bigVarint() {
+        let result = 0n;
+        let shift = 0n;
+        for (;;) {
+            const byte = this.byte();
+            result |= BigInt(byte & 0x7F) << shift;
+            if ((byte & 0x80) === 0) return result;
+            shift += 7n;
+            if (shift > 63n) throw new Error('Varint too long');
+        }
+    }
+
+    varint() {
+        return Number(this.bigVarint());
+    }
+
+    timestamp() {
+        const zigzag = this.bigVarint();
+        const delta = (zigzag >> 1n) ^ -(zigzag & 1n);
+        this.lastTimestamp += Number(delta);
+        return this.lastTimestamp;
+    }
+
+    volume() {
+        return this.byte() / VOLUME_STEPS;
+    }
+
+    string() {
+        const length = this.varint();
+        if (this.offset + length > this.buffer.length) {
+            throw new Error('Truncated control frame');
+        }
+        const value = this.buffer.toString('utf8', this.offset, this.offset + length);
+        this.offset += length;
+        return value;
+    }
+}
+
+export default ControlWireFormat;
@@ -0,0 +1,135 @@
+import dgram from 'dgram';
+import os from 'os';
+import crypto from 'crypto';
+
+export const DISCOVERY_GROUP = '239.255.77.77'; // Administratively scoped, stays on the LAN
+export const DISCOVERY_PORT = 41235; // 41234 is taken by peer discovery
+const PROTOCOL_VERSION = 1;
+const QUERY_TYPE = 'audiodeck_discover';
+const ANNOUNCE_TYPE = 'audiodeck_announce';
+const MAX_QUERY_BYTES = 512;
+const RECENT_NONCE_LIMIT = 64;
+
+/**
+ * DiscoveryResponder - Answers Android discovery queries over UDP
+ *
+ * Clients send one small JSON query to the multicast group (and to the
+ * subnet broadcast address, for access points that filter multicast). The
+ * responder answers each query once, unicast to the sender, with the
+ * server's name, version, ports and current load, so a client finds every
+ * server on the LAN in a single round trip instead of sweeping the subnet.
+ */
+export class DiscoveryResponder {
+    constructor({ httpPort, name = 'AudioDeck Connect', version = '8.0.0', getLoad = () => ({}) } = {}) {
+        this.id = crypto.randomBytes(8).toString('hex');
+        this.httpPort = Number(httpPort);
+        this.name = name;
+        this.version = version;
+        this.getLoad = getLoad;
+        this.socket = null;
+        this.recentNonces = [];
+        this.queriesAnswered = 0;
+        this.queriesIgnored = 0;
+    }
+
+    async start() {
+        const socket = dgram.createSocket({ type: 'udp4', reuseAddr: true });
+        this.socket = socket;
+
+        socket.on('message', (msg, rinfo) => this.handleQuery(msg, rinfo));
+        socket.on('error', (err) => {
+            console.error(`[DiscoveryResponder] Socket error: ${err.message}`);
+        });
+
+        await new Promise((resolve, reject) => {
+            socket.once('error', reject);
+            socket.bind(DISCOVERY_PORT, () => {
+                socket.off('error', reject);
+                resolve();
+            });
+        });
+
+        // Join on every IPv4 interface so queries arrive whichever network the phone is on
+        const interfaces = this.getIPv4Addresses();
+        for (const address of interfaces) {
+            try {
+                socket.addMembership(DISCOVERY_GROUP, address);
+            } catch (error) {
+                console.warn(`[DiscoveryResponder] Could not join ${DISCOVERY_GROUP} on ${address}: ${error.message}`);
+            }
+        }
+        console.log(`[DiscoveryResponder] Answering discovery on ${DISCOVERY_GROUP}:${DISCOVERY_PORT} (${interfaces.join(', ') || 'no interfaces'})`);
+    }
+
+    async stop() {
+        if (!this.socket) return;
+        const socket = this.socket;
+        this.socket = null;
+        await new Promise(resolve => socket.close(resolve));
+    }
+
+    handleQuery(msg, rinfo) {
+        if (msg.length > MAX_QUERY_BYTES) {
+            this.queriesIgnored++;
+            return;
+        }
+
+        let query;
+        try {
+            query = JSON.parse(msg.toString('utf8'));
+        } catch {
+            this.queriesIgnored++;
+            return;
+        }
+        if (query?.type !== QUERY_TYPE || typeof query.nonce !== 'string') {
+            this.queriesIgnored++;
+            return;
+        }
+
+        // The same query may arrive twice, via multicast and via broadcast
+        const nonceKey = `${rinfo.address}:${rinfo.port}:${query.nonce}`;
+        if (this.recentNonces.includes(nonceKey)) return;
+        this.recentNonces.push(nonceKey);
+        if (this.recentNonces.length > RECENT_NONCE_LIMIT) this.recentNonces.shift();
+
+        const announcement = Buffer.from(JSON.stringify({
+            type: ANNOUNCE_TYPE,
+            version: PROTOCOL_VERSION,
+            nonce: query.nonce,
+            id: this.id,
+            name: this.name,
+            hostname: os.hostname(),
+            server_version: this.version,
+            platform: process.platform,
+            ports: { http: this.httpPort, socket: this.httpPort },
+            load: this.getLoad()
+        }));
+
+        this.socket?.send(announcement, rinfo.port, rinfo.address, (error) => {
+            if (error) {
+                console.warn(`[DiscoveryResponder] Reply to ${rinfo.address} failed: ${error.message}`);
+                return;
+            }
+            this.queriesAnswered++;
+        });
+    }
+
+    getIPv4Addresses() {
+        return Object.values(os.networkInterfaces())
+            .flat()
+            .filter(net => net && net.family === 'IPv4' && !net.internal)
+            .map(net => net.address);
+    }
+
+    getStatus() {
+        return {
+            id: this.id,
+            listening: this.socket !== null,
+            group: `${DISCOVERY_GROUP}:${DISCOVERY_PORT}`,
+            queriesAnswered: this.queriesAnswered,
+            queriesIgnored: this.queriesIgnored
+        };
+    }
+}
+
+export default DiscoveryResponder;
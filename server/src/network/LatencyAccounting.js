@@ -0,0 +1,96 @@
+const MAX_SAMPLES = 512;
+const MAX_PLAUSIBLE_DELAY_MS = 60_000; // Anything larger is a clock or replay artefact
+
+/**
+ * LatencyAccounting - Tap-to-audio delay of Android play commands
+ *
+ * Command timestamps are in the client's clock. Clients estimate their
+ * offset to this server NTP-style over ping/pong and report it on
+ * 'clock_sync'; with that offset a command's tap time can be placed on the
+ * server clock and its delay split into transit (tap to arrival, including
+ * client-side batching) and server queueing (arrival to audio hand-off).
+ * Commands from clients without an offset are not accounted.
+ */
+export class LatencyAccounting {
+    constructor() {
+        this.offsets = new Map(); // socketId -> { offsetMs, uncertaintyMs }
+        this.samples = { transit: [], serverQueue: [], tapToAudio: [] };
+        this.accounted = 0;
+        this.unaccounted = 0;
+    }
+
+    /**
+     * Client clock offset: server time = client time + offset_ms.
+     */
+    updateOffset(socketId, { offset_ms: offsetMs, uncertainty_ms: uncertaintyMs } = {}) {
+        if (!Number.isFinite(offsetMs)) return false;
+        this.offsets.set(socketId, {
+            offsetMs,
+            uncertaintyMs: Number.isFinite(uncertaintyMs) ? uncertaintyMs : null
+        });
+        return true;
+    }
+
+    releaseClient(socketId) {
+        this.offsets.delete(socketId);
+    }
+
+    /**
+     * Accounts one command. Returns its delay breakdown in ms, or null when
+     * the client has no clock offset yet or the timestamp is implausible.
+     */
+    record(socketId, tapTimestamp, receivedAt, dispatchedAt) {
+        const clock = this.offsets.get(socketId);
+        const tap = Number(tapTimestamp);
+        if (!clock || !Number.isFinite(tap) || tap <= 0) {
+            this.unaccounted++;
+            return null;
+        }
+
+        const tapOnServer = tap + clock.offsetMs;
+        const transit = receivedAt - tapOnServer;
+        const tapToAudio = dispatchedAt - tapOnServer;
+        if (tapToAudio < -MAX_PLAUSIBLE_DELAY_MS || tapToAudio > MAX_PLAUSIBLE_DELAY_MS) {
+            this.unaccounted++;
+            return null;
+        }
+
+        const latency = {
+            transit_ms: Math.round(transit),
+            server_queue_ms: dispatchedAt - receivedAt,
+            tap_to_audio_ms: Math.round(tapToAudio),
+            uncertainty_ms: clock.uncertaintyMs
+        };
+        addSample(this.samples.transit, latency.transit_ms);
+        addSample(this.samples.serverQueue, latency.server_queue_ms);
+        addSample(this.samples.tapToAudio, latency.tap_to_audio_ms);
+        this.accounted++;
+        return latency;
+    }
+
+    getStatus() {
+        return {
+            syncedClients: this.offsets.size,
+            accounted: this.accounted,
+            unaccounted: this.unaccounted,
+            transitMs: summarize(this.samples.transit),
+            serverQueueMs: summarize(this.samples.serverQueue),
+            tapToAudioMs: summarize(this.samples.tapToAudio)
+        };
+    }
+}
+
+function addSample(samples, value) {
+    samples.push(value);
+    if (samples.length > MAX_SAMPLES) samples.shift();
+}
+
+// Nearest-rank percentiles over the retained samples
+function summarize(samples) {
+    if (samples.length === 0) return null;
+    const sorted = [...samples].sort((a, b) => a - b);
+    const rank = p => sorted[Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    return { count: sorted.length, p50: rank(0.5), p95: rank(0.95), p99: rank(0.99), max: sorted[sorted.length - 1] };
+}
+
+export default LatencyAccounting;
@@ -0,0 +1,128 @@
+import zlib from 'zlib';
+
+const MAGIC = Buffer.from('SBZ');
+const FRAME_VERSION = 1;
+const DICTIONARY_FRAME_VERSION = 2;
+const FRAME_HEADER_SIZE = 9;
+const DICTIONARY_FRAME_HEADER_SIZE = 13;
+const MAX_DICTIONARY_SIZE = 64 * 1024;
+const MAX_DICTIONARIES_PER_CLIENT = 4;
+
+// Frame algorithm ids, matching CompressionManager.CompressionAlgorithm.frameId on Android
+const ALGORITHM = {
+    NONE: 0,
+    GZIP: 1,
+    DEFLATE: 2
+};
+
+/**
+ * StateCompression - Decodes compressed state payloads from Android clients
+ *
+ * Clients share a trained preset dictionary during the socket handshake
+ * ('compression_dictionary'); small state messages are then sent as raw
+ * deflate primed with that dictionary. Dictionaries are kept per socket and
+ * identified by their Adler-32, exactly as zlib names preset dictionaries.
+ */
+export class StateCompression {
+    constructor() {
+        this.dictionaries = new Map(); // socketId -> Map(dictionaryId -> Buffer)
+    }
+
+    /**
+     * Stores a dictionary announced by a client. Returns the verified id,
+     * or null when the payload is malformed or does not match its id.
+     */
+    registerDictionary(socketId, { id, dictionary } = {}) {
+        if (typeof dictionary !== 'string') return null;
+
+        const bytes = Buffer.from(dictionary, 'base64');
+        if (bytes.length === 0 || bytes.length > MAX_DICTIONARY_SIZE) return null;
+
+        const checksum = adler32(bytes);
+        if ((checksum | 0) !== (id | 0)) return null;
+
+        let known = this.dictionaries.get(socketId);
+        if (!known) {
+            known = new Map();
+            this.dictionaries.set(socketId, known);
+        }
+        known.set(checksum | 0, bytes);
+
+        // Keep the newest few so messages in flight during a rollover still decode
+        while (known.size > MAX_DICTIONARIES_PER_CLIENT) {
+            known.delete(known.keys().next().value);
+        }
+        return checksum | 0;
+    }
+
+    releaseClient(socketId) {
+        this.dictionaries.delete(socketId);
+    }
+
+    /**
+     * Decodes an "SBZ" framed payload; unframed buffers are returned as-is.
+     */
+    decode(socketId, payload) {
+        const buffer = Buffer.isBuffer(payload) ? payload : Buffer.from(payload);
+        if (buffer.length < FRAME_HEADER_SIZE || !buffer.subarray(0, 3).equals(MAGIC)) {
+            return buffer;
+        }
+
+        const version = buffer[3];
+        const algorithm = buffer[4];
+
+        if (version === DICTIONARY_FRAME_VERSION) {
+            const dictionaryId = buffer.readInt32BE(5);
+            const originalLength = buffer.readInt32BE(9);
+            const dictionary = this.dictionaries.get(socketId)?.get(dictionaryId);
+            if (!dictionary) {
+                throw new Error(`Unknown compression dictionary ${dictionaryId}`);
+            }
+            const body = buffer.subarray(DICTIONARY_FRAME_HEADER_SIZE);
+            return checkLength(zlib.inflateRawSync(body, { dictionary }), originalLength);
+        }
+
+        if (version !== FRAME_VERSION) {
+            throw new Error(`Unsupported compression frame version ${version}`);
+        }
+
+        const originalLength = buffer.readInt32BE(5);
+        const body = buffer.subarray(FRAME_HEADER_SIZE);
+        switch (algorithm) {
+            case ALGORITHM.NONE:
+                return checkLength(Buffer.from(body), originalLength);
+            case ALGORITHM.GZIP:
+                return checkLength(zlib.gunzipSync(body), originalLength);
+            case ALGORITHM.DEFLATE:
+                return checkLength(zlib.inflateSync(body), originalLength);
+            default:
+                throw new Error(`Unsupported compression algorithm ${algorithm}`);
+        }
+    }
+
+    getStatus() {
+        return {
+            clients: this.dictionaries.size,
+            dictionaries: [...this.dictionaries.values()].reduce((sum, known) => sum + known.size, 0)
+        };
+    }
+}
+
+function checkLength(decoded, expected) {
+    if (decoded.length !== expected) {
+        throw new Error(`Decoded ${decoded.length} bytes, expected ${expected}`);
+    }
+    return decoded;
+}
+
+function adler32(bytes) {
+    let a = 1;
+    let b = 0;
+    for (let i = 0; i < bytes.length; i++) {
+        a = (a + bytes[i]) % 65521;
+        b = (b + a) % 65521;
+    }
+    return ((b << 16) | a) >>> 0;
+}
+
+export default StateCompression;
@@ -7,15 +7,21 @@ import { Server } from 'socket.io';
 import cors from 'cors';
 import dotenv from 'dotenv';
 import path from 'path';
+import os from 'os';
 // import { fileURLToPath } from 'url';
 
 // Import local modules
 import { AudioPlayer } from './audio/AudioPlayer.js';
+import { AudioContentCache } from './audio/AudioContentCache.js';
 import { VoicemeeterManager } from './audio/VoicemeeterManager.js';
 import { AdbManager } from './device/AdbManager.js';
 import AsyncUtils from './utils/AsyncUtils.js';
 // import { USBAutoDetectionService } from './network/USBAutoDetectionService.js';
 import { NetworkDiscoveryService } from './network/NetworkDiscoveryService.js';
+import { DiscoveryResponder } from './network/DiscoveryResponder.js';
+import { StateCompression } from './network/StateCompression.js';
+import { ControlWireFormat } from './network/ControlWireFormat.js';
+import { LatencyAccounting } from './network/LatencyAccounting.js';
 import { HealthMonitor } from './monitoring/HealthMonitor.js';
 import mcpRouter from './routes/mcp.js';
 import healthRouter from './routes/health.js';
@@ -25,10 +31,33 @@ import healthRouter from './routes/health.js';
 
 dotenv.config({ path: path.resolve(process.cwd(), '.env') });
 
+const MAX_PLAY_BATCH_SIZE = 32; // Matches the Android client's batch limit
+const MAX_PLAY_BATCH_SPREAD_MS = 50; // Client batching windows never exceed this
+
+// Android emits Gson-serialized strings; other clients may send plain objects
+function parseSocketPayload(data) {
+    if (typeof data !== 'string') return data;
+    try {
+        return JSON.parse(data);
+    } catch {
+        return null;
+    }
+}
+
+// X-Volume header on forwarded audio; defaults to full volume
+function parseVolumeHeader(req) {
+    const volume = parseFloat(req.get('X-Volume'));
+    return Number.isFinite(volume) ? volume : 1.0;
+}
+
 class AudioDeckServer {
     constructor() {
         this.app = express();
         this.server = http.createServer(this.app);
+        // Android clients pool keep-alive connections for 60s; outlive that so
+        // the server never closes a socket the client is about to reuse
+        this.server.keepAliveTimeout = 65000;
+        this.server.headersTimeout = 66000;
         this.io = new Server(this.server, {
             cors: {
                 origin: '*',
@@ -39,6 +68,10 @@ class AudioDeckServer {
         this.port = process.env.PORT || 3001;
         this.isShuttingDown = false;
         this.serviceErrors = new Map();
+        this.stateCompression = new StateCompression();
+        this.controlWireFormat = new ControlWireFormat();
+        this.latencyAccounting = new LatencyAccounting();
+        this.audioContentCache = new AudioContentCache();
         
         // Enhanced error handling setup
         this.setupErrorHandling();
@@ -122,6 +155,20 @@ class AudioDeckServer {
                 name: 'HealthMonitor',
                 init: () => { this.healthMonitor = new HealthMonitor(); },
                 critical: true
+            },
+            {
+                name: 'DiscoveryResponder',
+                init: () => {
+                    this.discoveryResponder = new DiscoveryResponder({
+                        httpPort: this.port,
+                        getLoad: () => ({
+                            clients: this.io.engine.clientsCount,
+                            cpu: Number(this.healthMonitor.getCpuUsage().usage),
+                            event_loop_lag_ms: Number(this.healthMonitor.eventLoopLag)
+                        })
+                    });
+                },
+                critical: false
             }
         ];
 
@@ -175,6 +222,12 @@ class AudioDeckServer {
                 start: () => this.healthMonitor.startMonitoring(),
                 critical: true,
                 retries: 2
+            },
+            {
+                name: 'DiscoveryResponder',
+                start: () => this.discoveryResponder.start(),
+                critical: false,
+                retries: 1
             }
         ];
 
@@ -219,7 +272,14 @@ class AudioDeckServer {
     setupRoutes() {
         this.app.get('/health', (req, res) => {
             const health = this.healthMonitor.getStatus();
-            res.json(health);
+            // Identity fields let network scanners tell this server apart from other services
+            res.json({
+                name: 'AudioDeck Connect',
+                version: '8.0.0',
+                platform: process.platform,
+                hostname: os.hostname(),
+                ...health
+            });
         });
         
         this.app.get('/info', (req, res) => {
@@ -232,7 +292,10 @@ class AudioDeckServer {
                     voicemeeter: this.voicemeeterManager.getStatus(),
                     adb: this.adbManager.getStatus(),
                     // usb: this.usbService.getStatus(),
-                    discovery: this.discoveryService.getStatus()
+                    discovery: this.discoveryService.getStatus(),
+                    discoveryResponder: this.discoveryResponder?.getStatus(),
+                    contentCache: this.audioContentCache.getStatus(),
+                    latency: this.latencyAccounting.getStatus()
                 }
             });
         });
@@ -241,6 +304,62 @@ class AudioDeckServer {
         this.app.use('/api/mcp', mcpRouter);
         this.app.use('/health', healthRouter);
         
+        // Audio forwarded from Android clients, cached by content hash. Clients try
+        // play-by-hash first and only upload the bytes when it answers 404.
+        this.app.post('/play-by-hash', async (req, res) => {
+            try {
+                const filePath = await this.audioContentCache.lookup(req.get('X-Content-Hash'));
+                if (!filePath) {
+                    return res.status(404).json({ success: false, error: 'Content not cached' });
+                }
+                const result = await this.audioManager.playSound(filePath, parseVolumeHeader(req));
+                res.json({ success: result, cached: true });
+            } catch (error) {
+                console.error('❌ play-by-hash error:', error);
+                this.logError('AUDIO_PLAY', error);
+                res.status(500).json({ success: false, error: error.message });
+            }
+        });
+        
+        this.app.post('/play-audio-data', async (req, res) => {
+            try {
+                const expectedHash = req.get('X-Content-Hash')?.toLowerCase() ?? null;
+                const stored = await this.audioContentCache.store(req, {
+                    expectedHash,
+                    fileName: req.get('X-File-Name') ?? '',
+                    declaredSize: Number(req.get('Content-Length'))
+                });
+                console.log(`📥 Received ${req.get('X-File-Name')} (${stored.size} bytes, ${stored.hash.slice(0, 12)})`);
+                const result = await this.audioManager.playSound(stored.path, parseVolumeHeader(req));
+                res.json({ success: result, hash: stored.hash });
+            } catch (error) {
+                console.error('❌ play-audio-data error:', error);
+                this.logError('AUDIO_PLAY', error);
+                res.status(error.statusCode ?? 400).json({ success: false, error: error.message });
+            }
+        });
+        
+        // Background pre-upload of a layout's sounds: check, then store without playing
+        this.app.get('/audio-cache/:hash', async (req, res) => {
+            const cached = await this.audioContentCache.contains(req.params.hash);
+            res.status(cached ? 200 : 404).json({ cached });
+        });
+        
+        this.app.post('/cache-audio-data', async (req, res) => {
+            try {
+                const stored = await this.audioContentCache.store(req, {
+                    expectedHash: req.get('X-Content-Hash')?.toLowerCase() ?? null,
+                    fileName: req.get('X-File-Name') ?? '',
+                    declaredSize: Number(req.get('Content-Length'))
+                });
+                res.json({ success: true, hash: stored.hash, size: stored.size });
+            } catch (error) {
+                console.error('❌ cache-audio-data error:', error);
+                this.logError('AUDIO_CACHE', error);
+                res.status(error.statusCode ?? 400).json({ success: false, error: error.message });
+            }
+        });
+        
         // Additional routes...
     }
     
@@ -251,6 +370,71 @@ class AudioDeckServer {
             // Enhanced disconnect handling
             socket.on('disconnect', (reason) => {
                 console.log(`📱 Client disconnected: ${socket.id} (${reason})`);
+                this.stateCompression.releaseClient(socket.id);
+                this.controlWireFormat.releaseClient(socket.id);
+                this.latencyAccounting.releaseClient(socket.id);
+            });
+            
+            // Clock sync probe: echo the client's send time with our receive and send
+            // times so the client can estimate its clock offset and round trip
+            socket.on('ping', (data) => {
+                const serverReceivedAt = Date.now();
+                const clientTimestamp = typeof data === 'object' && data !== null ? data.timestamp : data;
+                socket.emit('pong', { clientTimestamp, serverReceivedAt, serverSentAt: Date.now() });
+            });
+            
+            // Client's current clock offset estimate, used for tap-to-audio accounting
+            socket.on('clock_sync', (data) => {
+                this.latencyAccounting.updateOffset(socket.id, parseSocketPayload(data));
+            });
+            
+            // Preset compression dictionary shared by the client during the handshake
+            socket.on('compression_dictionary', (data) => {
+                const id = this.stateCompression.registerDictionary(socket.id, data);
+                if (id === null) {
+                    console.warn(`⚠️ Rejected compression dictionary from ${socket.id}`);
+                    return;
+                }
+                console.log(`📖 Compression dictionary ${id} registered for ${socket.id}`);
+                socket.emit('compression_dictionary_ack', { id });
+            });
+            
+            // State changes arrive dictionary-compressed, GZIP-framed or raw; relay them decoded
+            socket.on('state_change', (frame) => {
+                try {
+                    const message = JSON.parse(this.stateCompression.decode(socket.id, frame).toString('utf8'));
+                    socket.broadcast.emit('state_change', message);
+                } catch (error) {
+                    console.error(`❌ State change error for ${socket.id}:`, error);
+                    this.logError('STATE_CHANGE', error);
+                }
+            });
+            
+            // Binary control channel offer; clients that get no answer stay on JSON
+            socket.on('wire_format', (offer, ack) => {
+                const format = this.controlWireFormat.negotiate(socket.id, offer);
+                if (typeof ack === 'function') ack({ format });
+            });
+            
+            // Binary control frames are decoded and handed to the JSON event's handlers
+            socket.on('control_bin', (frame) => {
+                let message;
+                try {
+                    message = this.controlWireFormat.decode(socket.id, frame);
+                } catch (error) {
+                    // The decoder has dropped the session; the client goes back to JSON
+                    console.error(`❌ Control frame error for ${socket.id}:`, error);
+                    this.logError('CONTROL_WIRE', error);
+                    socket.emit('wire_format_reset', { format: 'json', reason: error.message });
+                    return;
+                }
+                if (!message) return;
+                try {
+                    socket.listeners(message.event).forEach(listener => listener(message.payload));
+                } catch (error) {
+                    console.error(`❌ Control message error for ${socket.id}:`, error);
+                    this.logError('CONTROL_WIRE', error);
+                }
             });
             
             // Enhanced audio control events with error handling
@@ -266,6 +450,33 @@ class AudioDeckServer {
                 }
             });
             
+            // Single play command from the Android client (JSON string or object)
+            socket.on('play_sound', async (data) => {
+                await this.handleSoundCommand(socket, { action: 'play', ...parseSocketPayload(data) });
+            });
+            
+            // Play/stop commands the client batched within a few milliseconds. They run
+            // in order, spaced by their original timestamps so rapid presses keep their rhythm.
+            socket.on('play_batch', (data) => {
+                const batch = parseSocketPayload(data);
+                const commands = Array.isArray(batch?.commands) ? batch.commands.slice(0, MAX_PLAY_BATCH_SIZE) : [];
+                if (commands.length === 0) return;
+                
+                // Each command starts at its own offset and is never awaited: playSound only
+                // resolves when the player exits, so awaiting would serialize overlapping taps
+                // and hold a stop until the sound it should stop had finished
+                const firstTimestamp = Number(commands[0].timestamp) || 0;
+                const receivedAt = Date.now();
+                for (const command of commands) {
+                    const offset = Math.min(Math.max((Number(command.timestamp) || 0) - firstTimestamp, 0), MAX_PLAY_BATCH_SPREAD_MS);
+                    if (offset === 0) {
+                        this.handleSoundCommand(socket, command, receivedAt);
+                    } else {
+                        setTimeout(() => this.handleSoundCommand(socket, command, receivedAt), offset);
+                    }
+                }
+            });
+            
             socket.on('stop', async () => {
                 try {
                     console.log(`🛑 Stop request from ${socket.id}`);
@@ -305,6 +516,35 @@ class AudioDeckServer {
         });
     }
     
+    /**
+     * Executes one play/stop command from 'play_sound' or 'play_batch'
+     */
+    async handleSoundCommand(socket, command, receivedAt = Date.now()) {
+        try {
+            if (command?.action === 'stop') {
+                await this.audioManager.stopCurrentSound();
+                socket.emit('stopResult', { success: true });
+                return;
+            }
+            
+            const filePath = command?.file_path;
+            if (typeof filePath !== 'string' || filePath.length === 0) {
+                throw new Error('Play command without file_path');
+            }
+            // Accounted at hand-off to the player; playSound resolves when playback ends
+            const latency = this.latencyAccounting.record(socket.id, command.timestamp, receivedAt, Date.now());
+            if (latency) {
+                socket.emit('play_latency', { button_id: command.button_id, timestamp: command.timestamp, ...latency });
+            }
+            const result = await this.audioManager.playSound(filePath, command.volume ?? 1.0);
+            socket.emit('playResult', { success: result, data: command });
+        } catch (error) {
+            console.error(`❌ Sound command error for ${socket.id}:`, error);
+            this.logError('AUDIO_PLAY', error);
+            socket.emit('playResult', { success: false, error: error.message, data: command });
+        }
+    }
+    
     /**
      * Enhanced error logging with categorization
      */
@@ -351,6 +591,9 @@ class AudioDeckServer {
             if (this.healthMonitor) {
                 this.healthMonitor.stopMonitoring();
             }
+            if (this.discoveryResponder) {
+                await this.discoveryResponder.stop().catch(console.error);
+            }
             
             console.log('✅ Graceful shutdown complete');
             process.exit(0);
@@ -0,0 +1,72 @@
+import { test } from 'node:test';
+import assert from 'node:assert/strict';
+import crypto from 'node:crypto';
+import fs from 'node:fs/promises';
+import os from 'node:os';
+import path from 'node:path';
+import { Readable } from 'node:stream';
+import { AudioContentCache } from '../src/audio/AudioContentCache.js';
+
+async function tempDirectory(t) {
+    const directory = await fs.mkdtemp(path.join(os.tmpdir(), 'audio-content-cache-'));
+    t.after(() => fs.rm(directory, { recursive: true, force: true }));
+    return directory;
+}
+
+function sha256(data) {
+    return crypto.createHash('sha256').update(data).digest('hex');
+}
+
+test('stores the same content under different extensions as one file', async t => {
+    const directory = await tempDirectory(t);
+    const cache = new AudioContentCache({ directory, maxBytes: 1024 });
+    const data = Buffer.from('same sound');
+
+    const first = await cache.store(Readable.from([data]), { fileName: 'horn.mp3' });
+    const second = await cache.store(Readable.from([data]), { fileName: 'horn.wav' });
+
+    assert.equal(first.path, second.path);
+    assert.equal(path.basename(second.path), sha256(data));
+    assert.equal(second.extension, '.wav');
+    assert.deepEqual(await fs.readdir(directory), [sha256(data)]);
+    assert.equal(cache.getStatus().files, 1);
+});
+
+test('rejects an upload larger than the budget while streaming', async t => {
+    const directory = await tempDirectory(t);
+    const cache = new AudioContentCache({ directory, maxBytes: 1024 });
+    const chunks = Array.from({ length: 4 }, () => Buffer.alloc(512));
+
+    await assert.rejects(cache.store(Readable.from(chunks), { fileName: 'long.wav' }), error => error.statusCode === 413);
+    assert.deepEqual(await fs.readdir(directory), []);
+    assert.equal(cache.getStatus().files, 0);
+});
+
+test('rejects an upload whose declared size is over the budget', async t => {
+    const cache = new AudioContentCache({ directory: await tempDirectory(t), maxBytes: 1024 });
+
+    await assert.rejects(cache.store(Readable.from([Buffer.alloc(16)]), { declaredSize: 4096 }), error => error.statusCode === 413);
+});
+
+test('evicts the least recently used file to stay within budget', async t => {
+    const cache = new AudioContentCache({ directory: await tempDirectory(t), maxBytes: 1024 });
+    const older = await cache.store(Readable.from([Buffer.alloc(600, 1)]), { fileName: 'a.mp3' });
+    const newer = await cache.store(Readable.from([Buffer.alloc(600, 2)]), { fileName: 'b.mp3' });
+
+    assert.equal(await cache.contains(older.hash), false);
+    assert.equal(await cache.lookup(newer.hash), newer.path);
+});
+
+test('load() renames files named with an extension and drops duplicates', async t => {
+    const directory = await tempDirectory(t);
+    const data = Buffer.from('legacy sound');
+    const hash = sha256(data);
+    await fs.writeFile(path.join(directory, `${hash}.mp3`), data);
+    await fs.writeFile(path.join(directory, `${hash}.wav`), data);
+
+    const cache = new AudioContentCache({ directory, maxBytes: 1024 });
+    assert.equal(await cache.lookup(hash), path.join(directory, hash));
+    assert.deepEqual(await fs.readdir(directory), [hash]);
+    assert.equal(cache.entries.get(hash).size, data.length);
+    assert.match(cache.entries.get(hash).extension, /^\.(mp3|wav)$/);
+});
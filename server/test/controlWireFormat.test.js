@@ -0,0 +1,50 @@
+import { test } from 'node:test';
+import assert from 'node:assert/strict';
+import { readFileSync } from 'node:fs';
+import { ControlWireFormat } from '../src/network/ControlWireFormat.js';
+
+// Frames produced by the Android encoder; ControlWireCodecTest checks the same file
+const fixture = JSON.parse(readFileSync(new URL('./fixtures/control-wire-frames.json', import.meta.url), 'utf8'));
+
+function negotiated() {
+    const wireFormat = new ControlWireFormat();
+    wireFormat.negotiate('client', {
+        formats: ['binary-v1', 'json'],
+        epoch: fixture.epoch,
+        base_timestamp: fixture.base_timestamp
+    });
+    return wireFormat;
+}
+
+test('decodes frames encoded by the Android client', () => {
+    const wireFormat = negotiated();
+    for (const frame of fixture.frames) {
+        const message = wireFormat.decode('client', Buffer.from(frame.hex, 'hex'));
+        assert.deepEqual(message, { event: frame.event, payload: frame.payload });
+    }
+    assert.equal(wireFormat.getStatus().framesDecoded, fixture.frames.length);
+});
+
+test('ignores frames from another connection epoch', () => {
+    const wireFormat = negotiated();
+    const frame = Buffer.from(fixture.frames[0].hex, 'hex');
+    frame[2] = (fixture.epoch + 1) & 0xFF;
+    assert.equal(wireFormat.decode('client', frame), null);
+    assert.equal(wireFormat.getStatus().binaryClients, 1);
+});
+
+test('drops the session when a frame fails to decode', () => {
+    const wireFormat = negotiated();
+    const truncated = Buffer.from(fixture.frames[0].hex, 'hex').subarray(0, 6);
+    assert.throws(() => wireFormat.decode('client', truncated), /Truncated control frame/);
+    assert.equal(wireFormat.getStatus().binaryClients, 0);
+
+    // Later frames are rejected until the client renegotiates
+    assert.equal(wireFormat.decode('client', Buffer.from(fixture.frames[1].hex, 'hex')), null);
+});
+
+test('drops the session on an unknown message type', () => {
+    const wireFormat = negotiated();
+    assert.throws(() => wireFormat.decode('client', Buffer.from([0xB1, 0x7F, fixture.epoch])), /Unknown control message type/);
+    assert.equal(wireFormat.getStatus().binaryClients, 0);
+});